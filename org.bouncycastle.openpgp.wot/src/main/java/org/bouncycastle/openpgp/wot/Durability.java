@@ -0,0 +1,39 @@
+package org.bouncycastle.openpgp.wot;
+
+/**
+ * Specifies when modifications of the {@code trustdb.gpg} are forced to the storage device (via {@code fsync}).
+ *
+ * @see TrustDbOptions#setDurability(Durability)
+ */
+public enum Durability
+{
+    /**
+     * Every flush of the trust-database (e.g. after
+     * {@link TrustDb#setOwnerTrust(org.bouncycastle.openpgp.wot.key.PgpKey, OwnerTrust) setOwnerTrust(...)} or at the
+     * end of a {@linkplain TrustDb#beginBatch() batch}) synchronously forces the data to the storage device. This is
+     * the default.
+     */
+    SYNC,
+
+    /**
+     * The data is written to the operating system immediately, but forced to the storage device asynchronously - at
+     * most once per {@linkplain TrustDbOptions#getGroupCommitIntervalMillis() group-commit-interval}. All flushes
+     * within one interval thus share one single {@code fsync}.
+     * <p>
+     * If the operating system crashes (or the power fails), the modifications of the last interval may be lost. If
+     * only the JVM crashes, nothing is lost.
+     */
+    GROUP_COMMIT,
+
+    /**
+     * The data is written to the operating system, but never explicitly forced to the storage device - not even when
+     * the trust-database is closed.
+     * <p>
+     * This is suitable for temporary trust-databases, which can be re-created easily.
+     * <p>
+     * If a {@linkplain TrustDbOptions#getJournalFile() journal} is used, it is not synced either. It then still
+     * protects against a crash of the process while records are being written (the {@code trustdb.gpg} is never left
+     * half-updated), but not against a crash of the OS or a power failure.
+     */
+    OS_BUFFERED
+}
@@ -14,10 +14,23 @@ public class IoFile implements PgpFile {
 
 	private final File file;
 	private final String pgpId;
+	private final boolean memoryMapped;
 
 	public IoFile(File file) throws IOException {
+		this(file, false);
+	}
+
+	/**
+	 * Creates an {@code IoFile}.
+	 * @param file the underlying file. Must not be <code>null</code>.
+	 * @param memoryMapped whether {@link #createRandomAccessFile()} should return a
+	 * {@link MappedIoRandomAccessFile} (<code>true</code>) or an {@link IoRandomAccessFile} (<code>false</code>).
+	 * @throws IOException if determining the canonical path failed.
+	 */
+	public IoFile(File file, boolean memoryMapped) throws IOException {
 		this.file = requireNonNull(file, "file").getCanonicalFile();
 		this.pgpId = CanonicalString.canonicalize(file.getParentFile().getPath());
+		this.memoryMapped = memoryMapped;
 	}
 
 	@Override
@@ -29,6 +42,10 @@ public class IoFile implements PgpFile {
 		return file;
 	}
 
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
 	@Override
 	public String getPgpId() {
 		return pgpId;
@@ -54,6 +71,9 @@ public class IoFile implements PgpFile {
 
 	@Override
 	public PgpRandomAccessFile createRandomAccessFile() throws IOException {
-		return new IoRandomAccessFile(this);
+		if (memoryMapped)
+			return new MappedIoRandomAccessFile(this);
+		else
+			return new IoRandomAccessFile(this);
 	}
 }
@@ -7,6 +7,9 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 
@@ -18,8 +21,13 @@ public class IoRandomAccessFile implements PgpRandomAccessFile {
 
 	private final IoFile ioFile;
 	private final File file;
-	private final RandomAccessFile raf;
-	private final FileLock fileLock;
+	private final Object reopenMutex = new Object();
+
+	// Replaced by reopen(...), if the channel was closed by an interrupt.
+	private volatile RandomAccessFile raf;
+	private volatile FileChannel channel;
+	private volatile FileLock fileLock;
+	private volatile boolean closed;
 
 	public IoRandomAccessFile(IoFile ioFile) throws IOException {
 		this.ioFile = requireNonNull(ioFile, "ioFile");
@@ -31,38 +39,7 @@ public class IoRandomAccessFile implements PgpRandomAccessFile {
         {
             raf = new RandomAccessFile(file, "rw");
 
-            // Try to lock the file for 60 seconds - using tryLock() instead of lock(), because I ran
-            // into exceptions already, even though lock() should wait according to javadoc.
-            final int timeoutMillis = 60 * 1000;
-            final int sleepMillis = 500;
-            final int tryCount = timeoutMillis / sleepMillis;
-            for (int i = 0; i < tryCount; ++i)
-            {
-                if (fileLock == null && i != 0) {
-                    logger.warn("Locking file '{}' failed. Retrying.", file.getAbsolutePath());
-                    try
-                    {
-                        Thread.sleep(sleepMillis);
-                    } catch (InterruptedException e)
-                    {
-                        doNothing(); // ignore
-                    }
-                }
-
-                try
-                {
-                    fileLock = raf.getChannel().tryLock();
-                } catch (OverlappingFileLockException y)
-                {
-                    doNothing(); // ignore (it's quite strange that *try*Lock() might still throw this exception at all)
-                }
-                if (fileLock != null)
-                    break;
-            }
-
-            if (fileLock == null)
-                fileLock = raf.getChannel().lock();
-
+            fileLock = lock(raf);
         } finally {
             // If opening the file succeeded, but locking it failed, we must close the RandomAccessFile now.
             if (fileLock == null && raf != null) {
@@ -77,13 +54,103 @@ public class IoRandomAccessFile implements PgpRandomAccessFile {
             }
         }
         this.raf = raf;
+        this.channel = raf.getChannel();
         this.fileLock = fileLock;
 	}
 
+	/**
+	 * Locks the given file exclusively.
+	 * @param raf the file to be locked. Must not be <code>null</code>.
+	 * @return the lock. Never <code>null</code>.
+	 * @throws IOException if locking failed.
+	 */
+	private FileLock lock(final RandomAccessFile raf) throws IOException {
+		// Try to lock the file for 60 seconds - using tryLock() instead of lock(), because I ran
+		// into exceptions already, even though lock() should wait according to javadoc.
+		FileLock fileLock = null;
+		final int timeoutMillis = 60 * 1000;
+		final int sleepMillis = 500;
+		final int tryCount = timeoutMillis / sleepMillis;
+		for (int i = 0; i < tryCount; ++i) {
+			if (fileLock == null && i != 0) {
+				logger.warn("Locking file '{}' failed. Retrying.", file.getAbsolutePath());
+				try {
+					Thread.sleep(sleepMillis);
+				} catch (InterruptedException e) {
+					doNothing(); // ignore
+				}
+			}
+
+			try {
+				fileLock = raf.getChannel().tryLock();
+			} catch (OverlappingFileLockException y) {
+				doNothing(); // ignore (it's quite strange that *try*Lock() might still throw this exception at all)
+			}
+			if (fileLock != null)
+				break;
+		}
+
+		if (fileLock == null)
+			fileLock = raf.getChannel().lock();
+
+		return fileLock;
+	}
+
+	/**
+	 * Opens the file again, after its channel was closed - usually because a thread was interrupted while reading or
+	 * writing. Closing the channel released the lock, too - hence, it is locked again.
+	 * @param failedChannel the channel which was found closed. Must not be <code>null</code>.
+	 * @param cause the exception thrown by the closed channel. Must not be <code>null</code>.
+	 * @throws ClosedChannelException if this file was {@linkplain #close() closed}.
+	 * @throws IOException if re-opening or re-locking the file failed.
+	 */
+	private void reopen(final FileChannel failedChannel, final ClosedChannelException cause) throws IOException {
+		synchronized (reopenMutex) {
+			if (closed)
+				throw cause;
+
+			if (channel != failedChannel)
+				return; // already re-opened by another thread
+
+			logger.warn("reopen: Channel of file '{}' was closed (probably by an interrupt): {}",
+					file.getAbsolutePath(), cause.toString());
+			try {
+				raf.close();
+			} catch (IOException e) {
+				logger.warn("reopen: Closing file failed: " + e, e);
+			}
+
+			final RandomAccessFile newRaf = new RandomAccessFile(file, "rw");
+			FileLock newFileLock = null;
+			try {
+				newFileLock = lock(newRaf);
+			} finally {
+				if (newFileLock == null)
+					newRaf.close();
+			}
+			raf = newRaf;
+			channel = newRaf.getChannel();
+			fileLock = newFileLock;
+		}
+	}
+
+	/**
+	 * Gets the underlying {@code RandomAccessFile}, which was opened and locked by this instance.
+	 * @return the underlying {@code RandomAccessFile}. Never <code>null</code>.
+	 */
+	protected RandomAccessFile getRandomAccessFile() {
+		return raf;
+	}
+
 	@Override
 	public void close() throws IOException {
-		fileLock.release();
-        raf.close();
+		synchronized (reopenMutex) {
+			closed = true;
+			if (fileLock.isValid())
+				fileLock.release();
+
+			raf.close();
+		}
 	}
 
 	@Override
@@ -96,6 +163,11 @@ public class IoRandomAccessFile implements PgpRandomAccessFile {
 		return raf.length();
 	}
 
+	@Override
+	public void setLength(long newLength) throws IOException {
+		raf.setLength(newLength);
+	}
+
 	@Override
 	public void seek(long pos) throws IOException {
 		raf.seek(pos);
@@ -106,8 +178,90 @@ public class IoRandomAccessFile implements PgpRandomAccessFile {
 		raf.readFully(buf);
 	}
 
+	@Override
+	public void readFully(byte[] buf, int off, int len) throws EOFException, IOException {
+		raf.readFully(buf, off, len);
+	}
+
 	@Override
 	public void write(byte[] buf) throws IOException {
 		raf.write(buf);
 	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws IOException {
+		raf.write(buf, off, len);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This is a {@linkplain FileChannel#read(ByteBuffer, long) positional read} on the underlying
+	 * {@code FileChannel}. It does not need to seek and thus requires one system call less.
+	 * <p>
+	 * Interrupting the calling thread closes the {@code FileChannel} (and releases the file's lock). In this case, the
+	 * file is {@linkplain #reopen(FileChannel, ClosedChannelException) re-opened}, the read is retried and the thread's
+	 * interrupted flag is restored afterwards. Hence, an interrupt never breaks this file for other threads.
+	 */
+	@Override
+	public int read(long pos, ByteBuffer dst) throws IOException {
+		requireNonNull(dst, "dst");
+		if (pos < 0)
+			throw new IOException("pos < 0");
+
+		boolean interrupted = false;
+		try {
+			int count = 0;
+			while (dst.hasRemaining()) {
+				final FileChannel channel = this.channel;
+				final int n;
+				try {
+					n = channel.read(dst, pos + count);
+				} catch (ClosedChannelException x) {
+					// The flag must be cleared to retry - otherwise the new channel is closed immediately, too.
+					interrupted |= Thread.interrupted();
+					reopen(channel, x);
+					continue;
+				}
+				if (n < 0)
+					break;
+
+				count += n;
+			}
+			return count;
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Like {@link #read(long, ByteBuffer)}, this write is retried on a re-opened file, if the calling thread was
+	 * interrupted.
+	 */
+	@Override
+	public void write(long pos, ByteBuffer src) throws IOException {
+		requireNonNull(src, "src");
+		if (pos < 0)
+			throw new IOException("pos < 0");
+
+		boolean interrupted = false;
+		try {
+			long p = pos;
+			while (src.hasRemaining()) {
+				final FileChannel channel = this.channel;
+				try {
+					p += channel.write(src, p);
+				} catch (ClosedChannelException x) {
+					interrupted |= Thread.interrupted();
+					reopen(channel, x);
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
 }
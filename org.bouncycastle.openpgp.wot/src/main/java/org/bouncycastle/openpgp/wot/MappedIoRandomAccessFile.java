@@ -0,0 +1,279 @@
+package org.bouncycastle.openpgp.wot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link PgpRandomAccessFile} mapping the entire file into memory.
+ * <p>
+ * Reading and writing is done on a {@link MappedByteBuffer} and thus does not require any system call (as long as
+ * the affected pages are resident). When writing beyond the end of the current mapping, the mapping is enlarged by
+ * (at least) {@link #getMappingChunkSize() mappingChunkSize} bytes. This physically enlarges the file, too, but
+ * {@link #getLength()} still reports the logical length, i.e. the end of the data actually written. When this
+ * instance is {@linkplain #close() closed}, the file is truncated to its logical length.
+ * <p>
+ * If the process dies before the file was closed, the file keeps a tail of zero-bytes. Since the mapping always
+ * grows in multiples of {@link TrustConst#TRUST_RECORD_LEN TRUST_RECORD_LEN}, this tail consists of whole
+ * {@code UNUSED} records - but GnuPG would still choke on them, if they are not referenced. Therefore, trailing
+ * all-zero records (and a trailing partial record consisting of zero-bytes only) are not counted as logical content
+ * when the file is opened - they are cut off when this instance is closed.
+ * <p>
+ * The mapping cannot exceed {@link Integer#MAX_VALUE} bytes.
+ */
+public class MappedIoRandomAccessFile extends IoRandomAccessFile {
+	private static final Logger logger = LoggerFactory.getLogger(MappedIoRandomAccessFile.class);
+
+	/**
+	 * Default value for {@link #getMappingChunkSize() mappingChunkSize}: 1 MiB rounded up to a multiple of
+	 * {@link TrustConst#TRUST_RECORD_LEN TRUST_RECORD_LEN}.
+	 */
+	public static final int DEFAULT_MAPPING_CHUNK_SIZE = roundUpToRecordLength(1024 * 1024);
+
+	/**
+	 * Largest mapping possible - a multiple of {@link TrustConst#TRUST_RECORD_LEN TRUST_RECORD_LEN}, too.
+	 */
+	private static final int MAX_MAPPING_SIZE = Integer.MAX_VALUE - Integer.MAX_VALUE % TrustConst.TRUST_RECORD_LEN;
+
+	private final int mappingChunkSize;
+	private MappedByteBuffer mappedBuffer;
+	private long length;
+	private long position;
+
+	public MappedIoRandomAccessFile(IoFile ioFile) throws IOException {
+		this(ioFile, DEFAULT_MAPPING_CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a {@code MappedIoRandomAccessFile}.
+	 * @param ioFile the file to be opened. Must not be <code>null</code>.
+	 * @param mappingChunkSize the number of bytes by which the mapping is enlarged. Rounded up to a multiple of
+	 * {@link TrustConst#TRUST_RECORD_LEN TRUST_RECORD_LEN}.
+	 * @throws IOException if opening or mapping the file failed.
+	 */
+	public MappedIoRandomAccessFile(IoFile ioFile, int mappingChunkSize) throws IOException {
+		super(ioFile);
+		if (mappingChunkSize < 1)
+			throw new IllegalArgumentException("mappingChunkSize < 1");
+
+		this.mappingChunkSize = roundUpToRecordLength(mappingChunkSize);
+		try {
+			// Map exactly the current size, in order not to modify the file, if we only read.
+			this.mappedBuffer = map(getRandomAccessFile().getChannel().size());
+			this.length = getLengthWithoutZeroTail(mappedBuffer);
+		} catch (IOException | RuntimeException x) {
+			try {
+				super.close();
+			} catch (Exception e) {
+				logger.warn("Closing file failed: " + e, e);
+			}
+			throw x;
+		}
+	}
+
+	/**
+	 * Gets the number of bytes by which the mapping (and thus the file) is enlarged, when writing beyond its end.
+	 * @return the size of a growth-step in bytes.
+	 */
+	public int getMappingChunkSize() {
+		return mappingChunkSize;
+	}
+
+	private static int roundUpToRecordLength(final int size) {
+		final int recordCount = (size + TrustConst.TRUST_RECORD_LEN - 1) / TrustConst.TRUST_RECORD_LEN;
+		return recordCount * TrustConst.TRUST_RECORD_LEN;
+	}
+
+	/**
+	 * Gets the length of the given file's content without the zero-bytes left behind by a crash.
+	 * @param buffer the entire file. Must not be <code>null</code>.
+	 * @return the logical length - the file's size minus a trailing partial record consisting of zero-bytes only and
+	 * minus all trailing all-zero records.
+	 */
+	private static long getLengthWithoutZeroTail(final MappedByteBuffer buffer) {
+		int length = buffer.capacity();
+		final int partialRecordLength = length % TrustConst.TRUST_RECORD_LEN;
+		if (partialRecordLength > 0) {
+			if (!isZero(buffer, length - partialRecordLength, length))
+				return length; // not written by us => leave it alone.
+
+			length -= partialRecordLength;
+		}
+		while (length > 0 && isZero(buffer, length - TrustConst.TRUST_RECORD_LEN, length))
+			length -= TrustConst.TRUST_RECORD_LEN;
+
+		if (length < buffer.capacity())
+			logger.warn("Ignoring zero-tail of file ({} bytes) - probably left behind by a crash.",
+					buffer.capacity() - length);
+
+		return length;
+	}
+
+	private static boolean isZero(final MappedByteBuffer buffer, final int fromIndex, final int toIndex) {
+		for (int index = fromIndex; index < toIndex; ++index) {
+			if (buffer.get(index) != 0)
+				return false;
+		}
+		return true;
+	}
+
+	private MappedByteBuffer map(final long capacity) throws IOException {
+		if (capacity > Integer.MAX_VALUE)
+			throw new IOException("File too large to be mapped into memory: " + capacity);
+
+		// The channel is looked up each time, because it is replaced after being closed by an interrupt.
+		return getRandomAccessFile().getChannel().map(MapMode.READ_WRITE, 0, capacity);
+	}
+
+	private void ensureCapacity(final long minCapacity) throws IOException {
+		if (minCapacity <= mappedBuffer.capacity())
+			return;
+
+		final long chunks = (minCapacity + mappingChunkSize - 1) / mappingChunkSize;
+		final long capacity = Math.min(MAX_MAPPING_SIZE, chunks * mappingChunkSize);
+		if (capacity < minCapacity)
+			throw new IOException("File too large to be mapped into memory: " + minCapacity);
+
+		// The old mapping is released by the garbage-collector - there's no official API to unmap it explicitly.
+		mappedBuffer = map(capacity);
+	}
+
+	private void assertOpen() throws IOException {
+		if (mappedBuffer == null)
+			throw new IOException("File already closed!");
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (mappedBuffer == null)
+			return;
+
+		try {
+			final boolean enlarged = mappedBuffer.capacity() > length;
+			mappedBuffer.force();
+			mappedBuffer = null;
+			if (enlarged) {
+				try {
+					getRandomAccessFile().getChannel().truncate(length);
+				} catch (IOException x) {
+					// Some operating systems (e.g. Windows) do not allow truncating a file while it is still mapped.
+					// The tail then consists of zero-bytes (i.e. UNUSED records), which are cut off on the next open.
+					logger.warn("close: Truncating file failed: " + x, x);
+				}
+			}
+		} finally {
+			super.close();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		assertOpen();
+		mappedBuffer.force();
+		super.flush();
+	}
+
+	@Override
+	public long getLength() throws IOException {
+		assertOpen();
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Only the logical length is changed - the file itself keeps its size, until this instance is
+	 * {@linkplain #close() closed}.
+	 */
+	@Override
+	public void setLength(long newLength) throws IOException {
+		assertOpen();
+		if (newLength < 0)
+			throw new IOException("newLength < 0");
+
+		ensureCapacity(newLength);
+		for (long pos = length; pos < newLength; ++pos)
+			mappedBuffer.put((int) pos, (byte) 0);
+
+		length = newLength;
+	}
+
+	@Override
+	public void seek(long pos) throws IOException {
+		assertOpen();
+		if (pos < 0)
+			throw new IOException("pos < 0");
+
+		position = pos;
+	}
+
+	@Override
+	public void readFully(byte[] buf) throws EOFException, IOException {
+		readFully(buf, 0, buf.length);
+	}
+
+	@Override
+	public void readFully(byte[] buf, int off, int len) throws EOFException, IOException {
+		assertOpen();
+		if (position + len > length)
+			throw new EOFException();
+
+		mappedBuffer.position((int) position);
+		mappedBuffer.get(buf, off, len);
+		position += len;
+	}
+
+	@Override
+	public void write(byte[] buf) throws IOException {
+		write(buf, 0, buf.length);
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws IOException {
+		assertOpen();
+		final long newPosition = position + len;
+		ensureCapacity(newPosition);
+		mappedBuffer.position((int) position);
+		mappedBuffer.put(buf, off, len);
+		position = newPosition;
+		if (newPosition > length)
+			length = newPosition;
+	}
+
+	@Override
+	public int read(long pos, ByteBuffer dst) throws IOException {
+		assertOpen();
+		if (pos < 0)
+			throw new IOException("pos < 0");
+
+		final int count = (int) Math.max(0, Math.min(dst.remaining(), length - pos));
+		if (count > 0) {
+			// The mapped buffer's position is shared => read via a duplicate, allowing concurrent readers.
+			final ByteBuffer src = mappedBuffer.duplicate();
+			src.limit((int) pos + count);
+			src.position((int) pos);
+			dst.put(src);
+		}
+		return count;
+	}
+
+	@Override
+	public void write(long pos, ByteBuffer src) throws IOException {
+		assertOpen();
+		if (pos < 0)
+			throw new IOException("pos < 0");
+
+		final long newLength = pos + src.remaining();
+		ensureCapacity(newLength);
+		final ByteBuffer dst = mappedBuffer.duplicate();
+		dst.position((int) pos);
+		dst.put(src);
+		if (newLength > length)
+			length = newLength;
+	}
+}
@@ -0,0 +1,212 @@
+package org.bouncycastle.openpgp.wot;
+
+import static java.util.Objects.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * {@link PgpFile} keeping its content in the heap.
+ * <p>
+ * This is meant for ephemeral key rings and trust databases - e.g. for computing a throw-away trust view or in tests.
+ * There is no file lock and {@linkplain PgpRandomAccessFile#flush() syncing} does nothing. The content can be
+ * {@linkplain #loadFrom(File) loaded from} and {@linkplain #snapshotTo(File) written to} a real file - each with one
+ * bulk copy.
+ * <p>
+ * All streams and {@link PgpRandomAccessFile}s created by one instance share its content, just like they would share
+ * a real file. The content is limited to {@link Integer#MAX_VALUE} bytes.
+ * <p>
+ * This class is thread-safe.
+ */
+public class MemoryFile implements PgpFile {
+
+	private static final int INITIAL_CAPACITY = 4096;
+
+	private final String id;
+	private final String pgpId;
+	private byte[] data = new byte[0];
+	private int length;
+	private long lastModified;
+
+	/**
+	 * Creates an empty {@code MemoryFile}.
+	 * @param pgpId the identifier of the key ring this file belongs to. Must not be <code>null</code>. See
+	 * {@link PgpFile#getPgpId()}.
+	 * @param id the identifier of this file. Must not be <code>null</code>. See {@link PgpFile#getId()}.
+	 */
+	public MemoryFile(String pgpId, String id) {
+		this.pgpId = CanonicalString.canonicalize(requireNonNull(pgpId, "pgpId"));
+		this.id = requireNonNull(id, "id");
+	}
+
+	/**
+	 * Creates an empty {@code MemoryFile} identified like an {@link IoFile} for the given file. It can thus be
+	 * combined with {@code IoFile}s of the same directory. The given file is neither read nor written.
+	 * @param file the file whose identity to use. Must not be <code>null</code>.
+	 */
+	public MemoryFile(File file) {
+		this(requireNonNull(file, "file").getAbsoluteFile().getParentFile().getPath(), file.getAbsolutePath());
+	}
+
+	@Override
+	public String getId() {
+		return id;
+	}
+
+	@Override
+	public String getPgpId() {
+		return pgpId;
+	}
+
+	@Override
+	public synchronized long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Gets the current length of the content.
+	 * @return the length in bytes.
+	 */
+	public synchronized long getLength() {
+		return length;
+	}
+
+	/**
+	 * Replaces the content by the one of the given file.
+	 * @param file the file to read. Must not be <code>null</code>.
+	 * @throws IOException if reading failed.
+	 */
+	public void loadFrom(File file) throws IOException {
+		requireNonNull(file, "file");
+		final byte[] bytes = Files.readAllBytes(file.toPath());
+		synchronized (this) {
+			data = bytes;
+			length = bytes.length;
+			touch();
+		}
+	}
+
+	/**
+	 * Writes the current content to the given file - replacing its content, if it already exists.
+	 * @param file the file to write. Must not be <code>null</code>.
+	 * @throws IOException if writing failed.
+	 */
+	public synchronized void snapshotTo(File file) throws IOException {
+		requireNonNull(file, "file");
+		try (OutputStream out = new FileOutputStream(file);) {
+			out.write(data, 0, length);
+		}
+	}
+
+	@Override
+	public synchronized InputStream createInputStream() throws IOException {
+		return new ByteArrayInputStream(Arrays.copyOf(data, length));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The data written replaces the content, when the stream is closed.
+	 */
+	@Override
+	public OutputStream createOutputStream() throws IOException {
+		return new ByteArrayOutputStream() {
+			private boolean closed;
+
+			@Override
+			public void close() throws IOException {
+				if (closed)
+					return;
+
+				closed = true;
+				setContent(toByteArray());
+			}
+		};
+	}
+
+	@Override
+	public PgpRandomAccessFile createRandomAccessFile() throws IOException {
+		return new MemoryRandomAccessFile(this);
+	}
+
+	private synchronized void setContent(final byte[] bytes) {
+		data = bytes;
+		length = bytes.length;
+		touch();
+	}
+
+	synchronized void setLength(final long newLength) throws IOException {
+		if (newLength < 0)
+			throw new IOException("newLength < 0");
+
+		ensureCapacity(newLength);
+		if (newLength < length) // Zero the tail => it reads as zeros, when the content grows again.
+			Arrays.fill(data, (int) newLength, length, (byte) 0);
+
+		length = (int) newLength;
+		touch();
+	}
+
+	synchronized int read(final long pos, final byte[] buf, final int off, final int len) {
+		final int count = (int) Math.max(0, Math.min(len, length - pos));
+		if (count > 0)
+			System.arraycopy(data, (int) pos, buf, off, count);
+
+		return count;
+	}
+
+	synchronized int read(final long pos, final ByteBuffer dst) {
+		final int count = (int) Math.max(0, Math.min(dst.remaining(), length - pos));
+		if (count > 0)
+			dst.put(data, (int) pos, count);
+
+		return count;
+	}
+
+	synchronized void write(final long pos, final byte[] buf, final int off, final int len) throws IOException {
+		final long newLength = pos + len;
+		ensureCapacity(newLength);
+		System.arraycopy(buf, off, data, (int) pos, len);
+		if (newLength > length)
+			length = (int) newLength;
+
+		touch();
+	}
+
+	synchronized void write(final long pos, final ByteBuffer src) throws IOException {
+		final long newLength = pos + src.remaining();
+		ensureCapacity(newLength);
+		src.get(data, (int) pos, src.remaining());
+		if (newLength > length)
+			length = (int) newLength;
+
+		touch();
+	}
+
+	private void ensureCapacity(final long minCapacity) throws IOException {
+		if (minCapacity <= data.length)
+			return;
+
+		if (minCapacity > Integer.MAX_VALUE)
+			throw new IOException("Content too large: " + minCapacity);
+
+		final long capacity = Math.max(minCapacity, Math.max(INITIAL_CAPACITY, 2L * data.length));
+		data = Arrays.copyOf(data, (int) Math.min(Integer.MAX_VALUE, capacity));
+	}
+
+	/**
+	 * Updates {@link #lastModified}. It must change with every modification, because the key registry detects
+	 * modified key rings this way.
+	 */
+	private void touch() {
+		lastModified = Math.max(System.currentTimeMillis(), lastModified + 1);
+	}
+}
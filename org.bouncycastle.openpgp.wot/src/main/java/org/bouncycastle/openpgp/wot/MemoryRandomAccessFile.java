@@ -0,0 +1,105 @@
+package org.bouncycastle.openpgp.wot;
+
+import static java.util.Objects.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link PgpRandomAccessFile} working on the content of a {@link MemoryFile}.
+ * <p>
+ * The file is not locked and {@link #flush()} does nothing.
+ */
+public class MemoryRandomAccessFile implements PgpRandomAccessFile {
+
+	private final MemoryFile memoryFile;
+	private long position;
+	private boolean closed;
+
+	public MemoryRandomAccessFile(MemoryFile memoryFile) {
+		this.memoryFile = requireNonNull(memoryFile, "memoryFile");
+	}
+
+	private void assertOpen() throws IOException {
+		if (closed)
+			throw new IOException("File already closed!");
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		assertOpen();
+	}
+
+	@Override
+	public long getLength() throws IOException {
+		assertOpen();
+		return memoryFile.getLength();
+	}
+
+	@Override
+	public void setLength(long newLength) throws IOException {
+		assertOpen();
+		memoryFile.setLength(newLength);
+	}
+
+	@Override
+	public void seek(long pos) throws IOException {
+		assertOpen();
+		if (pos < 0)
+			throw new IOException("pos < 0");
+
+		position = pos;
+	}
+
+	@Override
+	public void readFully(byte[] buf) throws EOFException, IOException {
+		readFully(buf, 0, buf.length);
+	}
+
+	@Override
+	public void readFully(byte[] buf, int off, int len) throws EOFException, IOException {
+		assertOpen();
+		if (memoryFile.read(position, buf, off, len) < len)
+			throw new EOFException();
+
+		position += len;
+	}
+
+	@Override
+	public void write(byte[] buf) throws IOException {
+		write(buf, 0, buf.length);
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws IOException {
+		assertOpen();
+		memoryFile.write(position, buf, off, len);
+		position += len;
+	}
+
+	@Override
+	public int read(long pos, ByteBuffer dst) throws IOException {
+		assertOpen();
+		requireNonNull(dst, "dst");
+		if (pos < 0)
+			throw new IOException("pos < 0");
+
+		return memoryFile.read(pos, dst);
+	}
+
+	@Override
+	public void write(long pos, ByteBuffer src) throws IOException {
+		assertOpen();
+		requireNonNull(src, "src");
+		if (pos < 0)
+			throw new IOException("pos < 0");
+
+		memoryFile.write(pos, src);
+	}
+}
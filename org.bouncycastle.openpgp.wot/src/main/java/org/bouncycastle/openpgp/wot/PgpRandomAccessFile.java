@@ -2,6 +2,7 @@ package org.bouncycastle.openpgp.wot;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public interface PgpRandomAccessFile extends AutoCloseable {
 
@@ -16,6 +17,57 @@ public interface PgpRandomAccessFile extends AutoCloseable {
 
 	void readFully(byte[] buf) throws EOFException, IOException;
 
+	/**
+	 * Reads exactly {@code len} bytes from the current position into {@code buf}, starting at {@code off}.
+	 * @param buf the buffer to read into. Must not be <code>null</code>.
+	 * @param off the index in {@code buf} where to write the first byte read.
+	 * @param len the number of bytes to be read.
+	 * @throws EOFException if the end of the file is reached before {@code len} bytes were read.
+	 * @throws IOException if reading failed.
+	 */
+	void readFully(byte[] buf, int off, int len) throws EOFException, IOException;
+
 	void write(byte[] buf) throws IOException;
 
+	/**
+	 * Sets the length of the file. If the file is currently longer, it is truncated; if it is shorter, it is extended
+	 * (the content of the extension is undefined).
+	 * @param newLength the new length in bytes.
+	 * @throws IOException if changing the length failed.
+	 */
+	void setLength(long newLength) throws IOException;
+
+	/**
+	 * Writes {@code len} bytes from {@code buf}, starting at {@code off}, to the current position.
+	 * @param buf the data to be written. Must not be <code>null</code>.
+	 * @param off the index of the first byte in {@code buf} to be written.
+	 * @param len the number of bytes to be written.
+	 * @throws IOException if writing failed.
+	 */
+	void write(byte[] buf, int off, int len) throws IOException;
+
+	/**
+	 * Reads bytes starting at the given position into {@code dst} - until {@code dst} is full or the end of the file
+	 * is reached. The current position (see {@link #seek(long)}) is neither used nor changed.
+	 * <p>
+	 * Multiple threads may invoke this method concurrently. It must not overlap with any modifying operation, though.
+	 * @param pos the position in the file of the first byte to be read. Must not be negative.
+	 * @param dst the buffer to read into - from its position up to its limit. Must not be <code>null</code>. Its
+	 * position is advanced by the number of bytes read.
+	 * @return the number of bytes read. This is less than {@code dst.remaining()}, if (and only if) the end of the
+	 * file was reached.
+	 * @throws IOException if reading failed.
+	 */
+	int read(long pos, ByteBuffer dst) throws IOException;
+
+	/**
+	 * Writes all remaining bytes of {@code src} to the file starting at the given position - enlarging the file,
+	 * if needed. The current position (see {@link #seek(long)}) is neither used nor changed.
+	 * @param pos the position in the file where to write the first byte. Must not be negative.
+	 * @param src the data to be written - from its position up to its limit. Must not be <code>null</code>. Its
+	 * position is advanced to its limit.
+	 * @throws IOException if writing failed.
+	 */
+	void write(long pos, ByteBuffer src) throws IOException;
+
 }
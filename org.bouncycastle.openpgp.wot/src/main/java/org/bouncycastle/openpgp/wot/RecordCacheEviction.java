@@ -0,0 +1,21 @@
+package org.bouncycastle.openpgp.wot;
+
+/**
+ * Specifies which record is evicted from the record cache, when it is full and another record is to be cached.
+ *
+ * @see TrustDbOptions#setRecordCacheEviction(RecordCacheEviction)
+ */
+public enum RecordCacheEviction
+{
+    /**
+     * Scan-resistant policy based on the 2Q algorithm: A record must be read at least twice to be protected from
+     * eviction. Thus, a sequential pass over the whole {@code trustdb.gpg} (e.g. by {@link TrustDb#updateTrustDb()})
+     * cannot flush the records needed by every lookup out of the cache. This is the default.
+     */
+    TWO_QUEUE,
+
+    /**
+     * CLOCK (second chance) policy approximating LRU. It is slightly cheaper on every hit, but not scan-resistant.
+     */
+    CLOCK
+}
@@ -8,7 +8,15 @@ public interface TrustConst
     int ITEMS_PER_HLST_RECORD = (TRUST_RECORD_LEN - 6) / 5;
     int ITEMS_PER_PREF_RECORD = TRUST_RECORD_LEN - 10;
     int MAX_LIST_SIGS_DEPTH = 20;
+    /**
+     * Maximum number of records in the record cache.
+     * @deprecated The record cache is bounded by bytes rather than by records now - see {@link #CACHE_SIZE_BYTES}.
+     *             This constant is not used anymore.
+     */
+    @Deprecated
     int MAX_CACHE_SIZE = 1024 * 1024;
+    /** Memory budget of the record cache in bytes. */
+    int CACHE_SIZE_BYTES = 64 * 1024 * 1024;
 
     int TRUST_MASK = 15;
     /** o: not yet calculated/assigned */
@@ -2,6 +2,9 @@ package org.bouncycastle.openpgp.wot;
 
 import static java.util.Objects.*;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.wot.internal.TrustDbImpl;
 import org.bouncycastle.openpgp.wot.key.PgpKey;
@@ -21,6 +24,9 @@ import org.bouncycastle.openpgp.wot.key.PgpUserIdNameHash;
  * <li>Set a key's {@linkplain #setOwnerTrust(PGPPublicKey, int) owner-trust} attribute.
  * <li>{@linkplain #updateTrustDb() Recalculate the web-of-trust}.
  * </ul>
+ * <p>
+ * Every modifying method writes its changes to disk immediately (including a sync). When applying many modifications
+ * at once, they should be grouped in a {@linkplain #beginBatch() batch}.
  */
 public interface TrustDb extends AutoCloseable
 {
@@ -43,15 +49,83 @@ public interface TrustDb extends AutoCloseable
          * @return a new instance of a {@code TrustDb}. Never <code>null</code>.
          */
         public static TrustDb createInstance(final PgpFile file, final PgpKeyRegistry pgpKeyRegistry) {
+            return createInstance(file, pgpKeyRegistry, new TrustDbOptions());
+        }
+
+        /**
+         * Creates a new instance of a {@code TrustDb} implementation using the given options.
+         * <p>
+         * <b>Important:</b> You must {@linkplain TrustDb#close() close} this instance!
+         * @param file
+         *            the trust-database-file ({@code trustdb.gpg}). Must not be <code>null</code>.
+         * @param pgpKeyRegistry
+         *            the key-registry. Must not be <code>null</code>.
+         * @param options
+         *            the options controlling caching and durability. Must not be <code>null</code>.
+         * @return a new instance of a {@code TrustDb}. Never <code>null</code>.
+         * @see #createInstance(PgpFile, PgpKeyRegistry)
+         */
+        public static TrustDb createInstance(final PgpFile file, final PgpKeyRegistry pgpKeyRegistry,
+                final TrustDbOptions options) {
             requireNonNull(file, "file");
             requireNonNull(pgpKeyRegistry, "pgpKeyRegistry");
-            return new TrustDbImpl(file, pgpKeyRegistry);
+            requireNonNull(options, "options");
+            return new TrustDbImpl(file, pgpKeyRegistry, options);
         }
     }
 
+    /**
+     * A batch of modifications, which are written to disk only once - when the batch is {@linkplain #close() closed}.
+     * <p>
+     * Use it with a try-with-resources-block:
+     * <pre>
+     * try (TrustDb.Batch batch = trustDb.beginBatch()) {
+     *     for (PgpKey pgpKey : pgpKeys)
+     *         trustDb.setOwnerTrust(pgpKey, OwnerTrust.FULL);
+     * }
+     * </pre>
+     * <p>
+     * Batches may be nested. Only closing the outermost batch writes the modifications. A batch applies to the
+     * {@code TrustDb} instance (not to the thread) which created it.
+     * <p>
+     * There is no rollback: Modifications made inside a batch are visible immediately and are always written when
+     * the batch is closed - even if an exception occurred.
+     */
+    public static interface Batch extends AutoCloseable
+    {
+        /**
+         * Ends this batch. If it is the outermost batch, all modifications are written to disk (and synced).
+         * <p>
+         * Invoking this method more than once has no effect.
+         */
+        @Override
+        void close();
+    }
+
     @Override
     void close();
 
+    /**
+     * Begins a new {@linkplain Batch batch} of modifications.
+     * <p>
+     * This is the same as {@link #beginBatch(boolean) beginBatch(false)}.
+     *
+     * @return the new batch. Never <code>null</code>. Must be {@linkplain Batch#close() closed}!
+     */
+    Batch beginBatch();
+
+    /**
+     * Begins a new {@linkplain Batch batch} of modifications.
+     *
+     * @param deferMarkTrustDbStale
+     *            whether marking the trust-database {@linkplain #markTrustDbStale() stale} (as done by
+     *            {@link #setOwnerTrust(PgpKey, OwnerTrust) setOwnerTrust(...)}) should be postponed until the
+     *            outermost batch is closed. If <code>true</code>, {@link #isTrustDbStale()} might return
+     *            <code>false</code> while the batch is open, even though the owner-trust was modified.
+     * @return the new batch. Never <code>null</code>. Must be {@linkplain Batch#close() closed}!
+     */
+    Batch beginBatch(boolean deferMarkTrustDbStale);
+
     /**
      * Gets the assigned owner-trust value for the given public key.
      * <p>
@@ -229,6 +303,53 @@ public interface TrustDb extends AutoCloseable
      */
     Validity getValidity(PGPPublicKey publicKey, PgpUserIdNameHash pgpUserIdNameHash);
 
+    /**
+     * Gets the validities of the given keys.
+     * <p>
+     * The result is the same as invoking {@link #getValidity(PgpKey)} for each key, but much faster for many keys: The
+     * lock is acquired only once, and the trust-database's records are read in the order of their location in the
+     * file.
+     *
+     * @param pgpKeys
+     *            the keys whose validities to look up. Must not be <code>null</code>.
+     * @return the validities of the given keys. Never <code>null</code>. Contains an entry for every key.
+     * @see #getPgpUserIdValidities(Collection)
+     */
+    Map<PgpKey, Validity> getPgpKeyValidities(Collection<PgpKey> pgpKeys);
+
+    /**
+     * Gets the validities of the given user-identities (or -attributes).
+     * <p>
+     * The result is the same as invoking {@link #getValidity(PgpUserId)} for each user-identity, but much faster for
+     * many user-identities: The lock is acquired only once, and the trust-database's records are read in the order
+     * of their location in the file.
+     *
+     * @param pgpUserIds
+     *            the user-identities (or -attributes) whose validities to look up. Must not be <code>null</code>.
+     * @return the validities of the given user-identities. Never <code>null</code>. Contains an entry for every
+     *         user-identity.
+     * @see #getPgpKeyValidities(Collection)
+     */
+    Map<PgpUserId, Validity> getPgpUserIdValidities(Collection<PgpUserId> pgpUserIds);
+
+    /**
+     * Gets an immutable snapshot of all owner-trusts and validities.
+     * <p>
+     * The snapshot can be queried without any locking and I/O - in particular while {@link #updateTrustDb()} is
+     * running in another thread, which blocks all other methods of this {@code TrustDb}.
+     * <p>
+     * The first invocation reads the entire {@code trustdb.gpg} (unless {@link #updateTrustDb()} already did so).
+     * Afterwards, a new snapshot is taken and published by every modification when it completes - e.g. by
+     * {@link #updateTrustDb()} or {@link #setOwnerTrust(PGPPublicKey, OwnerTrust)}, or at the end of a
+     * {@linkplain #beginBatch() batch}. Hence, this method never waits for a lock or reads anything after the first
+     * snapshot was taken: While a modification is in progress, the previous snapshot is returned.
+     * <p>
+     * Modifications made by another {@code TrustDb} instance or by GnuPG are not noticed.
+     *
+     * @return the most recent snapshot. Never <code>null</code>.
+     */
+    TrustDbSnapshot getSnapshot();
+
     /**
      * Marks all those keys that we have a secret key for as ultimately trusted. If we have a secret/private key, we
      * assume it to be *our* key and we always trust ourselves.
@@ -328,4 +449,39 @@ public interface TrustDb extends AutoCloseable
      */
     void updateTrustDb();
 
+    /**
+     * Calculates the validity of the given key - without updating the {@code trustdb.gpg}.
+     * <p>
+     * In contrast to {@link #getValidity(PgpKey)}, this method does not look the validity up, but calculates it from
+     * the current key ring(s) and owner-trusts - just like {@link #updateTrustDb()} would. However, only the keys
+     * which can influence the given key's validity are taken into account: Starting at the given key, the certifying
+     * keys are searched backwards - at most {@link Config#getMaxCertDepth()} levels deep and not beyond the
+     * ultimately trusted keys. Thus, this is much faster than {@code updateTrustDb()} for a single key in a large key
+     * ring - in particular, if the trust-database is {@linkplain #isTrustDbStale() stale}.
+     * <p>
+     * The result equals the validity {@link #getValidity(PgpKey)} would return after {@link #updateTrustDb()}.
+     *
+     * @param pgpKey
+     *            the key whose validity to calculate. Must not be <code>null</code>.
+     * @return the validity of the given key. Never <code>null</code>. {@link Validity#NONE NONE}, if the key is not
+     *         contained in the key-registry.
+     * @see #updateTrustDb()
+     * @see #getValidity(PgpKey)
+     */
+    Validity computeValidity(PgpKey pgpKey);
+
+    /**
+     * Removes the entries of all keys not contained in the key ring(s) anymore from the {@code trustdb.gpg} and
+     * rewrites it, so that it becomes smaller and the entries of each key are located next to each other.
+     * <p>
+     * The owner-trust of a removed key is lost - if the key is imported again, its owner-trust must be set again.
+     * <p>
+     * <b>Important:</b> This operation rewrites the entire {@code trustdb.gpg} and is not atomic. It should only be
+     * invoked, while no other process (e.g. GnuPG) accesses the {@code trustdb.gpg} - and preferably after backing it
+     * up.
+     *
+     * @return the number of keys removed from the {@code trustdb.gpg}.
+     */
+    int compact();
+
 }
\ No newline at end of file
@@ -0,0 +1,302 @@
+package org.bouncycastle.openpgp.wot;
+
+import static java.util.Objects.*;
+
+/**
+ * Options controlling how a {@link TrustDb} accesses its {@code trustdb.gpg}.
+ * <p>
+ * In contrast to {@link Config}, these options do not affect the trust calculation - only performance and
+ * durability.
+ * <p>
+ * An instance is passed to
+ * {@link TrustDb.Helper#createInstance(PgpFile, org.bouncycastle.openpgp.wot.key.PgpKeyRegistry, TrustDbOptions)}. It
+ * is read only when the {@code TrustDb} is created; modifying it afterwards has no effect on this {@code TrustDb}.
+ */
+public class TrustDbOptions implements TrustConst
+{
+    /**
+     * Default value for {@link #getGroupCommitIntervalMillis() groupCommitIntervalMillis}.
+     */
+    public static final long DEFAULT_GROUP_COMMIT_INTERVAL_MILLIS = 50;
+
+    /**
+     * Default value for {@link #getValidityCacheSize() validityCacheSize}.
+     */
+    public static final int DEFAULT_VALIDITY_CACHE_SIZE = 10000;
+
+    private Durability durability = Durability.SYNC;
+    private long groupCommitIntervalMillis = DEFAULT_GROUP_COMMIT_INTERVAL_MILLIS;
+    private long cacheSizeBytes = CACHE_SIZE_BYTES;
+    private RecordCacheEviction recordCacheEviction = RecordCacheEviction.TWO_QUEUE;
+    private PgpFile journalFile;
+    private boolean fingerprintIndexEnabled;
+    private boolean bloomFilterEnabled;
+    private PgpFile bloomFilterFile;
+    private int maxHashListChainLength;
+    private int validityCacheSize = DEFAULT_VALIDITY_CACHE_SIZE;
+    private boolean incrementalUpdateEnabled;
+    private int validationParallelism = 1;
+
+    /**
+     * Gets the durability level.
+     *
+     * @return the durability level. Never <code>null</code>. Default: {@link Durability#SYNC}.
+     */
+    public Durability getDurability()
+    {
+        return durability;
+    }
+
+    public void setDurability(final Durability durability)
+    {
+        this.durability = requireNonNull(durability, "durability");
+    }
+
+    /**
+     * Gets the maximum time between a flush and forcing its data to the storage device, if the
+     * {@linkplain #getDurability() durability} is {@link Durability#GROUP_COMMIT GROUP_COMMIT}. Ignored otherwise.
+     *
+     * @return the group-commit-interval in milliseconds. Default: {@value #DEFAULT_GROUP_COMMIT_INTERVAL_MILLIS}.
+     */
+    public long getGroupCommitIntervalMillis()
+    {
+        return groupCommitIntervalMillis;
+    }
+
+    public void setGroupCommitIntervalMillis(final long groupCommitIntervalMillis)
+    {
+        if (groupCommitIntervalMillis < 1)
+            throw new IllegalArgumentException("groupCommitIntervalMillis < 1");
+
+        this.groupCommitIntervalMillis = groupCommitIntervalMillis;
+    }
+
+    /**
+     * Gets the memory budget of the record cache.
+     *
+     * @return the maximum size of the record cache in bytes. 0 disables the cache. Default:
+     *         {@link TrustConst#CACHE_SIZE_BYTES CACHE_SIZE_BYTES}.
+     */
+    public long getCacheSizeBytes()
+    {
+        return cacheSizeBytes;
+    }
+
+    public void setCacheSizeBytes(final long cacheSizeBytes)
+    {
+        if (cacheSizeBytes < 0)
+            throw new IllegalArgumentException("cacheSizeBytes < 0");
+
+        this.cacheSizeBytes = cacheSizeBytes;
+    }
+
+    /**
+     * Gets the eviction policy of the record cache.
+     *
+     * @return the eviction policy. Never <code>null</code>. Default: {@link RecordCacheEviction#TWO_QUEUE}.
+     */
+    public RecordCacheEviction getRecordCacheEviction()
+    {
+        return recordCacheEviction;
+    }
+
+    public void setRecordCacheEviction(final RecordCacheEviction recordCacheEviction)
+    {
+        this.recordCacheEviction = requireNonNull(recordCacheEviction, "recordCacheEviction");
+    }
+
+    /**
+     * Gets the redo-journal for crash-safe updates.
+     * <p>
+     * If a journal is configured, every flush first appends all modified records to the journal as one single batch and
+     * syncs the journal (according to the {@linkplain #getDurability() durability}). Only then the records are written
+     * to the {@code trustdb.gpg} - which is synced rarely (when the journal grows too large and on close). If the
+     * process crashes while the {@code trustdb.gpg} is being modified, the journal is replayed when the
+     * {@code trustdb.gpg} is opened the next time. Thus, the {@code trustdb.gpg} never stays half-updated.
+     * <p>
+     * With {@link Durability#OS_BUFFERED OS_BUFFERED}, the journal is never synced and thus protects only against a
+     * crash of the process - not against a crash of the OS or a power failure.
+     * <p>
+     * The journal must always be used together with the same {@code trustdb.gpg}; usually it is located next to it
+     * (e.g. {@code trustdb.gpg.journal}). It is created, if it does not exist. It is empty after the {@code TrustDb}
+     * was closed properly.
+     *
+     * @return the journal-file or <code>null</code>, if no journal is used. Default: <code>null</code>.
+     */
+    public PgpFile getJournalFile()
+    {
+        return journalFile;
+    }
+
+    public void setJournalFile(final PgpFile journalFile)
+    {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Determines whether a resident index mapping each key's fingerprint to its trust record is used.
+     * <p>
+     * Without this index, every lookup of a key's owner-trust or validity walks the hash table inside the
+     * {@code trustdb.gpg}, which needs multiple record reads. With the index, it needs one memory probe and one record
+     * read. The index is built by reading the entire {@code trustdb.gpg}, when it is opened, and needs about
+     * 60 bytes of memory per key.
+     *
+     * @return <code>true</code>, if the fingerprint-index is used. Default: <code>false</code>.
+     */
+    public boolean isFingerprintIndexEnabled()
+    {
+        return fingerprintIndexEnabled;
+    }
+
+    public void setFingerprintIndexEnabled(final boolean fingerprintIndexEnabled)
+    {
+        this.fingerprintIndexEnabled = fingerprintIndexEnabled;
+    }
+
+    /**
+     * Determines whether a Bloom filter over the fingerprints of all keys in the {@code trustdb.gpg} is used.
+     * <p>
+     * Looking up a key which is not contained in the {@code trustdb.gpg} (e.g. a freshly imported one) walks the hash
+     * table and the entire hash list the key belongs to. The Bloom filter answers most of these lookups without reading
+     * any record. It needs about 1.25 bytes of memory per record in the {@code trustdb.gpg}. It is built by reading the
+     * entire {@code trustdb.gpg}, when it is opened - unless it can be loaded from the
+     * {@linkplain #getBloomFilterFile() bloom-filter-file}.
+     *
+     * @return <code>true</code>, if the Bloom filter is used. Default: <code>false</code>.
+     */
+    public boolean isBloomFilterEnabled()
+    {
+        return bloomFilterEnabled;
+    }
+
+    public void setBloomFilterEnabled(final boolean bloomFilterEnabled)
+    {
+        this.bloomFilterEnabled = bloomFilterEnabled;
+    }
+
+    /**
+     * Gets the file persisting the {@linkplain #isBloomFilterEnabled() Bloom filter} between sessions. Ignored, if the
+     * Bloom filter is not enabled.
+     * <p>
+     * The filter is written to this file when the {@code TrustDb} is closed, and read from it when the
+     * {@code TrustDb} is opened the next time. It is discarded (and rebuilt), if the {@code trustdb.gpg} was modified
+     * in the meantime (e.g. by GnuPG) or if the {@code TrustDb} was not closed properly. Usually, it is located next to
+     * the {@code trustdb.gpg} (e.g. {@code trustdb.gpg.bloom}).
+     *
+     * @return the bloom-filter-file or <code>null</code>, if the filter is not persisted. Default: <code>null</code>.
+     */
+    public PgpFile getBloomFilterFile()
+    {
+        return bloomFilterFile;
+    }
+
+    public void setBloomFilterFile(final PgpFile bloomFilterFile)
+    {
+        this.bloomFilterFile = bloomFilterFile;
+    }
+
+    /**
+     * Gets the maximum number of records a hash list inside the {@code trustdb.gpg}'s hash table may consist of.
+     * <p>
+     * Keys whose fingerprints collide in the hash table are chained in hash lists, which every lookup scans linearly.
+     * GnuPG keeps extending these lists. If this option is set, a hash list growing longer is replaced by a nested hash
+     * table, which distributes the list's keys using the next byte of their fingerprints. GnuPG reads such nested hash
+     * tables fine.
+     * <p>
+     * This only affects keys being inserted. In order to rebalance an existing {@code trustdb.gpg}, use the
+     * {@code rehash} command of {@link org.bouncycastle.openpgp.wot.internal.TrustDbTool TrustDbTool}.
+     *
+     * @return the maximum chain length (in records of {@value #ITEMS_PER_HLST_RECORD} keys each) or 0, if hash lists
+     *         are never split. Default: 0.
+     */
+    public int getMaxHashListChainLength()
+    {
+        return maxHashListChainLength;
+    }
+
+    public void setMaxHashListChainLength(final int maxHashListChainLength)
+    {
+        if (maxHashListChainLength < 0)
+            throw new IllegalArgumentException("maxHashListChainLength < 0");
+
+        this.maxHashListChainLength = maxHashListChainLength;
+    }
+
+    /**
+     * Gets the maximum number of validities kept in memory.
+     * <p>
+     * Every validity looked up (for a key or a user-identity) is remembered until the trust-database is modified
+     * through the same {@code TrustDb} - e.g. by {@link TrustDb#updateTrustDb() updateTrustDb()} or
+     * {@link TrustDb#setOwnerTrust(org.bouncycastle.openpgp.PGPPublicKey, OwnerTrust) setOwnerTrust(...)}. Looking up
+     * the same key again then needs one memory probe instead of multiple record reads. When the cache is full, it is
+     * emptied entirely.
+     * <p>
+     * Modifications made by another {@code TrustDb} instance or by GnuPG are not noticed, just like with the
+     * {@linkplain #getCacheSizeBytes() record cache}.
+     *
+     * @return the maximum number of cached validities or 0, if validities are not cached. Default:
+     *         {@value #DEFAULT_VALIDITY_CACHE_SIZE}.
+     */
+    public int getValidityCacheSize()
+    {
+        return validityCacheSize;
+    }
+
+    public void setValidityCacheSize(final int validityCacheSize)
+    {
+        if (validityCacheSize < 0)
+            throw new IllegalArgumentException("validityCacheSize < 0");
+
+        this.validityCacheSize = validityCacheSize;
+    }
+
+    /**
+     * Determines whether {@link TrustDb#updateTrustDb() updateTrustDb()} re-validates only the keys affected by the
+     * changes made since the previous update.
+     * <p>
+     * If enabled, every full update records in memory at which depths each key was validated, and which validity it
+     * obtained there (about 100 bytes per key). The next update then detects the keys modified in the key-registry
+     * (added, removed, certified, revoked...) and the keys whose owner-trust was changed via
+     * {@link TrustDb#setOwnerTrust(org.bouncycastle.openpgp.PGPPublicKey, OwnerTrust) setOwnerTrust(...)}, and
+     * re-validates only the keys downstream of them in the certification graph. The result is the same as the one of a
+     * full update.
+     * <p>
+     * A full update is done nevertheless, if there was no previous update in this {@code TrustDb}, if the
+     * {@link Config} or the ultimately trusted keys changed, if a key validated before expired, or if more than half of
+     * all keys are affected.
+     *
+     * @return <code>true</code>, if updates are incremental whenever possible. Default: <code>false</code>.
+     */
+    public boolean isIncrementalUpdateEnabled()
+    {
+        return incrementalUpdateEnabled;
+    }
+
+    public void setIncrementalUpdateEnabled(final boolean incrementalUpdateEnabled)
+    {
+        this.incrementalUpdateEnabled = incrementalUpdateEnabled;
+    }
+
+    /**
+     * Gets the number of threads validating keys during {@link TrustDb#updateTrustDb() updateTrustDb()}.
+     * <p>
+     * The keys are validated layer by layer - starting at the ultimately trusted keys and following the certifications.
+     * The keys of one layer are independent of each other and can thus be validated concurrently. The threads are
+     * owned by the {@code TrustDb} and stopped when it is closed. Small layers are always validated by the thread
+     * invoking {@code updateTrustDb()}.
+     *
+     * @return the number of threads or 1, if keys are validated sequentially. Default: 1.
+     */
+    public int getValidationParallelism()
+    {
+        return validationParallelism;
+    }
+
+    public void setValidationParallelism(final int validationParallelism)
+    {
+        if (validationParallelism < 1)
+            throw new IllegalArgumentException("validationParallelism < 1");
+
+        this.validationParallelism = validationParallelism;
+    }
+}
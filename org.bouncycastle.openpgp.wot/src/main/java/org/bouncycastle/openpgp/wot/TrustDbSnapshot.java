@@ -0,0 +1,108 @@
+package org.bouncycastle.openpgp.wot;
+
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.wot.key.PgpKey;
+import org.bouncycastle.openpgp.wot.key.PgpUserId;
+import org.bouncycastle.openpgp.wot.key.PgpUserIdNameHash;
+
+/**
+ * Read-only view of a {@link TrustDb}'s owner-trusts and validities at a certain point in time.
+ * <p>
+ * An instance is obtained via {@link TrustDb#getSnapshot()}. It is immutable and holds all its data in memory: Its
+ * methods neither acquire any lock nor read the {@code trustdb.gpg}. Hence, it can be queried by any number of
+ * threads - even while the {@code TrustDb} is being {@linkplain TrustDb#updateTrustDb() updated}.
+ * <p>
+ * The methods behave like the ones with the same signature in {@link TrustDb}, except that modifications of the
+ * {@code TrustDb} made after this snapshot was taken are not visible.
+ */
+public interface TrustDbSnapshot
+{
+    /**
+     * Gets the number of keys known to the trust-database at the time this snapshot was taken.
+     *
+     * @return the number of keys.
+     */
+    int getKeyCount();
+
+    /**
+     * Gets the owner-trust of the given key.
+     *
+     * @param pgpKey
+     *            the key. Must not be <code>null</code>. If it is a sub-key, its master-key's owner-trust is returned.
+     * @return the owner-trust or <code>null</code>, if the key is not contained in the trust-database.
+     * @see TrustDb#getOwnerTrust(PgpKey)
+     */
+    OwnerTrust getOwnerTrust(PgpKey pgpKey);
+
+    /**
+     * Gets the owner-trust of the given key.
+     *
+     * @param publicKey
+     *            the key. Must not be <code>null</code>.
+     * @return the owner-trust or <code>null</code>, if the key is not contained in the trust-database.
+     * @see TrustDb#getOwnerTrust(PGPPublicKey)
+     */
+    OwnerTrust getOwnerTrust(PGPPublicKey publicKey);
+
+    /**
+     * Determines whether the given key is disabled.
+     *
+     * @param pgpKey
+     *            the key. Must not be <code>null</code>. If it is a sub-key, its master-key is checked.
+     * @return <code>true</code>, if the key is disabled; <code>false</code> otherwise.
+     * @see TrustDb#isDisabled(PgpKey)
+     */
+    boolean isDisabled(PgpKey pgpKey);
+
+    /**
+     * Determines whether the given key is disabled.
+     *
+     * @param publicKey
+     *            the key. Must not be <code>null</code>.
+     * @return <code>true</code>, if the key is disabled; <code>false</code> otherwise.
+     * @see TrustDb#isDisabled(PGPPublicKey)
+     */
+    boolean isDisabled(PGPPublicKey publicKey);
+
+    /**
+     * Gets the validity of the given key.
+     *
+     * @param pgpKey
+     *            the key. Must not be <code>null</code>.
+     * @return the validity. Never <code>null</code>.
+     * @see TrustDb#getValidity(PgpKey)
+     */
+    Validity getValidity(PgpKey pgpKey);
+
+    /**
+     * Gets the validity of the given user-identity (or -attribute).
+     *
+     * @param pgpUserId
+     *            the user-identity (or -attribute). Must not be <code>null</code>.
+     * @return the validity. Never <code>null</code>.
+     * @see TrustDb#getValidity(PgpUserId)
+     */
+    Validity getValidity(PgpUserId pgpUserId);
+
+    /**
+     * Gets the validity of the given key.
+     *
+     * @param publicKey
+     *            the key. Must not be <code>null</code>.
+     * @return the validity. Never <code>null</code>.
+     * @see TrustDb#getValidity(PGPPublicKey)
+     */
+    Validity getValidity(PGPPublicKey publicKey);
+
+    /**
+     * Gets the validity of the given user-identity (or -attribute).
+     *
+     * @param publicKey
+     *            the key. Must not be <code>null</code>.
+     * @param pgpUserIdNameHash
+     *            the name-hash of the user-identity (or -attribute). Must not be <code>null</code>.
+     * @return the validity. Never <code>null</code>.
+     * @see TrustDb#getValidity(PGPPublicKey, PgpUserIdNameHash)
+     */
+    Validity getValidity(PGPPublicKey publicKey, PgpUserIdNameHash pgpUserIdNameHash);
+}
@@ -0,0 +1,64 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import java.util.Arrays;
+
+/**
+ * CLOCK (second chance) eviction policy: Every hit marks its slot as referenced; the clock hand evicts the first slot
+ * which was not referenced since the hand passed it the last time. This approximates LRU without any re-ordering on a
+ * hit, but is not scan-resistant.
+ */
+class ClockRecordCachePolicy implements RecordCachePolicy
+{
+    private boolean[] referenced = new boolean[0];
+    private int clockHand;
+
+    @Override
+    public void resize(final int slotCount)
+    {
+        referenced = Arrays.copyOf(referenced, slotCount);
+        if (clockHand >= slotCount)
+            clockHand = 0;
+    }
+
+    @Override
+    public void onInsert(final int slot)
+    {
+        referenced[slot] = true;
+    }
+
+    @Override
+    public void onHit(final int slot)
+    {
+        referenced[slot] = true;
+    }
+
+    @Override
+    public void onRemove(final int slot)
+    {
+        referenced[slot] = false;
+    }
+
+    @Override
+    public int selectVictim(final RecordCache cache)
+    {
+        final int slotCount = referenced.length;
+        // Every slot is visited at most twice: the first visit clears the referenced-flag.
+        for (int i = 0; i < 2 * slotCount + 1; ++i)
+        {
+            final int slot = clockHand;
+            if (++clockHand == slotCount)
+                clockHand = 0;
+
+            if (!cache.isEvictable(slot))
+                continue;
+
+            if (referenced[slot])
+            {
+                referenced[slot] = false;
+                continue;
+            }
+            return slot;
+        }
+        return -1;
+    }
+}
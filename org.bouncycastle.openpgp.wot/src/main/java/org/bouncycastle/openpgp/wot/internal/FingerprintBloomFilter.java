@@ -0,0 +1,199 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static java.util.Objects.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Bloom filter over the fingerprints of all {@link TrustRecord.Trust} records.
+ * <p>
+ * If {@link #mightContain(byte[])} returns <code>false</code>, there is definitely no trust record with this
+ * fingerprint, and the hash table does not need to be walked. A <code>true</code> may be a false positive (about 1%,
+ * as long as no more than {@link #getCapacity() capacity} fingerprints were put).
+ * <p>
+ * Fingerprints are SHA-1 hashes and thus evenly distributed. Therefore, the bit positions are derived from the
+ * fingerprint's bytes directly (double hashing).
+ * <p>
+ * <b>Important:</b> This class is not thread-safe! Concurrent invocations of {@link #mightContain(byte[])} are fine,
+ * though.
+ */
+class FingerprintBloomFilter
+{
+    private static final int MAGIC = 0x57544246; // "WTBF"
+    private static final int VERSION = 1;
+
+    private static final int BITS_PER_FINGERPRINT = 10;
+    private static final int HASH_COUNT = 7;
+    private static final int MIN_CAPACITY = 1024;
+
+    /** Number of leading fingerprint bytes needed to derive the bit positions. */
+    private static final int MIN_FINGERPRINT_LEN = 12;
+
+    private final int capacity;
+    private final long[] words;
+    private final int mask;
+    private int size;
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param capacity
+     *            the number of fingerprints the filter is dimensioned for.
+     */
+    public FingerprintBloomFilter(final int capacity)
+    {
+        this.capacity = Math.max(MIN_CAPACITY, capacity);
+        final long minBitCount = (long) this.capacity * BITS_PER_FINGERPRINT;
+        int bitCount = 64;
+        while (bitCount < minBitCount && bitCount < (1 << 30))
+            bitCount <<= 1;
+
+        this.words = new long[bitCount / 64];
+        this.mask = bitCount - 1;
+    }
+
+    private FingerprintBloomFilter(final int capacity, final long[] words, final int size)
+    {
+        this.capacity = capacity;
+        this.words = words;
+        this.mask = words.length * 64 - 1;
+        this.size = size;
+    }
+
+    /**
+     * Gets the number of fingerprints the filter is dimensioned for. If it contains more, its false positive rate
+     * rises quickly and it should be rebuilt larger.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of (distinct) fingerprints put into this filter.
+     *
+     * @return the number of fingerprints.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Determines whether the given fingerprint might have been put into this filter.
+     *
+     * @param fingerprint
+     *            the fingerprint. Must not be <code>null</code>.
+     * @return <code>false</code>, if the fingerprint was definitely never put; <code>true</code>, if it probably was.
+     */
+    public boolean mightContain(final byte[] fingerprint)
+    {
+        requireNonNull(fingerprint, "fingerprint");
+        if (fingerprint.length < MIN_FINGERPRINT_LEN)
+            return true;
+
+        final int h1 = getInt(fingerprint, 4);
+        final int h2 = getInt(fingerprint, 8) | 1;
+        for (int i = 0; i < HASH_COUNT; ++i)
+        {
+            final int bit = (h1 + i * h2) & mask;
+            if ((words[bit >>> 6] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Puts the given fingerprint into this filter.
+     *
+     * @param fingerprint
+     *            the fingerprint. Must not be <code>null</code>.
+     * @return <code>true</code>, if the filter changed, i.e. the fingerprint definitely was not contained before.
+     */
+    public boolean put(final byte[] fingerprint)
+    {
+        requireNonNull(fingerprint, "fingerprint");
+        if (fingerprint.length < MIN_FINGERPRINT_LEN)
+            return false;
+
+        final int h1 = getInt(fingerprint, 4);
+        final int h2 = getInt(fingerprint, 8) | 1;
+        boolean changed = false;
+        for (int i = 0; i < HASH_COUNT; ++i)
+        {
+            final int bit = (h1 + i * h2) & mask;
+            final long word = words[bit >>> 6];
+            final long newWord = word | (1L << bit);
+            if (newWord != word)
+            {
+                words[bit >>> 6] = newWord;
+                changed = true;
+            }
+        }
+        if (changed)
+            ++size;
+
+        return changed;
+    }
+
+    /**
+     * Writes this filter in a format understood by {@link #readFrom(DataInput)}.
+     *
+     * @param out
+     *            the destination. Must not be <code>null</code>.
+     * @throws IOException
+     *             if writing failed.
+     */
+    public void writeTo(final DataOutput out) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(capacity);
+        out.writeInt(size);
+        out.writeInt(words.length);
+        for (final long word : words)
+            out.writeLong(word);
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in
+     *            the source. Must not be <code>null</code>.
+     * @return the filter read. Never <code>null</code>.
+     * @throws IOException
+     *             if reading failed or the data is malformed.
+     */
+    public static FingerprintBloomFilter readFrom(final DataInput in) throws IOException
+    {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a fingerprint bloom filter: magic mismatch!");
+
+        final int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported version: " + version);
+
+        final int capacity = in.readInt();
+        final int size = in.readInt();
+        final int wordCount = in.readInt();
+        if (capacity < MIN_CAPACITY || size < 0 || wordCount < 1 || Integer.bitCount(wordCount) != 1
+                || wordCount > (1 << 24))
+            throw new IOException("Malformed fingerprint bloom filter!");
+
+        final long[] words = new long[wordCount];
+        for (int i = 0; i < wordCount; ++i)
+            words[i] = in.readLong();
+
+        return new FingerprintBloomFilter(capacity, words, size);
+    }
+
+    private static int getInt(final byte[] bytes, final int offset)
+    {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 | (bytes[offset + 2] & 0xFF) << 8
+                | (bytes[offset + 3] & 0xFF);
+    }
+}
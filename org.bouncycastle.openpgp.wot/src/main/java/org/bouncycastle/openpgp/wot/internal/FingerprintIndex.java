@@ -0,0 +1,153 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static java.util.Objects.*;
+
+/**
+ * Resident index mapping the fingerprint of a {@link TrustRecord.Trust} to its record number.
+ * <p>
+ * This is an open-addressing (linear probing) hash table kept in two primitive arrays: a slab of
+ * {@value #FINGERPRINT_LEN}-byte keys and the record numbers (0 marking an empty slot - the record 0 is always the
+ * version record). The table is grown by doubling, whenever it becomes half full. Neither a lookup nor an insertion
+ * allocates any object (except for growing).
+ * <p>
+ * Fingerprints are SHA-1 hashes and thus evenly distributed. Therefore, their first bytes are used as hash code
+ * directly.
+ * <p>
+ * <b>Important:</b> This class is not thread-safe!
+ */
+class FingerprintIndex
+{
+    static final int FINGERPRINT_LEN = 20;
+
+    private static final int INITIAL_SLOT_COUNT = 1024;
+
+    private byte[] keys;
+    private long[] recordNums;
+    private int mask;
+    private int size;
+
+    public FingerprintIndex()
+    {
+        allocate(INITIAL_SLOT_COUNT);
+    }
+
+    private void allocate(final int slotCount)
+    {
+        final byte[] oldKeys = keys;
+        final long[] oldRecordNums = recordNums;
+
+        keys = new byte[slotCount * FINGERPRINT_LEN];
+        recordNums = new long[slotCount];
+        mask = slotCount - 1;
+
+        if (oldRecordNums != null)
+        {
+            for (int slot = 0; slot < oldRecordNums.length; ++slot)
+            {
+                if (oldRecordNums[slot] != 0)
+                {
+                    final int newSlot = findSlot(oldKeys, slot * FINGERPRINT_LEN);
+                    System.arraycopy(oldKeys, slot * FINGERPRINT_LEN, keys, newSlot * FINGERPRINT_LEN,
+                            FINGERPRINT_LEN);
+                    recordNums[newSlot] = oldRecordNums[slot];
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of fingerprints in this index.
+     *
+     * @return the number of fingerprints.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Gets the number of the trust record having the given fingerprint.
+     *
+     * @param fingerprint
+     *            the fingerprint. Must not be <code>null</code>.
+     * @return the record number or 0, if the fingerprint is not in this index.
+     */
+    public long get(final byte[] fingerprint)
+    {
+        requireNonNull(fingerprint, "fingerprint");
+        if (fingerprint.length != FINGERPRINT_LEN)
+            return 0;
+
+        return recordNums[findSlot(fingerprint, 0)];
+    }
+
+    /**
+     * Associates the given fingerprint with the given record number - replacing the previous association, if there
+     * is one.
+     *
+     * @param fingerprint
+     *            the fingerprint. Must not be <code>null</code>.
+     * @param recordNum
+     *            the number of the trust record. Must be greater than 0.
+     */
+    public void put(final byte[] fingerprint, final long recordNum)
+    {
+        requireNonNull(fingerprint, "fingerprint");
+        if (fingerprint.length != FINGERPRINT_LEN)
+            throw new IllegalArgumentException("fingerprint.length != " + FINGERPRINT_LEN);
+
+        if (recordNum <= 0)
+            throw new IllegalArgumentException("recordNum <= 0");
+
+        final int slot = findSlot(fingerprint, 0);
+        if (recordNums[slot] == 0)
+        {
+            System.arraycopy(fingerprint, 0, keys, slot * FINGERPRINT_LEN, FINGERPRINT_LEN);
+            recordNums[slot] = recordNum;
+            if (++size * 2 > recordNums.length)
+                allocate(recordNums.length * 2);
+        }
+        else
+            recordNums[slot] = recordNum;
+    }
+
+    /**
+     * Removes all fingerprints.
+     */
+    public void clear()
+    {
+        keys = null;
+        recordNums = null;
+        size = 0;
+        allocate(INITIAL_SLOT_COUNT);
+    }
+
+    /**
+     * Finds the slot holding the given key or - if it is not contained - the empty slot where it belongs.
+     */
+    private int findSlot(final byte[] key, final int keyOffset)
+    {
+        int slot = hash(key, keyOffset) & mask;
+        while (recordNums[slot] != 0 && !keyEquals(slot, key, keyOffset))
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    private boolean keyEquals(final int slot, final byte[] key, final int keyOffset)
+    {
+        final int slotOffset = slot * FINGERPRINT_LEN;
+        for (int i = 0; i < FINGERPRINT_LEN; ++i)
+        {
+            if (keys[slotOffset + i] != key[keyOffset + i])
+                return false;
+        }
+        return true;
+    }
+
+    private static int hash(final byte[] key, final int keyOffset)
+    {
+        return (key[keyOffset] & 0xFF) << 24 | (key[keyOffset + 1] & 0xFF) << 16 | (key[keyOffset + 2] & 0xFF) << 8
+                | (key[keyOffset + 3] & 0xFF);
+    }
+}
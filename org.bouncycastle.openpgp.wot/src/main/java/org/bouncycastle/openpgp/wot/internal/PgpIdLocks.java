@@ -0,0 +1,44 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static java.util.Objects.*;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.bouncycastle.openpgp.wot.PgpFile;
+
+/**
+ * Registry of the locks guarding the {@code trustdb.gpg} of a pgp/gnupg directory.
+ * <p>
+ * All instances working on the same directory (identified by its {@linkplain PgpFile#getPgpId() pgp-id}) share the
+ * same lock. The locks are held weakly: A lock is discarded, after its pgp-id was garbage-collected.
+ */
+final class PgpIdLocks
+{
+    private static final Map<String, ReadWriteLock> pgpId2Lock = new WeakHashMap<>();
+
+    private PgpIdLocks()
+    {
+    }
+
+    /**
+     * Gets the lock for the given pgp-id - creating it, if needed.
+     *
+     * @param pgpId
+     *            the {@linkplain PgpFile#getPgpId() pgp-id}. Must not be <code>null</code>.
+     * @return the lock. Never <code>null</code>.
+     */
+    public static synchronized ReadWriteLock getLock(final String pgpId)
+    {
+        requireNonNull(pgpId, "pgpId");
+        ReadWriteLock lock = pgpId2Lock.get(pgpId);
+        if (lock == null)
+        {
+            lock = new ReentrantReadWriteLock();
+            pgpId2Lock.put(pgpId, lock);
+        }
+        return lock;
+    }
+}
@@ -0,0 +1,334 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static java.util.Objects.*;
+
+import java.util.Arrays;
+
+import org.bouncycastle.openpgp.wot.TrustConst;
+
+/**
+ * Cache of binary trust records keyed by their record number.
+ * <p>
+ * The cache is bounded by a byte budget rather than by a number of objects. All entries live in a few primitive
+ * arrays (grown by doubling until the budget is reached): a slab of {@link #TRUST_RECORD_LEN}-byte images, the
+ * record numbers and a flag-byte per slot, plus an open-addressing (linear probing) index mapping a record number to
+ * its slot. Neither a hit nor a miss allocates any object, and no {@code Long} is ever boxed.
+ * <p>
+ * When the cache is full, a victim is chosen by the {@link RecordCachePolicy} passed to the constructor.
+ * <p>
+ * A record which is <i>dirty</i> or <i>pinned</i> is never evicted. {@link TrustDbIo} marks records dirty until they
+ * are written to the file, and pins the hash table.
+ * <p>
+ * Sequential passes over the whole file bypass the cache entirely; see
+ * {@link TrustDbIo#scan(TrustRecordType, TrustRecordVisitor)}.
+ * <p>
+ * This class is thread-safe: Concurrent lookups (holding only the read lock of the {@link TrustDbIo}) populate the
+ * cache, too. All methods synchronize on the instance, therefore {@code TrustDbIo} spreads the records over multiple
+ * instances; see {@link StripedRecordCache}.
+ */
+class RecordCache implements TrustConst
+{
+    /**
+     * Number of bytes needed per entry: the record number, the record's data, the flags and two index-ints (the index
+     * is kept at most half full).
+     */
+    static final int BYTES_PER_ENTRY = 8 + TRUST_RECORD_LEN + 1 + 2 * 4;
+
+    private static final byte FLAG_USED = 1;
+    private static final byte FLAG_DIRTY = 2;
+    private static final byte FLAG_PINNED = 4;
+
+    private static final int INITIAL_SLOT_COUNT = 1024;
+
+    private final int capacity;
+    private final RecordCachePolicy policy;
+    private long[] slotRecordNums;
+    private byte[] slotFlags;
+    private byte[] slab;
+
+    /** Open-addressing index: slot + 1 or 0, if empty. */
+    private int[] index;
+    private int indexMask;
+
+    private int size;
+    private int nextUnusedSlot;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxBytes
+     *            the memory budget in bytes. The number of records this cache can hold is this value divided by
+     *            {@link #BYTES_PER_ENTRY}. If it is 0, the cache never holds anything.
+     * @param policy
+     *            the eviction policy. Must not be <code>null</code> and must not be used by another cache.
+     */
+    public RecordCache(final long maxBytes, final RecordCachePolicy policy)
+    {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("maxBytes < 0");
+
+        this.policy = requireNonNull(policy, "policy");
+
+        this.capacity = (int) Math.min(maxBytes / BYTES_PER_ENTRY, (Integer.MAX_VALUE / TRUST_RECORD_LEN) / 2);
+        allocate(Math.min(capacity, INITIAL_SLOT_COUNT));
+    }
+
+    private void allocate(final int slotCount)
+    {
+        if (slotRecordNums == null)
+        {
+            slotRecordNums = new long[slotCount];
+            slotFlags = new byte[slotCount];
+            slab = new byte[slotCount * TRUST_RECORD_LEN];
+        }
+        else
+        {
+            slotRecordNums = Arrays.copyOf(slotRecordNums, slotCount);
+            slotFlags = Arrays.copyOf(slotFlags, slotCount);
+            slab = Arrays.copyOf(slab, slotCount * TRUST_RECORD_LEN);
+        }
+
+        int indexLength = 2;
+        while (indexLength < slotCount * 2)
+            indexLength <<= 1;
+
+        index = new int[indexLength];
+        indexMask = indexLength - 1;
+        policy.resize(slotCount);
+        for (int slot = 0; slot < nextUnusedSlot; ++slot)
+        {
+            if ((slotFlags[slot] & FLAG_USED) != 0)
+                insertIntoIndex(slotRecordNums[slot], slot);
+        }
+    }
+
+    /**
+     * Gets the maximum number of records this cache can hold.
+     *
+     * @return the maximum number of records.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of records currently held.
+     *
+     * @return the number of records.
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Copies the data of the record identified by {@code recordNum} into {@code dst}, if it is in the cache.
+     *
+     * @param recordNum
+     *            the record's number.
+     * @param dst
+     *            the destination array. Must not be <code>null</code>.
+     * @param dstOffset
+     *            the index in {@code dst} where to write the first byte.
+     * @return <code>true</code>, if the record was found; <code>false</code>, if it is not in the cache.
+     */
+    public synchronized boolean get(final long recordNum, final byte[] dst, final int dstOffset)
+    {
+        final int indexPos = findIndexPos(recordNum);
+        if (indexPos < 0)
+            return false;
+
+        final int slot = index[indexPos] - 1;
+        policy.onHit(slot);
+        System.arraycopy(slab, slot * TRUST_RECORD_LEN, dst, dstOffset, TRUST_RECORD_LEN);
+        return true;
+    }
+
+    /**
+     * Puts the data of the record identified by {@code recordNum} into the cache, possibly evicting another record.
+     *
+     * @param recordNum
+     *            the record's number.
+     * @param src
+     *            the source array. Must not be <code>null</code>.
+     * @param srcOffset
+     *            the index in {@code src} of the record's first byte.
+     * @param dirty
+     *            whether the record was modified and not yet written. It must not be evicted until it is
+     *            {@linkplain #markClean(long) marked clean}. A record already dirty stays dirty, even if this is
+     *            <code>false</code>.
+     * @return <code>true</code>, if the record was put; <code>false</code>, if it could not be put, because no slot
+     *         is evictable (or the capacity is 0).
+     */
+    public synchronized boolean put(final long recordNum, final byte[] src, final int srcOffset, final boolean dirty)
+    {
+        final int indexPos = findIndexPos(recordNum);
+        final int slot;
+        if (indexPos >= 0)
+        {
+            slot = index[indexPos] - 1;
+            policy.onHit(slot);
+        }
+        else
+        {
+            slot = allocateSlot();
+            if (slot < 0)
+                return false;
+
+            slotRecordNums[slot] = recordNum;
+            slotFlags[slot] = FLAG_USED;
+            insertIntoIndex(recordNum, slot);
+            ++size;
+            policy.onInsert(slot);
+        }
+        if (dirty)
+            slotFlags[slot] |= FLAG_DIRTY;
+
+        System.arraycopy(src, srcOffset, slab, slot * TRUST_RECORD_LEN, TRUST_RECORD_LEN);
+        return true;
+    }
+
+    /**
+     * Marks the record identified by {@code recordNum} as clean, i.e. written to the file, so that it may be evicted
+     * again. Does nothing, if it is not in the cache.
+     *
+     * @param recordNum
+     *            the record's number.
+     */
+    public synchronized void markClean(final long recordNum)
+    {
+        final int indexPos = findIndexPos(recordNum);
+        if (indexPos >= 0)
+            slotFlags[index[indexPos] - 1] &= ~FLAG_DIRTY;
+    }
+
+    /**
+     * Pins or un-pins the record identified by {@code recordNum}. Does nothing, if it is not in the cache.
+     *
+     * @param recordNum
+     *            the record's number.
+     * @param pinned
+     *            whether the record must not be evicted.
+     */
+    public synchronized void setPinned(final long recordNum, final boolean pinned)
+    {
+        final int indexPos = findIndexPos(recordNum);
+        if (indexPos < 0)
+            return;
+
+        final int slot = index[indexPos] - 1;
+        if (pinned)
+            slotFlags[slot] |= FLAG_PINNED;
+        else
+            slotFlags[slot] &= ~FLAG_PINNED;
+    }
+
+    /**
+     * Determines whether the given slot may be chosen as victim by the {@link RecordCachePolicy}.
+     *
+     * @param slot
+     *            the slot index.
+     * @return <code>true</code>, if the slot holds a record which is neither dirty nor pinned.
+     */
+    boolean isEvictable(final int slot)
+    {
+        return slotFlags[slot] == FLAG_USED;
+    }
+
+    /**
+     * Removes all records from the cache.
+     */
+    public synchronized void clear()
+    {
+        Arrays.fill(index, 0);
+        for (int slot = 0; slot < nextUnusedSlot; ++slot)
+        {
+            if (slotFlags[slot] != 0)
+            {
+                slotFlags[slot] = 0;
+                policy.onRemove(slot);
+            }
+        }
+        size = 0;
+        nextUnusedSlot = 0;
+    }
+
+    private int allocateSlot()
+    {
+        if (nextUnusedSlot == slotRecordNums.length && nextUnusedSlot < capacity)
+            allocate((int) Math.min(capacity, 2L * nextUnusedSlot));
+
+        if (nextUnusedSlot < slotRecordNums.length)
+            return nextUnusedSlot++;
+
+        final int slot = policy.selectVictim(this);
+        if (slot < 0)
+            return -1;
+
+        removeFromIndex(findIndexPos(slotRecordNums[slot]));
+        slotFlags[slot] = 0;
+        policy.onRemove(slot);
+        return slot;
+    }
+
+    private void insertIntoIndex(final long recordNum, final int slot)
+    {
+        int indexPos = (int) (hash(recordNum) & indexMask);
+        while (index[indexPos] != 0)
+            indexPos = (indexPos + 1) & indexMask;
+
+        index[indexPos] = slot + 1;
+    }
+
+    private int findIndexPos(final long recordNum)
+    {
+        int indexPos = (int) (hash(recordNum) & indexMask);
+        for (;;)
+        {
+            final int slotPlusOne = index[indexPos];
+            if (slotPlusOne == 0)
+                return -1;
+
+            if (slotRecordNums[slotPlusOne - 1] == recordNum)
+                return indexPos;
+
+            indexPos = (indexPos + 1) & indexMask;
+        }
+    }
+
+    /**
+     * Removes the entry at the given index position and shifts the following entries of the same probe-sequence
+     * backwards (no tombstones needed).
+     */
+    private void removeFromIndex(int indexPos)
+    {
+        --size;
+        int nextPos = indexPos;
+        for (;;)
+        {
+            nextPos = (nextPos + 1) & indexMask;
+            final int slotPlusOne = index[nextPos];
+            if (slotPlusOne == 0)
+                break;
+
+            final int idealPos = (int) (hash(slotRecordNums[slotPlusOne - 1]) & indexMask);
+            // Move the entry, if its ideal position is not (cyclically) in (indexPos, nextPos].
+            final boolean inRange = indexPos <= nextPos
+                    ? indexPos < idealPos && idealPos <= nextPos
+                    : indexPos < idealPos || idealPos <= nextPos;
+            if (!inRange)
+            {
+                index[indexPos] = slotPlusOne;
+                indexPos = nextPos;
+            }
+        }
+        index[indexPos] = 0;
+    }
+
+    private static long hash(final long recordNum)
+    {
+        final long h = recordNum * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+}
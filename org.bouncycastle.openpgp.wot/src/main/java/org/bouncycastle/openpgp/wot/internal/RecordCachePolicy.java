@@ -0,0 +1,56 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+/**
+ * Eviction policy of a {@link RecordCache}.
+ * <p>
+ * A policy only deals with slot indexes - the cache itself manages the record numbers and data. It is notified about
+ * every slot being filled, hit or emptied and chooses the victim, when the cache is full and a new record is to be
+ * put. Slots which are dirty or pinned must not be chosen; the policy asks {@link RecordCache#isEvictable(int)}.
+ * <p>
+ * Implementations are not thread-safe; they are guarded by their cache.
+ */
+interface RecordCachePolicy
+{
+    /**
+     * Informs this policy about the number of slots. Called initially and whenever the cache grows. Slots never
+     * shrink; existing slot indexes stay valid.
+     *
+     * @param slotCount
+     *            the new number of slots.
+     */
+    void resize(int slotCount);
+
+    /**
+     * The given slot was filled with a new record.
+     *
+     * @param slot
+     *            the slot index.
+     */
+    void onInsert(int slot);
+
+    /**
+     * The record in the given slot was read or overwritten.
+     *
+     * @param slot
+     *            the slot index.
+     */
+    void onHit(int slot);
+
+    /**
+     * The given slot was emptied - either because its record was chosen as victim or because the cache was cleared.
+     *
+     * @param slot
+     *            the slot index.
+     */
+    void onRemove(int slot);
+
+    /**
+     * Chooses the slot whose record is to be evicted. The slot must be {@linkplain RecordCache#isEvictable(int)
+     * evictable}. {@link #onRemove(int)} is invoked by the cache afterwards.
+     *
+     * @param cache
+     *            the cache asking. Never <code>null</code>.
+     * @return the victim's slot index or -1, if no slot is evictable.
+     */
+    int selectVictim(RecordCache cache);
+}
@@ -0,0 +1,164 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static java.util.Objects.*;
+
+import org.bouncycastle.openpgp.wot.RecordCacheEviction;
+
+/**
+ * {@link RecordCache} split into independent stripes by record number, so that concurrent lookups rarely contend.
+ * <p>
+ * Every method of a {@code RecordCache} synchronizes on it - including a hit, which updates the
+ * {@link RecordCachePolicy}. Since {@link TrustDbIo} looks up records while holding only its read lock, one single
+ * cache would serialize all readers again. Here, each stripe has its own monitor, its own eviction policy and an equal
+ * share of the memory budget; a record is always held by the stripe its number maps to.
+ * <p>
+ * A small budget is not split, because tiny stripes would evict (and fail to take dirty records) much earlier than
+ * one cache of the same total size.
+ * <p>
+ * This class is thread-safe.
+ */
+class StripedRecordCache
+{
+    /**
+     * Maximum number of stripes - must be a power of 2 and not exceed {@code 1 << 4} (see {@link #getStripe(long)}).
+     */
+    static final int MAX_STRIPE_COUNT = 16;
+
+    /**
+     * Minimum number of records each stripe must be able to hold - otherwise, the budget is split into fewer stripes.
+     */
+    static final int MIN_STRIPE_CAPACITY = 1024;
+
+    private final RecordCache[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxBytes
+     *            the memory budget in bytes - shared by all stripes.
+     * @param recordCacheEviction
+     *            the eviction policy of every stripe. Must not be <code>null</code>.
+     */
+    public StripedRecordCache(final long maxBytes, final RecordCacheEviction recordCacheEviction)
+    {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("maxBytes < 0");
+
+        requireNonNull(recordCacheEviction, "recordCacheEviction");
+
+        int stripeCount = 1;
+        while (stripeCount < MAX_STRIPE_COUNT
+                && maxBytes / (2L * stripeCount) / RecordCache.BYTES_PER_ENTRY >= MIN_STRIPE_CAPACITY)
+            stripeCount <<= 1;
+
+        this.stripes = new RecordCache[stripeCount];
+        this.stripeMask = stripeCount - 1;
+        for (int i = 0; i < stripeCount; ++i)
+            stripes[i] = new RecordCache(maxBytes / stripeCount, createRecordCachePolicy(recordCacheEviction));
+    }
+
+    private static RecordCachePolicy createRecordCachePolicy(final RecordCacheEviction recordCacheEviction)
+    {
+        switch (recordCacheEviction)
+        {
+            case TWO_QUEUE:
+                return new TwoQueueRecordCachePolicy();
+            case CLOCK:
+                return new ClockRecordCachePolicy();
+            default:
+                throw new IllegalArgumentException("Unknown recordCacheEviction: " + recordCacheEviction);
+        }
+    }
+
+    /**
+     * Gets the stripe holding the given record.
+     * <p>
+     * The stripe is chosen by the top bits of a multiplicative hash, while a {@code RecordCache} indexes by the low
+     * bits. Hence, the records of one stripe still spread over its whole index - and consecutive records (e.g. a trust
+     * record and its valid records) usually end up in different stripes.
+     */
+    private RecordCache getStripe(final long recordNum)
+    {
+        return stripes[(int) ((recordNum * 0x9E3779B97F4A7C15L) >>> 60) & stripeMask];
+    }
+
+    /**
+     * Gets the number of stripes.
+     *
+     * @return the number of stripes - a power of 2 between 1 and {@link #MAX_STRIPE_COUNT}.
+     */
+    public int getStripeCount()
+    {
+        return stripes.length;
+    }
+
+    /**
+     * Gets the maximum number of records this cache can hold.
+     *
+     * @return the maximum number of records.
+     */
+    public int getCapacity()
+    {
+        int capacity = 0;
+        for (final RecordCache stripe : stripes)
+            capacity += stripe.getCapacity();
+
+        return capacity;
+    }
+
+    /**
+     * Gets the number of records currently held.
+     *
+     * @return the number of records.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (final RecordCache stripe : stripes)
+            size += stripe.size();
+
+        return size;
+    }
+
+    /**
+     * @see RecordCache#get(long, byte[], int)
+     */
+    public boolean get(final long recordNum, final byte[] dst, final int dstOffset)
+    {
+        return getStripe(recordNum).get(recordNum, dst, dstOffset);
+    }
+
+    /**
+     * @see RecordCache#put(long, byte[], int, boolean)
+     */
+    public boolean put(final long recordNum, final byte[] src, final int srcOffset, final boolean dirty)
+    {
+        return getStripe(recordNum).put(recordNum, src, srcOffset, dirty);
+    }
+
+    /**
+     * @see RecordCache#markClean(long)
+     */
+    public void markClean(final long recordNum)
+    {
+        getStripe(recordNum).markClean(recordNum);
+    }
+
+    /**
+     * @see RecordCache#setPinned(long, boolean)
+     */
+    public void setPinned(final long recordNum, final boolean pinned)
+    {
+        getStripe(recordNum).setPinned(recordNum, pinned);
+    }
+
+    /**
+     * Removes all records from all stripes.
+     */
+    public void clear()
+    {
+        for (final RecordCache stripe : stripes)
+            stripe.clear();
+    }
+}
@@ -2,17 +2,32 @@ package org.bouncycastle.openpgp.wot.internal;
 
 import static java.util.Objects.*;
 import static org.bouncycastle.openpgp.wot.DateUtil.*;
+import static org.bouncycastle.openpgp.wot.internal.Util.*;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 
 import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPSignature;
@@ -21,8 +36,13 @@ import org.bouncycastle.openpgp.wot.OwnerTrust;
 import org.bouncycastle.openpgp.wot.PgpFile;
 import org.bouncycastle.openpgp.wot.TrustConst;
 import org.bouncycastle.openpgp.wot.TrustDb;
+import org.bouncycastle.openpgp.wot.TrustDbException;
+import org.bouncycastle.openpgp.wot.TrustDbIoException;
+import org.bouncycastle.openpgp.wot.TrustDbOptions;
+import org.bouncycastle.openpgp.wot.TrustDbSnapshot;
 import org.bouncycastle.openpgp.wot.TrustModel;
 import org.bouncycastle.openpgp.wot.Validity;
+import org.bouncycastle.openpgp.wot.key.CertificationGraph;
 import org.bouncycastle.openpgp.wot.key.PgpKey;
 import org.bouncycastle.openpgp.wot.key.PgpKeyFingerprint;
 import org.bouncycastle.openpgp.wot.key.PgpKeyId;
@@ -41,16 +61,74 @@ public class TrustDbImpl implements TrustDb, TrustConst
 {
     private static final Logger logger = LoggerFactory.getLogger(TrustDbImpl.class);
 
+    /** {@code DateFormat} is not thread-safe => one instance per thread. */
+    private static final ThreadLocal<DateFormat> dateFormatIso8601WithTime = new ThreadLocal<DateFormat>()
+    {
+        @Override
+        protected DateFormat initialValue()
+        {
+            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        }
+    };
+
+    /**
+     * Minimum number of keys to be validated at one depth, before {@link #validateKeys(int[])} distributes them among
+     * multiple threads. For fewer keys, the thread-handover costs more than it saves.
+     */
+    private static final int MIN_PARALLEL_VALIDATION_KEY_COUNT = 64;
+
     private final PgpKeyRegistry pgpKeyRegistry;
-    private final Object mutex;
+    private final Lock readLock;
+    private final Lock writeLock;
     private final TrustDbIo trustDbIo;
+    private final int validityCacheSize;
+
+    /**
+     * Incremented whenever records affecting a validity are written. Modified only while holding the write lock.
+     */
+    private volatile long generation;
+    private volatile ValidityCache validityCache;
+    private volatile TrustDbSnapshotImpl snapshot;
+    private final Object snapshotMutex = new Object();
 
     private long startTime;
     private long nextExpire;
     private Map<PgpKeyFingerprint, PgpKeyTrust> fingerprint2PgpKeyTrust;
-    private Set<PgpKeyFingerprint> klist;
-    private Set<PgpKeyFingerprint> fullTrust;
-    private DateFormat dateFormatIso8601WithTime;
+    private CertificationGraph certificationGraph;
+    private int[] klist;
+    private BitSet fullTrust;
+
+    /**
+     * The owner-trusts of all keys (indexed by their {@link CertificationGraph} IDs), read once at the beginning of an
+     * update. They are not modified by the update.
+     */
+    private OwnerTrust[] id2OwnerTrust;
+
+    /**
+     * The validities of all keys (indexed by their {@link CertificationGraph} IDs) as written at the depths validated
+     * so far - i.e. what {@link #getValidityRaw(PGPPublicKey)} would return (without flags). Only used during a full
+     * update.
+     */
+    private byte[] id2Validity;
+
+    private final boolean incrementalUpdateEnabled;
+    private final ForkJoinPool validationPool;
+
+    /**
+     * The trace of the last update, if the next one may be incremental; otherwise <code>null</code>.
+     */
+    private ValidationTrace validationTrace;
+
+    /**
+     * The validities of the keys being re-validated by an incremental update (indexed by their
+     * {@link CertificationGraph} IDs; -1 for all other keys), while it is running; otherwise <code>null</code>.
+     */
+    private int[] coneValidities;
+    private int validatingDepth;
+
+    private int batchDepth;
+    private boolean deferMarkTrustDbStale;
+    private boolean markTrustDbStalePending;
 
     /**
      * Create a {@code TrustDbImpl} instance with the given {@code trustdb.gpg} file and the given key-registry.
@@ -67,34 +145,142 @@ public class TrustDbImpl implements TrustDb, TrustConst
      * @see TrustDb.Helper#createInstance(PgpFile, PgpKeyRegistry)
      */
     public TrustDbImpl(final PgpFile file, final PgpKeyRegistry pgpKeyRegistry)
+    {
+        this(file, pgpKeyRegistry, new TrustDbOptions());
+    }
+
+    /**
+     * Create a {@code TrustDbImpl} instance with the given {@code trustdb.gpg} file and the given key-registry.
+     * <p>
+     * <b>Important:</b> You must {@linkplain #close() close} this instance!
+     * <p>
+     * <b>Important:</b> It is highly recommended not to invoke this constructor directly! Use
+     * {@link TrustDb.Helper#createInstance(PgpFile, PgpKeyRegistry, TrustDbOptions)} instead!
+     *
+     * @param file
+     *            the trust-database-file ({@code trustdb.gpg}). Must not be <code>null</code>.
+     * @param pgpKeyRegistry
+     *            the key-registry. Must not be <code>null</code>.
+     * @param options
+     *            the options controlling caching and durability. Must not be <code>null</code>.
+     * @see TrustDb.Helper#createInstance(PgpFile, PgpKeyRegistry, TrustDbOptions)
+     */
+    public TrustDbImpl(final PgpFile file, final PgpKeyRegistry pgpKeyRegistry, final TrustDbOptions options)
     {
         requireNonNull(file, "file");
         this.pgpKeyRegistry = requireNonNull(pgpKeyRegistry, "pgpKeyRegistry");
-        this.mutex = pgpKeyRegistry.getPubringFile().getPgpId();
-        this.trustDbIo = new TrustDbIo(file, mutex);
+        requireNonNull(options, "options");
+        final ReadWriteLock lock = PgpIdLocks.getLock(pgpKeyRegistry.getPubringFile().getPgpId());
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+        this.trustDbIo = new TrustDbIo(file, lock, options);
+        this.validityCacheSize = options.getValidityCacheSize();
+        this.incrementalUpdateEnabled = options.isIncrementalUpdateEnabled();
+        this.validationPool = options.getValidationParallelism() > 1
+                ? new ForkJoinPool(options.getValidationParallelism()) : null;
     }
 
     @Override
     public void close()
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
+            if (validationPool != null)
+                validationPool.shutdown();
+
             trustDbIo.close();
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
-    public DateFormat getDateFormatIso8601WithTime()
+    @Override
+    public Batch beginBatch()
+    {
+        return beginBatch(false);
+    }
+
+    @Override
+    public Batch beginBatch(final boolean deferMarkTrustDbStale)
+    {
+        writeLock.lock();
+        try
+        {
+            if (batchDepth++ == 0)
+                this.deferMarkTrustDbStale = deferMarkTrustDbStale;
+
+            return new BatchImpl();
+        } finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    private class BatchImpl implements Batch
+    {
+        private boolean closed;
+
+        @Override
+        public void close()
+        {
+            writeLock.lock();
+            try
+            {
+                if (closed)
+                    return;
+
+                closed = true;
+                endBatch();
+            } finally
+            {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private void endBatch()
     {
-        synchronized (mutex) {
-            if (dateFormatIso8601WithTime == null)
-                dateFormatIso8601WithTime = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        if (--batchDepth > 0)
+            return;
+
+        deferMarkTrustDbStale = false;
+        if (markTrustDbStalePending)
+        {
+            markTrustDbStalePending = false;
+            markTrustDbStale();
+        }
+        trustDbIo.flush();
+        publishSnapshot();
+    }
 
-            return dateFormatIso8601WithTime;
+    /**
+     * Writes all modifications to disk - unless a {@linkplain #beginBatch() batch} is open.
+     */
+    protected void flushUnlessInBatch()
+    {
+        writeLock.lock();
+        try
+        {
+            if (batchDepth == 0)
+                trustDbIo.flush();
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
+    public DateFormat getDateFormatIso8601WithTime()
+    {
+        return dateFormatIso8601WithTime.get();
+    }
+
     protected PgpKeyTrust getPgpKeyTrust(final PgpKey pgpKey)
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
             PgpKeyTrust pgpKeyTrust = fingerprint2PgpKeyTrust.get(pgpKey.getPgpKeyFingerprint());
             if (pgpKeyTrust == null)
             {
@@ -102,79 +288,105 @@ public class TrustDbImpl implements TrustDb, TrustConst
                 fingerprint2PgpKeyTrust.put(pgpKeyTrust.getPgpKeyFingerprint(), pgpKeyTrust);
             }
             return pgpKeyTrust;
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
     // reset_trust_records(void)
     protected void resetTrustRecords()
     {
-        synchronized (mutex) {
-            TrustRecord record;
-            long recordNum = 0;
-            int count = 0, nreset = 0;
+        writeLock.lock();
+        try
+        {
+            invalidateValidityCache();
+            validationTrace = null; // It does not match the trust-database anymore.
+            final int[] count = new int[1], nreset = new int[1];
 
-            while ((record = trustDbIo.getTrustRecord(++recordNum)) != null)
+            // Both types in one pass: The records of one key are usually located next to each other.
+            trustDbIo.scan(null, new TrustRecordVisitor()
             {
-                if (record.getType() == TrustRecordType.TRUST)
+                @Override
+                public boolean visit(final TrustRecordView view) throws TrustDbIoException
                 {
-                    final TrustRecord.Trust trust = (TrustRecord.Trust) record;
-                    ++count;
-                    if (trust.getMinOwnerTrust() != 0)
+                    if (view.getType() == TrustRecordType.TRUST)
                     {
-                        trust.setMinOwnerTrust((short) 0);
-                        trustDbIo.putTrustRecord(record);
+                        ++count[0];
+                        if (((TrustRecordView.Trust) view).getMinOwnerTrust() != 0)
+                        {
+                            final TrustRecord.Trust trust = (TrustRecord.Trust) trustDbIo.decodeTrustRecord(view);
+                            trust.setMinOwnerTrust((short) 0);
+                            trustDbIo.putTrustRecord(trust);
+                        }
                     }
-                }
-                else if (record.getType() == TrustRecordType.VALID)
-                {
-                    final TrustRecord.Valid valid = (TrustRecord.Valid) record;
-                    if (((valid.getValidity() & TRUST_MASK) != 0)
-                            || valid.getMarginalCount() != 0
-                            || valid.getFullCount() != 0)
+                    else if (view.getType() == TrustRecordType.VALID)
                     {
-
-                        valid.setValidity((short) (valid.getValidity() & (~TRUST_MASK)));
-                        valid.setMarginalCount((short) 0);
-                        valid.setFullCount((short) 0);
-                        nreset++;
-                        trustDbIo.putTrustRecord(record);
+                        final TrustRecordView.Valid validView = (TrustRecordView.Valid) view;
+                        if (((validView.getValidity() & TRUST_MASK) != 0)
+                                || validView.getMarginalCount() != 0
+                                || validView.getFullCount() != 0)
+                        {
+                            final TrustRecord.Valid valid = (TrustRecord.Valid) trustDbIo.decodeTrustRecord(view);
+                            valid.setValidity((short) (valid.getValidity() & (~TRUST_MASK)));
+                            valid.setMarginalCount((short) 0);
+                            valid.setFullCount((short) 0);
+                            nreset[0]++;
+                            trustDbIo.putTrustRecord(valid);
+                        }
                     }
+                    return true;
                 }
-            }
+            });
 
-            logger.debug("resetTrustRecords: {} keys processed ({} validity counts cleared)", count, nreset);
+            logger.debug("resetTrustRecords: {} keys processed ({} validity counts cleared)", count[0], nreset[0]);
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
     @Override
     public OwnerTrust getOwnerTrust(PgpKey pgpKey)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(pgpKey, "pgpKey");
             if (pgpKey.getMasterKey() != null)
                 pgpKey = pgpKey.getMasterKey();
 
             return getOwnerTrust(pgpKey.getPublicKey());
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public void setOwnerTrust(PgpKey pgpKey, final OwnerTrust ownerTrust)
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
             requireNonNull(pgpKey, "pgpKey");
             requireNonNull(ownerTrust, "ownerTrust");
             if (pgpKey.getMasterKey() != null)
                 pgpKey = pgpKey.getMasterKey();
 
             setOwnerTrust(pgpKey.getPublicKey(), ownerTrust);
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
     @Override
     public OwnerTrust getOwnerTrust(final PGPPublicKey publicKey)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(publicKey, "publicKey");
             // if (trustdb_args.no_trustdb && opt.trust_model == TM_ALWAYS)
             // return TRUST_UNKNOWN; // TODO maybe we should support other trust models...
@@ -184,13 +396,19 @@ public class TrustDbImpl implements TrustDb, TrustConst
                 return null;
 
             return OwnerTrust.fromNumericValue(trust.getOwnerTrust() & TRUST_MASK);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public void setOwnerTrust(final PGPPublicKey publicKey, final OwnerTrust ownerTrust)
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
+            invalidateValidityCache();
             requireNonNull(publicKey, "publicKey");
             requireNonNull(ownerTrust, "ownerTrust");
 
@@ -207,17 +425,30 @@ public class TrustDbImpl implements TrustDb, TrustConst
             trust.setOwnerTrust((short) (ownerTrust.getNumericValue() | ownerTrustAdditionalFlags));
             trustDbIo.putTrustRecord(trust);
 
-            markTrustDbStale();
-            trustDbIo.flush();
+            if (deferMarkTrustDbStale)
+                markTrustDbStalePending = true;
+            else
+                markTrustDbStale();
+
+            flushUnlessInBatch();
+            publishSnapshot();
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
     protected TrustRecord.Trust getTrustByPublicKey(PGPPublicKey publicKey)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(publicKey, "publicKey");
             TrustRecord.Trust trust = trustDbIo.getTrustByPublicKey(publicKey);
             return trust;
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
@@ -225,9 +456,14 @@ public class TrustDbImpl implements TrustDb, TrustConst
     @Deprecated
     public int getValidityRaw(final PGPPublicKey publicKey)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(publicKey, "publicKey");
             return _getValidity(publicKey, (PgpUserIdNameHash) null, true);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
@@ -235,288 +471,681 @@ public class TrustDbImpl implements TrustDb, TrustConst
     @Deprecated
     public int getValidityRaw(final PGPPublicKey publicKey, final PgpUserIdNameHash pgpUserIdNameHash)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(publicKey, "publicKey");
             requireNonNull(pgpUserIdNameHash, "pgpUserIdNameHash");
             return _getValidity(publicKey, pgpUserIdNameHash, true);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public Validity getValidity(final PgpKey pgpKey)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(pgpKey, "pgpKey");
-            return getValidity(pgpKey.getPublicKey());
+            // The PgpKey's fingerprint caches its hash => the validity cache is looked up without allocating.
+            final int numericValue = _getValidity(pgpKey.getPublicKey(), pgpKey.getPgpKeyFingerprint(),
+                    (PgpUserIdNameHash) null, false);
+            return Validity.fromNumericValue(numericValue);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public Validity getValidity(final PgpUserId pgpUserId)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(pgpUserId, "pgpUserId");
-            return getValidity(pgpUserId.getPgpKey().getPublicKey(), pgpUserId.getNameHash());
+            final PgpKey pgpKey = pgpUserId.getPgpKey();
+            final int numericValue = _getValidity(pgpKey.getPublicKey(), pgpKey.getPgpKeyFingerprint(),
+                    requireNonNull(pgpUserId.getNameHash(), "pgpUserId.nameHash"), false);
+            return Validity.fromNumericValue(numericValue);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public Validity getValidity(final PGPPublicKey publicKey)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(publicKey, "publicKey");
             final int numericValue = _getValidity(publicKey, (PgpUserIdNameHash) null, false);
             return Validity.fromNumericValue(numericValue);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public Validity getValidity(final PGPPublicKey publicKey, final PgpUserIdNameHash pgpUserIdNameHash)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(publicKey, "publicKey");
             requireNonNull(pgpUserIdNameHash, "pgpUserIdNameHash");
             final int numericValue = _getValidity(publicKey, pgpUserIdNameHash, false);
             return Validity.fromNumericValue(numericValue);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     /**
      * Ported from
      * {@code unsigned int tdb_get_validity_core (PKT_public_key *pk, PKT_user_id *uid, PKT_public_key *main_pk)}
+     * <p>
+     * Everything read from the trust-database is kept in the {@link ValidityCache}. Only the revocation (a property of
+     * the given key) is evaluated on every invocation.
      */
     protected int _getValidity(final PGPPublicKey publicKey, final PgpUserIdNameHash pgpUserIdNameHash,
             final boolean withFlags)
     {
-        synchronized (mutex) {
-            requireNonNull(publicKey, "publicKey");
-            TrustRecord.Trust trust = getTrustByPublicKey(publicKey);
-            if (trust == null)
-                return TRUST_UNKNOWN;
+        return _getValidity(publicKey, null, pgpUserIdNameHash, withFlags);
+    }
 
-            // Loop over all user IDs
-            long recordNum = trust.getValidList();
-            int validity = 0;
-            int flags = 0;
-            // Currently, neither this class nor GnuPG stores any flags in the valid-records, but we're robust
-            // and thus expect validateKey(...) to maybe put flags into the validity DB, later. Therefore,
-            // we track them here separately (additive for all sub-keys if no user-id-name-hash is given).
-            while (recordNum != 0)
+    /**
+     * Same as {@link #_getValidity(PGPPublicKey, PgpUserIdNameHash, boolean)}, but with the key's fingerprint already
+     * known.
+     *
+     * @param pgpKeyFingerprint
+     *            the fingerprint of {@code publicKey} or <code>null</code>, if it must be obtained from the key.
+     */
+    protected int _getValidity(final PGPPublicKey publicKey, PgpKeyFingerprint pgpKeyFingerprint,
+            final PgpUserIdNameHash pgpUserIdNameHash, final boolean withFlags)
+    {
+        readLock.lock();
+        try
+        {
+            requireNonNull(publicKey, "publicKey");
+            final ValidityCache cache = getValidityCache();
+            int rawValidity = ValidityCache.NOT_CACHED;
+            if (cache != null)
             {
-                TrustRecord.Valid valid = trustDbIo.getTrustRecord(recordNum, TrustRecord.Valid.class);
-                requireNonNull(valid, "valid");
+                if (pgpKeyFingerprint == null)
+                    pgpKeyFingerprint = new PgpKeyFingerprint(publicKey.getFingerprint());
 
-                if (pgpUserIdNameHash != null)
-                {
-                    // If a user ID is given we return the validity for that
-                    // user ID ONLY. If the namehash is not found, then there
-                    // is no validity at all (i.e. the user ID wasn't signed).
-                    if (pgpUserIdNameHash.equals(valid.getNameHash()))
-                    {
-                        validity = valid.getValidity() & TRUST_MASK;
-                        flags = valid.getValidity() & ~TRUST_MASK;
-                        break;
-                    }
-                }
-                else
-                {
-                    // If no user ID is given, we take the maximum validity over all user IDs
-                    validity = Math.max(validity, valid.getValidity() & TRUST_MASK);
-                    flags |= valid.getValidity() & ~TRUST_MASK;
-                }
-                recordNum = valid.getNext();
+                rawValidity = cache.get(pgpKeyFingerprint, pgpUserIdNameHash);
             }
-
-            if (withFlags)
+            if (rawValidity == ValidityCache.NOT_CACHED)
             {
-                validity |= flags;
+                rawValidity = readValidity(publicKey, pgpUserIdNameHash);
+                if (cache != null)
+                    cache.put(pgpKeyFingerprint, pgpUserIdNameHash, rawValidity);
+            }
 
-                if ((trust.getOwnerTrust() & TRUST_FLAG_DISABLED) != 0)
-                    validity |= TRUST_FLAG_DISABLED;
+            if (rawValidity == ValidityCache.NO_TRUST)
+                return TRUST_UNKNOWN;
 
-                if (publicKey.isRevoked())
-                    validity |= TRUST_FLAG_REVOKED;
+            if (!withFlags)
+                return rawValidity & TRUST_MASK;
+
+            int validity = rawValidity;
+            if (publicKey.isRevoked())
+                validity |= TRUST_FLAG_REVOKED;
+
+            if (cache == null ? isTrustDbStale() : cache.isTrustDbStale())
+                validity |= TRUST_FLAG_PENDING_CHECK;
 
-                if (isTrustDbStale())
-                    validity |= TRUST_FLAG_PENDING_CHECK;
-            }
             return validity;
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
-    // static void update_validity (PKT_public_key *pk, PKT_user_id *uid, int depth, int validity)
-    protected void updateValidity(PgpUserId pgpUserId, int depth, int validity, int fullCount, int marginalCount)
+    /**
+     * Reads the validity of the given key or user-identity from the trust-database.
+     * <p>
+     * Must be invoked while holding the (read or write) lock.
+     *
+     * @return the validity combined with the flags stored in the valid-records and the
+     *         {@link TrustConst#TRUST_FLAG_DISABLED TRUST_FLAG_DISABLED} or {@link ValidityCache#NO_TRUST}, if the
+     *         trust-database does not know the key.
+     */
+    private int readValidity(final PGPPublicKey publicKey, final PgpUserIdNameHash pgpUserIdNameHash)
     {
-        synchronized (mutex) {
-            requireNonNull(pgpUserId, "pgpUserId");
-            assertNonNegativeShort("depth", depth);
-            assertNonNegativeShort("validity", validity);
-            assertNonNegativeShort("fullCount", fullCount);
-            assertNonNegativeShort("marginalCount", marginalCount);
+        TrustRecord.Trust trust = getTrustByPublicKey(publicKey);
+        if (trust == null)
+            return ValidityCache.NO_TRUST;
+
+        // Loop over all user IDs
+        long recordNum = trust.getValidList();
+        int validity = 0;
+        int flags = 0;
+        // Currently, neither this class nor GnuPG stores any flags in the valid-records, but we're robust
+        // and thus expect validateKey(...) to maybe put flags into the validity DB, later. Therefore,
+        // we track them here separately (additive for all sub-keys if no user-id-name-hash is given).
+        while (recordNum != 0)
+        {
+            TrustRecord.Valid valid = trustDbIo.getTrustRecord(recordNum, TrustRecord.Valid.class);
+            requireNonNull(valid, "valid");
 
-            TrustRecord.Trust trust = getTrustByPublicKey(pgpUserId.getPgpKey().getPublicKey());
-            if (trust == null)
+            if (pgpUserIdNameHash != null)
             {
-                // No record yet - create a new one.
-                trust = new TrustRecord.Trust();
-                trust.setFingerprint(pgpUserId.getPgpKey().getPgpKeyFingerprint().getBytes());
-                trustDbIo.putTrustRecord(trust);
+                // If a user ID is given we return the validity for that
+                // user ID ONLY. If the namehash is not found, then there
+                // is no validity at all (i.e. the user ID wasn't signed).
+                if (pgpUserIdNameHash.equals(valid.getNameHash()))
+                {
+                    validity = valid.getValidity() & TRUST_MASK;
+                    flags = valid.getValidity() & ~TRUST_MASK;
+                    break;
+                }
             }
+            else
+            {
+                // If no user ID is given, we take the maximum validity over all user IDs
+                validity = Math.max(validity, valid.getValidity() & TRUST_MASK);
+                flags |= valid.getValidity() & ~TRUST_MASK;
+            }
+            recordNum = valid.getNext();
+        }
 
-            TrustRecord.Valid valid = null;
+        validity |= flags;
 
-            // locate an existing Valid record
-            final byte[] pgpUserIdNameHashBytes = pgpUserId.getNameHash().getBytes();
-            long recordNum = trust.getValidList();
-            while (recordNum != 0)
-            {
-                valid = trustDbIo.getTrustRecord(recordNum, TrustRecord.Valid.class);
-                if (Arrays.equals(valid.getNameHash(), pgpUserIdNameHashBytes))
-                    break;
+        if ((trust.getOwnerTrust() & TRUST_FLAG_DISABLED) != 0)
+            validity |= TRUST_FLAG_DISABLED;
 
-                recordNum = valid.getNext();
-            }
+        return validity;
+    }
 
-            if (recordNum == 0)
-            { // insert a new validity record
-                valid = new TrustRecord.Valid();
-                valid.setNameHash(pgpUserIdNameHashBytes);
-                valid.setNext(trust.getValidList());
-                trustDbIo.putTrustRecord(valid); // assigns the recordNum of the new record
-                trust.setValidList(valid.getRecordNum());
-            }
+    /**
+     * Gets the cache of the current {@link #generation} - creating it, if needed.
+     * <p>
+     * Must be invoked while holding the (read or write) lock.
+     *
+     * @return the cache or <code>null</code>, if caching is disabled.
+     */
+    private ValidityCache getValidityCache()
+    {
+        if (validityCacheSize == 0)
+            return null;
 
-            valid.setValidity((short) validity);
-            valid.setFullCount((short) fullCount);
-            valid.setMarginalCount((short) marginalCount);
-            trust.setDepth((short) depth);
-            trustDbIo.putTrustRecord(trust);
-            trustDbIo.putTrustRecord(valid);
+        final long generation = this.generation;
+        ValidityCache cache = validityCache;
+        if (cache == null || cache.getGeneration() != generation)
+        {
+            final TrustRecord.Version version = trustDbIo.getTrustRecord(0, TrustRecord.Version.class);
+            requireNonNull(version, "version");
+            // Concurrent readers might both create a new cache. This does no harm: One of them is simply lost.
+            cache = new ValidityCache(generation, validityCacheSize, version);
+            validityCache = cache;
         }
+        return cache;
     }
 
-    private static void assertNonNegativeShort(final String name, final int value)
+    /**
+     * Discards all cached validities and marks the {@linkplain #getSnapshot() snapshot} outdated. Must be invoked while
+     * holding the write lock - before records affecting a validity (including the version-record) are written.
+     */
+    protected void invalidateValidityCache()
     {
-        requireNonNull(name, "name");
+        ++generation;
+        validityCache = null;
+    }
 
-        if (value < 0)
-            throw new IllegalArgumentException(name + " < 0");
+    @Override
+    public Map<PgpKey, Validity> getPgpKeyValidities(final Collection<PgpKey> pgpKeys)
+    {
+        requireNonNull(pgpKeys, "pgpKeys");
+        final List<PgpKey> keys = new ArrayList<>(pgpKeys);
+        final PGPPublicKey[] publicKeys = new PGPPublicKey[keys.size()];
+        for (int i = 0; i < publicKeys.length; ++i)
+            publicKeys[i] = requireNonNull(keys.get(i), "pgpKeys[*]").getPublicKey();
+
+        final int[] validities;
+        readLock.lock();
+        try
+        {
+            validities = getValidities(publicKeys, null);
+        } finally
+        {
+            readLock.unlock();
+        }
 
-        if (value > Short.MAX_VALUE)
-            throw new IllegalArgumentException(name + " > Short.MAX_VALUE");
+        final Map<PgpKey, Validity> result = new HashMap<>(publicKeys.length * 4 / 3 + 1);
+        for (int i = 0; i < publicKeys.length; ++i)
+            result.put(keys.get(i), Validity.fromNumericValue(validities[i]));
+
+        return result;
     }
 
     @Override
-    public void updateUltimatelyTrustedKeysFromAvailableSecretKeys(boolean onlyIfMissing)
+    public Map<PgpUserId, Validity> getPgpUserIdValidities(final Collection<PgpUserId> pgpUserIds)
     {
-        synchronized (mutex) {
-            for (final PgpKey masterKey : pgpKeyRegistry.getMasterKeys())
-            {
-                if (masterKey.getSecretKey() == null)
-                    continue;
+        requireNonNull(pgpUserIds, "pgpUserIds");
+        final List<PgpUserId> userIds = new ArrayList<>(pgpUserIds);
+        final PGPPublicKey[] publicKeys = new PGPPublicKey[userIds.size()];
+        final PgpUserIdNameHash[] pgpUserIdNameHashes = new PgpUserIdNameHash[publicKeys.length];
+        for (int i = 0; i < publicKeys.length; ++i)
+        {
+            final PgpUserId pgpUserId = requireNonNull(userIds.get(i), "pgpUserIds[*]");
+            publicKeys[i] = pgpUserId.getPgpKey().getPublicKey();
+            pgpUserIdNameHashes[i] = pgpUserId.getNameHash();
+        }
 
-                TrustRecord.Trust trust = trustDbIo.getTrustByPublicKey(masterKey.getPublicKey());
-                if (trust == null
-                        || trust.getOwnerTrust() == TRUST_UNKNOWN
-                        || !onlyIfMissing)
-                {
+        final int[] validities;
+        readLock.lock();
+        try
+        {
+            validities = getValidities(publicKeys, pgpUserIdNameHashes);
+        } finally
+        {
+            readLock.unlock();
+        }
 
-                    if (trust == null)
-                    {
-                        trust = new TrustRecord.Trust();
-                        trust.setFingerprint(masterKey.getPgpKeyFingerprint().getBytes());
-                    }
+        final Map<PgpUserId, Validity> result = new HashMap<>(publicKeys.length * 4 / 3 + 1);
+        for (int i = 0; i < publicKeys.length; ++i)
+            result.put(userIds.get(i), Validity.fromNumericValue(validities[i]));
 
-                    trust.setDepth((short) 0);
-                    trust.setOwnerTrust((short) TRUST_ULTIMATE);
-                    trustDbIo.putTrustRecord(trust);
-                }
-            }
-        }
+        return result;
     }
 
-    protected Set<PgpKeyFingerprint> getUltimatelyTrustedKeyFingerprints()
+    @Override
+    public TrustDbSnapshot getSnapshot()
     {
-        synchronized (mutex) {
-            Set<PgpKeyFingerprint> result = new HashSet<PgpKeyFingerprint>();
-            TrustRecord record;
-            long recordNum = 0;
-            while ((record = trustDbIo.getTrustRecord(++recordNum)) != null)
-            {
-                if (record.getType() == TrustRecordType.TRUST)
+        // Once there is a snapshot, every modification publishes a new one => never read anything here.
+        final TrustDbSnapshotImpl snapshot = this.snapshot;
+        if (snapshot != null)
+            return snapshot;
+
+        // Only one thread reads the trust-database - all others wait for its result.
+        synchronized (snapshotMutex)
+        {
+            if (this.snapshot != null)
+                return this.snapshot;
+
+            readLock.lock();
+            try
+            {
+                return takeSnapshot();
+            } finally
+            {
+                readLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Publishes a new {@linkplain #getSnapshot() snapshot} after a modification - unless snapshots are not used (yet)
+     * or a {@linkplain #beginBatch() batch} is open (then, this is done when it ends).
+     * <p>
+     * Must be invoked while holding the write lock - at the end of every public method modifying the trust-database.
+     */
+    private void publishSnapshot()
+    {
+        if (snapshot != null && batchDepth == 0)
+            takeSnapshot();
+    }
+
+    /**
+     * Creates a new {@linkplain #getSnapshot() snapshot} and publishes it - unless the current one is up-to-date.
+     * <p>
+     * Must be invoked while holding the (read or write) lock.
+     *
+     * @return the current snapshot. Never <code>null</code>.
+     */
+    private TrustDbSnapshotImpl takeSnapshot()
+    {
+        final long generation = this.generation;
+        TrustDbSnapshotImpl snapshot = this.snapshot;
+        if (snapshot == null || snapshot.getGeneration() != generation)
+        {
+            snapshot = TrustDbSnapshotImpl.create(trustDbIo, generation);
+            logger.debug("takeSnapshot: generation={} keyCount={}", generation, snapshot.getKeyCount());
+            this.snapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Looks up the validities (without flags) of many keys or user-identities at once. The result for each is the same
+     * as the one of {@link #_getValidity(PGPPublicKey, PgpUserIdNameHash, boolean)}.
+     * <p>
+     * The keys are resolved in the order of their fingerprints, which is the order of the hash table. Then, the
+     * valid-records are read in the order of their record numbers (i.e. their location in the file) - no matter to
+     * which key they belong.
+     * <p>
+     * Must be invoked while holding the (read or write) lock.
+     *
+     * @param publicKeys
+     *            the keys. Must not be <code>null</code>.
+     * @param pgpUserIdNameHashes
+     *            the name-hashes of the user-identities (the index corresponding to {@code publicKeys}) or
+     *            <code>null</code> to look up the keys' validities.
+     * @return the numeric validities - the index corresponding to {@code publicKeys}.
+     */
+    protected int[] getValidities(final PGPPublicKey[] publicKeys, final PgpUserIdNameHash[] pgpUserIdNameHashes)
+    {
+        final byte[][] fingerprints = new byte[publicKeys.length][];
+        final Integer[] order = new Integer[publicKeys.length];
+        for (int i = 0; i < publicKeys.length; ++i)
+        {
+            fingerprints[i] = publicKeys[i].getFingerprint();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(final Integer i1, final Integer i2)
+            {
+                return compareUnsigned(fingerprints[i1], fingerprints[i2]);
+            }
+        });
+
+        // Pending valid-records by record number => popped in file order. Lookups may share a valid-list.
+        final TreeMap<Long, List<Integer>> recordNum2Indexes = new TreeMap<>();
+        final int[] validities = new int[publicKeys.length];
+        for (final int index : order)
+        {
+            final TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(fingerprints[index]);
+            if (trust != null && trust.getValidList() != 0)
+                enlist(recordNum2Indexes, trust.getValidList(), index);
+        }
+
+        while (!recordNum2Indexes.isEmpty())
+        {
+            final Map.Entry<Long, List<Integer>> entry = recordNum2Indexes.pollFirstEntry();
+            final TrustRecord.Valid valid = trustDbIo.getTrustRecord(entry.getKey(), TrustRecord.Valid.class);
+            requireNonNull(valid, "valid");
+
+            final int validity = valid.getValidity() & TRUST_MASK;
+            for (final int index : entry.getValue())
+            {
+                final PgpUserIdNameHash pgpUserIdNameHash = pgpUserIdNameHashes == null ? null
+                        : pgpUserIdNameHashes[index];
+                if (pgpUserIdNameHash == null)
+                    validities[index] = Math.max(validities[index], validity);
+                else if (pgpUserIdNameHash.equals(valid.getNameHash()))
+                {
+                    validities[index] = validity;
+                    continue; // found => the rest of the list is not needed.
+                }
+
+                if (valid.getNext() != 0)
+                    enlist(recordNum2Indexes, valid.getNext(), index);
+            }
+        }
+        return validities;
+    }
+
+    private static void enlist(final Map<Long, List<Integer>> recordNum2Indexes, final long recordNum,
+            final int index)
+    {
+        List<Integer> indexes = recordNum2Indexes.get(recordNum);
+        if (indexes == null)
+        {
+            indexes = new ArrayList<>(1);
+            recordNum2Indexes.put(recordNum, indexes);
+        }
+        indexes.add(index);
+    }
+
+    // static void update_validity (PKT_public_key *pk, PKT_user_id *uid, int depth, int validity)
+    protected void updateValidity(PgpUserId pgpUserId, int depth, int validity, int fullCount, int marginalCount)
+    {
+        writeLock.lock();
+        try
+        {
+            invalidateValidityCache();
+            requireNonNull(pgpUserId, "pgpUserId");
+            assertNonNegativeShort("depth", depth);
+            assertNonNegativeShort("validity", validity);
+            assertNonNegativeShort("fullCount", fullCount);
+            assertNonNegativeShort("marginalCount", marginalCount);
+
+            TrustRecord.Trust trust = getTrustByPublicKey(pgpUserId.getPgpKey().getPublicKey());
+            if (trust == null)
+            {
+                // No record yet - create a new one.
+                trust = new TrustRecord.Trust();
+                trust.setFingerprint(pgpUserId.getPgpKey().getPgpKeyFingerprint().getBytes());
+                trustDbIo.putTrustRecord(trust);
+            }
+
+            TrustRecord.Valid valid = null;
+
+            // locate an existing Valid record
+            final byte[] pgpUserIdNameHashBytes = pgpUserId.getNameHash().getBytes();
+            long recordNum = trust.getValidList();
+            while (recordNum != 0)
+            {
+                valid = trustDbIo.getTrustRecord(recordNum, TrustRecord.Valid.class);
+                if (Arrays.equals(valid.getNameHash(), pgpUserIdNameHashBytes))
+                    break;
+
+                recordNum = valid.getNext();
+            }
+
+            if (recordNum == 0)
+            { // insert a new validity record
+                valid = new TrustRecord.Valid();
+                valid.setNameHash(pgpUserIdNameHashBytes);
+                valid.setNext(trust.getValidList());
+                trustDbIo.putTrustRecord(valid); // assigns the recordNum of the new record
+                trust.setValidList(valid.getRecordNum());
+            }
+
+            valid.setValidity((short) validity);
+            valid.setFullCount((short) fullCount);
+            valid.setMarginalCount((short) marginalCount);
+            trust.setDepth((short) depth);
+            trustDbIo.putTrustRecord(trust);
+            trustDbIo.putTrustRecord(valid);
+        } finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    private static void assertNonNegativeShort(final String name, final int value)
+    {
+        requireNonNull(name, "name");
+
+        if (value < 0)
+            throw new IllegalArgumentException(name + " < 0");
+
+        if (value > Short.MAX_VALUE)
+            throw new IllegalArgumentException(name + " > Short.MAX_VALUE");
+    }
+
+    @Override
+    public void updateUltimatelyTrustedKeysFromAvailableSecretKeys(boolean onlyIfMissing)
+    {
+        writeLock.lock();
+        try
+        {
+            invalidateValidityCache();
+            validationTrace = null; // The ultimately trusted keys might change => must update fully.
+            for (final PgpKey masterKey : pgpKeyRegistry.getMasterKeys())
+            {
+                if (masterKey.getSecretKey() == null)
+                    continue;
+
+                TrustRecord.Trust trust = trustDbIo.getTrustByPublicKey(masterKey.getPublicKey());
+                if (trust == null
+                        || trust.getOwnerTrust() == TRUST_UNKNOWN
+                        || !onlyIfMissing)
+                {
+
+                    if (trust == null)
+                    {
+                        trust = new TrustRecord.Trust();
+                        trust.setFingerprint(masterKey.getPgpKeyFingerprint().getBytes());
+                    }
+
+                    trust.setDepth((short) 0);
+                    trust.setOwnerTrust((short) TRUST_ULTIMATE);
+                    trustDbIo.putTrustRecord(trust);
+                }
+            }
+            publishSnapshot();
+        } finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    protected Set<PgpKeyFingerprint> getUltimatelyTrustedKeyFingerprints()
+    {
+        readLock.lock();
+        try
+        {
+            final Set<PgpKeyFingerprint> result = new HashSet<PgpKeyFingerprint>();
+            trustDbIo.scan(TrustRecordType.TRUST, new TrustRecordVisitor()
+            {
+                @Override
+                public boolean visit(final TrustRecordView view)
                 {
-                    TrustRecord.Trust trust = (TrustRecord.Trust) record;
+                    final TrustRecordView.Trust trust = (TrustRecordView.Trust) view;
                     if ((trust.getOwnerTrust() & TRUST_MASK) == TRUST_ULTIMATE)
                         result.add(new PgpKeyFingerprint(trust.getFingerprint()));
+
+                    return true;
                 }
-            }
+            });
             return result;
+        } finally
+        {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public int compact()
+    {
+        writeLock.lock();
+        try
+        {
+            invalidateValidityCache();
+            final int droppedCount = trustDbIo.compact(new TrustDbIo.TrustFilter()
+            {
+                @Override
+                public boolean isKept(final TrustRecord.Trust trust)
+                {
+                    return pgpKeyRegistry.getPgpKey(new PgpKeyFingerprint(trust.getFingerprint())) != null;
+                }
+            });
+            publishSnapshot();
+            return droppedCount;
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
     @Override
     public boolean isExpired(PGPPublicKey publicKey)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(publicKey, "publicKey");
+            return _isExpired(publicKey);
+        } finally
+        {
+            readLock.unlock();
+        }
+    }
 
-            final Date creationTime = publicKey.getCreationTime();
+    /**
+     * Same as {@link #isExpired(PGPPublicKey)}, but without acquiring the lock. It does not access the
+     * trust-database and may thus be invoked by any thread.
+     */
+    private static boolean _isExpired(final PGPPublicKey publicKey)
+    {
+        final Date creationTime = publicKey.getCreationTime();
 
-            final long validSeconds = publicKey.getValidSeconds();
-            if (validSeconds != 0)
-            {
-                long validUntilTimestamp = creationTime.getTime() + (validSeconds * 1000);
-                return validUntilTimestamp < System.currentTimeMillis();
-            }
-            return false;
-            // TODO there seem to be keys (very old keys) that seem to encode the validity differently.
-            // For example, the real key 86A331B667F0D02F is expired according to my gpg, but it
-            // is not expired according to this code :-( I experimented with checking the userIds, but to no avail.
-            // It's a very small number of keys only, hence I ignore it for now ;-)
+        final long validSeconds = publicKey.getValidSeconds();
+        if (validSeconds != 0)
+        {
+            long validUntilTimestamp = creationTime.getTime() + (validSeconds * 1000);
+            return validUntilTimestamp < System.currentTimeMillis();
         }
+        return false;
+        // TODO there seem to be keys (very old keys) that seem to encode the validity differently.
+        // For example, the real key 86A331B667F0D02F is expired according to my gpg, but it
+        // is not expired according to this code :-( I experimented with checking the userIds, but to no avail.
+        // It's a very small number of keys only, hence I ignore it for now ;-)
     }
 
     @Override
     public boolean isDisabled(PgpKey pgpKey)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(pgpKey, "pgpKey");
             if (pgpKey.getMasterKey() != null)
                 pgpKey = pgpKey.getMasterKey();
 
             return isDisabled(pgpKey.getPublicKey());
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public void setDisabled(PgpKey pgpKey, final boolean disabled)
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
             requireNonNull(pgpKey, "pgpKey");
             if (pgpKey.getMasterKey() != null)
                 pgpKey = pgpKey.getMasterKey();
 
             setDisabled(pgpKey.getPublicKey(), disabled);
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
     @Override
     public boolean isDisabled(final PGPPublicKey publicKey)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(publicKey, "publicKey");
             TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(publicKey.getFingerprint());
             if (trust == null)
                 return false;
 
             return (trust.getOwnerTrust() & TRUST_FLAG_DISABLED) != 0;
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public void setDisabled(final PGPPublicKey publicKey, final boolean disabled)
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
+            invalidateValidityCache();
             requireNonNull(publicKey, "publicKey");
             TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(publicKey.getFingerprint());
             if (trust == null)
@@ -534,100 +1163,136 @@ public class TrustDbImpl implements TrustDb, TrustConst
             trust.setOwnerTrust((short) ownerTrust);
 
             trustDbIo.putTrustRecord(trust);
-            trustDbIo.flush();
+            flushUnlessInBatch();
+            publishSnapshot();
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
     @Override
     public boolean isTrustDbStale()
     {
-        synchronized (mutex) {
-            final Config config = Config.getInstance();
+        readLock.lock();
+        try
+        {
+            final ValidityCache cache = getValidityCache();
+            if (cache != null)
+                return cache.isTrustDbStale();
+
             final TrustRecord.Version version = trustDbIo.getTrustRecord(0, TrustRecord.Version.class);
             requireNonNull(version, "version");
+            return isTrustDbStale(version);
+        } finally
+        {
+            readLock.unlock();
+        }
+    }
 
-            if (config.getTrustModel() != version.getTrustModel())
+    /**
+     * Determines whether the given version-record does not match the current {@link Config} or its next check is due.
+     *
+     * @param version
+     *            the version-record. Must not be <code>null</code>.
+     * @return <code>true</code>, if the trust-database needs to be updated.
+     */
+    static boolean isTrustDbStale(final TrustRecord.Version version)
+    {
+        final Config config = Config.getInstance();
+        if (config.getTrustModel() != version.getTrustModel())
+        {
+            TrustModel configTrustModel;
+            try
             {
-                TrustModel configTrustModel;
-                try
-                {
-                    configTrustModel = TrustModel.fromNumericId(config.getTrustModel());
-                } catch (IllegalArgumentException x)
-                {
-                    configTrustModel = null;
-                }
-
-                TrustModel versionTrustModel;
-                try
-                {
-                    versionTrustModel = TrustModel.fromNumericId(version.getTrustModel());
-                } catch (IllegalArgumentException x)
-                {
-                    versionTrustModel = null;
-                }
-
-                logger.debug("isTrustDbStale: stale=true config.trustModel={} ({}) trustDb.trustModel={} ({})",
-                        config.getTrustModel(), configTrustModel, version.getTrustModel(), versionTrustModel);
-
-                return true;
+                configTrustModel = TrustModel.fromNumericId(config.getTrustModel());
+            } catch (IllegalArgumentException x)
+            {
+                configTrustModel = null;
             }
 
-            if (config.getCompletesNeeded() != version.getCompletesNeeded())
+            TrustModel versionTrustModel;
+            try
             {
-                logger.debug("isTrustDbStale: stale=true config.completesNeeded={} trustDb.completesNeeded={}",
-                        config.getCompletesNeeded(), version.getCompletesNeeded());
-
-                return true;
+                versionTrustModel = TrustModel.fromNumericId(version.getTrustModel());
+            } catch (IllegalArgumentException x)
+            {
+                versionTrustModel = null;
             }
 
-            if (config.getMarginalsNeeded() != version.getMarginalsNeeded())
-            {
-                logger.debug("isTrustDbStale: stale=true config.marginalsNeeded={} trustDb.marginalsNeeded={}",
-                        config.getMarginalsNeeded(), version.getMarginalsNeeded());
+            logger.debug("isTrustDbStale: stale=true config.trustModel={} ({}) trustDb.trustModel={} ({})",
+                    config.getTrustModel(), configTrustModel, version.getTrustModel(), versionTrustModel);
 
-                return true;
-            }
+            return true;
+        }
 
-            if (config.getMaxCertDepth() != version.getCertDepth())
-            {
-                logger.debug("isTrustDbStale: stale=true config.maxCertDepth={} trustDb.maxCertDepth={}",
-                        config.getMaxCertDepth(), version.getCertDepth());
+        if (config.getCompletesNeeded() != version.getCompletesNeeded())
+        {
+            logger.debug("isTrustDbStale: stale=true config.completesNeeded={} trustDb.completesNeeded={}",
+                    config.getCompletesNeeded(), version.getCompletesNeeded());
 
-                return true;
-            }
+            return true;
+        }
 
-            final Date now = now();
-            if (version.getNextCheck().before(now))
-            {
-                logger.debug("isTrustDbStale: stale=true nextCheck={} now={}",
-                        getDateFormatIso8601WithTime().format(version.getNextCheck()),
-                        getDateFormatIso8601WithTime().format(now));
+        if (config.getMarginalsNeeded() != version.getMarginalsNeeded())
+        {
+            logger.debug("isTrustDbStale: stale=true config.marginalsNeeded={} trustDb.marginalsNeeded={}",
+                    config.getMarginalsNeeded(), version.getMarginalsNeeded());
 
-                return true;
-            }
+            return true;
+        }
 
-            logger.trace("isTrustDbStale: stale=false");
-            return false;
+        if (config.getMaxCertDepth() != version.getCertDepth())
+        {
+            logger.debug("isTrustDbStale: stale=true config.maxCertDepth={} trustDb.maxCertDepth={}",
+                    config.getMaxCertDepth(), version.getCertDepth());
+
+            return true;
+        }
+
+        final Date now = now();
+        if (version.getNextCheck().before(now))
+        {
+            logger.debug("isTrustDbStale: stale=true nextCheck={} now={}",
+                    dateFormatIso8601WithTime.get().format(version.getNextCheck()),
+                    dateFormatIso8601WithTime.get().format(now));
+
+            return true;
         }
+
+        logger.trace("isTrustDbStale: stale=false");
+        return false;
     }
 
     @Override
     public void markTrustDbStale()
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
+            invalidateValidityCache();
             final TrustRecord.Version version = trustDbIo.getTrustRecord(0, TrustRecord.Version.class);
             requireNonNull(version, "version");
             version.setNextCheck(new Date(0));
             trustDbIo.putTrustRecord(version);
+            publishSnapshot();
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
     @Override
     public void updateTrustDbIfNeeded()
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
             if (isTrustDbStale())
                 updateTrustDb();
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
@@ -641,12 +1306,38 @@ public class TrustDbImpl implements TrustDb, TrustConst
     @Override
     public void updateTrustDb()
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
+            _updateTrustDb();
+
+            // Publish the result to the lock-free readers - while still holding the lock.
+            takeSnapshot();
+        } finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    private void _updateTrustDb()
+    {
+        writeLock.lock();
+        try
+        {
+            invalidateValidityCache();
+            if (validationTrace != null && updateTrustDbIncrementally())
+                return;
+
+            validationTrace = null;
+
             final Config config = Config.getInstance();
             try
             {
                 fingerprint2PgpKeyTrust = new HashMap<>();
-                fullTrust = new HashSet<>();
+                certificationGraph = pgpKeyRegistry.getCertificationGraph();
+                fullTrust = new BitSet(certificationGraph.getKeyCount());
+                id2OwnerTrust = loadOwnerTrusts(certificationGraph);
+                id2Validity = new byte[certificationGraph.getKeyCount()];
 
                 startTime = System.currentTimeMillis() / 1000;
                 nextExpire = Long.MAX_VALUE;
@@ -660,75 +1351,657 @@ public class TrustDbImpl implements TrustDb, TrustConst
                     return;
                 }
 
+                final ValidationTrace trace = incrementalUpdateEnabled
+                        ? new ValidationTrace(ultimatelyTrustedKeyFingerprints) : null;
+                if (trace != null)
+                {
+                    trace.setFingerprint2Digest(computeDigests(certificationGraph));
+                    trace.setFingerprint2OwnerTrust(getFingerprint2OwnerTrust(certificationGraph, id2OwnerTrust));
+                }
+
                 // mark all UTKs as used and fully_trusted and set validity to ultimate
+                klist = new int[ultimatelyTrustedKeyFingerprints.size()];
+                int utkCount = 0;
                 for (final PgpKeyFingerprint utkFpr : ultimatelyTrustedKeyFingerprints)
                 {
-                    final PgpKey utk = pgpKeyRegistry.getPgpKey(utkFpr);
-                    if (utk == null)
+                    final int utkId = certificationGraph.getId(utkFpr);
+                    if (utkId < 0)
                     {
                         logger.warn("public key of ultimately trusted key '{}' not found!", utkFpr.toHumanString());
                         continue;
                     }
+                    final PgpKey utk = certificationGraph.getPgpKey(utkId);
 
-                    fullTrust.add(utkFpr);
+                    fullTrust.set(utkId);
+                    klist[utkCount++] = utkId;
 
                     for (PgpUserId pgpUserId : utk.getPgpUserIds())
                         updateValidity(pgpUserId, 0, TRUST_ULTIMATE, 0, 0);
 
+                    id2Validity[utkId] = (byte) (utk.getPgpUserIds().isEmpty() ? TRUST_UNKNOWN : TRUST_ULTIMATE);
+
                     final long expireDate = getExpireTimestamp(utk.getPublicKey());
                     if (expireDate >= startTime && expireDate < nextExpire)
                         nextExpire = expireDate;
+
+                    if (trace != null)
+                        trace.addValidation(utkFpr, ValidationTrace.ULTIMATE_DEPTH,
+                                utk.getPgpUserIds().isEmpty() ? TRUST_UNKNOWN : TRUST_ULTIMATE, expireDate);
                 }
 
-                klist = ultimatelyTrustedKeyFingerprints;
+                klist = Arrays.copyOf(klist, utkCount);
 
                 for (int depth = 0; depth < config.getMaxCertDepth(); ++depth)
                 {
-                    final List<PgpKey> validatedKeys = validateKeyList();
+                    final int[] validatedKeys = validateKeyList();
 
-                    klist = new HashSet<>();
-                    for (PgpKey pgpKey : validatedKeys)
+                    for (final int id : validatedKeys)
                     {
-                        PgpKeyTrust pgpKeyTrust = getPgpKeyTrust(pgpKey);
-                        klist.add(pgpKey.getPgpKeyFingerprint());
-
-                        for (final PgpUserIdTrust pgpUserIdTrust : pgpKeyTrust.getPgpUserIdTrusts())
-                        {
-                            final PgpUserId pgpUserId = pgpUserIdTrust.getPgpUserId();
-
-                            final int validity = pgpUserIdTrust.getValidity();
-                            updateValidity(pgpUserId, depth, validity,
-                                    pgpUserIdTrust.getFullCount(), pgpUserIdTrust.getMarginalCount());
-
-                            if (validity >= TRUST_FULL)
-                                fullTrust.add(pgpUserIdTrust.getPgpUserId().getPgpKey().getPgpKeyFingerprint());
-                        }
+                        final PgpKey pgpKey = certificationGraph.getPgpKey(id);
+                        final int keyValidity = writeValidities(id, depth);
+                        id2Validity[id] = (byte) keyValidity;
 
                         final long expireDate = getExpireTimestamp(pgpKey.getPublicKey());
                         if (expireDate >= startTime && expireDate < nextExpire)
                             nextExpire = expireDate;
+
+                        if (trace != null)
+                            trace.addValidation(pgpKey.getPgpKeyFingerprint(), depth, keyValidity, expireDate);
                     }
 
+                    klist = validatedKeys;
+
                     logger.debug("updateTrustDb: depth={} keys={}",
-                            depth, validatedKeys.size());
+                            depth, validatedKeys.length);
                 }
 
                 final Date nextExpireDate = new Date(nextExpire * 1000);
                 trustDbIo.updateVersionRecord(nextExpireDate);
+                // The trust-db is now up-to-date => a stale-marker deferred by the current batch is obsolete.
+                markTrustDbStalePending = false;
 
-                trustDbIo.flush();
+                flushUnlessInBatch();
 
                 logger.info("updateTrustDb: Next trust-db expiration date: {}",
                         getDateFormatIso8601WithTime().format(nextExpireDate));
+
+                if (trace != null)
+                    trace.setStartTime(startTime);
+
+                validationTrace = trace;
             } finally
             {
                 fingerprint2PgpKeyTrust = null;
+                certificationGraph = null;
                 klist = null;
                 fullTrust = null;
+                id2OwnerTrust = null;
+                id2Validity = null;
+                invalidateValidityCache();
             }
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The layered validation of {@link #updateTrustDb()} is repeated for the <i>backward cone</i> of the given key
+     * only: The validity a key obtains at a certain depth depends solely on the validities its certifying keys had at
+     * the previous depths. Hence, a key {@code n} levels above the given one can influence the result only at the
+     * first {@code maxCertDepth - n} depths - and at the last level, only its owner-trust matters. Keys are
+     * therefore not expanded beyond this level - nor beyond an ultimately trusted key, whose validity is fixed.
+     * <p>
+     * Neither the trust-database nor the key-registry is modified, and only the cone's trust records are read.
+     */
+    @Override
+    public Validity computeValidity(final PgpKey pgpKey)
+    {
+        requireNonNull(pgpKey, "pgpKey");
+        readLock.lock();
+        try
+        {
+            final CertificationGraph graph = pgpKeyRegistry.getCertificationGraph();
+            final int targetId = graph.getId(pgpKey.getPgpKeyFingerprint());
+            if (targetId < 0)
+                return Validity.NONE;
+
+            final int maxCertDepth = Config.getInstance().getMaxCertDepth();
+
+            // Collect the cone in breadth-first order - the given key has index 0.
+            final Map<Integer, Integer> id2Index = new HashMap<>();
+            int[] ids = new int[16];
+            OwnerTrust[] ownerTrusts = new OwnerTrust[16];
+            ids[0] = targetId;
+            ownerTrusts[0] = readOwnerTrust(pgpKey.getPgpKeyFingerprint());
+            id2Index.put(targetId, 0);
+            int count = 1;
+            boolean utkFound = ownerTrusts[0] == OwnerTrust.ULTIMATE;
+
+            int levelStart = 0;
+            for (int level = 0; level < maxCertDepth && levelStart < count; ++level)
+            {
+                final int levelEnd = count;
+                for (int index = levelStart; index < levelEnd; ++index)
+                {
+                    if (ownerTrusts[index] == OwnerTrust.ULTIMATE)
+                        continue;
+
+                    for (int i = graph.getCertifierStart(ids[index]), end = graph.getCertifierEnd(ids[index]);
+                            i < end; ++i)
+                    {
+                        final int certifierId = graph.getCertifier(i);
+                        if (id2Index.containsKey(certifierId))
+                            continue;
+
+                        if (count == ids.length)
+                        {
+                            ids = Arrays.copyOf(ids, 2 * count);
+                            ownerTrusts = Arrays.copyOf(ownerTrusts, 2 * count);
+                        }
+                        ids[count] = certifierId;
+                        ownerTrusts[count] = readOwnerTrust(graph.getPgpKey(certifierId).getPgpKeyFingerprint());
+                        utkFound |= ownerTrusts[count] == OwnerTrust.ULTIMATE;
+                        id2Index.put(certifierId, count++);
+                    }
+                }
+                levelStart = levelEnd;
+            }
+
+            if (!utkFound)
+                return Validity.NONE; // no path from any ultimately trusted key.
+
+            // Validate the cone layer by layer - exactly like updateTrustDb() does.
+            final int[] validities = new int[count];
+            final BitSet fullTrust = new BitSet(count);
+            BitSet klist = new BitSet(count);
+            for (int index = 0; index < count; ++index)
+            {
+                if (ownerTrusts[index] != OwnerTrust.ULTIMATE)
+                    continue;
+
+                fullTrust.set(index);
+                klist.set(index);
+                validities[index] = graph.getUserIdStart(ids[index]) == graph.getUserIdEnd(ids[index])
+                        ? TRUST_UNKNOWN : TRUST_ULTIMATE;
+            }
+
+            final int[] newValidities = new int[count];
+            // Once the given key is fully trusted, it is not validated again => its validity is final.
+            for (int depth = 0; depth < maxCertDepth && !klist.isEmpty() && !fullTrust.get(0); ++depth)
+            {
+                final BitSet signed = new BitSet(count);
+                for (int index = klist.nextSetBit(0); index >= 0; index = klist.nextSetBit(index + 1))
+                {
+                    for (int i = graph.getCertifiedStart(ids[index]), end = graph.getCertifiedEnd(ids[index]);
+                            i < end; ++i)
+                    {
+                        final Integer certifiedIndex = id2Index.get(graph.getCertified(i));
+                        if (certifiedIndex != null)
+                            signed.set(certifiedIndex);
+                    }
+                }
+                signed.andNot(fullTrust);
+
+                for (int index = signed.nextSetBit(0); index >= 0; index = signed.nextSetBit(index + 1))
+                    newValidities[index] = computeKeyValidity(graph, ids[index], id2Index, ownerTrusts, validities);
+
+                for (int index = signed.nextSetBit(0); index >= 0; index = signed.nextSetBit(index + 1))
+                {
+                    validities[index] = newValidities[index];
+                    if (validities[index] >= TRUST_FULL)
+                        fullTrust.set(index);
+                }
+                klist = signed;
+            }
+            return Validity.fromNumericValue(validities[0]);
+        } finally
+        {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the owner-trust of the given key.
+     *
+     * @return the owner-trust. {@link OwnerTrust#UNKNOWN UNKNOWN}, if the key has no trust record - like
+     *         {@link #loadOwnerTrusts(CertificationGraph)}.
+     */
+    private OwnerTrust readOwnerTrust(final PgpKeyFingerprint pgpKeyFingerprint)
+    {
+        final TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(pgpKeyFingerprint.getBytes());
+        if (trust == null)
+            return OwnerTrust.UNKNOWN;
+
+        return OwnerTrust.fromNumericValue(trust.getOwnerTrust() & TRUST_MASK);
+    }
+
+    /**
+     * Writes the validities calculated by {@link #validateKey(int, PgpKeyTrust)} for all
+     * user-identities of the given key.
+     *
+     * @param id
+     *            the key's {@link CertificationGraph} ID.
+     * @return the key's validity, i.e. the highest validity of its user-identities.
+     */
+    private int writeValidities(final int id, final int depth)
+    {
+        final PgpKeyTrust pgpKeyTrust = getPgpKeyTrust(certificationGraph.getPgpKey(id));
+        int keyValidity = TRUST_UNKNOWN;
+        for (final PgpUserIdTrust pgpUserIdTrust : pgpKeyTrust.getPgpUserIdTrusts())
+        {
+            final PgpUserId pgpUserId = pgpUserIdTrust.getPgpUserId();
+
+            final int validity = pgpUserIdTrust.getValidity();
+            updateValidity(pgpUserId, depth, validity,
+                    pgpUserIdTrust.getFullCount(), pgpUserIdTrust.getMarginalCount());
+
+            if (validity >= TRUST_FULL)
+                fullTrust.set(id);
+
+            keyValidity = Math.max(keyValidity, validity);
+        }
+        return keyValidity;
+    }
+
+    /**
+     * Updates the trust-database by re-validating only the keys affected by the changes made since the last update.
+     * <p>
+     * The affected keys (the <i>cone</i>) are the keys modified in the key-registry (added, removed, user-identities,
+     * certifications, expiry or revocation changed - detected by comparing digests) or certified by a key whose
+     * owner-trust changed - plus all keys downstream of them in the certification graph. The owner-trusts are read from
+     * the trust-database and compared to the ones recorded in the {@link ValidationTrace}; thus, changes made by
+     * another {@code TrustDb} instance or by GnuPG are taken into account, too. The cone's records are
+     * reset, and the layered validation of {@link #updateTrustDb()} is repeated for the cone only: For all other keys,
+     * the {@link ValidationTrace} tells whether they were validated at a certain depth and which validity they had
+     * then. Therefore, the result is exactly the same as the one of a full update.
+     * <p>
+     * Must be invoked while holding the write lock.
+     *
+     * @return <code>true</code>, if the update was done; <code>false</code>, if a full update is needed instead
+     *         (e.g. because the {@link Config} changed, a key expired, an ultimately trusted key changed, the set of
+     *         ultimately trusted keys changed or the cone is too large to be worth it).
+     */
+    protected boolean updateTrustDbIncrementally()
+    {
+        final ValidationTrace trace = validationTrace;
+        if (trace == null || !trace.isConfigUnchanged())
+            return false;
+
+        startTime = System.currentTimeMillis() / 1000;
+        // A key validated before might have expired since (this is what the version-record's next-check is for).
+        if (trace.getNextExpire(trace.getStartTime()) <= startTime)
+            return false;
+
+        final CertificationGraph graph = pgpKeyRegistry.getCertificationGraph();
+        final int keyCount = graph.getKeyCount();
+        final Map<PgpKeyFingerprint, Long> fingerprint2Digest = computeDigests(graph);
+        final Map<PgpKeyFingerprint, Long> oldFingerprint2Digest = trace.getFingerprint2Digest();
+
+        final Set<PgpKeyFingerprint> removed = new HashSet<>(oldFingerprint2Digest.keySet());
+        removed.removeAll(fingerprint2Digest.keySet());
+
+        // The ultimately trusted keys are the roots => if they changed, everything might change.
+        if (!getUltimatelyTrustedKeyFingerprints().equals(trace.getUltimatelyTrustedKeyFingerprints()))
+            return false;
+
+        final BitSet ultimatelyTrusted = new BitSet(keyCount);
+        for (final PgpKeyFingerprint pgpKeyFingerprint : trace.getUltimatelyTrustedKeyFingerprints())
+        {
+            if (removed.contains(pgpKeyFingerprint))
+                return false;
+
+            final int id = graph.getId(pgpKeyFingerprint);
+            if (id >= 0)
+                ultimatelyTrusted.set(id);
+        }
+
+        int[] todo = new int[16];
+        int todoSize = 0;
+        for (int id = 0; id < keyCount; ++id)
+        {
+            final PgpKeyFingerprint pgpKeyFingerprint = graph.getPgpKey(id).getPgpKeyFingerprint();
+            if (fingerprint2Digest.get(pgpKeyFingerprint).equals(oldFingerprint2Digest.get(pgpKeyFingerprint)))
+                continue;
+
+            if (ultimatelyTrusted.get(id))
+                return false;
+
+            todo = push(todo, todoSize++, id);
+        }
+        final int changedCount = todoSize;
+
+        final OwnerTrust[] ownerTrusts = loadOwnerTrusts(graph);
+        final Map<PgpKeyFingerprint, OwnerTrust> oldFingerprint2OwnerTrust = trace.getFingerprint2OwnerTrust();
+        int ownerTrustChangedCount = 0;
+        for (int id = 0; id < keyCount; ++id)
+        {
+            OwnerTrust oldOwnerTrust = oldFingerprint2OwnerTrust.get(graph.getPgpKey(id).getPgpKeyFingerprint());
+            if (oldOwnerTrust == null)
+                oldOwnerTrust = OwnerTrust.UNKNOWN;
+
+            if (oldOwnerTrust == ownerTrusts[id])
+                continue;
+
+            ++ownerTrustChangedCount;
+            for (int i = graph.getCertifiedStart(id), end = graph.getCertifiedEnd(id); i < end; ++i)
+                todo = push(todo, todoSize++, graph.getCertified(i));
+        }
+
+        // The ultimately trusted keys are never re-validated => the cone does not contain them.
+        final BitSet cone = new BitSet(keyCount);
+        int coneSize = 0;
+        while (todoSize > 0)
+        {
+            final int id = todo[--todoSize];
+            if (ultimatelyTrusted.get(id) || cone.get(id))
+                continue;
+
+            cone.set(id);
+            if (++coneSize * 2 > keyCount)
+            {
+                logger.debug("updateTrustDbIncrementally: Too many keys affected => full update.");
+                return false;
+            }
+            for (int i = graph.getCertifiedStart(id), end = graph.getCertifiedEnd(id); i < end; ++i)
+                todo = push(todo, todoSize++, graph.getCertified(i));
+        }
+
+        logger.debug("updateTrustDbIncrementally: changedKeys={} removedKeys={} ownerTrustChanges={} cone={}",
+                changedCount, removed.size(), ownerTrustChangedCount, coneSize);
+
+        boolean successful = false;
+        try
+        {
+            fingerprint2PgpKeyTrust = new HashMap<>();
+            certificationGraph = graph;
+            fullTrust = new BitSet(keyCount);
+            id2OwnerTrust = ownerTrusts;
+            coneValidities = new int[keyCount];
+            Arrays.fill(coneValidities, -1);
+
+            for (int id = cone.nextSetBit(0); id >= 0; id = cone.nextSetBit(id + 1))
+            {
+                final PgpKeyFingerprint pgpKeyFingerprint = graph.getPgpKey(id).getPgpKeyFingerprint();
+                resetTrustRecords(pgpKeyFingerprint);
+                trace.removeValidations(pgpKeyFingerprint);
+                coneValidities[id] = TRUST_UNKNOWN;
+            }
+            for (final PgpKeyFingerprint pgpKeyFingerprint : removed)
+            {
+                resetTrustRecords(pgpKeyFingerprint);
+                trace.removeValidations(pgpKeyFingerprint);
+            }
+
+            BitSet previousKlist = new BitSet();
+            final int maxCertDepth = Config.getInstance().getMaxCertDepth();
+            for (int depth = 0; depth < maxCertDepth; ++depth)
+            {
+                validatingDepth = depth;
+
+                // Same as validateKeyList(), but limited to the cone: A key is validated, if it is certified by a key
+                // validated at the previous depth (klist) and it is not yet fully trusted.
+                int[] validatedKeys = new int[16];
+                int validatedKeyCount = 0;
+                for (int id = cone.nextSetBit(0); id >= 0; id = cone.nextSetBit(id + 1))
+                {
+                    if (fullTrust.get(id))
+                        continue;
+
+                    for (int i = graph.getCertifierStart(id), end = graph.getCertifierEnd(id); i < end; ++i)
+                    {
+                        final int signerId = graph.getCertifier(i);
+                        final boolean inKlist = cone.get(signerId)
+                                ? previousKlist.get(signerId)
+                                : trace.isValidatedAt(graph.getPgpKey(signerId).getPgpKeyFingerprint(), depth - 1);
+                        if (inKlist)
+                        {
+                            validatedKeys = push(validatedKeys, validatedKeyCount++, id);
+                            break;
+                        }
+                    }
+                }
+                validatedKeys = Arrays.copyOf(validatedKeys, validatedKeyCount);
+                validateKeys(validatedKeys);
+
+                final BitSet klist = new BitSet(keyCount);
+                for (final int id : validatedKeys)
+                {
+                    final PgpKey pgpKey = graph.getPgpKey(id);
+                    klist.set(id);
+                    final int keyValidity = writeValidities(id, depth);
+                    coneValidities[id] = keyValidity;
+                    trace.addValidation(pgpKey.getPgpKeyFingerprint(), depth, keyValidity,
+                            getExpireTimestamp(pgpKey.getPublicKey()));
+                }
+                previousKlist = klist;
+
+                logger.debug("updateTrustDbIncrementally: depth={} keys={}", depth, validatedKeyCount);
+            }
+
+            trace.setFingerprint2Digest(fingerprint2Digest);
+            trace.setFingerprint2OwnerTrust(getFingerprint2OwnerTrust(graph, ownerTrusts));
+            trace.setStartTime(startTime);
+
+            final Date nextExpireDate = new Date(trace.getNextExpire(startTime) * 1000);
+            trustDbIo.updateVersionRecord(nextExpireDate);
+            // The trust-db is now up-to-date => a stale-marker deferred by the current batch is obsolete.
+            markTrustDbStalePending = false;
+
+            flushUnlessInBatch();
+
+            logger.info("updateTrustDbIncrementally: Next trust-db expiration date: {}",
+                    getDateFormatIso8601WithTime().format(nextExpireDate));
+            successful = true;
+            return true;
+        } finally
+        {
+            fingerprint2PgpKeyTrust = null;
+            certificationGraph = null;
+            fullTrust = null;
+            id2OwnerTrust = null;
+            coneValidities = null;
+            invalidateValidityCache();
+            if (!successful)
+                validationTrace = null; // The trace is inconsistent now => the next update must be a full one.
+        }
+    }
+
+    /**
+     * Puts the given value at the given index - growing the array, if needed.
+     *
+     * @return the array containing the value - either the given one or a larger copy.
+     */
+    private static int[] push(int[] array, final int index, final int value)
+    {
+        if (index == array.length)
+            array = Arrays.copyOf(array, 2 * array.length);
+
+        array[index] = value;
+        return array;
+    }
+
+    /**
+     * Gets the validity of the given signing key, which is relevant for the validation currently in progress.
+     * <p>
+     * During a full update, this is the validity written at the depths validated so far. During an incremental update,
+     * this is the same for the keys being re-validated - for all others, the validity they had at this depth is taken
+     * from the {@link ValidationTrace}.
+     * <p>
+     * This method does not access the trust-database and may thus be invoked by any thread.
+     *
+     * @param signerId
+     *            the signing key's {@link CertificationGraph} ID.
+     */
+    private int getSigningKeyValidity(final int signerId)
+    {
+        if (coneValidities == null)
+            return id2Validity[signerId];
+
+        final int validity = coneValidities[signerId];
+        if (validity >= 0)
+            return validity;
+
+        return validationTrace.getValidityBefore(
+                certificationGraph.getPgpKey(signerId).getPgpKeyFingerprint(), validatingDepth);
+    }
+
+    /**
+     * Reads the owner-trusts of all keys in the given graph - in one pass over the trust-database.
+     *
+     * @return the owner-trusts indexed by the keys' IDs. {@link OwnerTrust#UNKNOWN UNKNOWN} for keys without trust
+     *         record: If such a key becomes valid, {@link #updateValidity(PgpUserId, int, int, int, int)} creates its
+     *         trust record with this owner-trust.
+     */
+    private OwnerTrust[] loadOwnerTrusts(final CertificationGraph graph)
+    {
+        final OwnerTrust[] result = new OwnerTrust[graph.getKeyCount()];
+        Arrays.fill(result, OwnerTrust.UNKNOWN);
+        trustDbIo.scan(TrustRecordType.TRUST, new TrustRecordVisitor()
+        {
+            @Override
+            public boolean visit(final TrustRecordView view)
+            {
+                final TrustRecordView.Trust trust = (TrustRecordView.Trust) view;
+                final int id = graph.getId(new PgpKeyFingerprint(trust.getFingerprint()));
+                if (id >= 0)
+                    result[id] = OwnerTrust.fromNumericValue(trust.getOwnerTrust() & TRUST_MASK);
+
+                return true;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Converts the given owner-trusts into the form recorded in the {@link ValidationTrace}.
+     *
+     * @param ownerTrusts
+     *            the owner-trusts indexed by the keys' IDs - as returned by
+     *            {@link #loadOwnerTrusts(CertificationGraph)}.
+     * @return the owner-trusts by the keys' fingerprints - without those being {@link OwnerTrust#UNKNOWN UNKNOWN}.
+     */
+    private static Map<PgpKeyFingerprint, OwnerTrust> getFingerprint2OwnerTrust(final CertificationGraph graph,
+            final OwnerTrust[] ownerTrusts)
+    {
+        final Map<PgpKeyFingerprint, OwnerTrust> result = new HashMap<>();
+        for (int id = 0; id < ownerTrusts.length; ++id)
+        {
+            if (ownerTrusts[id] != OwnerTrust.UNKNOWN)
+                result.put(graph.getPgpKey(id).getPgpKeyFingerprint(), ownerTrusts[id]);
+        }
+        return result;
+    }
+
+    /**
+     * Resets the validities of the given key - like {@link #resetTrustRecords()} does for all keys.
+     */
+    private void resetTrustRecords(final PgpKeyFingerprint pgpKeyFingerprint)
+    {
+        final TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(pgpKeyFingerprint.getBytes());
+        if (trust == null)
+            return;
+
+        if (trust.getMinOwnerTrust() != 0)
+        {
+            trust.setMinOwnerTrust((short) 0);
+            trustDbIo.putTrustRecord(trust);
+        }
+
+        long recordNum = trust.getValidList();
+        while (recordNum != 0)
+        {
+            final TrustRecord.Valid valid = trustDbIo.getTrustRecord(recordNum, TrustRecord.Valid.class);
+            requireNonNull(valid, "valid");
+            if ((valid.getValidity() & TRUST_MASK) != 0 || valid.getMarginalCount() != 0 || valid.getFullCount() != 0)
+            {
+                valid.setValidity((short) (valid.getValidity() & (~TRUST_MASK)));
+                valid.setMarginalCount((short) 0);
+                valid.setFullCount((short) 0);
+                trustDbIo.putTrustRecord(valid);
+            }
+            recordNum = valid.getNext();
+        }
+    }
+
+    /**
+     * Gets all certifications of the given key: the ones of all user-identities (and -attributes) and the ones of the
+     * entire key - just like the key-registry takes them into account for
+     * {@link PgpKeyRegistry#getPgpKeyFingerprintsCertifiedBy(PgpKeyFingerprint)}.
+     */
+    private Collection<PGPSignature> getAllCertifications(final PgpKey pgpKey)
+    {
+        // getCertifications(...) already contains the certifications of the entire key - for every user-identity.
+        final Set<PGPSignature> result = Collections.newSetFromMap(new IdentityHashMap<PGPSignature, Boolean>());
+        for (final PgpUserId pgpUserId : pgpKey.getPgpUserIds())
+            result.addAll(pgpKeyRegistry.getCertifications(pgpUserId));
+
+        for (final Iterator<PGPSignature> it = getKeySignatures(pgpKey.getPublicKey()); it.hasNext();)
+        {
+            final PGPSignature pgpSignature = it.next();
+            if (pgpKeyRegistry.isCertification(pgpSignature))
+                result.add(pgpSignature);
+        }
+        return result;
+    }
+
+    /**
+     * Computes a digest of every key's properties affecting the validation (of itself and of the keys it certifies).
+     *
+     * @param graph
+     *            the graph of all keys (master-keys and sub-keys) in the key-registry. Must not be <code>null</code>.
+     * @return the digests of all keys in the graph. Never <code>null</code>.
+     */
+    private Map<PgpKeyFingerprint, Long> computeDigests(final CertificationGraph graph)
+    {
+        final Map<PgpKeyFingerprint, Long> result = new HashMap<>(2 * graph.getKeyCount());
+        for (int id = 0; id < graph.getKeyCount(); ++id)
+        {
+            final PgpKey pgpKey = graph.getPgpKey(id);
+            result.put(pgpKey.getPgpKeyFingerprint(), computeDigest(pgpKey));
+        }
+        return result;
+    }
+
+    /**
+     * Computes a 64-bit FNV-1a hash over the given key's expiry, revocation, user-identities and certifications
+     * (including whether and as which key the certifying key is known).
+     */
+    @SuppressWarnings("deprecation") // PGPPublicKey.isRevoked()
+    private long computeDigest(final PgpKey pgpKey)
+    {
+        final PGPPublicKey publicKey = pgpKey.getPublicKey();
+        long digest = 0xcbf29ce484222325L;
+        digest = fnv1a(digest, publicKey.isRevoked() ? 1 : 0);
+        digest = fnv1a(digest, publicKey.getCreationTime().getTime());
+        digest = fnv1a(digest, publicKey.getValidSeconds());
+        for (final PgpUserId pgpUserId : pgpKey.getPgpUserIds())
+        {
+            for (final byte b : pgpUserId.getNameHash().getBytes())
+                digest = fnv1a(digest, b);
+        }
+        for (final PGPSignature certification : getAllCertifications(pgpKey))
+        {
+            digest = fnv1a(digest, certification.getSignatureType());
+            digest = fnv1a(digest, certification.getKeyID());
+            final PgpKey signingKey = pgpKeyRegistry.getPgpKey(new PgpKeyId(certification.getKeyID()));
+            digest = fnv1a(digest, signingKey == null ? 0 : signingKey.getPgpKeyFingerprint().hashCode());
+        }
+        return digest;
+    }
+
+    private static long fnv1a(long hash, final long value)
+    {
+        for (int i = 0; i < 8; ++i)
+        {
+            hash ^= (value >>> (8 * i)) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
     private long getExpireTimestamp(PGPPublicKey pk)
     {
         final long validSeconds = pk.getValidSeconds();
@@ -744,53 +2017,137 @@ public class TrustDbImpl implements TrustDb, TrustConst
      * struct key_item *klist, u32 curtime, u32 *next_expire)}, but re-implemented from scratch - see
      * {@link #updateTrustDb()}.
      *
-     * @return the keys that were processed by this method.
+     * @return the {@link CertificationGraph} IDs of the keys that were processed by this method.
+     */
+    private int[] validateKeyList()
+    {
+        final BitSet signed = new BitSet(certificationGraph.getKeyCount());
+        for (final int signingId : klist)
+        {
+            for (int i = certificationGraph.getCertifiedStart(signingId),
+                    end = certificationGraph.getCertifiedEnd(signingId); i < end; ++i)
+                signed.set(certificationGraph.getCertified(i));
+        }
+
+        signed.andNot(fullTrust); // no need to validate those that are already fully trusted
+
+        final int[] result = new int[signed.cardinality()];
+        int index = 0;
+        for (int id = signed.nextSetBit(0); id >= 0; id = signed.nextSetBit(id + 1))
+            result[index++] = id;
+
+        validateKeys(result);
+        return result;
+    }
+
+    /**
+     * Determines whether the given number of keys is validated in parallel.
+     *
+     * @param keyCount
+     *            the number of keys to be validated at the current depth.
+     * @return <code>true</code>, if {@link #validateKeys(int[])} should distribute them among multiple threads.
      */
-    private List<PgpKey> validateKeyList()
+    protected boolean isValidationParallel(final int keyCount)
     {
-        final List<PgpKey> result = new ArrayList<>();
-        final Set<PgpKeyFingerprint> signedPgpKeyFingerprints = new HashSet<>();
-        for (PgpKeyFingerprint signingPgpKeyFingerprint : klist)
-            signedPgpKeyFingerprints.addAll(pgpKeyRegistry.getPgpKeyFingerprintsCertifiedBy(signingPgpKeyFingerprint));
+        return validationPool != null && keyCount >= MIN_PARALLEL_VALIDATION_KEY_COUNT;
+    }
 
-        signedPgpKeyFingerprints.removeAll(fullTrust); // no need to validate those that are already fully trusted
+    /**
+     * Validates the given keys - in parallel, if {@linkplain TrustDbOptions#getValidationParallelism() configured}
+     * and {@linkplain #isValidationParallel(int) worth it}.
+     * <p>
+     * The validation of one key only reads the owner-trusts and validities written at the previous depths - from the
+     * in-memory tables {@link #id2OwnerTrust} and {@link #id2Validity} (or {@link #coneValidities}), which are not
+     * modified before all keys of this depth were validated - and writes to its own {@link PgpKeyTrust}. The worker
+     * threads cannot acquire the lock held by the thread updating the trust-database. Therefore, all
+     * {@code PgpKeyTrust}s are created before. The results are written to the trust-database after all keys of this
+     * depth were validated, just like in the sequential case.
+     */
+    private void validateKeys(final int[] ids)
+    {
+        if (!isValidationParallel(ids.length))
+        {
+            for (final int id : ids)
+                validateKey(id, getPgpKeyTrust(certificationGraph.getPgpKey(id)));
+
+            return;
+        }
+
+        final PgpKeyTrust[] pgpKeyTrusts = new PgpKeyTrust[ids.length];
+        for (int i = 0; i < ids.length; ++i)
+        {
+            final PgpKey pgpKey = certificationGraph.getPgpKey(ids[i]);
+            pgpKeyTrusts[i] = getPgpKeyTrust(pgpKey);
+            for (final PgpUserId pgpUserId : pgpKey.getPgpUserIds())
+                pgpKeyTrusts[i].getPgpUserIdTrust(pgpUserId);
+        }
 
-        for (final PgpKeyFingerprint pgpKeyFingerprint : signedPgpKeyFingerprints)
+        final int taskCount = Math.min(ids.length, 4 * validationPool.getParallelism());
+        final List<Callable<Void>> tasks = new ArrayList<>(taskCount);
+        for (int t = 0; t < taskCount; ++t)
         {
-            final PgpKey pgpKey = pgpKeyRegistry.getPgpKey(pgpKeyFingerprint);
-            if (pgpKey == null)
+            final int start = t * ids.length / taskCount;
+            final int end = (t + 1) * ids.length / taskCount;
+            tasks.add(new Callable<Void>()
             {
-                logger.warn("key disappeared: fingerprint='{}'", pgpKeyFingerprint);
-                continue;
-            }
-            result.add(pgpKey);
-            validateKey(pgpKey);
+                @Override
+                public Void call()
+                {
+                    for (int i = start; i < end; ++i)
+                        validateKey(ids[i], pgpKeyTrusts[i]);
+
+                    return null;
+                }
+            });
+        }
+
+        try
+        {
+            for (final Future<Void> future : validationPool.invokeAll(tasks))
+                future.get();
+        } catch (final InterruptedException x)
+        {
+            Thread.currentThread().interrupt();
+            throw new TrustDbException("Interrupted while validating keys!", x);
+        } catch (final ExecutionException x)
+        {
+            final Throwable cause = x.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new TrustDbException(cause);
         }
-        return result;
     }
 
     /**
      * Inspired by {@code static int validate_one_keyblock (KBNODE kb, struct key_item *klist,
      * u32 curtime, u32 *next_expire)}, but re-implemented from scratch - see {@link #updateTrustDb()}.
      *
-     * @param pgpKey
-     *            the pgp-key to be validated. Must not be <code>null</code>.
+     * @param id
+     *            the {@link CertificationGraph} ID of the pgp-key to be validated.
+     * @param pgpKeyTrust
+     *            the pgp-key's trust receiving the result. Must not be <code>null</code>.
      */
-    private void validateKey(final PgpKey pgpKey)
+    private void validateKey(final int id, final PgpKeyTrust pgpKeyTrust)
     {
-        requireNonNull(pgpKey, "pgpKey");
+        requireNonNull(pgpKeyTrust, "pgpKeyTrust");
+        final PgpKey pgpKey = certificationGraph.getPgpKey(id);
         logger.debug("validateKey: {}", pgpKey);
 
         final Config config = Config.getInstance();
-        final PgpKeyTrust pgpKeyTrust = getPgpKeyTrust(pgpKey);
 
-        final boolean expired = isExpired(pgpKey.getPublicKey());
+        final boolean expired = _isExpired(pgpKey.getPublicKey());
         // final boolean disabled = isDisabled(pgpKey.getPublicKey());
         final boolean revoked = pgpKey.getPublicKey().isRevoked();
 
-        for (final PgpUserId pgpUserId : pgpKey.getPgpUserIds())
+        final CertificationGraph graph = certificationGraph;
+        for (int userIdIndex = graph.getUserIdStart(id), userIdEnd = graph.getUserIdEnd(id);
+                userIdIndex < userIdEnd; ++userIdIndex)
         {
-            final PgpUserIdTrust pgpUserIdTrust = pgpKeyTrust.getPgpUserIdTrust(pgpUserId);
+            final PgpUserIdTrust pgpUserIdTrust = pgpKeyTrust.getPgpUserIdTrust(graph.getPgpUserId(userIdIndex));
 
             pgpUserIdTrust.setValidity(0); // TRUST_UNKNOWN = 0
             pgpUserIdTrust.setUltimateCount(0);
@@ -806,29 +2163,22 @@ public class TrustDbImpl implements TrustDb, TrustConst
             if (revoked)
                 continue;
 
-            for (PGPSignature certification : pgpKeyRegistry.getCertifications(pgpUserId))
+            // The graph contains only the certifications signed by keys in the registry - the others are irrelevant.
+            for (int i = graph.getCertificationStart(userIdIndex), end = graph.getCertificationEnd(userIdIndex);
+                    i < end; ++i)
             {
-                // It seems, the PGP trust model does not care about the certification level :-(
-                // Any of the 3 DEFAULT, CASUAL, POSITIVE is as fine as the other -
-                // there is no difference (at least according to my tests).
-                if (certification.getSignatureType() != PGPSignature.DEFAULT_CERTIFICATION
-                        && certification.getSignatureType() != PGPSignature.CASUAL_CERTIFICATION
-                        && certification.getSignatureType() != PGPSignature.POSITIVE_CERTIFICATION)
+                if (!isValidatedCertificationType(graph.getCertificationType(i)))
                     continue;
 
-                final PgpKey signingKey = pgpKeyRegistry.getPgpKey(new PgpKeyId(certification.getKeyID()));
-                if (signingKey == null)
-                    continue;
-
-                final OwnerTrust signingOwnerTrust = getOwnerTrust(signingKey.getPublicKey());
-                if (signingKey.getPgpKeyId().equals(pgpKey.getPgpKeyId())
-                        && signingOwnerTrust != OwnerTrust.ULTIMATE)
+                final int signerId = graph.getCertificationSignerId(i);
+                final OwnerTrust signingOwnerTrust = id2OwnerTrust[signerId];
+                if (signerId == id && signingOwnerTrust != OwnerTrust.ULTIMATE)
                 {
                     // It's *not* our own key [*not* ULTIMATE] - hence we ignore the self-signature.
                     continue;
                 }
 
-                int signingValidity = getValidityRaw(signingKey.getPublicKey()) & TRUST_MASK;
+                int signingValidity = getSigningKeyValidity(signerId);
                 if (signingValidity <= TRUST_MARGINAL)
                 {
                     // If the signingKey is trusted only marginally or less, we ignore the certification completely.
@@ -853,14 +2203,109 @@ public class TrustDbImpl implements TrustDb, TrustConst
                 }
             }
 
-            if (pgpUserIdTrust.getUltimateCount() >= 1)
-                pgpUserIdTrust.setValidity(TRUST_FULL);
-            else if (pgpUserIdTrust.getFullCount() >= config.getCompletesNeeded())
-                pgpUserIdTrust.setValidity(TRUST_FULL);
-            else if (pgpUserIdTrust.getFullCount() + pgpUserIdTrust.getMarginalCount() >= config.getMarginalsNeeded())
-                pgpUserIdTrust.setValidity(TRUST_FULL);
-            else if (pgpUserIdTrust.getFullCount() >= 1 || pgpUserIdTrust.getMarginalCount() >= 1)
-                pgpUserIdTrust.setValidity(TRUST_MARGINAL);
+            pgpUserIdTrust.setValidity(getUserIdValidity(config, pgpUserIdTrust.getUltimateCount(),
+                    pgpUserIdTrust.getFullCount(), pgpUserIdTrust.getMarginalCount()));
+        }
+    }
+
+    /**
+     * Calculates the validity of the given key like {@link #validateKey(int, PgpKeyTrust)}, but reading the
+     * owner-trusts and validities of the signing keys from the given tables - see {@link #computeValidity(PgpKey)}.
+     *
+     * @param id
+     *            the {@link CertificationGraph} ID of the pgp-key to be validated.
+     * @param id2Index
+     *            the indexes of the keys in the cone - by their IDs. Must not be <code>null</code>.
+     * @param ownerTrusts
+     *            the owner-trusts of the keys in the cone. Must not be <code>null</code>.
+     * @param validities
+     *            the validities of the keys in the cone, as written at the depths validated so far. Must not be
+     *            <code>null</code>.
+     * @return the key's validity, i.e. the highest validity of its user-identities.
+     */
+    @SuppressWarnings("deprecation") // PGPPublicKey.isRevoked()
+    private static int computeKeyValidity(final CertificationGraph graph, final int id,
+            final Map<Integer, Integer> id2Index, final OwnerTrust[] ownerTrusts, final int[] validities)
+    {
+        final PGPPublicKey publicKey = graph.getPgpKey(id).getPublicKey();
+        if (_isExpired(publicKey) || publicKey.isRevoked())
+            return TRUST_UNKNOWN;
+
+        final Config config = Config.getInstance();
+        int keyValidity = TRUST_UNKNOWN;
+        for (int userIdIndex = graph.getUserIdStart(id), userIdEnd = graph.getUserIdEnd(id);
+                userIdIndex < userIdEnd; ++userIdIndex)
+        {
+            int ultimateCount = 0;
+            int fullCount = 0;
+            int marginalCount = 0;
+            for (int i = graph.getCertificationStart(userIdIndex), end = graph.getCertificationEnd(userIdIndex);
+                    i < end; ++i)
+            {
+                if (!isValidatedCertificationType(graph.getCertificationType(i)))
+                    continue;
+
+                final int signerId = graph.getCertificationSignerId(i);
+                final Integer signerIndex = id2Index.get(signerId);
+                if (signerIndex == null)
+                    continue; // beyond the cone's border => cannot influence the result.
+
+                final OwnerTrust signingOwnerTrust = ownerTrusts[signerIndex];
+                if (signerId == id && signingOwnerTrust != OwnerTrust.ULTIMATE)
+                    continue;
+
+                if (validities[signerIndex] <= TRUST_MARGINAL)
+                    continue;
+
+                switch (signingOwnerTrust)
+                {
+                    case ULTIMATE:
+                        ++ultimateCount;
+                        break;
+                    case FULL:
+                        ++fullCount;
+                        break;
+                    case MARGINAL:
+                        ++marginalCount;
+                        break;
+                    default: // ignoring!
+                        break;
+                }
+            }
+            keyValidity = Math.max(keyValidity, getUserIdValidity(config, ultimateCount, fullCount, marginalCount));
         }
+        return keyValidity;
+    }
+
+    /**
+     * Determines whether a certification of the given type is taken into account when validating a key.
+     */
+    private static boolean isValidatedCertificationType(final int certificationType)
+    {
+        // It seems, the PGP trust model does not care about the certification level :-(
+        // Any of the 3 DEFAULT, CASUAL, POSITIVE is as fine as the other -
+        // there is no difference (at least according to my tests).
+        return certificationType == PGPSignature.DEFAULT_CERTIFICATION
+                || certificationType == PGPSignature.CASUAL_CERTIFICATION
+                || certificationType == PGPSignature.POSITIVE_CERTIFICATION;
+    }
+
+    /**
+     * Gets the validity of a user-identity certified by the given numbers of valid keys - counted by their
+     * owner-trust.
+     */
+    private static int getUserIdValidity(final Config config, final int ultimateCount, final int fullCount,
+            final int marginalCount)
+    {
+        if (ultimateCount >= 1)
+            return TRUST_FULL;
+        else if (fullCount >= config.getCompletesNeeded())
+            return TRUST_FULL;
+        else if (fullCount + marginalCount >= config.getMarginalsNeeded())
+            return TRUST_FULL;
+        else if (fullCount >= 1 || marginalCount >= 1)
+            return TRUST_MARGINAL;
+        else
+            return TRUST_UNKNOWN;
     }
 }
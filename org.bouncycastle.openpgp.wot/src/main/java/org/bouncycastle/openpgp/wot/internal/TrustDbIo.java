@@ -2,24 +2,39 @@ package org.bouncycastle.openpgp.wot.internal;
 
 import static java.util.Objects.*;
 import static org.bouncycastle.openpgp.wot.DateUtil.*;
-import static org.bouncycastle.openpgp.wot.internal.Util.*;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 
 import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.wot.Config;
+import org.bouncycastle.openpgp.wot.Durability;
 import org.bouncycastle.openpgp.wot.PgpFile;
 import org.bouncycastle.openpgp.wot.PgpRandomAccessFile;
+import org.bouncycastle.openpgp.wot.RecordCacheEviction;
 import org.bouncycastle.openpgp.wot.TrustConst;
 import org.bouncycastle.openpgp.wot.TrustDbIoException;
+import org.bouncycastle.openpgp.wot.TrustDbOptions;
 import org.bouncycastle.openpgp.wot.internal.TrustRecord.HashLst;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,14 +56,82 @@ class TrustDbIo implements AutoCloseable, TrustConst
     private static final Logger logger = LoggerFactory.getLogger(TrustDbIo.class);
 
     private final SortedMap<Long, TrustRecord> dirtyRecordNum2TrustRecord = new TreeMap<>();
-    private final LinkedHashSet<Long> cacheRecordNums = new LinkedHashSet<Long>();
-    private final Map<Long, TrustRecord> cacheRecordNum2TrustRecord = new HashMap<>();
+    private final StripedRecordCache cache;
+
+    // Buffers and flyweight views re-used for every read. They avoid allocating a new byte[], TrustRecord (and Date)
+    // for each record read - especially while walking the hash table. Readers run concurrently => one set per thread.
+    private final ThreadLocal<ReadBuffers> readBuffers = new ThreadLocal<ReadBuffers>()
+    {
+        @Override
+        protected ReadBuffers initialValue()
+        {
+            return new ReadBuffers();
+        }
+    };
+
+    private static final class ReadBuffers
+    {
+        final ByteBuffer recordBuffer = ByteBuffer.allocate(TRUST_RECORD_LEN);
+        final ByteBuffer hashTblBuffer = ByteBuffer.allocate(TRUST_RECORD_LEN);
+        final ByteBuffer hashLstBuffer = ByteBuffer.allocate(TRUST_RECORD_LEN);
+        final ByteBuffer itemBuffer = ByteBuffer.allocate(TRUST_RECORD_LEN);
+        final TrustRecordView.HashTbl hashTblView = new TrustRecordView.HashTbl();
+        final TrustRecordView.HashLst hashLstView = new TrustRecordView.HashLst();
+        final TrustRecordView.Trust itemView = new TrustRecordView.Trust();
+    }
+
+    // Buffers used while writing. Access is guarded by the write lock.
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocate(TRUST_RECORD_LEN);
+    /** Maximum number of records written by {@link #flush()} with one single write-operation. */
+    private static final int MAX_RECORDS_PER_WRITE = 1024;
+    private final ByteBuffer runBuffer = ByteBuffer.allocate(MAX_RECORDS_PER_WRITE * TRUST_RECORD_LEN);
+    private final ByteBuffer diskBuffer = ByteBuffer.allocate(MAX_RECORDS_PER_WRITE * TRUST_RECORD_LEN);
+    private final ByteBuffer compareBuffer = ByteBuffer.allocate(TRUST_RECORD_LEN);
+    /** Number of {@link TrustRecord.HashTbl} records making up one hash table. */
+    private static final int HASH_TABLE_RECORD_COUNT = (256 + ITEMS_PER_HTBL_RECORD - 1) / ITEMS_PER_HTBL_RECORD;
+    /** Number of records read by {@link #scan(TrustRecordType, TrustRecordVisitor)} at once (64000 bytes). */
+    private static final int SCAN_BLOCK_RECORD_COUNT = 1600;
 
     private final PgpFile file;
-    private final Object mutex;
+    private final Lock readLock;
+    private final Lock writeLock;
     private final PgpRandomAccessFile raf;
+    private final TrustDbJournal journal;
+    private final FingerprintIndex fingerprintIndex;
+    private final PgpFile bloomFilterFile;
+    private FingerprintBloomFilter bloomFilter;
+    private final int maxHashListChainLength;
+    private final Durability durability;
+    private final long groupCommitIntervalMillis;
     private boolean closed;
 
+    /**
+     * Shared by all instances using {@link Durability#GROUP_COMMIT}; created lazily. In contrast to a {@code Timer},
+     * it survives a failing task.
+     */
+    private static ScheduledExecutorService groupCommitExecutor;
+    private Runnable groupCommitTask;
+    private Future<?> groupCommitFuture;
+    private boolean syncPending;
+
+    /**
+     * Create an instance of {@code TrustDbIo} with the given file (usually named {@code trustdb.gpg}).
+     * <p>
+     * <b>Important:</b> You must {@linkplain #close() close} this instance!
+     *
+     * @param file
+     *            the file to read from and write to. Must not be <code>null</code>. Is created, if not yet existing.
+     * @param lock
+     *            the lock guarding the given {@code trustdb.gpg}. Must not be <code>null</code>. Lookups take its read
+     *            lock and thus run concurrently, while modifications (and flushing) take its write lock.
+     * @throws TrustDbIoException
+     *             if reading from/writing to the {@code trustdb.gpg} failed.
+     */
+    public TrustDbIo(final PgpFile file, final ReadWriteLock lock) throws TrustDbIoException
+    {
+        this(file, lock, new TrustDbOptions());
+    }
+
     /**
      * Create an instance of {@code TrustDbIo} with the given file (usually named {@code trustdb.gpg}).
      * <p>
@@ -56,22 +139,148 @@ class TrustDbIo implements AutoCloseable, TrustConst
      *
      * @param file
      *            the file to read from and write to. Must not be <code>null</code>. Is created, if not yet existing.
-     * @param mutex the mutex used for the pgp/gnupg directory the given {@code trustdb.gpg} belongs to. Must not be <code>null</code>.
+     * @param lock
+     *            the lock guarding the given {@code trustdb.gpg}. Must not be <code>null</code>. Lookups take its read
+     *            lock and thus run concurrently, while modifications (and flushing) take its write lock.
+     * @param options
+     *            the options controlling caching and durability. Must not be <code>null</code>.
      * @throws TrustDbIoException
      *             if reading from/writing to the {@code trustdb.gpg} failed.
      */
-    public TrustDbIo(final PgpFile file, final Object mutex) throws TrustDbIoException
+    public TrustDbIo(final PgpFile file, final ReadWriteLock lock, final TrustDbOptions options)
+            throws TrustDbIoException
     {
         this.file = requireNonNull(file, "file");
-        this.mutex = requireNonNull(mutex, "mutex");
+        requireNonNull(lock, "lock");
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+        requireNonNull(options, "options");
+        this.durability = options.getDurability();
+        this.groupCommitIntervalMillis = options.getGroupCommitIntervalMillis();
+        this.maxHashListChainLength = options.getMaxHashListChainLength();
+        this.cache = new StripedRecordCache(options.getCacheSizeBytes(), options.getRecordCacheEviction());
         try {
         	this.raf = file.createRandomAccessFile();
         } catch (IOException e) {
         	throw new TrustDbIoException(e);
         }
 
+        this.bloomFilterFile = options.isBloomFilterEnabled() ? options.getBloomFilterFile() : null;
+        // Loaded before the journal is replayed: The replay modifies the file without touching the filter.
+        FingerprintBloomFilter bloomFilter = bloomFilterFile == null ? null : loadBloomFilter();
+
+        if (options.getJournalFile() == null)
+            this.journal = null;
+        else
+        {
+            this.journal = new TrustDbJournal(options.getJournalFile(), durability != Durability.OS_BUFFERED);
+            if (journal.replay(raf) > 0)
+                bloomFilter = null;
+        }
+
         if (getTrustRecord(0, TrustRecord.Version.class) == null)
             createVersionRecord();
+
+        // Created here rather than lazily, because a lookup only holds the read lock.
+        this.trustHashRec = getOrCreateTrustHashRec();
+
+        this.fingerprintIndex = options.isFingerprintIndexEnabled() ? createFingerprintIndex() : null;
+
+        if (bloomFilter == null && options.isBloomFilterEnabled())
+            bloomFilter = createBloomFilter(getFileRecordCount());
+
+        this.bloomFilter = bloomFilter;
+    }
+
+    private FingerprintBloomFilter createBloomFilter(final long capacity) throws TrustDbIoException
+    {
+        final FingerprintBloomFilter bloomFilter = new FingerprintBloomFilter(
+                (int) Math.min(Integer.MAX_VALUE / 2, capacity));
+        final byte[] fingerprint = new byte[FingerprintIndex.FINGERPRINT_LEN];
+        scan(TrustRecordType.TRUST, new TrustRecordVisitor()
+        {
+            @Override
+            public boolean visit(final TrustRecordView view)
+            {
+                view.copyBytes(2, fingerprint);
+                bloomFilter.put(fingerprint);
+                return true;
+            }
+        });
+        logger.debug("createBloomFilter: {} trust records put", bloomFilter.size());
+        return bloomFilter;
+    }
+
+    /**
+     * Loads the Bloom filter from the {@link #bloomFilterFile} and invalidates the file - it is only valid again, after
+     * it was written by {@link #saveBloomFilter()}. Thus, the filter is never loaded after a crash.
+     *
+     * @return the filter or <code>null</code>, if the file does not contain a filter matching the
+     *         {@code trustdb.gpg}.
+     */
+    private FingerprintBloomFilter loadBloomFilter()
+    {
+        FingerprintBloomFilter bloomFilter = null;
+        try
+        {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(bloomFilterFile.createInputStream()));)
+            {
+                final long trustDbLength = in.readLong();
+                final long trustDbLastModified = in.readLong();
+                if (trustDbLength == raf.getLength() && trustDbLastModified == file.getLastModified())
+                    bloomFilter = FingerprintBloomFilter.readFrom(in);
+                else
+                    logger.debug("loadBloomFilter: {} is outdated", bloomFilterFile.getId());
+            } catch (EOFException x)
+            {
+                logger.debug("loadBloomFilter: {} is empty or incomplete", bloomFilterFile.getId());
+            }
+            bloomFilterFile.createOutputStream().close();
+        } catch (IOException x)
+        {
+            logger.warn("loadBloomFilter: " + x, x);
+            return null;
+        }
+        return bloomFilter;
+    }
+
+    /**
+     * Writes the Bloom filter to the {@link #bloomFilterFile}. This must be done after the {@code trustdb.gpg} was
+     * closed, because its length and timestamp are recorded.
+     *
+     * @param trustDbLength
+     *            the final length of the {@code trustdb.gpg}.
+     */
+    private void saveBloomFilter(final long trustDbLength)
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bloomFilterFile.createOutputStream()));)
+        {
+            out.writeLong(trustDbLength);
+            out.writeLong(file.getLastModified());
+            bloomFilter.writeTo(out);
+        } catch (IOException x)
+        {
+            // The filter is only an optimization => it is rebuilt next time.
+            logger.warn("saveBloomFilter: " + x, x);
+        }
+    }
+
+    private FingerprintIndex createFingerprintIndex() throws TrustDbIoException
+    {
+        final FingerprintIndex fingerprintIndex = new FingerprintIndex();
+        final byte[] fingerprint = new byte[FingerprintIndex.FINGERPRINT_LEN];
+        scan(TrustRecordType.TRUST, new TrustRecordVisitor()
+        {
+            @Override
+            public boolean visit(final TrustRecordView view)
+            {
+                view.copyBytes(2, fingerprint);
+                fingerprintIndex.put(fingerprint, view.getRecordNum());
+                return true;
+            }
+        });
+        logger.debug("createFingerprintIndex: {} trust records indexed", fingerprintIndex.size());
+        return fingerprintIndex;
     }
 
     private void createVersionRecord() throws TrustDbIoException
@@ -96,7 +305,9 @@ class TrustDbIo implements AutoCloseable, TrustConst
 
     public void updateVersionRecord(final Date nextCheck) throws TrustDbIoException
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
             requireNonNull(nextCheck, "nextCheck");
 
             TrustRecord.Version version = getTrustRecord(0, TrustRecord.Version.class);
@@ -113,43 +324,68 @@ class TrustDbIo implements AutoCloseable, TrustConst
             version.setMinCertLevel(config.getMinCertLevel());
 
             putTrustRecord(version);
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
     public TrustRecord getTrustRecord(final long recordNum) throws TrustDbIoException
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             return getTrustRecord(recordNum, TrustRecord.class);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     public TrustRecord.Trust getTrustByPublicKey(PGPPublicKey pk) throws TrustDbIoException
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             final byte[] fingerprint = pk.getFingerprint();
             return getTrustByFingerprint(fingerprint);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     /** Record number of the trust hashtable. */
-    private long trustHashRec = 0;
+    private volatile long trustHashRec;
+
+    /**
+     * The number of records of the new layout, while {@link #compact(TrustFilter)} is running; otherwise -1.
+     */
+    private long compactedRecordCount = -1;
 
     protected long getTrustHashRec()
     {
-        synchronized (mutex) {
-            if (trustHashRec == 0)
-            {
-                TrustRecord.Version version = getTrustRecord(0, TrustRecord.Version.class);
-                requireNonNull(version, "version");
+        return trustHashRec;
+    }
 
-                trustHashRec = version.getTrustHashTbl();
-                if (trustHashRec == 0)
-                {
-                    createHashTable(0);
-                    trustHashRec = version.getTrustHashTbl();
-                }
+    private long getOrCreateTrustHashRec() throws TrustDbIoException
+    {
+        writeLock.lock();
+        try
+        {
+            TrustRecord.Version version = getTrustRecord(0, TrustRecord.Version.class);
+            requireNonNull(version, "version");
+
+            if (version.getTrustHashTbl() == 0)
+            {
+                createHashTable(0);
+                // createHashTable(...) modified its own instance of the version record => read it again.
+                version = getTrustRecord(0, TrustRecord.Version.class);
             }
-            return trustHashRec;
+            return version.getTrustHashTbl();
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
@@ -165,42 +401,47 @@ class TrustDbIo implements AutoCloseable, TrustConst
 
         flush(); // make sure, raf.length is correct.
 
-        long offset;
-        long recnum;
+        // Now write the records making up the hash table.
+        final long recnum = allocateHashTable();
+        if (type == 0)
+            version.setTrustHashTbl(recnum);
+
+        // Update the version record and flush.
+        putTrustRecord(version);
+        flush();
+    }
+
+    /**
+     * Gets the number of records in the file - including the records appended by batches still pending in the
+     * journal. Dirty records are not taken into account.
+     *
+     * @return the number of records in the file.
+     */
+    private long getFileRecordCount() throws TrustDbIoException
+    {
+        if (compactedRecordCount >= 0)
+            return compactedRecordCount;
 
+        long recordCount;
         try
         {
-            offset = raf.getLength();
-            raf.seek(offset);
+            recordCount = raf.getLength() / TRUST_RECORD_LEN;
         } catch (IOException e)
         {
             throw new TrustDbIoException(e);
         }
+        if (journal != null)
+            recordCount = Math.max(recordCount, journal.getMaxUnappliedRecordNum() + 1);
 
-        recnum = offset / TRUST_RECORD_LEN;
-        if (recnum <= 0) // This is will never be the first record.
-            throw new IllegalStateException("recnum <= 0");
-
-        if (type == 0)
-            version.setTrustHashTbl(recnum);
-
-        // Now write the records making up the hash table.
-        final int n = (256 + ITEMS_PER_HTBL_RECORD - 1) / ITEMS_PER_HTBL_RECORD;
-        for (int i = 0; i < n; ++i, ++recnum)
-        {
-            TrustRecord.HashTbl hashTable = new TrustRecord.HashTbl();
-            hashTable.setRecordNum(recnum);
-            putTrustRecord(hashTable);
-        }
-        // Update the version record and flush.
-        putTrustRecord(version);
-        flush();
+        return recordCount;
     }
 
     // ulong tdbio_new_recnum ()
     protected long newRecordNum() throws TrustDbIoException
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
             long recordNum;
 
             // Look for Free records.
@@ -222,15 +463,7 @@ class TrustDbIo implements AutoCloseable, TrustConst
             }
             else
             { // Not found - append a new record.
-                final long fileLength;
-                try
-                {
-                    fileLength = raf.getLength();
-                } catch (IOException e)
-                {
-                    throw new TrustDbIoException(e);
-                }
-                recordNum = fileLength / TRUST_RECORD_LEN;
+                recordNum = getFileRecordCount();
 
                 if (recordNum < 1) // this is will never be the first record
                     throw new IllegalStateException("recnum < 1");
@@ -252,370 +485,774 @@ class TrustDbIo implements AutoCloseable, TrustConst
             putTrustRecord(unused);
 
             return recordNum;
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
     public TrustRecord.Trust getTrustByFingerprint(final byte[] fingerprint) throws TrustDbIoException
     {
-        synchronized (mutex) {
-            /* Locate the trust record using the hash table */
-            TrustRecord rec = getTrustRecordViaHashTable(getTrustHashRec(), fingerprint, new TrustRecordMatcher()
+        readLock.lock();
+        try
+        {
+            requireNonNull(fingerprint, "fingerprint");
+            if (bloomFilter != null && !bloomFilter.mightContain(fingerprint))
+                return null; // definitely not contained.
+
+            if (fingerprintIndex != null)
             {
-                @Override
-                public boolean matches(final TrustRecord trustRecord)
-                {
-                    if (!(trustRecord instanceof TrustRecord.Trust))
-                        return false;
+                // The index contains every trust record => a fingerprint not found does not exist.
+                final long recordNum = fingerprintIndex.get(fingerprint);
+                if (recordNum == 0)
+                    return null;
 
-                    final TrustRecord.Trust trust = (TrustRecord.Trust) trustRecord;
-                    return Arrays.equals(trust.getFingerprint(), fingerprint);
-                }
-            });
-            return (TrustRecord.Trust) rec;
+                final ReadBuffers b = readBuffers.get();
+                if (readRecord(recordNum, b.itemBuffer)
+                        && TRUST_FINGERPRINT_MATCHER.matches(b.itemView.wrap(b.itemBuffer, 0, recordNum), fingerprint))
+                    return (TrustRecord.Trust) decodeTrustRecord(b.itemBuffer, 0, recordNum);
+
+                logger.warn("getTrustByFingerprint: fingerprint-index is out of sync at record {}", recordNum);
+            }
+
+            /* Locate the trust record using the hash table */
+            final long recordNum = getTrustRecordNumViaHashTable(getTrustHashRec(), fingerprint, TRUST_FINGERPRINT_MATCHER);
+            if (recordNum == 0)
+                return null;
+
+            return getTrustRecord(recordNum, TrustRecord.Trust.class);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     private static interface TrustRecordMatcher
     {
-        boolean matches(TrustRecord trustRecord);
+        boolean matches(TrustRecordView trustRecordView, byte[] key);
     }
 
-    // static gpg_error_t lookup_hashtable (ulong table, const byte *key, size_t keylen, int (*cmpfnc)(const void*,
-    // const TRUSTREC *), const void *cmpdata, TRUSTREC *rec )
-    public TrustRecord getTrustRecordViaHashTable(long table, byte[] key, TrustRecordMatcher matcher)
+    private static final TrustRecordMatcher TRUST_FINGERPRINT_MATCHER = new TrustRecordMatcher()
     {
-        synchronized (mutex) {
-            long hashrec, item;
-            int msb;
-            int level = 0;
-
-            hashrec = table;
-            next_level: while (true)
-            {
-                msb = key[level] & 0xff;
-                hashrec += msb / ITEMS_PER_HTBL_RECORD;
-                TrustRecord.HashTbl hashTable = getTrustRecord(hashrec, TrustRecord.HashTbl.class);
-                // requireNonNull("hashTable", hashTable);
-                if (hashTable == null)
-                    return null; // not found!
+        @Override
+        public boolean matches(final TrustRecordView trustRecordView, final byte[] key)
+        {
+            if (trustRecordView.getType() != TrustRecordType.TRUST)
+                return false;
 
-                item = hashTable.getItem(msb % ITEMS_PER_HTBL_RECORD);
-                if (item == 0)
-                    return null; // not found!
+            return ((TrustRecordView.Trust) trustRecordView).fingerprintEquals(key);
+        }
+    };
 
-                TrustRecord record = getTrustRecord(item);
-                requireNonNull(record, "record");
+    public TrustRecord getTrustRecordViaHashTable(long table, byte[] key, TrustRecordMatcher matcher)
+    {
+        readLock.lock();
+        try
+        {
+            final long recordNum = getTrustRecordNumViaHashTable(table, key, matcher);
+            return recordNum == 0 ? null : getTrustRecord(recordNum);
+        } finally
+        {
+            readLock.unlock();
+        }
+    }
 
-                if (record.getType() == TrustRecordType.HTBL)
-                {
-                    hashrec = item;
-                    if (++level >= key.length)
-                        throw new TrustDbIoException("hashtable has invalid indirections");
+    /**
+     * Looks up a record via the hash table.
+     * <p>
+     * The records are decoded in place by the flyweight views - this method does not create any garbage.
+     *
+     * @return the number of the record found or 0, if there is none matching.
+     */
+    // static gpg_error_t lookup_hashtable (ulong table, const byte *key, size_t keylen, int (*cmpfnc)(const void*,
+    // const TRUSTREC *), const void *cmpdata, TRUSTREC *rec )
+    private long getTrustRecordNumViaHashTable(long table, byte[] key, TrustRecordMatcher matcher)
+    {
+        final ReadBuffers b = readBuffers.get();
+        final ByteBuffer hashTblBuffer = b.hashTblBuffer, hashLstBuffer = b.hashLstBuffer, itemBuffer = b.itemBuffer;
+        final TrustRecordView.HashTbl hashTblView = b.hashTblView;
+        final TrustRecordView.HashLst hashLstView = b.hashLstView;
+        final TrustRecordView.Trust itemView = b.itemView;
+        long hashrec, item;
+        int msb;
+        int level = 0;
+
+        hashrec = table;
+        next_level: while (true)
+        {
+            msb = key[level] & 0xff;
+            hashrec += msb / ITEMS_PER_HTBL_RECORD;
+            if (!readRecord(hashrec, hashTblBuffer))
+                return 0; // not found!
 
-                    continue next_level;
-                }
+            hashTblView.wrap(hashTblBuffer, 0, hashrec);
+            assertType(hashTblView, TrustRecordType.HTBL);
 
-                if (record.getType() == TrustRecordType.HLST)
-                {
-                    TrustRecord.HashLst hashList = (TrustRecord.HashLst) record;
+            item = hashTblView.getItem(msb % ITEMS_PER_HTBL_RECORD);
+            if (item == 0)
+                return 0; // not found!
 
-                    for (;;)
-                    {
-                        for (int i = 0; i < ITEMS_PER_HLST_RECORD; i++)
-                        {
-                            if (hashList.getRNum(i) != 0)
-                            {
-                                TrustRecord tmp = getTrustRecord(hashList.getRNum(i));
-                                if (tmp != null && matcher.matches(tmp))
-                                    return tmp;
-                            }
-                        }
+            if (!readRecord(item, itemBuffer))
+                throw new TrustDbIoException(String.format("hashtbl %d: item %d points beyond the end of the file",
+                        hashrec, item));
 
-                        if (hashList.getNext() != 0)
-                        {
-                            hashList = getTrustRecord(hashList.getNext(), TrustRecord.HashLst.class);
-                            requireNonNull(hashList, "hashList");
-                        }
-                        else
-                            return null;
-                    }
-                }
+            itemView.wrap(itemBuffer, 0, item);
+            final TrustRecordType itemType = itemView.getType();
+            if (itemType == TrustRecordType.HTBL)
+            {
+                hashrec = item;
+                if (++level >= key.length)
+                    throw new TrustDbIoException("hashtable has invalid indirections");
 
-                if (matcher.matches(record))
-                    return record;
-                else
-                    return null;
+                continue next_level;
             }
-        }
-    }
-
-    public <T extends TrustRecord> T getTrustRecord(final long recordNum, Class<T> expectedTrustRecordClass)
-            throws TrustDbIoException
-    {
-        synchronized (mutex) {
-            requireNonNull(expectedTrustRecordClass, "expectedTrustRecordClass");
-            final TrustRecordType expectedType = expectedTrustRecordClass ==
-                    TrustRecord.class ? null : TrustRecordType.fromClass(expectedTrustRecordClass);
 
-            TrustRecord record = getFromCache(recordNum);
-            if (record == null)
+            if (itemType == TrustRecordType.HLST)
             {
-                try
-                {
-                    raf.seek(recordNum * TRUST_RECORD_LEN);
-                } catch (IOException x)
-                {
-                    throw new TrustDbIoException(x);
-                }
+                hashLstBuffer.clear();
+                hashLstBuffer.put(itemBuffer.array(), 0, TRUST_RECORD_LEN);
+                hashLstView.wrap(hashLstBuffer, 0, item);
 
-                final byte[] buf = new byte[TRUST_RECORD_LEN];
-                try
-                {
-                    raf.readFully(buf);
-                } catch (EOFException x)
+                for (;;)
                 {
-                    return null;
-                } catch (IOException x)
-                {
-                    throw new TrustDbIoException(x);
-                }
-
-                int bufIdx = 0;
+                    for (int i = 0; i < ITEMS_PER_HLST_RECORD; i++)
+                    {
+                        final long rnum = hashLstView.getRNum(i);
+                        if (rnum != 0 && readRecord(rnum, itemBuffer)
+                                && matcher.matches(itemView.wrap(itemBuffer, 0, rnum), key))
+                            return rnum;
+                    }
 
-                final TrustRecordType type = TrustRecordType.fromId((short) (buf[bufIdx++] & 0xFF));
-                if (expectedType != null && !expectedType.equals(type))
-                    throw new IllegalStateException(String.format("expectedType != foundType :: %s != %s", expectedType,
-                            type));
+                    final long next = hashLstView.getNext();
+                    if (next == 0)
+                        return 0;
 
-                ++bufIdx; // Skip reserved byte.
+                    if (!readRecord(next, hashLstBuffer))
+                        throw new TrustDbIoException(String.format("hashlst %d: next %d points beyond the end of the file",
+                                hashLstView.getRecordNum(), next));
 
-                switch (type)
-                {
-                    case UNUSED: // unused (free) record
-                        record = new TrustRecord.Unused();
-                        break;
-                    case VERSION: // version record
-                        final TrustRecord.Version version = new TrustRecord.Version();
-                        record = version;
-
-                        --bufIdx; // undo skip reserved byte, because this does not apply to VERSION record.
-                        if (buf[bufIdx++] != 'g'
-                                || buf[bufIdx++] != 'p'
-                                || buf[bufIdx++] != 'g')
-                            throw new TrustDbIoException(String.format("Not a trustdb file: %s", file.getId()));
-
-                        version.version = (short) (buf[bufIdx++] & 0xFF);
-                        version.marginalsNeeded = (short) (buf[bufIdx++] & 0xFF);
-                        version.completesNeeded = (short) (buf[bufIdx++] & 0xFF);
-                        version.certDepth = (short) (buf[bufIdx++] & 0xFF);
-                        version.trustModel = (short) (buf[bufIdx++] & 0xFF);
-                        version.minCertLevel = (short) (buf[bufIdx++] & 0xFF);
-
-                        bufIdx += 2; // no idea why, but we have to skip 2 bytes
-                        version.created = new Date(1000L * (bytesToInt(buf, bufIdx) & 0xFFFFFFFFL));
-                        bufIdx += 4;
-                        version.nextCheck = new Date(1000L * (bytesToInt(buf, bufIdx) & 0xFFFFFFFFL));
-                        bufIdx += 4;
-                        bufIdx += 4; // no idea why, but we have to skip 4 bytes
-                        bufIdx += 4; // no idea why, but we have to skip 4 bytes
-                        version.firstFree = bytesToInt(buf, bufIdx) & 0xFFFFFFFFL;
-                        bufIdx += 4;
-                        bufIdx += 4; // no idea why, but we have to skip 4 bytes
-                        version.trustHashTbl = bytesToInt(buf, bufIdx) & 0xFFFFFFFFL;
-                        bufIdx += 4;
-
-                        if (version.version != 3)
-                            throw new TrustDbIoException(String.format(
-                                    "Wrong version number (3 expected, but %d found): %s", version.version,
-                                    file.getId()));
-                        break;
-                    case FREE:
-                        final TrustRecord.Free free = new TrustRecord.Free();
-                        record = free;
-                        free.next = bytesToInt(buf, bufIdx) & 0xFFFFFFFFL;
-                        bufIdx += 4;
-                        break;
-                    case HTBL:
-                        final TrustRecord.HashTbl hashTbl = new TrustRecord.HashTbl();
-                        record = hashTbl;
-                        for (int i = 0; i < ITEMS_PER_HTBL_RECORD; ++i)
-                        {
-                            hashTbl.item[i] = bytesToInt(buf, bufIdx) & 0xFFFFFFFFL;
-                            bufIdx += 4;
-                        }
-                        break;
-                    case HLST:
-                        final TrustRecord.HashLst hashLst = new TrustRecord.HashLst();
-                        record = hashLst;
-                        hashLst.next = bytesToInt(buf, bufIdx) & 0xFFFFFFFFL;
-                        bufIdx += 4;
-                        for (int i = 0; i < ITEMS_PER_HLST_RECORD; ++i)
-                        {
-                            hashLst.rnum[i] = bytesToInt(buf, bufIdx) & 0xFFFFFFFFL;
-                            bufIdx += 4;
-                        }
-                        break;
-                    case TRUST:
-                        final TrustRecord.Trust trust = new TrustRecord.Trust();
-                        record = trust;
-                        System.arraycopy(buf, bufIdx, trust.fingerprint, 0, 20);
-                        bufIdx += 20;
-                        trust.ownerTrust = (short) (buf[bufIdx++] & 0xFF);
-                        trust.depth = (short) (buf[bufIdx++] & 0xFF);
-                        trust.minOwnerTrust = (short) (buf[bufIdx++] & 0xFF);
-                        ++bufIdx; // no idea why, but we have to skip 1 byte
-                        trust.validList = bytesToInt(buf, bufIdx) & 0xFFFFFFFFL;
-                        bufIdx += 4;
-                        break;
-                    case VALID:
-                        final TrustRecord.Valid valid = new TrustRecord.Valid();
-                        record = valid;
-                        System.arraycopy(buf, bufIdx, valid.nameHash, 0, 20);
-                        bufIdx += 20;
-                        valid.validity = (short) (buf[bufIdx++] & 0xFF);
-                        valid.next = bytesToInt(buf, bufIdx) & 0xFFFFFFFFL;
-                        bufIdx += 4;
-                        valid.fullCount = (short) (buf[bufIdx++] & 0xFF);
-                        valid.marginalCount = (short) (buf[bufIdx++] & 0xFF);
-                        break;
-                    default:
-                        throw new IllegalArgumentException("Unexpected TrustRecordType: " + type);
+                    hashLstView.wrap(hashLstBuffer, 0, next);
+                    assertType(hashLstView, TrustRecordType.HLST);
                 }
-                record.recordNum = recordNum;
-                putToCache(record);
-            }
-            else
-            {
-                if (expectedType != null && !expectedType.equals(record.getType()))
-                    throw new IllegalStateException(String.format("expectedType != foundType :: %s != %s", expectedType,
-                            record.getType()));
             }
 
-            return expectedTrustRecordClass.cast(record);
+            if (matcher.matches(itemView, key))
+                return item;
+            else
+                return 0;
         }
     }
 
-    public void putTrustRecord(final TrustRecord trustRecord) throws TrustDbIoException
+    private static void assertType(final TrustRecordView view, final TrustRecordType expectedType)
     {
-        synchronized (mutex) {
-            requireNonNull(trustRecord, "trustRecord");
-
-            if (trustRecord.getRecordNum() < 0)
-                trustRecord.setRecordNum(newRecordNum());
+        final TrustRecordType type = view.getType();
+        if (type != expectedType)
+            throw new IllegalStateException(String.format("expectedType != foundType :: %s != %s", expectedType,
+                    type));
+    }
 
-            putToCache(trustRecord);
+    /**
+     * Reads the binary data of the record identified by the given number into the given buffer.
+     * <p>
+     * The data is taken from the cache, if possible. Otherwise, it is read from the file and put into the cache.
+     *
+     * @param recordNum
+     *            the number of the record to be read.
+     * @param dst
+     *            the destination buffer. Must be array-backed and at least {@link #TRUST_RECORD_LEN} bytes long.
+     *            The record is written to its beginning (index 0), ignoring the buffer's position. Its position and
+     *            limit are reset afterwards.
+     * @return <code>true</code>, if the record was read; <code>false</code>, if the record does not exist (because
+     *         it is beyond the end of the file).
+     */
+    private boolean readRecord(final long recordNum, final ByteBuffer dst) throws TrustDbIoException
+    {
+        final byte[] dstArray = dst.array();
+        final int dstOffset = dst.arrayOffset();
+        if (cache.get(recordNum, dstArray, dstOffset))
+            return true;
+
+        // Dirty records are pinned in the cache. They are only missing, if the cache could not take them.
+        final TrustRecord dirtyRecord = dirtyRecordNum2TrustRecord.isEmpty() ? null
+                : dirtyRecordNum2TrustRecord.get(recordNum);
+        if (dirtyRecord != null)
+        {
+            encodeTrustRecord(dirtyRecord, dst, 0);
+            return true;
+        }
 
-            final long recordNum = trustRecord.getRecordNum();
-            dirtyRecordNum2TrustRecord.put(recordNum, trustRecord);
+        if (journal != null && journal.readUnapplied(recordNum, dstArray, dstOffset))
+            return true;
 
-            if (trustRecord instanceof TrustRecord.Trust)
-                updateHashTable(getTrustHashRec(), ((TrustRecord.Trust) trustRecord).getFingerprint(), recordNum);
+        // Positional read => neither a seek nor a lock is needed; concurrent readers share the file.
+        final int readByteCount;
+        try
+        {
+            dst.clear();
+            dst.limit(TRUST_RECORD_LEN);
+            readByteCount = raf.read(recordNum * TRUST_RECORD_LEN, dst);
+        } catch (IOException x)
+        {
+            throw new TrustDbIoException(x);
+        } finally
+        {
+            dst.clear();
         }
-    }
+        if (readByteCount < TRUST_RECORD_LEN)
+            return false;
 
-    protected void writeTrustRecord(final TrustRecord record) throws TrustDbIoException
-    {
-        synchronized (mutex) {
-            int bufIdx = 0;
-            final byte[] buf = new byte[TRUST_RECORD_LEN];
+        putToCache(recordNum, dstArray, dstOffset, false);
 
-            buf[bufIdx++] = (byte) record.getType().getId();
-            ++bufIdx; // Skip reserved byte.
+        return true;
+    }
 
-            switch (record.getType())
-            {
-                case UNUSED: // unused (free) record
-                    break;
-                case VERSION: // version record
-                    final TrustRecord.Version version = (TrustRecord.Version) record;
+    private void putToCache(final long recordNum, final byte[] recordBytes, final int offset, final boolean dirty)
+    {
+        if (cache.put(recordNum, recordBytes, offset, dirty) && recordBytes[offset] == TrustRecordType.HTBL.getId())
+            // The hash table is needed by every lookup and has a fixed size => keep it in memory.
+            cache.setPinned(recordNum, true);
+    }
 
-                    --bufIdx; // undo skip reserved byte, because this does not apply to VERSION record.
-                    buf[bufIdx++] = 'g';
-                    buf[bufIdx++] = 'p';
-                    buf[bufIdx++] = 'g';
+    public <T extends TrustRecord> T getTrustRecord(final long recordNum, Class<T> expectedTrustRecordClass)
+            throws TrustDbIoException
+    {
+        readLock.lock();
+        try
+        {
+            requireNonNull(expectedTrustRecordClass, "expectedTrustRecordClass");
+            final TrustRecordType expectedType = expectedTrustRecordClass ==
+                    TrustRecord.class ? null : TrustRecordType.fromClass(expectedTrustRecordClass);
 
-                    buf[bufIdx++] = (byte) version.version;
-                    buf[bufIdx++] = (byte) version.marginalsNeeded;
-                    buf[bufIdx++] = (byte) version.completesNeeded;
-                    buf[bufIdx++] = (byte) version.certDepth;
-                    buf[bufIdx++] = (byte) version.trustModel;
-                    buf[bufIdx++] = (byte) version.minCertLevel;
+            final ByteBuffer recordBuffer = readBuffers.get().recordBuffer;
+            if (!readRecord(recordNum, recordBuffer))
+                return null;
 
-                    bufIdx += 2; // no idea why, but we have to skip 2 bytes
+            final TrustRecord record = decodeTrustRecord(recordBuffer, 0, recordNum);
+            if (expectedType != null && !expectedType.equals(record.getType()))
+                throw new IllegalStateException(String.format("expectedType != foundType :: %s != %s", expectedType,
+                        record.getType()));
 
-                    intToBytes((int) (version.created.getTime() / 1000L), buf, bufIdx);
-                    bufIdx += 4;
-                    intToBytes((int) (version.nextCheck.getTime() / 1000L), buf, bufIdx);
-                    bufIdx += 4;
-                    bufIdx += 4; // no idea why, but we have to skip 4 bytes
-                    bufIdx += 4; // no idea why, but we have to skip 4 bytes
-                    intToBytes((int) version.firstFree, buf, bufIdx);
-                    bufIdx += 4;
-                    bufIdx += 4; // no idea why, but we have to skip 4 bytes
-                    intToBytes((int) version.trustHashTbl, buf, bufIdx);
-                    bufIdx += 4;
+            return expectedTrustRecordClass.cast(record);
+        } finally
+        {
+            readLock.unlock();
+        }
+    }
 
-                    if (version.version != 3)
-                        throw new TrustDbIoException(String.format("Wrong version number (3 expected, but %d found): %s",
-                                version.version, file.getId()));
-                    break;
-                case FREE:
-                    final TrustRecord.Free free = (TrustRecord.Free) record;
-                    intToBytes((int) free.next, buf, bufIdx);
+    /**
+     * Passes all records of the given type to the given visitor - in the order of their record numbers.
+     * <p>
+     * This is meant for passes over the entire file (e.g. resetting all validities). The file is read sequentially in
+     * blocks of {@link #SCAN_BLOCK_RECORD_COUNT} records, and every record is handed to the visitor as a
+     * {@link TrustRecordView} pointing into the block. Hence, neither a {@link TrustRecord} is created, nor is the
+     * cache used or disturbed: The records needed by subsequent lookups are not evicted. Records not yet written to
+     * the file (dirty or still pending in the journal) are taken into account.
+     * <p>
+     * The visitor may modify records via {@link #putTrustRecord(TrustRecord)}, if the invoking thread holds the write
+     * lock (a read lock cannot be upgraded). Such a modification is not seen by this scan, if the modified record is
+     * located in the block currently being visited.
+     *
+     * @param type
+     *            the type of the records to be visited or <code>null</code> to visit all records.
+     * @param visitor
+     *            the visitor. Must not be <code>null</code>. The view passed to it is only valid during the
+     *            invocation and must not be retained. Its concrete type matches the record type (e.g.
+     *            {@link TrustRecordView.Trust} for a {@link TrustRecordType#TRUST}).
+     */
+    public void scan(final TrustRecordType type, final TrustRecordVisitor visitor) throws TrustDbIoException
+    {
+        readLock.lock();
+        try
+        {
+            requireNonNull(visitor, "visitor");
+
+            // Not a field: A visitor might start another scan.
+            final ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK_RECORD_COUNT * TRUST_RECORD_LEN);
+            final byte[] blockArray = block.array();
+            final TrustRecordView[] views = new TrustRecordView[256];
+
+            long firstRecordNum = 0;
+            for (;;)
+            {
+                // Re-calculated for every block, because the visitor might append records.
+                long recordCount = getFileRecordCount();
+                if (!dirtyRecordNum2TrustRecord.isEmpty())
+                    recordCount = Math.max(recordCount, dirtyRecordNum2TrustRecord.lastKey() + 1);
+
+                if (firstRecordNum >= recordCount)
+                    return;
+
+                final int blockRecordCount = (int) Math.min(SCAN_BLOCK_RECORD_COUNT, recordCount - firstRecordNum);
+                readBlock(firstRecordNum, blockRecordCount, blockArray);
+
+                for (int i = 0; i < blockRecordCount; ++i)
+                {
+                    final int offset = i * TRUST_RECORD_LEN;
+                    final int typeId = blockArray[offset] & 0xFF;
+                    if (type != null && type.getId() != typeId)
+                        continue;
+
+                    TrustRecordView view = views[typeId];
+                    if (view == null)
+                        views[typeId] = view = createView(TrustRecordType.fromId((short) typeId));
+
+                    if (!visitor.visit(view.wrap(block, offset, firstRecordNum + i)))
+                        return;
+                }
+                firstRecordNum += blockRecordCount;
+            }
+        } finally
+        {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the current data of the given range of records into {@code dst}: The file's content overlaid with the
+     * records pending in the journal and the dirty records. Records existing nowhere are zeroed
+     * ({@link TrustRecordType#UNUSED}).
+     */
+    private void readBlock(final long firstRecordNum, final int recordCount, final byte[] dst)
+            throws TrustDbIoException
+    {
+        final int fileByteCount;
+        try
+        {
+            final long fileRecordCount = raf.getLength() / TRUST_RECORD_LEN;
+            fileByteCount = (int) Math.max(0, Math.min(recordCount, fileRecordCount - firstRecordNum))
+                    * TRUST_RECORD_LEN;
+            if (fileByteCount > 0
+                    && raf.read(firstRecordNum * TRUST_RECORD_LEN, ByteBuffer.wrap(dst, 0, fileByteCount)) < fileByteCount)
+                throw new EOFException();
+        } catch (IOException x)
+        {
+            throw new TrustDbIoException(x);
+        }
+        Arrays.fill(dst, fileByteCount, recordCount * TRUST_RECORD_LEN, (byte) 0);
+
+        if (journal != null)
+            journal.readUnapplied(firstRecordNum, recordCount, dst, 0);
+
+        if (!dirtyRecordNum2TrustRecord.isEmpty())
+        {
+            final ByteBuffer dstBuffer = ByteBuffer.wrap(dst);
+            for (final TrustRecord dirtyRecord : dirtyRecordNum2TrustRecord
+                    .subMap(firstRecordNum, firstRecordNum + recordCount).values())
+                encodeTrustRecord(dirtyRecord, dstBuffer, (int) (dirtyRecord.getRecordNum() - firstRecordNum)
+                        * TRUST_RECORD_LEN);
+        }
+    }
+
+    private static TrustRecordView createView(final TrustRecordType type)
+    {
+        switch (type)
+        {
+            case HTBL:
+                return new TrustRecordView.HashTbl();
+            case HLST:
+                return new TrustRecordView.HashLst();
+            case TRUST:
+                return new TrustRecordView.Trust();
+            case VALID:
+                return new TrustRecordView.Valid();
+            default:
+                return new TrustRecordView();
+        }
+    }
+
+    /**
+     * Decodes the record a view currently points to - e.g. in order to modify a record passed to a
+     * {@link TrustRecordVisitor}.
+     *
+     * @param view
+     *            the view pointing to the record. Must not be <code>null</code>.
+     * @return a new {@code TrustRecord} instance. Never <code>null</code>.
+     */
+    public TrustRecord decodeTrustRecord(final TrustRecordView view) throws TrustDbIoException
+    {
+        requireNonNull(view, "view");
+        return decodeTrustRecord(view.buffer, view.offset, view.recordNum);
+    }
+
+    /**
+     * Decodes the binary representation of a record.
+     *
+     * @param buf
+     *            the buffer containing the record. Must not be <code>null</code>.
+     * @param offset
+     *            the absolute index of the record's first byte inside {@code buf}.
+     * @param recordNum
+     *            the number of the record.
+     * @return a new {@code TrustRecord} instance. Never <code>null</code>.
+     */
+    protected TrustRecord decodeTrustRecord(final ByteBuffer buf, final int offset, final long recordNum)
+            throws TrustDbIoException
+    {
+        int bufIdx = offset;
+
+        final TrustRecordType type = TrustRecordType.fromId((short) (buf.get(bufIdx++) & 0xFF));
+        ++bufIdx; // Skip reserved byte.
+
+        final TrustRecord record;
+        switch (type)
+        {
+            case UNUSED: // unused (free) record
+                record = new TrustRecord.Unused();
+                break;
+            case VERSION: // version record
+                final TrustRecord.Version version = new TrustRecord.Version();
+                record = version;
+
+                --bufIdx; // undo skip reserved byte, because this does not apply to VERSION record.
+                if (buf.get(bufIdx++) != 'g'
+                        || buf.get(bufIdx++) != 'p'
+                        || buf.get(bufIdx++) != 'g')
+                    throw new TrustDbIoException(String.format("Not a trustdb file: %s", file.getId()));
+
+                version.version = (short) (buf.get(bufIdx++) & 0xFF);
+                version.marginalsNeeded = (short) (buf.get(bufIdx++) & 0xFF);
+                version.completesNeeded = (short) (buf.get(bufIdx++) & 0xFF);
+                version.certDepth = (short) (buf.get(bufIdx++) & 0xFF);
+                version.trustModel = (short) (buf.get(bufIdx++) & 0xFF);
+                version.minCertLevel = (short) (buf.get(bufIdx++) & 0xFF);
+
+                bufIdx += 2; // no idea why, but we have to skip 2 bytes
+                version.created = new Date(1000L * (buf.getInt(bufIdx) & 0xFFFFFFFFL));
+                bufIdx += 4;
+                version.nextCheck = new Date(1000L * (buf.getInt(bufIdx) & 0xFFFFFFFFL));
+                bufIdx += 4;
+                bufIdx += 4; // no idea why, but we have to skip 4 bytes
+                bufIdx += 4; // no idea why, but we have to skip 4 bytes
+                version.firstFree = buf.getInt(bufIdx) & 0xFFFFFFFFL;
+                bufIdx += 4;
+                bufIdx += 4; // no idea why, but we have to skip 4 bytes
+                version.trustHashTbl = buf.getInt(bufIdx) & 0xFFFFFFFFL;
+                bufIdx += 4;
+
+                if (version.version != 3)
+                    throw new TrustDbIoException(String.format(
+                            "Wrong version number (3 expected, but %d found): %s", version.version,
+                            file.getId()));
+                break;
+            case FREE:
+                final TrustRecord.Free free = new TrustRecord.Free();
+                record = free;
+                free.next = buf.getInt(bufIdx) & 0xFFFFFFFFL;
+                bufIdx += 4;
+                break;
+            case HTBL:
+                final TrustRecord.HashTbl hashTbl = new TrustRecord.HashTbl();
+                record = hashTbl;
+                for (int i = 0; i < ITEMS_PER_HTBL_RECORD; ++i)
+                {
+                    hashTbl.item[i] = buf.getInt(bufIdx) & 0xFFFFFFFFL;
                     bufIdx += 4;
-                    break;
-                case HTBL:
-                    final TrustRecord.HashTbl hashTbl = (TrustRecord.HashTbl) record;
-                    for (int i = 0; i < ITEMS_PER_HTBL_RECORD; ++i)
-                    {
-                        intToBytes((int) hashTbl.item[i], buf, bufIdx);
-                        bufIdx += 4;
-                    }
-                    break;
-                case HLST:
-                    final TrustRecord.HashLst hashLst = (TrustRecord.HashLst) record;
-                    intToBytes((int) hashLst.next, buf, bufIdx);
+                }
+                break;
+            case HLST:
+                final TrustRecord.HashLst hashLst = new TrustRecord.HashLst();
+                record = hashLst;
+                hashLst.next = buf.getInt(bufIdx) & 0xFFFFFFFFL;
+                bufIdx += 4;
+                for (int i = 0; i < ITEMS_PER_HLST_RECORD; ++i)
+                {
+                    hashLst.rnum[i] = buf.getInt(bufIdx) & 0xFFFFFFFFL;
                     bufIdx += 4;
-                    for (int i = 0; i < ITEMS_PER_HLST_RECORD; ++i)
-                    {
-                        intToBytes((int) hashLst.rnum[i], buf, bufIdx);
-                        bufIdx += 4;
-                    }
-                    break;
-                case TRUST:
-                    final TrustRecord.Trust trust = (TrustRecord.Trust) record;
-                    System.arraycopy(trust.fingerprint, 0, buf, bufIdx, 20);
-                    bufIdx += 20;
-                    buf[bufIdx++] = (byte) trust.ownerTrust;
-                    buf[bufIdx++] = (byte) trust.depth;
-                    buf[bufIdx++] = (byte) trust.minOwnerTrust;
-                    ++bufIdx; // no idea why, but we have to skip 1 byte
-                    intToBytes((int) trust.validList, buf, bufIdx);
+                }
+                break;
+            case TRUST:
+                final TrustRecord.Trust trust = new TrustRecord.Trust();
+                record = trust;
+                for (int i = 0; i < 20; ++i)
+                    trust.fingerprint[i] = buf.get(bufIdx++);
+
+                trust.ownerTrust = (short) (buf.get(bufIdx++) & 0xFF);
+                trust.depth = (short) (buf.get(bufIdx++) & 0xFF);
+                trust.minOwnerTrust = (short) (buf.get(bufIdx++) & 0xFF);
+                ++bufIdx; // no idea why, but we have to skip 1 byte
+                trust.validList = buf.getInt(bufIdx) & 0xFFFFFFFFL;
+                bufIdx += 4;
+                break;
+            case VALID:
+                final TrustRecord.Valid valid = new TrustRecord.Valid();
+                record = valid;
+                for (int i = 0; i < 20; ++i)
+                    valid.nameHash[i] = buf.get(bufIdx++);
+
+                valid.validity = (short) (buf.get(bufIdx++) & 0xFF);
+                valid.next = buf.getInt(bufIdx) & 0xFFFFFFFFL;
+                bufIdx += 4;
+                valid.fullCount = (short) (buf.get(bufIdx++) & 0xFF);
+                valid.marginalCount = (short) (buf.get(bufIdx++) & 0xFF);
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected TrustRecordType: " + type);
+        }
+        record.recordNum = recordNum;
+        return record;
+    }
+
+    /**
+     * Encodes the given record into its binary representation.
+     *
+     * @param record
+     *            the record to be encoded. Must not be <code>null</code>.
+     * @param buf
+     *            the buffer to write to. Must not be <code>null</code>.
+     * @param offset
+     *            the absolute index inside {@code buf} where to write the record's first byte. All
+     *            {@link #TRUST_RECORD_LEN} bytes starting at this index are overwritten.
+     */
+    protected void encodeTrustRecord(final TrustRecord record, final ByteBuffer buf, final int offset)
+            throws TrustDbIoException
+    {
+        for (int i = 0; i < TRUST_RECORD_LEN; ++i)
+            buf.put(offset + i, (byte) 0);
+
+        int bufIdx = offset;
+        buf.put(bufIdx++, (byte) record.getType().getId());
+        ++bufIdx; // Skip reserved byte.
+
+        switch (record.getType())
+        {
+            case UNUSED: // unused (free) record
+                break;
+            case VERSION: // version record
+                final TrustRecord.Version version = (TrustRecord.Version) record;
+
+                --bufIdx; // undo skip reserved byte, because this does not apply to VERSION record.
+                buf.put(bufIdx++, (byte) 'g');
+                buf.put(bufIdx++, (byte) 'p');
+                buf.put(bufIdx++, (byte) 'g');
+
+                buf.put(bufIdx++, (byte) version.version);
+                buf.put(bufIdx++, (byte) version.marginalsNeeded);
+                buf.put(bufIdx++, (byte) version.completesNeeded);
+                buf.put(bufIdx++, (byte) version.certDepth);
+                buf.put(bufIdx++, (byte) version.trustModel);
+                buf.put(bufIdx++, (byte) version.minCertLevel);
+
+                bufIdx += 2; // no idea why, but we have to skip 2 bytes
+
+                buf.putInt(bufIdx, (int) (version.created.getTime() / 1000L));
+                bufIdx += 4;
+                buf.putInt(bufIdx, (int) (version.nextCheck.getTime() / 1000L));
+                bufIdx += 4;
+                bufIdx += 4; // no idea why, but we have to skip 4 bytes
+                bufIdx += 4; // no idea why, but we have to skip 4 bytes
+                buf.putInt(bufIdx, (int) version.firstFree);
+                bufIdx += 4;
+                bufIdx += 4; // no idea why, but we have to skip 4 bytes
+                buf.putInt(bufIdx, (int) version.trustHashTbl);
+                bufIdx += 4;
+
+                if (version.version != 3)
+                    throw new TrustDbIoException(String.format("Wrong version number (3 expected, but %d found): %s",
+                            version.version, file.getId()));
+                break;
+            case FREE:
+                final TrustRecord.Free free = (TrustRecord.Free) record;
+                buf.putInt(bufIdx, (int) free.next);
+                bufIdx += 4;
+                break;
+            case HTBL:
+                final TrustRecord.HashTbl hashTbl = (TrustRecord.HashTbl) record;
+                for (int i = 0; i < ITEMS_PER_HTBL_RECORD; ++i)
+                {
+                    buf.putInt(bufIdx, (int) hashTbl.item[i]);
                     bufIdx += 4;
-                    break;
-                case VALID:
-                    final TrustRecord.Valid valid = (TrustRecord.Valid) record;
-                    System.arraycopy(valid.nameHash, 0, buf, bufIdx, 20);
-                    bufIdx += 20;
-                    buf[bufIdx++] = (byte) valid.validity;
-                    intToBytes((int) valid.next, buf, bufIdx);
+                }
+                break;
+            case HLST:
+                final TrustRecord.HashLst hashLst = (TrustRecord.HashLst) record;
+                buf.putInt(bufIdx, (int) hashLst.next);
+                bufIdx += 4;
+                for (int i = 0; i < ITEMS_PER_HLST_RECORD; ++i)
+                {
+                    buf.putInt(bufIdx, (int) hashLst.rnum[i]);
                     bufIdx += 4;
-                    buf[bufIdx++] = (byte) valid.fullCount;
-                    buf[bufIdx++] = (byte) valid.marginalCount;
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unexpected TrustRecordType: " + record.getType());
-            }
+                }
+                break;
+            case TRUST:
+                final TrustRecord.Trust trust = (TrustRecord.Trust) record;
+                for (int i = 0; i < 20; ++i)
+                    buf.put(bufIdx++, trust.fingerprint[i]);
+
+                buf.put(bufIdx++, (byte) trust.ownerTrust);
+                buf.put(bufIdx++, (byte) trust.depth);
+                buf.put(bufIdx++, (byte) trust.minOwnerTrust);
+                ++bufIdx; // no idea why, but we have to skip 1 byte
+                buf.putInt(bufIdx, (int) trust.validList);
+                bufIdx += 4;
+                break;
+            case VALID:
+                final TrustRecord.Valid valid = (TrustRecord.Valid) record;
+                for (int i = 0; i < 20; ++i)
+                    buf.put(bufIdx++, valid.nameHash[i]);
+
+                buf.put(bufIdx++, (byte) valid.validity);
+                buf.putInt(bufIdx, (int) valid.next);
+                bufIdx += 4;
+                buf.put(bufIdx++, (byte) valid.fullCount);
+                buf.put(bufIdx++, (byte) valid.marginalCount);
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected TrustRecordType: " + record.getType());
+        }
+    }
 
-            try
+    public void putTrustRecord(final TrustRecord trustRecord) throws TrustDbIoException
+    {
+        writeLock.lock();
+        try
+        {
+            putTrustRecord(trustRecord, true);
+        } finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Puts the given record.
+     *
+     * @param trustRecord
+     *            the record to be written. Must not be <code>null</code>.
+     * @param updateHashTable
+     *            whether a {@link TrustRecord.Trust} should be inserted into the hash table (and the fingerprint
+     *            index). Only {@link #compact(TrustFilter)} passes <code>false</code>, while it relocates records.
+     */
+    private void putTrustRecord(final TrustRecord trustRecord, final boolean updateHashTable)
+            throws TrustDbIoException
+    {
+        requireNonNull(trustRecord, "trustRecord");
+
+        if (trustRecord.getRecordNum() < 0)
+            trustRecord.setRecordNum(newRecordNum());
+
+        final long recordNum = trustRecord.getRecordNum();
+        encodeTrustRecord(trustRecord, encodeBuffer, 0);
+
+        // Putting a record with exactly the same data (as it is already cached or in the file) is a no-op.
+        if (readRecord(recordNum, compareBuffer) && compareBuffer.equals(encodeBuffer))
+            return;
+
+        // Dirty until flush() wrote it to the file.
+        putToCache(recordNum, encodeBuffer.array(), 0, true);
+
+        dirtyRecordNum2TrustRecord.put(recordNum, trustRecord);
+
+        if (updateHashTable && trustRecord instanceof TrustRecord.Trust)
+        {
+            final byte[] fingerprint = ((TrustRecord.Trust) trustRecord).getFingerprint();
+            updateHashTable(getTrustHashRec(), fingerprint, recordNum);
+            if (fingerprintIndex != null)
+                fingerprintIndex.put(fingerprint, recordNum);
+            if (bloomFilter != null && bloomFilter.put(fingerprint) && bloomFilter.size() > bloomFilter.getCapacity())
+                // Over-filled => too many false positives. The record just put is dirty and thus found by the scan.
+                bloomFilter = createBloomFilter(2L * bloomFilter.size());
+        }
+    }
+
+    /**
+     * Writes the records encoded in the {@link #runBuffer} to the file (or the journal, if there is one) - but only
+     * those which differ from the file's current content.
+     * <p>
+     * A record is often modified and later set back to its original value (e.g. {@code updateTrustDb()} first resets
+     * all validities and then calculates mostly the same values again). Comparing with the file's content is much
+     * cheaper than writing (and syncing) the unchanged records.
+     *
+     * @param firstRecordNum
+     *            the number of the first record in the run.
+     * @param recordCount
+     *            the number of records in the run. They have consecutive numbers.
+     * @return the number of records actually written.
+     */
+    private int writeRun(final long firstRecordNum, final int recordCount) throws TrustDbIoException
+    {
+        return writeRun(firstRecordNum, recordCount, journal != null);
+    }
+
+    /**
+     * Writes the records encoded in the {@link #runBuffer} either to the journal or to the file - see
+     * {@link #writeRun(long, int)}.
+     *
+     * @param toJournal
+     *            <code>true</code> to append the changed records to the journal; <code>false</code> to write them to
+     *            the file. If there is a journal, the latter means applying it - the records are then not
+     *            {@linkplain RecordCache#markClean(long) marked clean} here, but by {@link #applyJournal()}.
+     */
+    private int writeRun(final long firstRecordNum, final int recordCount, final boolean toJournal)
+            throws TrustDbIoException
+    {
+        final byte[] run = runBuffer.array();
+        final boolean markClean = toJournal || journal == null;
+        int writtenRecordCount = 0;
+        try
+        {
+            // While batches are pending in the journal, the file is outdated => cannot compare with it. When applying
+            // them, though, the file's content is exactly what must be compared with.
+            final boolean compare = !toJournal || !journal.hasUnapplied();
+            final long fileRecordCount = compare ? raf.getLength() / TRUST_RECORD_LEN : 0;
+            final int existingRecordCount = (int) Math.max(0, Math.min(recordCount, fileRecordCount - firstRecordNum));
+            if (existingRecordCount > 0)
             {
-                raf.seek(record.getRecordNum() * TRUST_RECORD_LEN);
-                raf.write(buf);
-            } catch (IOException e)
+                diskBuffer.clear();
+                diskBuffer.limit(existingRecordCount * TRUST_RECORD_LEN);
+                if (raf.read(firstRecordNum * TRUST_RECORD_LEN, diskBuffer) < diskBuffer.limit())
+                    throw new EOFException();
+            }
+
+            int idx = 0;
+            while (idx < recordCount)
             {
-                throw new TrustDbIoException(e);
+                if (idx < existingRecordCount && isRecordUnchanged(run, idx))
+                {
+                    if (markClean)
+                        cache.markClean(firstRecordNum + idx);
+
+                    ++idx;
+                    continue;
+                }
+
+                // Find the end of the sub-run of changed records and write them at once.
+                int endIdx = idx + 1;
+                while (endIdx < recordCount && (endIdx >= existingRecordCount || !isRecordUnchanged(run, endIdx)))
+                    ++endIdx;
+
+                if (toJournal)
+                    // The records stay dirty in the cache, until they are applied.
+                    journal.append(firstRecordNum + idx, run, idx * TRUST_RECORD_LEN, endIdx - idx);
+                else
+                {
+                    raf.write((firstRecordNum + idx) * TRUST_RECORD_LEN,
+                            ByteBuffer.wrap(run, idx * TRUST_RECORD_LEN, (endIdx - idx) * TRUST_RECORD_LEN));
+                    if (markClean)
+                    {
+                        for (int i = idx; i < endIdx; ++i)
+                            cache.markClean(firstRecordNum + i);
+                    }
+                }
+                writtenRecordCount += endIdx - idx;
+                idx = endIdx;
             }
+        } catch (IOException e)
+        {
+            throw new TrustDbIoException(e);
         }
+        return writtenRecordCount;
+    }
+
+    private boolean isRecordUnchanged(final byte[] run, final int idx)
+    {
+        final byte[] disk = diskBuffer.array();
+        final int offset = idx * TRUST_RECORD_LEN;
+        for (int i = offset; i < offset + TRUST_RECORD_LEN; ++i)
+        {
+            if (run[i] != disk[i])
+                return false;
+        }
+        return true;
     }
 
     /**
@@ -627,12 +1264,30 @@ class TrustDbIo implements AutoCloseable, TrustConst
     // static int upd_hashtable (ulong table, byte *key, int keylen, ulong newrecnum)
     protected void updateHashTable(long table, byte[] key, long recordNum) throws TrustDbIoException
     {
-        synchronized (mutex) {
+        updateHashTable(table, key, recordNum, 0);
+    }
+
+    /**
+     * Inserts a record into a hash table, which may be nested.
+     *
+     * @param table
+     *            the number of the hash table's first record.
+     * @param key
+     *            the key (e.g. the fingerprint) of the record.
+     * @param recordNum
+     *            the number of the record to be inserted.
+     * @param level
+     *            the index of the key's byte used by the given {@code table} - 0 for the top-level table.
+     */
+    private void updateHashTable(long table, byte[] key, long recordNum, int level) throws TrustDbIoException
+    {
+        writeLock.lock();
+        try
+        {
             // TrustRecord lastrec, rec;
             TrustRecord.HashTbl lastHashTable = null;
             long hashrec, item;
             int msb;
-            int level = 0;
 
             hashrec = table;
             next_level: while (true)
@@ -669,6 +1324,7 @@ class TrustDbIo implements AutoCloseable, TrustConst
                     else if (rec.getType() == TrustRecordType.HLST)
                     { // Extend the list.
                         TrustRecord.HashLst hashList = (HashLst) rec;
+                        int chainLength = 1;
                         // Check whether the key is already in this list.
                         for (;;)
                         {
@@ -683,46 +1339,22 @@ class TrustDbIo implements AutoCloseable, TrustConst
 
                             hashList = getTrustRecord(hashList.getNext(), TrustRecord.HashLst.class);
                             requireNonNull(hashList, "hashList");
+                            ++chainLength;
                         }
 
                         // The following line was added by me, Marco. I think the original GnuPG code missed this: We should
                         // start looking
                         // for a free entry in the *first* suitable HashList record again, because there might have been
                         // sth. dropped.
-                        hashList = (HashLst) rec;
+                        if (appendToHashList((HashLst) rec, recordNum))
+                            ++chainLength;
 
-                        // Find the next free entry and put it in.
-                        for (;;)
-                        {
-                            for (int i = 0; i < ITEMS_PER_HLST_RECORD; ++i)
-                            {
-                                if (hashList.getRNum(i) == 0)
-                                {
-                                    // Empty slot found.
-                                    hashList.setRnum(i, recordNum);
-                                    putTrustRecord(hashList);
-                                    return; // Done.
-                                }
-                            }
+                        if (maxHashListChainLength > 0 && chainLength > maxHashListChainLength
+                                && level + 1 < key.length)
+                            splitHashList(requireNonNull(lastHashTable, "lastHashTable").getRecordNum(),
+                                    msb % ITEMS_PER_HTBL_RECORD, item, level + 1);
 
-                            if (hashList.getNext() != 0)
-                            {
-                                // read the next reord of the list.
-                                hashList = getTrustRecord(hashList.getNext(), TrustRecord.HashLst.class);
-                            }
-                            else
-                            {
-                                // Append a new record to the list.
-                                TrustRecord.HashLst old = hashList;
-                                hashList = new TrustRecord.HashLst();
-                                hashList.setRnum(0, recordNum);
-
-                                putTrustRecord(hashList); // assigns the new recordNum, too
-                                old.setNext(hashList.getRecordNum());
-                                putTrustRecord(old);
-                                return; // Done.
-                            }
-                        } /* end loop over list slots */
+                        return; // Done.
                     }
                     else
                     { // Insert a list record.
@@ -747,43 +1379,526 @@ class TrustDbIo implements AutoCloseable, TrustConst
                     }
                 }
             }
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
-    private TrustRecord getFromCache(final long recordNum)
+    /**
+     * Puts the given record into the first free entry of the hash list starting with {@code hashList}, appending a
+     * new {@link TrustRecord.HashLst} record, if all are occupied.
+     *
+     * @return <code>true</code>, if a new record was appended; <code>false</code>, if a free entry was found.
+     */
+    private boolean appendToHashList(TrustRecord.HashLst hashList, final long recordNum) throws TrustDbIoException
     {
-        final TrustRecord trustRecord = cacheRecordNum2TrustRecord.get(recordNum);
-        logger.trace("getFromCache: recordNum={} found={}", recordNum, trustRecord != null);
-        return trustRecord;
+        // Find the next free entry and put it in.
+        for (;;)
+        {
+            for (int i = 0; i < ITEMS_PER_HLST_RECORD; ++i)
+            {
+                if (hashList.getRNum(i) == 0)
+                {
+                    // Empty slot found.
+                    hashList.setRnum(i, recordNum);
+                    putTrustRecord(hashList);
+                    return false;
+                }
+            }
+
+            if (hashList.getNext() != 0)
+            {
+                // read the next reord of the list.
+                hashList = getTrustRecord(hashList.getNext(), TrustRecord.HashLst.class);
+            }
+            else
+            {
+                // Append a new record to the list.
+                TrustRecord.HashLst old = hashList;
+                hashList = new TrustRecord.HashLst();
+                hashList.setRnum(0, recordNum);
+
+                putTrustRecord(hashList); // assigns the new recordNum, too
+                old.setNext(hashList.getRecordNum());
+                putTrustRecord(old);
+                return true;
+            }
+        }
     }
 
-    private void putToCache(TrustRecord trustRecord)
+    private int getHashListChainLength(TrustRecord.HashLst hashList) throws TrustDbIoException
     {
-        requireNonNull(trustRecord, "trustRecord");
-        final long recordNum = trustRecord.getRecordNum();
+        int chainLength = 1;
+        while (hashList.getNext() != 0)
+        {
+            hashList = getTrustRecord(hashList.getNext(), TrustRecord.HashLst.class);
+            ++chainLength;
+        }
+        return chainLength;
+    }
+
+    /**
+     * Replaces a hash list by a nested hash table, which distributes the list's records using the next byte of their
+     * keys. The records of the replaced hash list are freed.
+     *
+     * @param parentHashTbl
+     *            the number of the {@link TrustRecord.HashTbl} record referencing the hash list.
+     * @param parentIndex
+     *            the index of the item inside {@code parentHashTbl} referencing the hash list.
+     * @param firstHashLst
+     *            the number of the hash list's first record.
+     * @param level
+     *            the index of the key's byte used by the new nested hash table.
+     */
+    private void splitHashList(final long parentHashTbl, final int parentIndex, final long firstHashLst,
+            final int level) throws TrustDbIoException
+    {
+        final long nestedTable = allocateHashTable();
+        int movedCount = 0;
+        long hashLstRecordNum = firstHashLst;
+        while (hashLstRecordNum != 0)
+        {
+            final TrustRecord.HashLst hashList = getTrustRecord(hashLstRecordNum, TrustRecord.HashLst.class);
+            requireNonNull(hashList, "hashList");
+            for (int i = 0; i < ITEMS_PER_HLST_RECORD; ++i)
+            {
+                final long rnum = hashList.getRNum(i);
+                if (rnum != 0)
+                {
+                    final TrustRecord.Trust trust = getTrustRecord(rnum, TrustRecord.Trust.class);
+                    requireNonNull(trust, "trust");
+                    updateHashTable(nestedTable, trust.getFingerprint(), rnum, level);
+                    ++movedCount;
+                }
+            }
+            final long next = hashList.getNext();
+            freeRecord(hashLstRecordNum);
+            hashLstRecordNum = next;
+        }
+
+        final TrustRecord.HashTbl parent = getTrustRecord(parentHashTbl, TrustRecord.HashTbl.class);
+        parent.setItem(parentIndex, nestedTable);
+        putTrustRecord(parent);
+        logger.debug("splitHashList: moved {} records from hash list {} into new hash table {} (level {})",
+                movedCount, firstHashLst, nestedTable, level);
+    }
+
+    /**
+     * Appends the records making up a new, empty hash table.
+     *
+     * @return the number of the hash table's first record.
+     */
+    private long allocateHashTable() throws TrustDbIoException
+    {
+        long recordNum = getFileRecordCount();
+        if (!dirtyRecordNum2TrustRecord.isEmpty())
+            recordNum = Math.max(recordNum, dirtyRecordNum2TrustRecord.lastKey() + 1);
 
-        if (cacheRecordNum2TrustRecord.containsKey(recordNum))
-            cacheRecordNums.remove(recordNum);
+        if (recordNum <= 0) // This is will never be the first record.
+            throw new IllegalStateException("recnum <= 0");
 
-        while (cacheRecordNums.size() + 1 > MAX_CACHE_SIZE)
+        for (int i = 0; i < HASH_TABLE_RECORD_COUNT; ++i)
         {
-            final Long oldestRecordNum = cacheRecordNums.iterator().next();
-            cacheRecordNums.remove(oldestRecordNum);
-            cacheRecordNum2TrustRecord.remove(oldestRecordNum);
+            TrustRecord.HashTbl hashTable = new TrustRecord.HashTbl();
+            hashTable.setRecordNum(recordNum + i);
+            putTrustRecord(hashTable);
         }
+        return recordNum;
+    }
+
+    /**
+     * Turns the given record into a {@link TrustRecord.Free} record and puts it at the beginning of the free list, so
+     * that it is re-used by {@link #newRecordNum()}.
+     */
+    // static gpg_error_t tdbio_delete_record (ulong recnum)
+    private void freeRecord(final long recordNum) throws TrustDbIoException
+    {
+        final TrustRecord.Version version = getTrustRecord(0, TrustRecord.Version.class);
+        requireNonNull(version, "version");
+
+        final TrustRecord.Free free = new TrustRecord.Free();
+        free.setRecordNum(recordNum);
+        free.setNext(version.getFirstFree());
+        putTrustRecord(free);
 
-        cacheRecordNum2TrustRecord.put(recordNum, trustRecord);
-        cacheRecordNums.add(recordNum);
+        version.setFirstFree(recordNum);
+        putTrustRecord(version);
+    }
+
+    /**
+     * Decides which keys' records are kept by {@link TrustDbIo#compact(TrustFilter)}.
+     */
+    static interface TrustFilter
+    {
+        /**
+         * @param trust
+         *            the trust record of a key. Never <code>null</code>.
+         * @return <code>true</code> to keep the key's records; <code>false</code> to drop them.
+         */
+        boolean isKept(TrustRecord.Trust trust);
+    }
+
+    /**
+     * Rewrites the entire file: The records of all keys rejected by the given filter are dropped, the remaining ones
+     * are relocated, and the hash table is rebuilt.
+     * <p>
+     * Afterwards, the file consists of the version record, the hash table and each {@link TrustRecord.Trust} record
+     * immediately followed by its chain of {@link TrustRecord.Valid} records - followed by the hash lists. Hence,
+     * walking a key's validities reads adjacent records. Records not reachable from a kept trust record (and free
+     * records) are dropped, too, and the file is truncated.
+     * <p>
+     * All records of the new layout - including the rebuilt hash table and hash lists - are written in one single
+     * batch. The records behind the new end are overwritten with {@link TrustRecord.Unused} records in the same batch,
+     * and the file is truncated only after this batch was committed. Hence, with a
+     * {@linkplain TrustDbOptions#getJournalFile() journal}, a crash leaves either the old or the compacted content
+     * (possibly followed by unused records). Without a journal, this operation is not atomic: If the process crashes
+     * while compacting, the {@code trustdb.gpg} might be damaged. It should be backed up before.
+     *
+     * @param filter
+     *            the filter deciding which keys are kept. Must not be <code>null</code>.
+     * @return the number of trust records dropped.
+     */
+    public int compact(final TrustFilter filter) throws TrustDbIoException
+    {
+        writeLock.lock();
+        try
+        {
+            requireNonNull(filter, "filter");
+
+            // Make sure, the file's content is complete and current. The journal must not contain any batch laid out
+            // for the old file, because replaying it would damage the compacted one.
+            flush();
+            commitNow();
+            if (journal != null)
+                checkpoint();
+
+            final long oldRecordCount = getFileRecordCount();
+            final List<TrustRecord.Trust> trusts = new ArrayList<>();
+            final Map<Long, TrustRecord.Valid> recordNum2Valid = new HashMap<>();
+            final int[] droppedCount = new int[1];
+            scan(null, new TrustRecordVisitor()
+            {
+                @Override
+                public boolean visit(final TrustRecordView view) throws TrustDbIoException
+                {
+                    final TrustRecordType type = view.getType();
+                    if (type == TrustRecordType.TRUST)
+                    {
+                        final TrustRecord.Trust trust = (TrustRecord.Trust) decodeTrustRecord(view);
+                        if (filter.isKept(trust))
+                            trusts.add(trust);
+                        else
+                            ++droppedCount[0];
+                    }
+                    else if (type == TrustRecordType.VALID)
+                        recordNum2Valid.put(view.getRecordNum(), (TrustRecord.Valid) decodeTrustRecord(view));
+
+                    return true;
+                }
+            });
+
+            // Lay out the new file: version record, hash table, each trust record followed by its validities.
+            final long hashTable = 1;
+            long recordNum = hashTable + HASH_TABLE_RECORD_COUNT;
+            final List<TrustRecord> relocated = new ArrayList<>();
+            for (final TrustRecord.Trust trust : trusts)
+            {
+                long validRecordNum = trust.getValidList();
+                trust.setRecordNum(recordNum++);
+                trust.setValidList(0);
+                relocated.add(trust);
+
+                TrustRecord.Valid previous = null;
+                while (validRecordNum != 0)
+                {
+                    final TrustRecord.Valid valid = recordNum2Valid.remove(validRecordNum);
+                    if (valid == null)
+                    {
+                        logger.warn("compact: trust record {}: valid record {} is missing or used twice",
+                                trust.getRecordNum(), validRecordNum);
+                        break;
+                    }
+                    validRecordNum = valid.getNext();
+                    valid.setRecordNum(recordNum++);
+                    valid.setNext(0);
+                    if (previous == null)
+                        trust.setValidList(valid.getRecordNum());
+                    else
+                        previous.setNext(valid.getRecordNum());
+
+                    relocated.add(valid);
+                    previous = valid;
+                }
+            }
+
+            // Only clean records are cached now. Those of the new layout are all replaced below.
+            cache.clear();
+            if (fingerprintIndex != null)
+                fingerprintIndex.clear();
+            if (bloomFilter != null)
+                bloomFilter = new FingerprintBloomFilter((int) Math.min(Integer.MAX_VALUE / 2, recordNum));
+
+            final TrustRecord.Version version = getTrustRecord(0, TrustRecord.Version.class);
+            version.setFirstFree(0);
+            version.setTrustHashTbl(hashTable);
+            putTrustRecord(version);
+            trustHashRec = hashTable;
+            for (int i = 0; i < HASH_TABLE_RECORD_COUNT; ++i)
+            {
+                final TrustRecord.HashTbl hashTbl = new TrustRecord.HashTbl();
+                hashTbl.setRecordNum(hashTable + i);
+                putTrustRecord(hashTbl);
+            }
+            for (final TrustRecord trustRecord : relocated)
+                putTrustRecord(trustRecord, false);
+
+            // The hash lists are appended behind the last relocated record - not behind the old file's end.
+            compactedRecordCount = recordNum;
+            for (final TrustRecord.Trust trust : trusts)
+            {
+                updateHashTable(hashTable, trust.getFingerprint(), trust.getRecordNum());
+                if (fingerprintIndex != null)
+                    fingerprintIndex.put(trust.getFingerprint(), trust.getRecordNum());
+                if (bloomFilter != null)
+                    bloomFilter.put(trust.getFingerprint());
+            }
+            long newRecordCount = recordNum;
+            if (!dirtyRecordNum2TrustRecord.isEmpty())
+                newRecordCount = Math.max(newRecordCount, dirtyRecordNum2TrustRecord.lastKey() + 1);
+
+            // Until the file is truncated, the records behind its new end must not be mistaken for live ones.
+            for (long unusedRecordNum = newRecordCount; unusedRecordNum < oldRecordCount; ++unusedRecordNum)
+            {
+                final TrustRecord.Unused unused = new TrustRecord.Unused();
+                unused.setRecordNum(unusedRecordNum);
+                putTrustRecord(unused, false);
+            }
+
+            // One batch, one commit. The journal is emptied before truncating, so it cannot extend the file again.
+            flush();
+            commitNow();
+            if (journal != null)
+                checkpoint();
+
+            try
+            {
+                raf.setLength(newRecordCount * TRUST_RECORD_LEN);
+                if (durability != Durability.OS_BUFFERED)
+                    raf.flush();
+            } catch (IOException e)
+            {
+                throw new TrustDbIoException(e);
+            }
+            cache.clear();
+
+            logger.info("compact: {} trust records dropped, {} records before, {} records after", droppedCount[0],
+                    oldRecordCount, getFileRecordCount());
+            return droppedCount[0];
+        } finally
+        {
+            compactedRecordCount = -1;
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Splits all hash lists of the trust hash table consisting of more than {@code maxHashListChainLength} records into
+     * nested hash tables.
+     * <p>
+     * This is used to rebalance a {@code trustdb.gpg} which was populated without a
+     * {@linkplain TrustDbOptions#getMaxHashListChainLength() maximum chain length} (e.g. by GnuPG). Afterwards, this
+     * method should be followed by {@link #flush()}.
+     *
+     * @param maxHashListChainLength
+     *            the maximum number of records a hash list may consist of. Must be greater than 0.
+     * @return the number of hash lists which were split.
+     */
+    public int rebalanceHashTable(final int maxHashListChainLength) throws TrustDbIoException
+    {
+        writeLock.lock();
+        try
+        {
+            if (maxHashListChainLength < 1)
+                throw new IllegalArgumentException("maxHashListChainLength < 1");
+
+            return rebalanceHashTable(getTrustHashRec(), 0, maxHashListChainLength);
+        } finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    private int rebalanceHashTable(final long table, final int level, final int maxHashListChainLength)
+            throws TrustDbIoException
+    {
+        int splitCount = 0;
+        for (int msb = 0; msb < 256; ++msb)
+        {
+            final long hashrec = table + msb / ITEMS_PER_HTBL_RECORD;
+            final TrustRecord.HashTbl hashTable = getTrustRecord(hashrec, TrustRecord.HashTbl.class);
+            final long item = hashTable.getItem(msb % ITEMS_PER_HTBL_RECORD);
+            if (item == 0)
+                continue;
+
+            final TrustRecord rec = getTrustRecord(item);
+            if (rec.getType() == TrustRecordType.HTBL)
+                splitCount += rebalanceHashTable(item, level + 1, maxHashListChainLength);
+            else if (rec.getType() == TrustRecordType.HLST
+                    && level + 1 < FingerprintIndex.FINGERPRINT_LEN
+                    && getHashListChainLength((TrustRecord.HashLst) rec) > maxHashListChainLength)
+            {
+                splitHashList(hashrec, msb % ITEMS_PER_HTBL_RECORD, item, level + 1);
+                ++splitCount;
+            }
+        }
+        return splitCount;
     }
 
     public void flush() throws TrustDbIoException
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
+            // The dirty records are sorted by their numbers => coalesce consecutive records into one write.
+            long runFirstRecordNum = -1;
+            int runRecordCount = 0;
+            long writtenRecordCount = 0;
             for (TrustRecord trustRecord : dirtyRecordNum2TrustRecord.values())
-                writeTrustRecord(trustRecord);
+            {
+                final long recordNum = trustRecord.getRecordNum();
+                if (runRecordCount > 0
+                        && (recordNum != runFirstRecordNum + runRecordCount || runRecordCount == MAX_RECORDS_PER_WRITE))
+                {
+                    writtenRecordCount += writeRun(runFirstRecordNum, runRecordCount);
+                    runRecordCount = 0;
+                }
+                if (runRecordCount == 0)
+                    runFirstRecordNum = recordNum;
 
+                encodeTrustRecord(trustRecord, runBuffer, runRecordCount * TRUST_RECORD_LEN);
+                ++runRecordCount;
+            }
+            if (runRecordCount > 0)
+                writtenRecordCount += writeRun(runFirstRecordNum, runRecordCount);
+
+            logger.debug("flush: {} dirty records, {} actually written", dirtyRecordNum2TrustRecord.size(),
+                    writtenRecordCount);
             dirtyRecordNum2TrustRecord.clear();
 
+            // Nothing written => nothing to sync.
+            if (writtenRecordCount == 0)
+                return;
+
+            if (journal != null)
+                journal.writeBatch();
+
+            switch (durability)
+            {
+                case SYNC:
+                    commitNow();
+                    break;
+                case GROUP_COMMIT:
+                    scheduleGroupCommit();
+                    break;
+                case OS_BUFFERED:
+                    if (journal != null)
+                        applyJournal();
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown durability: " + durability);
+            }
+        } finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the data written to the storage device. If there is a journal, the journal is synced and then applied to
+     * the file - the file itself is synced only by the next {@linkplain #checkpoint() checkpoint}.
+     * <p>
+     * With {@link Durability#OS_BUFFERED OS_BUFFERED}, nothing is synced - a journal is only applied.
+     */
+    private void commitNow() throws TrustDbIoException
+    {
+        syncPending = false;
+        if (journal != null)
+        {
+            journal.sync();
+            applyJournal();
+            return;
+        }
+        if (durability == Durability.OS_BUFFERED)
+            return;
+
+        try
+        {
+            raf.flush();
+        } catch (IOException e)
+        {
+            throw new TrustDbIoException(e);
+        }
+    }
+
+    /**
+     * Writes the batches pending in the journal to the file.
+     */
+    private void applyJournal() throws TrustDbIoException
+    {
+        if (!journal.hasUnapplied())
+            return;
+
+        // Write the newest version of every record in the order of their numbers - coalescing consecutive records
+        // into one write and skipping those, which the file already contains (just like flush() does).
+        final int[] indexes = journal.getNewestUnappliedIndexes();
+        long runFirstRecordNum = -1;
+        int runRecordCount = 0;
+        for (final int index : indexes)
+        {
+            final long recordNum = journal.getUnappliedRecordNum(index);
+            if (runRecordCount > 0
+                    && (recordNum != runFirstRecordNum + runRecordCount || runRecordCount == MAX_RECORDS_PER_WRITE))
+            {
+                writeRun(runFirstRecordNum, runRecordCount, false);
+                runRecordCount = 0;
+            }
+            if (runRecordCount == 0)
+                runFirstRecordNum = recordNum;
+
+            journal.copyUnapplied(index, runBuffer.array(), runRecordCount * TRUST_RECORD_LEN);
+            ++runRecordCount;
+        }
+        if (runRecordCount > 0)
+            writeRun(runFirstRecordNum, runRecordCount, false);
+
+        for (final int index : indexes)
+        {
+            final long recordNum = journal.getUnappliedRecordNum(index);
+            // A record modified again (after the last flush) must stay dirty.
+            if (dirtyRecordNum2TrustRecord.isEmpty() || !dirtyRecordNum2TrustRecord.containsKey(recordNum))
+                cache.markClean(recordNum);
+        }
+        journal.clearUnapplied();
+
+        if (journal.isCheckpointNeeded())
+            checkpoint();
+    }
+
+    /**
+     * Syncs the file and then empties the journal, which is not needed anymore.
+     * <p>
+     * With {@link Durability#OS_BUFFERED OS_BUFFERED}, neither is synced: The records were written to the OS before
+     * the journal is emptied, so they survive a crash of the process - which is all the journal protects against in
+     * this case.
+     */
+    private void checkpoint() throws TrustDbIoException
+    {
+        if (journal.getLength() == 0)
+            return;
+
+        if (durability != Durability.OS_BUFFERED)
+        {
             try
             {
                 raf.flush();
@@ -792,24 +1907,157 @@ class TrustDbIo implements AutoCloseable, TrustConst
                 throw new TrustDbIoException(e);
             }
         }
+        journal.reset();
+    }
+
+    /**
+     * Makes sure the data written is synced within the {@link #groupCommitIntervalMillis}. If a sync is already
+     * scheduled, the data just written is covered by it, too - otherwise a new one is scheduled.
+     */
+    private void scheduleGroupCommit()
+    {
+        syncPending = true;
+        if (groupCommitTask != null)
+            return;
+
+        groupCommitTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    groupCommit(this);
+                } catch (RuntimeException | Error x)
+                {
+                    logger.error("groupCommit: " + x, x);
+                }
+            }
+        };
+        groupCommitFuture = getGroupCommitExecutor().schedule(groupCommitTask, groupCommitIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Performs the sync scheduled by {@link #scheduleGroupCommit()}.
+     * <p>
+     * The {@code fsync} itself is done while holding merely the read lock (downgraded from the write lock): Readers are
+     * thus not blocked, while writers (and {@link #close()}) still cannot modify the file during the sync. With a
+     * journal, the journal is synced this way; applying it to the file afterwards requires the write lock again - and
+     * another (usually cheap) sync of the journal, because more batches might have been written in the meantime.
+     *
+     * @param task
+     *            the task invoking this method. Does nothing, if it is not the current {@link #groupCommitTask}.
+     */
+    private void groupCommit(final Runnable task) throws TrustDbIoException
+    {
+        writeLock.lock();
+        try
+        {
+            if (groupCommitTask != task)
+                return;
+
+            groupCommitTask = null;
+            groupCommitFuture = null;
+            if (closed || !syncPending)
+                return;
+
+            syncPending = false;
+            readLock.lock(); // downgrade => released below.
+        } finally
+        {
+            writeLock.unlock();
+        }
+
+        try
+        {
+            if (journal != null)
+                journal.sync();
+            else
+                raf.flush();
+        } catch (IOException e)
+        {
+            throw new TrustDbIoException(e);
+        } finally
+        {
+            readLock.unlock();
+        }
+
+        if (journal == null)
+            return;
+
+        writeLock.lock();
+        try
+        {
+            if (!closed)
+                commitNow();
+        } finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getGroupCommitExecutor()
+    {
+        if (groupCommitExecutor == null)
+        {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(final Runnable runnable)
+                {
+                    final Thread thread = new Thread(runnable, "TrustDbIo.groupCommit");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            groupCommitExecutor = executor;
+        }
+        return groupCommitExecutor;
     }
 
     @Override
     public void close() throws TrustDbIoException
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
             if (closed)
                 return;
 
             flush();
+            if (groupCommitTask != null)
+            {
+                groupCommitFuture.cancel(false);
+                groupCommitTask = null;
+                groupCommitFuture = null;
+            }
+            if (syncPending)
+                commitNow();
+
+            if (journal != null)
+            {
+                applyJournal();
+                checkpoint();
+                journal.close();
+            }
+
             closed = true;
+            final long length;
             try
             {
+                length = raf.getLength();
                 raf.close();
             } catch (IOException e)
             {
                 throw new TrustDbIoException(e);
             }
+            if (bloomFilterFile != null)
+                saveBloomFilter(length);
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 }
@@ -0,0 +1,488 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static java.util.Objects.*;
+import static org.bouncycastle.openpgp.wot.internal.Util.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.bouncycastle.openpgp.wot.PgpFile;
+import org.bouncycastle.openpgp.wot.PgpRandomAccessFile;
+import org.bouncycastle.openpgp.wot.TrustConst;
+import org.bouncycastle.openpgp.wot.TrustDbIoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Redo-journal (write-ahead log) for the {@code trustdb.gpg}.
+ * <p>
+ * {@link TrustDbIo} does not write modified records directly into the {@code trustdb.gpg}. Instead, all records
+ * modified by one flush are appended to this journal as one single <i>batch</i>, which is synced once. Only afterwards,
+ * the records are <i>applied</i> to the {@code trustdb.gpg} - without syncing it. When the journal grows too large and
+ * when it is closed, a <i>checkpoint</i> syncs the {@code trustdb.gpg} and empties the journal.
+ * <p>
+ * If the process (or the OS) crashes, the {@code trustdb.gpg} might contain half-applied modifications. They are
+ * repaired by {@linkplain #replay(PgpRandomAccessFile) replaying} the journal, when the {@code trustdb.gpg} is opened
+ * the next time. A batch which was not completely written (and synced) to the journal is ignored - the
+ * {@code trustdb.gpg} does not contain any of its records, then, because they are applied only after the batch was
+ * synced.
+ * <p>
+ * The binary format of a batch is:
+ * <pre>
+ * int  magic          {@link #BATCH_MAGIC}
+ * int  recordCount
+ * long sequence       incremented with every batch (informational)
+ * recordCount times:
+ *   long recordNum
+ *   byte[{@value #TRUST_RECORD_LEN}] record
+ * long checksum       CRC32 of all preceding bytes of this batch
+ * </pre>
+ * All numbers are big-endian.
+ * <p>
+ * <b>Important:</b> This class is not thread-safe! It is guarded by the lock of its {@link TrustDbIo}: Only the
+ * reading methods are invoked while holding merely the read lock.
+ */
+class TrustDbJournal implements AutoCloseable, TrustConst
+{
+    private static final Logger logger = LoggerFactory.getLogger(TrustDbJournal.class);
+
+    /** "TDJB" = <b>T</b>rust<b>D</b>b <b>J</b>ournal <b>B</b>atch */
+    static final int BATCH_MAGIC = 0x54444a42;
+
+    private static final int HEADER_LEN = 4 + 4 + 8;
+    private static final int ENTRY_LEN = 8 + TRUST_RECORD_LEN;
+    private static final int TRAILER_LEN = 8;
+
+    /**
+     * Journal size which triggers a checkpoint, when it is exceeded.
+     */
+    static final long CHECKPOINT_SIZE = 4 * 1024 * 1024;
+
+    private final PgpFile file;
+    private final PgpRandomAccessFile raf;
+    private final boolean fsyncEnabled;
+    private long length;
+    private long sequence;
+
+    /** The batch currently being collected: {@link #HEADER_LEN} bytes reserved, followed by the entries. */
+    private ByteBuffer batch = ByteBuffer.allocate(HEADER_LEN + 64 * ENTRY_LEN);
+    private int batchRecordCount;
+
+    /** Entries written to the journal, but not yet applied to the {@code trustdb.gpg}. */
+    private ByteBuffer unapplied = ByteBuffer.allocate(0);
+    private int unappliedRecordCount;
+    private Map<Long, Integer> unappliedRecordNum2Index;
+    private long maxUnappliedRecordNum = -1;
+
+    private final CRC32 crc32 = new CRC32();
+
+    /**
+     * Opens the journal. The file is created, if it does not yet exist.
+     *
+     * @param file
+     *            the journal-file. Must not be <code>null</code>.
+     * @throws TrustDbIoException
+     *             if opening the file failed.
+     */
+    public TrustDbJournal(final PgpFile file) throws TrustDbIoException
+    {
+        this(file, true);
+    }
+
+    /**
+     * Opens the journal. The file is created, if it does not yet exist.
+     *
+     * @param file
+     *            the journal-file. Must not be <code>null</code>.
+     * @param fsyncEnabled
+     *            whether the journal (and the {@code trustdb.gpg} when {@linkplain #replay(PgpRandomAccessFile)
+     *            replaying}) is forced to the storage device. If <code>false</code> (for
+     *            {@link org.bouncycastle.openpgp.wot.Durability#OS_BUFFERED OS_BUFFERED}), the journal protects only
+     *            against a crash of the process - not against a crash of the OS.
+     * @throws TrustDbIoException
+     *             if opening the file failed.
+     */
+    public TrustDbJournal(final PgpFile file, final boolean fsyncEnabled) throws TrustDbIoException
+    {
+        this.file = requireNonNull(file, "file");
+        this.fsyncEnabled = fsyncEnabled;
+        try
+        {
+            this.raf = file.createRandomAccessFile();
+            this.length = raf.getLength();
+        } catch (IOException e)
+        {
+            throw new TrustDbIoException(e);
+        }
+    }
+
+    /**
+     * Applies all complete batches in the journal to the given {@code trustdb.gpg}, syncs it (if
+     * {@linkplain #TrustDbJournal(PgpFile, boolean) enabled}) and then empties the journal.
+     * <p>
+     * Replaying is idempotent: A batch which was already applied (completely or partially) before is simply applied
+     * again.
+     *
+     * @param target
+     *            the {@code trustdb.gpg}. Must not be <code>null</code>.
+     * @return the number of batches replayed.
+     * @throws TrustDbIoException
+     *             if reading or writing failed.
+     */
+    public int replay(final PgpRandomAccessFile target) throws TrustDbIoException
+    {
+        requireNonNull(target, "target");
+        if (length == 0)
+            return 0;
+
+        int batchCount = 0;
+        long pos = 0;
+        final byte[] header = new byte[HEADER_LEN];
+        try
+        {
+            while (pos + HEADER_LEN + TRAILER_LEN <= length)
+            {
+                raf.seek(pos);
+                raf.readFully(header);
+                final ByteBuffer headerBuf = ByteBuffer.wrap(header);
+                final int recordCount = headerBuf.getInt(4);
+                if (headerBuf.getInt(0) != BATCH_MAGIC || recordCount < 0)
+                    break;
+
+                final long batchLength = HEADER_LEN + (long) recordCount * ENTRY_LEN + TRAILER_LEN;
+                if (pos + batchLength > length)
+                    break; // incomplete
+
+                final byte[] batchBytes = new byte[(int) batchLength];
+                raf.seek(pos);
+                raf.readFully(batchBytes);
+                crc32.reset();
+                crc32.update(batchBytes, 0, batchBytes.length - TRAILER_LEN);
+                final ByteBuffer batchBuf = ByteBuffer.wrap(batchBytes);
+                if (batchBuf.getLong(batchBytes.length - TRAILER_LEN) != crc32.getValue())
+                    break; // corrupt
+
+                for (int i = 0; i < recordCount; ++i)
+                {
+                    final int entryOffset = HEADER_LEN + i * ENTRY_LEN;
+                    target.write(batchBuf.getLong(entryOffset) * TRUST_RECORD_LEN,
+                            ByteBuffer.wrap(batchBytes, entryOffset + 8, TRUST_RECORD_LEN));
+                }
+                sequence = batchBuf.getLong(8);
+                ++batchCount;
+                pos += batchLength;
+            }
+        } catch (EOFException x)
+        {
+            doNothing(); // incomplete => ignore
+        } catch (IOException x)
+        {
+            throw new TrustDbIoException(x);
+        }
+
+        if (pos < length)
+            logger.warn("replay: Ignoring incomplete or corrupt tail of journal '{}' ({} bytes).", file.getId(),
+                    length - pos);
+
+        logger.info("replay: {} batches replayed from journal '{}'.", batchCount, file.getId());
+        if (fsyncEnabled)
+        {
+            try
+            {
+                target.flush();
+            } catch (IOException x)
+            {
+                throw new TrustDbIoException(x);
+            }
+        }
+        reset();
+        return batchCount;
+    }
+
+    /**
+     * Adds records to the current batch.
+     *
+     * @param firstRecordNum
+     *            the number of the first record. The others have consecutive numbers.
+     * @param src
+     *            the records' binary data. Must not be <code>null</code>.
+     * @param offset
+     *            the index of the first record's first byte in {@code src}.
+     * @param recordCount
+     *            the number of records.
+     */
+    public void append(final long firstRecordNum, final byte[] src, final int offset, final int recordCount)
+    {
+        if (batch.position() == 0)
+            batch.position(HEADER_LEN);
+
+        batch = ensureRemaining(batch, recordCount * ENTRY_LEN);
+
+        for (int i = 0; i < recordCount; ++i)
+        {
+            batch.putLong(firstRecordNum + i);
+            batch.put(src, offset + i * TRUST_RECORD_LEN, TRUST_RECORD_LEN);
+        }
+        batchRecordCount += recordCount;
+    }
+
+    /**
+     * Writes the current batch to the journal (without syncing it). Its records become <i>unapplied</i>.
+     * <p>
+     * Does nothing, if the batch is empty.
+     */
+    public void writeBatch() throws TrustDbIoException
+    {
+        if (batchRecordCount == 0)
+            return;
+
+        batch = ensureRemaining(batch, TRAILER_LEN);
+        batch.putInt(0, BATCH_MAGIC);
+        batch.putInt(4, batchRecordCount);
+        batch.putLong(8, ++sequence);
+        crc32.reset();
+        crc32.update(batch.array(), 0, batch.position());
+        batch.putLong(crc32.getValue());
+
+        try
+        {
+            raf.seek(length);
+            raf.write(batch.array(), 0, batch.position());
+        } catch (IOException x)
+        {
+            throw new TrustDbIoException(x);
+        }
+        length += batch.position();
+
+        unapplied = ensureRemaining(unapplied, batchRecordCount * ENTRY_LEN);
+        unapplied.put(batch.array(), HEADER_LEN, batchRecordCount * ENTRY_LEN);
+        for (int i = 0; i < batchRecordCount; ++i)
+        {
+            final long recordNum = batch.getLong(HEADER_LEN + i * ENTRY_LEN);
+            if (recordNum > maxUnappliedRecordNum)
+                maxUnappliedRecordNum = recordNum;
+
+            if (unappliedRecordNum2Index != null)
+                unappliedRecordNum2Index.put(recordNum, unappliedRecordCount + i);
+        }
+        unappliedRecordCount += batchRecordCount;
+
+        batch.clear();
+        batchRecordCount = 0;
+    }
+
+    /**
+     * Forces the journal to the storage device. Does nothing, if syncing is not
+     * {@linkplain #TrustDbJournal(PgpFile, boolean) enabled}.
+     */
+    public void sync() throws TrustDbIoException
+    {
+        if (!fsyncEnabled)
+            return;
+
+        try
+        {
+            raf.flush();
+        } catch (IOException x)
+        {
+            throw new TrustDbIoException(x);
+        }
+    }
+
+    public boolean hasUnapplied()
+    {
+        return unappliedRecordCount > 0;
+    }
+
+    public int getUnappliedRecordCount()
+    {
+        return unappliedRecordCount;
+    }
+
+    public long getUnappliedRecordNum(final int index)
+    {
+        return unapplied.getLong(index * ENTRY_LEN);
+    }
+
+    /**
+     * Gets the highest number of all unapplied records.
+     *
+     * @return the highest number of all unapplied records or -1, if there are none.
+     */
+    public long getMaxUnappliedRecordNum()
+    {
+        return maxUnappliedRecordNum;
+    }
+
+    /**
+     * Copies the latest unapplied data of the given record into {@code dst}.
+     *
+     * @return <code>true</code>, if the record is unapplied; <code>false</code> otherwise.
+     */
+    public synchronized boolean readUnapplied(final long recordNum, final byte[] dst, final int dstOffset)
+    {
+        if (unappliedRecordCount == 0 || recordNum > maxUnappliedRecordNum)
+            return false;
+
+        if (unappliedRecordNum2Index == null)
+        {
+            // Only needed, if the cache could not hold a dirty record => lazily created (synchronized, because
+            // concurrent readers might get here simultaneously).
+            unappliedRecordNum2Index = new HashMap<>();
+            for (int i = 0; i < unappliedRecordCount; ++i)
+                unappliedRecordNum2Index.put(getUnappliedRecordNum(i), i);
+        }
+        final Integer index = unappliedRecordNum2Index.get(recordNum);
+        if (index == null)
+            return false;
+
+        System.arraycopy(unapplied.array(), index * ENTRY_LEN + 8, dst, dstOffset, TRUST_RECORD_LEN);
+        return true;
+    }
+
+    /**
+     * Copies the latest unapplied data of all records in the given range into {@code dst}. Records in this range,
+     * which are not unapplied, are left untouched in {@code dst}.
+     *
+     * @param firstRecordNum
+     *            the number of the first record in the range.
+     * @param recordCount
+     *            the number of records in the range.
+     * @param dst
+     *            the destination array holding the range's records. Must not be <code>null</code>.
+     * @param dstOffset
+     *            the index in {@code dst} of the first record's first byte.
+     */
+    public void readUnapplied(final long firstRecordNum, final int recordCount, final byte[] dst, final int dstOffset)
+    {
+        if (unappliedRecordCount == 0 || firstRecordNum > maxUnappliedRecordNum)
+            return;
+
+        // Later entries are newer => copied last.
+        for (int i = 0; i < unappliedRecordCount; ++i)
+        {
+            final long recordNum = getUnappliedRecordNum(i);
+            if (recordNum >= firstRecordNum && recordNum < firstRecordNum + recordCount)
+                System.arraycopy(unapplied.array(), i * ENTRY_LEN + 8, dst,
+                        dstOffset + (int) (recordNum - firstRecordNum) * TRUST_RECORD_LEN, TRUST_RECORD_LEN);
+        }
+    }
+
+    /**
+     * Gets the indexes of the newest unapplied entry of every record - sorted by the records' numbers. These are the
+     * entries to be written to the {@code trustdb.gpg}, when the journal is applied.
+     *
+     * @return the indexes to be passed to {@link #getUnappliedRecordNum(int)} and
+     *         {@link #copyUnapplied(int, byte[], int)}. Never <code>null</code>.
+     */
+    public int[] getNewestUnappliedIndexes()
+    {
+        // Record numbers are 32 bit (unsigned) => (recordNum, index) fits into one long, sorted by both.
+        final long[] keys = new long[unappliedRecordCount];
+        for (int i = 0; i < unappliedRecordCount; ++i)
+            keys[i] = getUnappliedRecordNum(i) << 32 | i;
+
+        Arrays.sort(keys);
+        final int[] result = new int[keys.length];
+        int count = 0;
+        for (int i = 0; i < keys.length; ++i)
+        {
+            // A later entry of the same record supersedes this one.
+            if (i + 1 < keys.length && keys[i + 1] >>> 32 == keys[i] >>> 32)
+                continue;
+
+            result[count++] = (int) keys[i];
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Copies the data of the given unapplied entry into {@code dst}.
+     *
+     * @param index
+     *            the entry's index (0 to {@link #getUnappliedRecordCount()} - 1).
+     * @param dst
+     *            the destination array. Must not be <code>null</code>.
+     * @param dstOffset
+     *            the index in {@code dst} of the record's first byte.
+     */
+    public void copyUnapplied(final int index, final byte[] dst, final int dstOffset)
+    {
+        System.arraycopy(unapplied.array(), index * ENTRY_LEN + 8, dst, dstOffset, TRUST_RECORD_LEN);
+    }
+
+    /**
+     * Forgets all unapplied records. Invoked after they were written to the {@code trustdb.gpg}.
+     */
+    public void clearUnapplied()
+    {
+        unapplied.clear();
+        unappliedRecordCount = 0;
+        unappliedRecordNum2Index = null;
+        maxUnappliedRecordNum = -1;
+    }
+
+    /**
+     * Determines whether a checkpoint should be done.
+     *
+     * @return <code>true</code>, if the journal exceeded {@link #CHECKPOINT_SIZE}.
+     */
+    public boolean isCheckpointNeeded()
+    {
+        return length > CHECKPOINT_SIZE;
+    }
+
+    public long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Empties the journal (and syncs it, if {@linkplain #TrustDbJournal(PgpFile, boolean) enabled}). Invoked after
+     * the {@code trustdb.gpg} was synced, i.e. when the journal's content is not needed anymore.
+     */
+    public void reset() throws TrustDbIoException
+    {
+        if (hasUnapplied())
+            throw new IllegalStateException("There are unapplied records!");
+
+        try
+        {
+            raf.setLength(0);
+            if (fsyncEnabled)
+                raf.flush();
+        } catch (IOException x)
+        {
+            throw new TrustDbIoException(x);
+        }
+        length = 0;
+    }
+
+    @Override
+    public void close() throws TrustDbIoException
+    {
+        try
+        {
+            raf.close();
+        } catch (IOException x)
+        {
+            throw new TrustDbIoException(x);
+        }
+    }
+
+    private static ByteBuffer ensureRemaining(final ByteBuffer buffer, final int minRemaining)
+    {
+        if (buffer.remaining() >= minRemaining)
+            return buffer;
+
+        final int newCapacity = Math.max(buffer.capacity() * 2, buffer.position() + minRemaining);
+        final ByteBuffer newBuffer = ByteBuffer.wrap(Arrays.copyOf(buffer.array(), newCapacity));
+        newBuffer.position(buffer.position());
+        return newBuffer;
+    }
+}
@@ -0,0 +1,330 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static java.util.Objects.*;
+import static org.bouncycastle.openpgp.wot.internal.Util.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.wot.OwnerTrust;
+import org.bouncycastle.openpgp.wot.TrustConst;
+import org.bouncycastle.openpgp.wot.TrustDbIoException;
+import org.bouncycastle.openpgp.wot.TrustDbSnapshot;
+import org.bouncycastle.openpgp.wot.Validity;
+import org.bouncycastle.openpgp.wot.key.PgpKey;
+import org.bouncycastle.openpgp.wot.key.PgpUserId;
+import org.bouncycastle.openpgp.wot.key.PgpUserIdNameHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable {@link TrustDbSnapshot} created by {@link TrustDbImpl}.
+ * <p>
+ * All data is kept in a few primitive arrays: The keys are sorted by their fingerprints, which are stored one after
+ * the other in one single array and found by binary search. The valid-records of each key (name-hash and validity) are
+ * stored in the same way; {@link #validOffsets} maps a key's index to the range of its valid-records.
+ */
+class TrustDbSnapshotImpl implements TrustDbSnapshot, TrustConst
+{
+    private static final Logger logger = LoggerFactory.getLogger(TrustDbSnapshotImpl.class);
+
+    private static final int FINGERPRINT_LEN = 20;
+    private static final int NAME_HASH_LEN = 20;
+
+    private final long generation;
+    private final int keyCount;
+
+    /** The fingerprints of all keys - sorted. Key {@code i} is located at {@code i * FINGERPRINT_LEN}. */
+    private final byte[] fingerprints;
+
+    /** The owner-trust (including flags) of each key. */
+    private final byte[] ownerTrusts;
+
+    /** The validity (without flags) of each key, i.e. the highest validity of its user-identities. */
+    private final byte[] keyValidities;
+
+    /**
+     * The valid-records of key {@code i} are located in the range [{@code validOffsets[i]},
+     * {@code validOffsets[i + 1]}).
+     */
+    private final int[] validOffsets;
+
+    /** The name-hashes of all valid-records. Entry {@code j} is located at {@code j * NAME_HASH_LEN}. */
+    private final byte[] nameHashes;
+
+    /** The validity (without flags) of each valid-record. */
+    private final byte[] validities;
+
+    private TrustDbSnapshotImpl(final long generation, final int keyCount, final byte[] fingerprints,
+            final byte[] ownerTrusts, final byte[] keyValidities, final int[] validOffsets, final byte[] nameHashes,
+            final byte[] validities)
+    {
+        this.generation = generation;
+        this.keyCount = keyCount;
+        this.fingerprints = fingerprints;
+        this.ownerTrusts = ownerTrusts;
+        this.keyValidities = keyValidities;
+        this.validOffsets = validOffsets;
+        this.nameHashes = nameHashes;
+        this.validities = validities;
+    }
+
+    /**
+     * Creates a snapshot by reading the entire trust-database once (sequentially).
+     * <p>
+     * Must be invoked while holding the (read or write) lock.
+     *
+     * @param trustDbIo
+     *            the trust-database to read. Must not be <code>null</code>.
+     * @param generation
+     *            the {@code TrustDbImpl}'s current generation.
+     * @return the new snapshot. Never <code>null</code>.
+     */
+    static TrustDbSnapshotImpl create(final TrustDbIo trustDbIo, final long generation) throws TrustDbIoException
+    {
+        requireNonNull(trustDbIo, "trustDbIo");
+        final Collector collector = new Collector();
+        trustDbIo.scan(null, collector);
+        return collector.toSnapshot(generation);
+    }
+
+    /**
+     * Gets the generation of the {@code TrustDbImpl} this snapshot was taken at.
+     *
+     * @return the generation.
+     */
+    long getGeneration()
+    {
+        return generation;
+    }
+
+    @Override
+    public int getKeyCount()
+    {
+        return keyCount;
+    }
+
+    @Override
+    public OwnerTrust getOwnerTrust(PgpKey pgpKey)
+    {
+        requireNonNull(pgpKey, "pgpKey");
+        if (pgpKey.getMasterKey() != null)
+            pgpKey = pgpKey.getMasterKey();
+
+        return getOwnerTrust(pgpKey.getPublicKey());
+    }
+
+    @Override
+    public OwnerTrust getOwnerTrust(final PGPPublicKey publicKey)
+    {
+        requireNonNull(publicKey, "publicKey");
+        final int index = indexOf(publicKey.getFingerprint());
+        if (index < 0)
+            return null;
+
+        return OwnerTrust.fromNumericValue(ownerTrusts[index] & TRUST_MASK);
+    }
+
+    @Override
+    public boolean isDisabled(PgpKey pgpKey)
+    {
+        requireNonNull(pgpKey, "pgpKey");
+        if (pgpKey.getMasterKey() != null)
+            pgpKey = pgpKey.getMasterKey();
+
+        return isDisabled(pgpKey.getPublicKey());
+    }
+
+    @Override
+    public boolean isDisabled(final PGPPublicKey publicKey)
+    {
+        requireNonNull(publicKey, "publicKey");
+        final int index = indexOf(publicKey.getFingerprint());
+        if (index < 0)
+            return false;
+
+        return (ownerTrusts[index] & TRUST_FLAG_DISABLED) != 0;
+    }
+
+    @Override
+    public Validity getValidity(final PgpKey pgpKey)
+    {
+        requireNonNull(pgpKey, "pgpKey");
+        return getValidity(pgpKey.getPublicKey());
+    }
+
+    @Override
+    public Validity getValidity(final PgpUserId pgpUserId)
+    {
+        requireNonNull(pgpUserId, "pgpUserId");
+        return getValidity(pgpUserId.getPgpKey().getPublicKey(), pgpUserId.getNameHash());
+    }
+
+    @Override
+    public Validity getValidity(final PGPPublicKey publicKey)
+    {
+        requireNonNull(publicKey, "publicKey");
+        final int index = indexOf(publicKey.getFingerprint());
+        if (index < 0)
+            return Validity.fromNumericValue(TRUST_UNKNOWN);
+
+        return Validity.fromNumericValue(keyValidities[index]);
+    }
+
+    @Override
+    public Validity getValidity(final PGPPublicKey publicKey, final PgpUserIdNameHash pgpUserIdNameHash)
+    {
+        requireNonNull(publicKey, "publicKey");
+        requireNonNull(pgpUserIdNameHash, "pgpUserIdNameHash");
+        final int index = indexOf(publicKey.getFingerprint());
+        if (index < 0)
+            return Validity.fromNumericValue(TRUST_UNKNOWN);
+
+        final byte[] nameHash = pgpUserIdNameHash.getBytes();
+        if (nameHash.length == NAME_HASH_LEN)
+        {
+            for (int j = validOffsets[index]; j < validOffsets[index + 1]; ++j)
+            {
+                if (compareUnsigned(nameHashes, j * NAME_HASH_LEN, nameHash, 0, NAME_HASH_LEN) == 0)
+                    return Validity.fromNumericValue(validities[j]);
+            }
+        }
+        return Validity.fromNumericValue(TRUST_UNKNOWN);
+    }
+
+    private int indexOf(final byte[] fingerprint)
+    {
+        if (fingerprint.length != FINGERPRINT_LEN)
+            return -1;
+
+        int low = 0;
+        int high = keyCount - 1;
+        while (low <= high)
+        {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compareUnsigned(fingerprints, mid * FINGERPRINT_LEN, fingerprint, 0, FINGERPRINT_LEN);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Collects the trust- and valid-records during a {@linkplain TrustDbIo#scan(TrustRecordType, TrustRecordVisitor)
+     * scan} (in the order of their record numbers) and then links them into a snapshot.
+     */
+    private static class Collector implements TrustRecordVisitor
+    {
+        private int trustCount;
+        private byte[] trustFingerprints = new byte[64 * FINGERPRINT_LEN];
+        private byte[] trustOwnerTrusts = new byte[64];
+        private long[] trustValidLists = new long[64];
+
+        private int validCount;
+        private long[] validRecordNums = new long[64];
+        private byte[] validNameHashes = new byte[64 * NAME_HASH_LEN];
+        private byte[] validValidities = new byte[64];
+        private long[] validNexts = new long[64];
+
+        @Override
+        public boolean visit(final TrustRecordView view) throws TrustDbIoException
+        {
+            if (view.getType() == TrustRecordType.TRUST)
+            {
+                final TrustRecordView.Trust trust = (TrustRecordView.Trust) view;
+                if (trustCount == trustOwnerTrusts.length)
+                {
+                    trustFingerprints = Arrays.copyOf(trustFingerprints, 2 * trustFingerprints.length);
+                    trustOwnerTrusts = Arrays.copyOf(trustOwnerTrusts, 2 * trustOwnerTrusts.length);
+                    trustValidLists = Arrays.copyOf(trustValidLists, 2 * trustValidLists.length);
+                }
+                System.arraycopy(trust.getFingerprint(), 0, trustFingerprints, trustCount * FINGERPRINT_LEN,
+                        FINGERPRINT_LEN);
+                trustOwnerTrusts[trustCount] = (byte) trust.getOwnerTrust();
+                trustValidLists[trustCount] = trust.getValidList();
+                ++trustCount;
+            }
+            else if (view.getType() == TrustRecordType.VALID)
+            {
+                final TrustRecordView.Valid valid = (TrustRecordView.Valid) view;
+                if (validCount == validRecordNums.length)
+                {
+                    validRecordNums = Arrays.copyOf(validRecordNums, 2 * validRecordNums.length);
+                    validNameHashes = Arrays.copyOf(validNameHashes, 2 * validNameHashes.length);
+                    validValidities = Arrays.copyOf(validValidities, 2 * validValidities.length);
+                    validNexts = Arrays.copyOf(validNexts, 2 * validNexts.length);
+                }
+                validRecordNums[validCount] = valid.getRecordNum();
+                System.arraycopy(valid.getNameHash(), 0, validNameHashes, validCount * NAME_HASH_LEN, NAME_HASH_LEN);
+                validValidities[validCount] = (byte) (valid.getValidity() & TRUST_MASK);
+                validNexts[validCount] = valid.getNext();
+                ++validCount;
+            }
+            return true;
+        }
+
+        public TrustDbSnapshotImpl toSnapshot(final long generation)
+        {
+            final Integer[] order = new Integer[trustCount];
+            for (int i = 0; i < trustCount; ++i)
+                order[i] = i;
+
+            Arrays.sort(order, new Comparator<Integer>()
+            {
+                @Override
+                public int compare(final Integer i1, final Integer i2)
+                {
+                    return compareUnsigned(trustFingerprints, i1 * FINGERPRINT_LEN, trustFingerprints,
+                            i2 * FINGERPRINT_LEN, FINGERPRINT_LEN);
+                }
+            });
+
+            final byte[] fingerprints = new byte[trustCount * FINGERPRINT_LEN];
+            final byte[] ownerTrusts = new byte[trustCount];
+            final byte[] keyValidities = new byte[trustCount];
+            final int[] validOffsets = new int[trustCount + 1];
+            final byte[] nameHashes = new byte[validCount * NAME_HASH_LEN];
+            final byte[] validities = new byte[validCount];
+
+            int validIndex = 0;
+            for (int i = 0; i < trustCount; ++i)
+            {
+                final int trustIndex = order[i];
+                System.arraycopy(trustFingerprints, trustIndex * FINGERPRINT_LEN, fingerprints, i * FINGERPRINT_LEN,
+                        FINGERPRINT_LEN);
+                ownerTrusts[i] = trustOwnerTrusts[trustIndex];
+                validOffsets[i] = validIndex;
+
+                int keyValidity = 0;
+                long recordNum = trustValidLists[trustIndex];
+                // The number of valid-records limits the chain's length => a corrupt (cyclic) chain cannot hang.
+                for (int step = 0; recordNum != 0 && step < validCount && validIndex < validCount; ++step)
+                {
+                    final int v = Arrays.binarySearch(validRecordNums, 0, validCount, recordNum);
+                    if (v < 0)
+                    {
+                        logger.warn("toSnapshot: valid-record {} referenced, but not found!", recordNum);
+                        break;
+                    }
+                    System.arraycopy(validNameHashes, v * NAME_HASH_LEN, nameHashes, validIndex * NAME_HASH_LEN,
+                            NAME_HASH_LEN);
+                    validities[validIndex] = validValidities[v];
+                    keyValidity = Math.max(keyValidity, validValidities[v]);
+                    ++validIndex;
+                    recordNum = validNexts[v];
+                }
+                keyValidities[i] = (byte) keyValidity;
+            }
+            validOffsets[trustCount] = validIndex;
+
+            return new TrustDbSnapshotImpl(generation, trustCount, fingerprints, ownerTrusts, keyValidities,
+                    validOffsets, Arrays.copyOf(nameHashes, validIndex * NAME_HASH_LEN),
+                    Arrays.copyOf(validities, validIndex));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.bouncycastle.openpgp.wot.IoFile;
+import org.bouncycastle.openpgp.wot.PgpFile;
+import org.bouncycastle.openpgp.wot.TrustDb;
+import org.bouncycastle.openpgp.wot.key.PgpKeyRegistry;
+
+/**
+ * Command line tool for maintaining a {@code trustdb.gpg} offline.
+ * <p>
+ * Usage: {@code java org.bouncycastle.openpgp.wot.internal.TrustDbTool <command> <trustdb.gpg> [<arguments>]}
+ * <p>
+ * Supported commands:
+ * <ul>
+ * <li>{@code rehash <trustdb.gpg> [<maxHashListChainLength>]}: Splits all hash lists longer than the given number of
+ * records (default: {@value #DEFAULT_MAX_HASH_LIST_CHAIN_LENGTH}) into nested hash tables. See
+ * {@link org.bouncycastle.openpgp.wot.TrustDbOptions#getMaxHashListChainLength()}.
+ * <li>{@code compact <trustdb.gpg> <pubring.gpg> [<secring.gpg>]}: Removes the entries of all keys not contained in
+ * the given key ring(s) and rewrites the {@code trustdb.gpg}. See {@link TrustDb#compact()}.
+ * </ul>
+ * <p>
+ * <b>Important:</b> The {@code trustdb.gpg} must not be used by any other process (e.g. GnuPG), while this tool runs!
+ */
+public final class TrustDbTool
+{
+    public static final int DEFAULT_MAX_HASH_LIST_CHAIN_LENGTH = 4;
+
+    private TrustDbTool()
+    {
+    }
+
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            printUsage();
+            System.exit(1);
+        }
+
+        final String command = args[0];
+        final PgpFile trustDbFile = new IoFile(new File(args[1]));
+        switch (command)
+        {
+            case "rehash":
+                final int maxHashListChainLength = args.length > 2 ? Integer.parseInt(args[2])
+                        : DEFAULT_MAX_HASH_LIST_CHAIN_LENGTH;
+                System.out.println(String.format("%d hash lists split.", rehash(trustDbFile, maxHashListChainLength)));
+                break;
+            case "compact":
+                if (args.length < 3)
+                {
+                    printUsage();
+                    System.exit(1);
+                }
+                final File pubringFile = new File(args[2]);
+                final File secringFile = args.length > 3 ? new File(args[3])
+                        : new File(pubringFile.getParentFile(), "secring.gpg");
+                final PgpKeyRegistry pgpKeyRegistry = PgpKeyRegistry.Helper.createInstance(new IoFile(pubringFile),
+                        new IoFile(secringFile));
+                System.out.println(String.format("%d keys removed.", compact(trustDbFile, pgpKeyRegistry)));
+                break;
+            default:
+                printUsage();
+                System.exit(1);
+        }
+    }
+
+    /**
+     * Rebalances the hash table of the given {@code trustdb.gpg}.
+     *
+     * @param trustDbFile
+     *            the {@code trustdb.gpg}. Must not be <code>null</code>.
+     * @param maxHashListChainLength
+     *            the maximum number of records a hash list may consist of. Must be greater than 0.
+     * @return the number of hash lists which were split.
+     */
+    public static int rehash(final PgpFile trustDbFile, final int maxHashListChainLength)
+    {
+        try (TrustDbIo trustDbIo = new TrustDbIo(trustDbFile, PgpIdLocks.getLock(trustDbFile.getPgpId()));)
+        {
+            final int splitCount = trustDbIo.rebalanceHashTable(maxHashListChainLength);
+            trustDbIo.flush();
+            return splitCount;
+        }
+    }
+
+    /**
+     * Compacts the given {@code trustdb.gpg}.
+     *
+     * @param trustDbFile
+     *            the {@code trustdb.gpg}. Must not be <code>null</code>.
+     * @param pgpKeyRegistry
+     *            the key registry deciding which keys are kept. Must not be <code>null</code>.
+     * @return the number of keys removed.
+     * @see TrustDb#compact()
+     */
+    public static int compact(final PgpFile trustDbFile, final PgpKeyRegistry pgpKeyRegistry)
+    {
+        try (TrustDb trustDb = TrustDb.Helper.createInstance(trustDbFile, pgpKeyRegistry);)
+        {
+            return trustDb.compact();
+        }
+    }
+
+    private static void printUsage()
+    {
+        System.err.println("Usage: java " + TrustDbTool.class.getName() + " <command> <trustdb.gpg> [<arguments>]");
+        System.err.println();
+        System.err.println("Commands:");
+        System.err.println("  rehash <trustdb.gpg> [<maxHashListChainLength>]");
+        System.err.println("      Splits all hash lists longer than maxHashListChainLength records (default: "
+                + DEFAULT_MAX_HASH_LIST_CHAIN_LENGTH + ") into nested hash tables.");
+        System.err.println("  compact <trustdb.gpg> <pubring.gpg> [<secring.gpg>]");
+        System.err.println("      Removes the entries of all keys not contained in the key rings and rewrites the file.");
+    }
+}
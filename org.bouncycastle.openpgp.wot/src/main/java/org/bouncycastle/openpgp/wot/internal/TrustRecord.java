@@ -13,9 +13,9 @@ import org.bouncycastle.openpgp.wot.TrustConst;
  * Each row in the trust database can have a different purpose, thus there are different types -
  * modeled both via {@link TrustRecordType} and via sub-classes of {@code TrustRecord}.
  * <p>
- * <b>Important:</b> Reading or modifying a TrustRecord must always be done in a synchronized block
- * (using {@link Mutex}) guaranteeing the consistency of the entire trust database. There are
- * inter-dependencies between different records inside the trust database and failing to synchronize
+ * <b>Important:</b> Reading or modifying a TrustRecord must always be done while holding the lock of the
+ * {@link TrustDbIo} (the write lock for modifying) guaranteeing the consistency of the entire trust database.
+ * There are inter-dependencies between different records inside the trust database and failing to synchronize
  * might corrupt the entire database!
  * <p>
  * Ported from tdbio.c: struct trust_record
@@ -16,7 +16,7 @@ enum TrustRecordType
     VALID((short) 13, TrustRecord.Valid.class),
     FREE((short) 254, TrustRecord.Free.class);
 
-    private static volatile Map<Short, TrustRecordType> id2Type;
+    private static volatile TrustRecordType[] id2Type;
     private static volatile Map<Class<? extends TrustRecord>, TrustRecordType> class2Type;
 
     private final short id;
@@ -40,7 +40,8 @@ enum TrustRecordType
 
     public static TrustRecordType fromId(short id)
     {
-        TrustRecordType type = getId2Type().get(id);
+        final TrustRecordType[] id2Type = getId2Type();
+        TrustRecordType type = id >= 0 && id < id2Type.length ? id2Type[id] : null;
         if (type == null)
             throw new IllegalArgumentException("id unknown: " + id);
 
@@ -57,15 +58,17 @@ enum TrustRecordType
         return type;
     }
 
-    private static Map<Short, TrustRecordType> getId2Type()
+    // An array instead of a Map<Short, TrustRecordType>, because this is invoked for every record read and should
+    // neither box the id nor hash it.
+    private static TrustRecordType[] getId2Type()
     {
         if (id2Type == null)
         {
-            Map<Short, TrustRecordType> m = new HashMap<>(values().length);
+            TrustRecordType[] a = new TrustRecordType[256];
             for (TrustRecordType type : values())
-                m.put(type.getId(), type);
+                a[type.getId()] = type;
 
-            id2Type = Collections.unmodifiableMap(m);
+            id2Type = a;
         }
         return id2Type;
     }
@@ -0,0 +1,190 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static java.util.Objects.*;
+
+import java.nio.ByteBuffer;
+
+import org.bouncycastle.openpgp.wot.TrustConst;
+
+/**
+ * A {@code TrustRecordView} is a flyweight decoding the fields of a {@link TrustRecord} directly from its binary
+ * representation inside a {@link ByteBuffer}.
+ * <p>
+ * In contrast to a {@link TrustRecord}, a view is not bound to one single record: It is re-targeted to another record
+ * via {@link #wrap(ByteBuffer, int, long)}, which does not allocate any memory. Views are thus meant to be held and
+ * re-used by their owner (e.g. {@link TrustDbIo}) for read-only traversals, e.g. walking the hash table.
+ * <p>
+ * <b>Important:</b> A view is neither thread-safe nor does it copy anything. Its values change, whenever the
+ * underlying buffer is modified or the view is re-targeted.
+ * <p>
+ * The binary layout is the one of GnuPG's {@code tdbio.c}; see also {@code TrustDbIo}'s encoding.
+ */
+class TrustRecordView implements TrustConst
+{
+    protected ByteBuffer buffer;
+    protected int offset;
+    protected long recordNum = -1;
+
+    /**
+     * Makes this view point to the record located at {@code offset} inside the given {@code buffer}.
+     *
+     * @param buffer
+     *            the buffer containing the record's binary data. Must not be <code>null</code>.
+     * @param offset
+     *            the absolute index of the record's first byte (its type) inside the {@code buffer}.
+     * @param recordNum
+     *            the number of the record.
+     * @return this view.
+     */
+    public TrustRecordView wrap(final ByteBuffer buffer, final int offset, final long recordNum)
+    {
+        this.buffer = requireNonNull(buffer, "buffer");
+        this.offset = offset;
+        this.recordNum = recordNum;
+        return this;
+    }
+
+    public long getRecordNum()
+    {
+        return recordNum;
+    }
+
+    public TrustRecordType getType()
+    {
+        return TrustRecordType.fromId((short) (buffer.get(offset) & 0xFF));
+    }
+
+    protected long getUnsignedInt(final int index)
+    {
+        return buffer.getInt(offset + index) & 0xFFFFFFFFL;
+    }
+
+    protected short getUnsignedByte(final int index)
+    {
+        return (short) (buffer.get(offset + index) & 0xFF);
+    }
+
+    protected boolean bytesEqual(final int index, final byte[] bytes)
+    {
+        requireNonNull(bytes, "bytes");
+        if (bytes.length != 20)
+            return false;
+
+        for (int i = 0; i < 20; ++i)
+        {
+            if (buffer.get(offset + index + i) != bytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    protected void copyBytes(final int index, final byte[] dst)
+    {
+        for (int i = 0; i < dst.length; ++i)
+            dst[i] = buffer.get(offset + index + i);
+    }
+
+    static class HashTbl extends TrustRecordView
+    {
+        public long getItem(final int index)
+        {
+            if (index < 0 || index >= ITEMS_PER_HTBL_RECORD)
+                throw new IndexOutOfBoundsException("index=" + index);
+
+            return getUnsignedInt(2 + 4 * index);
+        }
+    }
+
+    static class HashLst extends TrustRecordView
+    {
+        public long getNext()
+        {
+            return getUnsignedInt(2);
+        }
+
+        public long getRNum(final int index)
+        {
+            if (index < 0 || index >= ITEMS_PER_HLST_RECORD)
+                throw new IndexOutOfBoundsException("index=" + index);
+
+            return getUnsignedInt(6 + 4 * index);
+        }
+    }
+
+    static class Trust extends TrustRecordView
+    {
+        /**
+         * Determines whether this record's fingerprint equals the given one - without copying anything.
+         *
+         * @param fingerprint
+         *            the fingerprint to compare with. Must not be <code>null</code>.
+         * @return <code>true</code>, if the fingerprints are equal; <code>false</code> otherwise.
+         */
+        public boolean fingerprintEquals(final byte[] fingerprint)
+        {
+            return bytesEqual(2, fingerprint);
+        }
+
+        public byte[] getFingerprint()
+        {
+            final byte[] fingerprint = new byte[20];
+            copyBytes(2, fingerprint);
+            return fingerprint;
+        }
+
+        public short getOwnerTrust()
+        {
+            return getUnsignedByte(22);
+        }
+
+        public short getDepth()
+        {
+            return getUnsignedByte(23);
+        }
+
+        public short getMinOwnerTrust()
+        {
+            return getUnsignedByte(24);
+        }
+
+        public long getValidList()
+        {
+            return getUnsignedInt(26);
+        }
+    }
+
+    static class Valid extends TrustRecordView
+    {
+        public boolean nameHashEquals(final byte[] nameHash)
+        {
+            return bytesEqual(2, nameHash);
+        }
+
+        public byte[] getNameHash()
+        {
+            final byte[] nameHash = new byte[20];
+            copyBytes(2, nameHash);
+            return nameHash;
+        }
+
+        public short getValidity()
+        {
+            return getUnsignedByte(22);
+        }
+
+        public long getNext()
+        {
+            return getUnsignedInt(23);
+        }
+
+        public short getFullCount()
+        {
+            return getUnsignedByte(27);
+        }
+
+        public short getMarginalCount()
+        {
+            return getUnsignedByte(28);
+        }
+    }
+}
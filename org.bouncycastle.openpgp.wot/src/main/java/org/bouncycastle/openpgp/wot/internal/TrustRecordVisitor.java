@@ -0,0 +1,20 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import org.bouncycastle.openpgp.wot.TrustDbIoException;
+
+/**
+ * Callback for {@link TrustDbIo#scan(TrustRecordType, TrustRecordVisitor)}.
+ */
+interface TrustRecordVisitor
+{
+    /**
+     * Visits one record.
+     *
+     * @param view
+     *            the view pointing to the record. Never <code>null</code>. It is only valid during this invocation
+     *            and must not be retained. Use {@link TrustDbIo#decodeTrustRecord(TrustRecordView)} to obtain a
+     *            {@link TrustRecord} which can be modified.
+     * @return <code>true</code> to continue the scan; <code>false</code> to stop it.
+     */
+    boolean visit(TrustRecordView view) throws TrustDbIoException;
+}
@@ -0,0 +1,122 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import java.util.Arrays;
+
+/**
+ * Scan-resistant eviction policy based on the (simplified) 2Q algorithm by Johnson and Shasha.
+ * <p>
+ * A newly inserted record enters the <i>probation</i> queue (FIFO). Only if it is hit again, it is promoted to the
+ * <i>protected</i> queue (LRU). Victims are taken from the probation queue, as long as it holds more than a quarter of
+ * all slots. Thus, records touched only once - e.g. by a sequential pass over the whole file - cannot flush the
+ * records needed by every lookup (e.g. the hash table) out of the cache.
+ * <p>
+ * Both queues are doubly-linked lists kept in primitive arrays, indexed by slot.
+ */
+class TwoQueueRecordCachePolicy implements RecordCachePolicy
+{
+    private static final byte QUEUE_NONE = 0;
+    private static final byte QUEUE_PROBATION = 1;
+    private static final byte QUEUE_PROTECTED = 2;
+
+    /** Index of the probation queue's sentinel in {@link #prev} and {@link #next}. */
+    private static final int PROBATION = 0;
+    /** Index of the protected queue's sentinel in {@link #prev} and {@link #next}. */
+    private static final int PROTECTED = 1;
+    /** Slot <i>n</i> is located at index <i>n</i> + {@code OFFSET} in {@link #prev} and {@link #next}. */
+    private static final int OFFSET = 2;
+
+    private int[] prev = { PROBATION, PROTECTED };
+    private int[] next = { PROBATION, PROTECTED };
+    private byte[] queue = new byte[0];
+    private int probationSize;
+    private int probationMaxSize;
+
+    @Override
+    public void resize(final int slotCount)
+    {
+        prev = Arrays.copyOf(prev, slotCount + OFFSET);
+        next = Arrays.copyOf(next, slotCount + OFFSET);
+        queue = Arrays.copyOf(queue, slotCount);
+        probationMaxSize = Math.max(1, slotCount / 4);
+    }
+
+    @Override
+    public void onInsert(final int slot)
+    {
+        unlink(slot);
+        append(PROBATION, slot);
+        queue[slot] = QUEUE_PROBATION;
+        ++probationSize;
+    }
+
+    @Override
+    public void onHit(final int slot)
+    {
+        unlink(slot);
+        append(PROTECTED, slot);
+        queue[slot] = QUEUE_PROTECTED;
+    }
+
+    @Override
+    public void onRemove(final int slot)
+    {
+        unlink(slot);
+    }
+
+    @Override
+    public int selectVictim(final RecordCache cache)
+    {
+        int victim = -1;
+        if (probationSize > probationMaxSize)
+            victim = findEvictable(cache, PROBATION);
+
+        if (victim < 0)
+            victim = findEvictable(cache, PROTECTED);
+
+        if (victim < 0)
+            victim = findEvictable(cache, PROBATION);
+
+        return victim;
+    }
+
+    private int findEvictable(final RecordCache cache, final int sentinel)
+    {
+        int idx = next[sentinel];
+        while (idx != sentinel)
+        {
+            final int slot = idx - OFFSET;
+            idx = next[idx];
+            if (cache.isEvictable(slot))
+                return slot;
+
+            // Kept anyway (dirty or pinned) => move it out of the way, so that it is not visited again and again.
+            if (sentinel == PROBATION)
+                onHit(slot);
+        }
+        return -1;
+    }
+
+    private void append(final int sentinel, final int slot)
+    {
+        final int idx = slot + OFFSET;
+        final int last = prev[sentinel];
+        prev[idx] = last;
+        next[idx] = sentinel;
+        next[last] = idx;
+        prev[sentinel] = idx;
+    }
+
+    private void unlink(final int slot)
+    {
+        if (queue[slot] == QUEUE_NONE)
+            return;
+
+        if (queue[slot] == QUEUE_PROBATION)
+            --probationSize;
+
+        final int idx = slot + OFFSET;
+        next[prev[idx]] = next[idx];
+        prev[next[idx]] = prev[idx];
+        queue[slot] = QUEUE_NONE;
+    }
+}
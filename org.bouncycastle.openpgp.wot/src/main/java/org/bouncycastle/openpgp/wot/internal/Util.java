@@ -5,6 +5,9 @@ import static java.util.Objects.*;
 import java.util.Collections;
 import java.util.Iterator;
 
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSignature;
+
 public class Util
 {
     private Util()
@@ -89,6 +92,52 @@ public class Util
         return value;
     }
 
+    /**
+     * Compares the given byte arrays lexicographically - treating each byte as unsigned. A prefix is sorted before
+     * the longer array.
+     *
+     * @param bytes1
+     *            the first array. Must not be <code>null</code>.
+     * @param bytes2
+     *            the second array. Must not be <code>null</code>.
+     * @return a negative number, 0 or a positive number, if {@code bytes1} is less than, equal to or greater than
+     *         {@code bytes2}.
+     */
+    public static int compareUnsigned(final byte[] bytes1, final byte[] bytes2)
+    {
+        final int length = Math.min(bytes1.length, bytes2.length);
+        final int result = compareUnsigned(bytes1, 0, bytes2, 0, length);
+        return result != 0 ? result : bytes1.length - bytes2.length;
+    }
+
+    /**
+     * Compares the given ranges of the given byte arrays lexicographically - treating each byte as unsigned.
+     *
+     * @param bytes1
+     *            the first array. Must not be <code>null</code>.
+     * @param off1
+     *            the start of the range in {@code bytes1}.
+     * @param bytes2
+     *            the second array. Must not be <code>null</code>.
+     * @param off2
+     *            the start of the range in {@code bytes2}.
+     * @param length
+     *            the length of both ranges.
+     * @return a negative number, 0 or a positive number, if the range of {@code bytes1} is less than, equal to or
+     *         greater than the range of {@code bytes2}.
+     */
+    public static int compareUnsigned(final byte[] bytes1, final int off1, final byte[] bytes2, final int off2,
+            final int length)
+    {
+        for (int i = 0; i < length; ++i)
+        {
+            final int diff = (bytes1[off1 + i] & 0xFF) - (bytes2[off2 + i] & 0xFF);
+            if (diff != 0)
+                return diff;
+        }
+        return 0;
+    }
+
     public static String encodeHexStr(final byte[] buf)
     {
         return encodeHexStr(buf, 0, buf.length);
@@ -155,6 +204,23 @@ public class Util
             return iterator;
     }
 
+    /**
+     * Gets the signatures on the given key itself (not on one of its user-identities).
+     * <p>
+     * Bouncy Castle returns a raw {@code Iterator} here, which always contains {@link PGPSignature}s only. This
+     * method confines the unchecked conversion to one single place.
+     *
+     * @param publicKey
+     *            the key. Must not be <code>null</code>.
+     * @return the key's signatures. Never <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    public static Iterator<PGPSignature> getKeySignatures(final PGPPublicKey publicKey)
+    {
+        requireNonNull(publicKey, "publicKey");
+        return nullToEmpty((Iterator<PGPSignature>) publicKey.getKeySignatures());
+    }
+
     public static final void doNothing()
     {
     }
@@ -0,0 +1,251 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static java.util.Objects.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.bouncycastle.openpgp.wot.Config;
+import org.bouncycastle.openpgp.wot.OwnerTrust;
+import org.bouncycastle.openpgp.wot.TrustConst;
+import org.bouncycastle.openpgp.wot.key.PgpKeyFingerprint;
+
+/**
+ * Record of the last {@linkplain TrustDbImpl#updateTrustDb() trust-db-update}, enabling the next update to
+ * re-validate only the keys affected by changes made in the meantime.
+ * <p>
+ * {@code updateTrustDb()} validates the keys layer by layer: At every depth, it validates the keys certified by the
+ * keys validated at the previous depth - reading the validities written at the previous depths. Thus, the result for a
+ * key depends not only on its signers' final validities, but on the depths at which they were validated. This trace
+ * therefore keeps - for every key validated - all depths at which it was validated together with the validity it
+ * obtained at each of them. Hence, an incremental update can reproduce the state any unaffected key had at any depth
+ * without reading the trust-database.
+ * <p>
+ * Additionally, it keeps a digest of every key's inputs (user-identities, certifications, expiry, revocation) to
+ * detect keys modified in the key-registry, and the owner-trusts the update read from the trust-database to detect
+ * owner-trusts changed in the meantime - no matter by whom (e.g. by GnuPG).
+ * <p>
+ * <b>Important:</b> This class is not thread-safe! It is used only while holding the write lock.
+ */
+class ValidationTrace implements TrustConst
+{
+    /**
+     * Depth used for the {@linkplain #getUltimatelyTrustedKeyFingerprints() ultimately trusted keys}, which are
+     * assigned their validity before the first layer (depth 0) is validated.
+     */
+    static final int ULTIMATE_DEPTH = -1;
+
+    private final short trustModel;
+    private final short completesNeeded;
+    private final short marginalsNeeded;
+    private final short maxCertDepth;
+    private final Set<PgpKeyFingerprint> ultimatelyTrustedKeyFingerprints;
+
+    private final Map<PgpKeyFingerprint, Entry> fingerprint2Entry = new HashMap<>();
+    private Map<PgpKeyFingerprint, Long> fingerprint2Digest = Collections.emptyMap();
+    private Map<PgpKeyFingerprint, OwnerTrust> fingerprint2OwnerTrust = Collections.emptyMap();
+    private long startTime;
+
+    /**
+     * Creates an empty trace for an update with the current {@link Config}.
+     *
+     * @param ultimatelyTrustedKeyFingerprints
+     *            the ultimately trusted keys. Must not be <code>null</code>.
+     */
+    public ValidationTrace(final Set<PgpKeyFingerprint> ultimatelyTrustedKeyFingerprints)
+    {
+        this.ultimatelyTrustedKeyFingerprints = Collections.unmodifiableSet(
+                requireNonNull(ultimatelyTrustedKeyFingerprints, "ultimatelyTrustedKeyFingerprints"));
+
+        final Config config = Config.getInstance();
+        this.trustModel = config.getTrustModel();
+        this.completesNeeded = config.getCompletesNeeded();
+        this.marginalsNeeded = config.getMarginalsNeeded();
+        this.maxCertDepth = config.getMaxCertDepth();
+    }
+
+    /**
+     * Determines whether the {@link Config} still equals the one of the update recorded.
+     *
+     * @return <code>true</code>, if the configuration did not change.
+     */
+    public boolean isConfigUnchanged()
+    {
+        final Config config = Config.getInstance();
+        return trustModel == config.getTrustModel()
+                && completesNeeded == config.getCompletesNeeded()
+                && marginalsNeeded == config.getMarginalsNeeded()
+                && maxCertDepth == config.getMaxCertDepth();
+    }
+
+    public Set<PgpKeyFingerprint> getUltimatelyTrustedKeyFingerprints()
+    {
+        return ultimatelyTrustedKeyFingerprints;
+    }
+
+    /**
+     * Gets the digests of all keys in the key-registry at the time of the update.
+     *
+     * @return the digests. Never <code>null</code>.
+     */
+    public Map<PgpKeyFingerprint, Long> getFingerprint2Digest()
+    {
+        return fingerprint2Digest;
+    }
+
+    public void setFingerprint2Digest(final Map<PgpKeyFingerprint, Long> fingerprint2Digest)
+    {
+        this.fingerprint2Digest = requireNonNull(fingerprint2Digest, "fingerprint2Digest");
+    }
+
+    /**
+     * Gets the owner-trusts of all keys in the key-registry at the time of the update.
+     *
+     * @return the owner-trusts. Never <code>null</code>. Keys with owner-trust {@link OwnerTrust#UNKNOWN UNKNOWN}
+     *         (including those without trust record) are not contained.
+     */
+    public Map<PgpKeyFingerprint, OwnerTrust> getFingerprint2OwnerTrust()
+    {
+        return fingerprint2OwnerTrust;
+    }
+
+    public void setFingerprint2OwnerTrust(final Map<PgpKeyFingerprint, OwnerTrust> fingerprint2OwnerTrust)
+    {
+        this.fingerprint2OwnerTrust = requireNonNull(fingerprint2OwnerTrust, "fingerprint2OwnerTrust");
+    }
+
+    /**
+     * Gets the time of the update.
+     *
+     * @return the time of the update (in seconds since 1970).
+     */
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+    public void setStartTime(final long startTime)
+    {
+        this.startTime = startTime;
+    }
+
+    /**
+     * Records that the given key was validated at the given depth. Must be invoked in ascending order of depths.
+     *
+     * @param pgpKeyFingerprint
+     *            the key. Must not be <code>null</code>.
+     * @param depth
+     *            the depth or {@link #ULTIMATE_DEPTH}.
+     * @param validity
+     *            the key's validity obtained (the highest of its user-identities; without flags).
+     * @param expireTimestamp
+     *            the key's expiry (in seconds since 1970) or {@link Long#MAX_VALUE}, if it never expires.
+     */
+    public void addValidation(final PgpKeyFingerprint pgpKeyFingerprint, final int depth, final int validity,
+            final long expireTimestamp)
+    {
+        requireNonNull(pgpKeyFingerprint, "pgpKeyFingerprint");
+        Entry entry = fingerprint2Entry.get(pgpKeyFingerprint);
+        if (entry == null)
+        {
+            entry = new Entry();
+            fingerprint2Entry.put(pgpKeyFingerprint, entry);
+        }
+        entry.add(depth, validity);
+        entry.expireTimestamp = expireTimestamp;
+    }
+
+    /**
+     * Forgets all validations of the given key.
+     *
+     * @param pgpKeyFingerprint
+     *            the key. Must not be <code>null</code>.
+     */
+    public void removeValidations(final PgpKeyFingerprint pgpKeyFingerprint)
+    {
+        fingerprint2Entry.remove(requireNonNull(pgpKeyFingerprint, "pgpKeyFingerprint"));
+    }
+
+    /**
+     * Determines whether the given key was validated at exactly the given depth.
+     *
+     * @param pgpKeyFingerprint
+     *            the key. Must not be <code>null</code>.
+     * @param depth
+     *            the depth or {@link #ULTIMATE_DEPTH}.
+     * @return <code>true</code>, if the key was validated at this depth.
+     */
+    public boolean isValidatedAt(final PgpKeyFingerprint pgpKeyFingerprint, final int depth)
+    {
+        final Entry entry = fingerprint2Entry.get(pgpKeyFingerprint);
+        return entry != null && Arrays.binarySearch(entry.depths, 0, entry.size, depth) >= 0;
+    }
+
+    /**
+     * Gets the validity the given key had while the given depth was validated, i.e. the one obtained at the last
+     * validation before this depth.
+     *
+     * @param pgpKeyFingerprint
+     *            the key. Must not be <code>null</code>.
+     * @param depth
+     *            the depth being validated.
+     * @return the validity (without flags) - {@link TrustConst#TRUST_UNKNOWN TRUST_UNKNOWN}, if the key was not
+     *         validated before this depth.
+     */
+    public int getValidityBefore(final PgpKeyFingerprint pgpKeyFingerprint, final int depth)
+    {
+        final Entry entry = fingerprint2Entry.get(pgpKeyFingerprint);
+        if (entry == null)
+            return TRUST_UNKNOWN;
+
+        int index = Arrays.binarySearch(entry.depths, 0, entry.size, depth);
+        if (index < 0)
+            index = -index - 1; // insertion point => first depth after
+        // index now points to the first validation at or after depth => the previous one is the last one before.
+        return index == 0 ? TRUST_UNKNOWN : entry.validities[index - 1];
+    }
+
+    /**
+     * Gets the earliest expiry of all keys validated, which is not before the given time.
+     *
+     * @param startTime
+     *            the time of the update (in seconds since 1970).
+     * @return the next expiry (in seconds since 1970) or {@link Long#MAX_VALUE}.
+     */
+    public long getNextExpire(final long startTime)
+    {
+        long nextExpire = Long.MAX_VALUE;
+        for (final Entry entry : fingerprint2Entry.values())
+        {
+            if (entry.expireTimestamp >= startTime && entry.expireTimestamp < nextExpire)
+                nextExpire = entry.expireTimestamp;
+        }
+        return nextExpire;
+    }
+
+    private static final class Entry
+    {
+        int size;
+        int[] depths = new int[2];
+        byte[] validities = new byte[2];
+        long expireTimestamp = Long.MAX_VALUE;
+
+        void add(final int depth, final int validity)
+        {
+            if (size > 0 && depths[size - 1] >= depth)
+                throw new IllegalArgumentException("depths not ascending!");
+
+            if (size == depths.length)
+            {
+                depths = Arrays.copyOf(depths, 2 * size);
+                validities = Arrays.copyOf(validities, 2 * size);
+            }
+            depths[size] = depth;
+            validities[size] = (byte) validity;
+            ++size;
+        }
+    }
+}
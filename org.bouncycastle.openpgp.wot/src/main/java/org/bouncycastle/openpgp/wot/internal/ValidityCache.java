@@ -0,0 +1,169 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static java.util.Objects.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.openpgp.wot.key.PgpKeyFingerprint;
+import org.bouncycastle.openpgp.wot.key.PgpUserIdNameHash;
+
+/**
+ * Cache of the validities read by {@link TrustDbImpl}, keyed by the fingerprint and (optionally) the user-identity's
+ * name-hash.
+ * <p>
+ * The keys are the {@link PgpKeyFingerprint} and {@link PgpUserIdNameHash} instances passed in, which cache their hash
+ * codes, and the validities are stored as primitives. Hence, a lookup neither allocates nor hashes a fingerprint.
+ * <p>
+ * An instance belongs to one generation of the trust-database: {@link TrustDbImpl} increments its generation whenever
+ * it writes records affecting a validity, and then replaces the cache by a new, empty one. Thus, the entries are never
+ * invalidated individually. Together with the entries, the {@linkplain TrustRecord.Version version-record} of this
+ * generation is kept, so that the pending-check-flag can be determined without reading any record.
+ * <p>
+ * When the cache is full, it is emptied entirely.
+ * <p>
+ * This class is thread-safe: Concurrent lookups (holding only the read lock) populate the cache, too.
+ */
+class ValidityCache
+{
+    /**
+     * Value cached for a key which is not contained in the trust-database.
+     */
+    static final int NO_TRUST = -1;
+
+    /**
+     * Returned by {@link #get(PgpKeyFingerprint, PgpUserIdNameHash)}, if nothing is cached for the key.
+     */
+    static final int NOT_CACHED = Integer.MIN_VALUE;
+
+    private final long generation;
+    private final int maxSize;
+    private final TrustRecord.Version version;
+    private final ConcurrentHashMap<PgpKeyFingerprint, Entry> fingerprint2Entry = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates a new, empty cache.
+     *
+     * @param generation
+     *            the generation of the trust-database.
+     * @param maxSize
+     *            the maximum number of entries. Must be greater than 0.
+     * @param version
+     *            the version-record of this generation. Must not be <code>null</code> and must not be modified
+     *            afterwards.
+     */
+    public ValidityCache(final long generation, final int maxSize, final TrustRecord.Version version)
+    {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize < 1");
+
+        this.generation = generation;
+        this.maxSize = maxSize;
+        this.version = requireNonNull(version, "version");
+    }
+
+    public long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Determines whether the trust-database of this generation is stale - based on the version-record read when this
+     * cache was created.
+     *
+     * @return <code>true</code>, if the trust-database needs to be updated.
+     * @see TrustDbImpl#isTrustDbStale(TrustRecord.Version)
+     */
+    public boolean isTrustDbStale()
+    {
+        return TrustDbImpl.isTrustDbStale(version);
+    }
+
+    /**
+     * Gets the cached validity.
+     *
+     * @param fingerprint
+     *            the key's fingerprint. Must not be <code>null</code>.
+     * @param pgpUserIdNameHash
+     *            the user-identity's name-hash or <code>null</code> for the validity of the key itself.
+     * @return the validity (including the flags stored in the trust-database), {@link #NO_TRUST} or
+     *         {@link #NOT_CACHED}.
+     */
+    public int get(final PgpKeyFingerprint fingerprint, final PgpUserIdNameHash pgpUserIdNameHash)
+    {
+        final Entry entry = fingerprint2Entry.get(fingerprint);
+        if (entry == null)
+            return NOT_CACHED;
+
+        if (pgpUserIdNameHash == null)
+            return entry.validity;
+
+        final ConcurrentHashMap<PgpUserIdNameHash, Entry> nameHash2Entry = entry.nameHash2Entry;
+        if (nameHash2Entry == null)
+            return NOT_CACHED;
+
+        final Entry userIdEntry = nameHash2Entry.get(pgpUserIdNameHash);
+        return userIdEntry == null ? NOT_CACHED : userIdEntry.validity;
+    }
+
+    /**
+     * Puts the given validity into this cache.
+     *
+     * @param fingerprint
+     *            the key's fingerprint. Must not be <code>null</code>.
+     * @param pgpUserIdNameHash
+     *            the user-identity's name-hash or <code>null</code> for the validity of the key itself.
+     * @param validity
+     *            the validity (including the flags stored in the trust-database) or {@link #NO_TRUST}.
+     */
+    public void put(final PgpKeyFingerprint fingerprint, final PgpUserIdNameHash pgpUserIdNameHash,
+            final int validity)
+    {
+        requireNonNull(fingerprint, "fingerprint");
+        final Entry entry = getOrCreateEntry(fingerprint2Entry, fingerprint);
+        if (pgpUserIdNameHash == null)
+        {
+            entry.validity = validity;
+            return;
+        }
+
+        ConcurrentHashMap<PgpUserIdNameHash, Entry> nameHash2Entry = entry.nameHash2Entry;
+        if (nameHash2Entry == null)
+        {
+            // Concurrent writers might both create a new map. This does no harm: One of them is simply lost.
+            nameHash2Entry = new ConcurrentHashMap<>(4);
+            entry.nameHash2Entry = nameHash2Entry;
+        }
+        getOrCreateEntry(nameHash2Entry, pgpUserIdNameHash).validity = validity;
+    }
+
+    private <K> Entry getOrCreateEntry(final ConcurrentHashMap<K, Entry> key2Entry, final K key)
+    {
+        Entry entry = key2Entry.get(key);
+        if (entry != null)
+            return entry;
+
+        final Entry newEntry = new Entry();
+        entry = key2Entry.putIfAbsent(key, newEntry);
+        if (entry != null)
+            return entry;
+
+        if (size.incrementAndGet() > maxSize)
+        {
+            fingerprint2Entry.clear();
+            size.set(0);
+        }
+        return newEntry;
+    }
+
+    /**
+     * Validity cached for a key or a user-identity. A key's entry holds the entries of its user-identities, too.
+     */
+    private static final class Entry
+    {
+        volatile int validity = NOT_CACHED;
+
+        volatile ConcurrentHashMap<PgpUserIdNameHash, Entry> nameHash2Entry;
+    }
+}
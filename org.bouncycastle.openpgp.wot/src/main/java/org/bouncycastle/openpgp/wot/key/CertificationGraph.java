@@ -0,0 +1,389 @@
+package org.bouncycastle.openpgp.wot.key;
+
+import static java.util.Objects.*;
+import static org.bouncycastle.openpgp.wot.internal.Util.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.bouncycastle.openpgp.PGPSignature;
+
+/**
+ * Immutable, compact representation of the certifications between all keys of a {@link PgpKeyRegistry}.
+ * <p>
+ * Every key is assigned a dense integer ID (0 to {@link #getKeyCount()} - 1, in the order of the keys' fingerprints).
+ * The edges are stored in <i>compressed sparse row</i> format: For every key, the IDs of the keys it certified (and
+ * of the keys certifying it) are located in one contiguous slice of a single {@code int[]}. For example, all keys
+ * certified by the key {@code id} are:
+ *
+ * <pre>
+ * for (int i = graph.getCertifiedStart(id); i &lt; graph.getCertifiedEnd(id); ++i)
+ *     doSomething(graph.getCertified(i));
+ * </pre>
+ * <p>
+ * Additionally, the certifications of every user-identity (and -attribute) are stored the same way - just like
+ * returned by {@link PgpKeyRegistry#getCertifications(PgpUserId)}, but limited to the ones signed by keys contained in
+ * the registry.
+ * <p>
+ * An instance is obtained via {@link PgpKeyRegistry#getCertificationGraph()}. It reflects the key ring files as they
+ * were loaded; it is replaced (not modified), when the registry is reloaded. It is thread-safe.
+ */
+public final class CertificationGraph
+{
+    private static final int[] EMPTY_INTS = new int[0];
+
+    private final PgpKey[] pgpKeys;
+    private final Map<PgpKeyFingerprint, Integer> pgpKeyFingerprint2Id;
+
+    private final int[] certifiedOffsets;
+    private final int[] certifiedIds;
+    private final int[] certifierOffsets;
+    private final int[] certifierIds;
+
+    private final int[] userIdOffsets;
+    private final PgpUserId[] pgpUserIds;
+    private final int[] certificationOffsets;
+    private final int[] certificationSignerIds;
+    private final byte[] certificationTypes;
+
+    /**
+     * Compiles the graph.
+     *
+     * @param pgpKeys
+     *            all keys of the registry (master-keys and sub-keys). Must not be <code>null</code>.
+     * @param pgpKeyRegistry
+     *            the registry providing the certifications. Must not be <code>null</code>.
+     */
+    CertificationGraph(final Collection<PgpKey> pgpKeys, final PgpKeyRegistry pgpKeyRegistry)
+    {
+        requireNonNull(pgpKeys, "pgpKeys");
+        requireNonNull(pgpKeyRegistry, "pgpKeyRegistry");
+
+        final int keyCount = pgpKeys.size();
+        final PgpKeyFingerprint[] fingerprints = new PgpKeyFingerprint[keyCount];
+        final Map<PgpKeyFingerprint, PgpKey> pgpKeyFingerprint2PgpKey = new HashMap<>(2 * keyCount);
+        int index = 0;
+        for (final PgpKey pgpKey : pgpKeys)
+        {
+            fingerprints[index++] = pgpKey.getPgpKeyFingerprint();
+            pgpKeyFingerprint2PgpKey.put(pgpKey.getPgpKeyFingerprint(), pgpKey);
+        }
+        Arrays.sort(fingerprints);
+
+        this.pgpKeys = new PgpKey[keyCount];
+        this.pgpKeyFingerprint2Id = new HashMap<>(2 * keyCount);
+        for (int id = 0; id < keyCount; ++id)
+        {
+            this.pgpKeys[id] = pgpKeyFingerprint2PgpKey.get(fingerprints[id]);
+            this.pgpKeyFingerprint2Id.put(fingerprints[id], id);
+        }
+
+        // The certifications of every user-identity, and all edges (certifier << 32 | certified).
+        final List<PgpUserId> pgpUserIds = new ArrayList<>();
+        this.userIdOffsets = new int[keyCount + 1];
+        int[] certificationOffsets = new int[keyCount + 1];
+        int[] certificationSignerIds = new int[keyCount];
+        byte[] certificationTypes = new byte[keyCount];
+        int certificationCount = 0;
+        long[] edges = new long[keyCount];
+        int edgeCount = 0;
+
+        for (int id = 0; id < keyCount; ++id)
+        {
+            final PgpKey pgpKey = this.pgpKeys[id];
+            userIdOffsets[id] = pgpUserIds.size();
+            for (final PgpUserId pgpUserId : pgpKey.getPgpUserIds())
+            {
+                if (pgpUserIds.size() + 1 >= certificationOffsets.length)
+                    certificationOffsets = Arrays.copyOf(certificationOffsets, 2 * certificationOffsets.length);
+
+                certificationOffsets[pgpUserIds.size()] = certificationCount;
+                pgpUserIds.add(pgpUserId);
+
+                for (final PGPSignature certification : pgpKeyRegistry.getCertifications(pgpUserId))
+                {
+                    final int signerId = getId(pgpKeyRegistry.getPgpKey(new PgpKeyId(certification.getKeyID())));
+                    if (signerId < 0)
+                        continue; // unknown key => irrelevant
+
+                    if (certificationCount == certificationSignerIds.length)
+                    {
+                        certificationSignerIds = Arrays.copyOf(certificationSignerIds, 2 * certificationCount);
+                        certificationTypes = Arrays.copyOf(certificationTypes, 2 * certificationCount);
+                    }
+                    certificationSignerIds[certificationCount] = signerId;
+                    certificationTypes[certificationCount] = (byte) certification.getSignatureType();
+                    ++certificationCount;
+
+                    if (edgeCount == edges.length)
+                        edges = Arrays.copyOf(edges, 2 * edgeCount);
+
+                    edges[edgeCount++] = (long) signerId << 32 | id;
+                }
+            }
+
+            // The certifications of the entire key are already contained in the ones of every user-identity above.
+            // But if there is no user-identity, they still count as edge - see getCertifyingKeyId2certifiedKeyIds().
+            if (pgpKey.getPgpUserIds().isEmpty())
+            {
+                for (final Iterator<PGPSignature> it = getKeySignatures(pgpKey.getPublicKey()); it.hasNext();)
+                {
+                    final PGPSignature pgpSignature = it.next();
+                    if (!pgpKeyRegistry.isCertification(pgpSignature))
+                        continue;
+
+                    final int signerId = getId(pgpKeyRegistry.getPgpKey(new PgpKeyId(pgpSignature.getKeyID())));
+                    if (signerId < 0)
+                        continue;
+
+                    if (edgeCount == edges.length)
+                        edges = Arrays.copyOf(edges, 2 * edgeCount);
+
+                    edges[edgeCount++] = (long) signerId << 32 | id;
+                }
+            }
+        }
+        userIdOffsets[keyCount] = pgpUserIds.size();
+        certificationOffsets = Arrays.copyOf(certificationOffsets, pgpUserIds.size() + 1);
+        certificationOffsets[pgpUserIds.size()] = certificationCount;
+
+        this.pgpUserIds = pgpUserIds.toArray(new PgpUserId[pgpUserIds.size()]);
+        this.certificationOffsets = certificationOffsets;
+        this.certificationSignerIds = Arrays.copyOf(certificationSignerIds, certificationCount);
+        this.certificationTypes = Arrays.copyOf(certificationTypes, certificationCount);
+
+        // Sorting makes the edges unique and groups them by certifier.
+        Arrays.sort(edges, 0, edgeCount);
+        int uniqueEdgeCount = 0;
+        for (int i = 0; i < edgeCount; ++i)
+        {
+            if (uniqueEdgeCount == 0 || edges[uniqueEdgeCount - 1] != edges[i])
+                edges[uniqueEdgeCount++] = edges[i];
+        }
+
+        this.certifiedOffsets = new int[keyCount + 1];
+        this.certifiedIds = uniqueEdgeCount == 0 ? EMPTY_INTS : new int[uniqueEdgeCount];
+        this.certifierOffsets = new int[keyCount + 1];
+        this.certifierIds = uniqueEdgeCount == 0 ? EMPTY_INTS : new int[uniqueEdgeCount];
+        for (int i = 0; i < uniqueEdgeCount; ++i)
+        {
+            ++certifiedOffsets[(int) (edges[i] >>> 32) + 1];
+            ++certifierOffsets[(int) edges[i] + 1];
+        }
+        for (int id = 0; id < keyCount; ++id)
+        {
+            certifiedOffsets[id + 1] += certifiedOffsets[id];
+            certifierOffsets[id + 1] += certifierOffsets[id];
+        }
+        final int[] certifierFill = Arrays.copyOf(certifierOffsets, keyCount);
+        for (int i = 0; i < uniqueEdgeCount; ++i)
+        {
+            final int certifierId = (int) (edges[i] >>> 32);
+            final int certifiedId = (int) edges[i];
+            certifiedIds[i] = certifiedId; // already grouped by certifier
+            certifierIds[certifierFill[certifiedId]++] = certifierId;
+        }
+    }
+
+    /**
+     * Gets the number of keys (master-keys and sub-keys).
+     *
+     * @return the number of keys. IDs range from 0 to this value - 1.
+     */
+    public int getKeyCount()
+    {
+        return pgpKeys.length;
+    }
+
+    /**
+     * Gets the key with the given ID.
+     *
+     * @param id
+     *            the key's ID.
+     * @return the key. Never <code>null</code>.
+     */
+    public PgpKey getPgpKey(final int id)
+    {
+        return pgpKeys[id];
+    }
+
+    /**
+     * Gets the ID of the key with the given fingerprint.
+     *
+     * @param pgpKeyFingerprint
+     *            the key's fingerprint. Must not be <code>null</code>.
+     * @return the key's ID or -1, if there is no such key.
+     */
+    public int getId(final PgpKeyFingerprint pgpKeyFingerprint)
+    {
+        final Integer id = pgpKeyFingerprint2Id.get(requireNonNull(pgpKeyFingerprint, "pgpKeyFingerprint"));
+        return id == null ? -1 : id;
+    }
+
+    private int getId(final PgpKey pgpKey)
+    {
+        return pgpKey == null ? -1 : getId(pgpKey.getPgpKeyFingerprint());
+    }
+
+    /**
+     * Gets the start (inclusive) of the slice of keys certified by the given key.
+     *
+     * @param id
+     *            the certifying key's ID.
+     * @return the index of the first certified key - to be passed to {@link #getCertified(int)}.
+     */
+    public int getCertifiedStart(final int id)
+    {
+        return certifiedOffsets[id];
+    }
+
+    /**
+     * Gets the end (exclusive) of the slice of keys certified by the given key.
+     *
+     * @param id
+     *            the certifying key's ID.
+     * @return the index after the last certified key.
+     */
+    public int getCertifiedEnd(final int id)
+    {
+        return certifiedOffsets[id + 1];
+    }
+
+    /**
+     * Gets a key certified by another key.
+     *
+     * @param index
+     *            the index between {@link #getCertifiedStart(int)} and {@link #getCertifiedEnd(int)}.
+     * @return the certified key's ID. Every key is contained only once in a slice.
+     */
+    public int getCertified(final int index)
+    {
+        return certifiedIds[index];
+    }
+
+    /**
+     * Gets the start (inclusive) of the slice of keys certifying the given key.
+     *
+     * @param id
+     *            the certified key's ID.
+     * @return the index of the first certifying key - to be passed to {@link #getCertifier(int)}.
+     */
+    public int getCertifierStart(final int id)
+    {
+        return certifierOffsets[id];
+    }
+
+    /**
+     * Gets the end (exclusive) of the slice of keys certifying the given key.
+     *
+     * @param id
+     *            the certified key's ID.
+     * @return the index after the last certifying key.
+     */
+    public int getCertifierEnd(final int id)
+    {
+        return certifierOffsets[id + 1];
+    }
+
+    /**
+     * Gets a key certifying another key.
+     *
+     * @param index
+     *            the index between {@link #getCertifierStart(int)} and {@link #getCertifierEnd(int)}.
+     * @return the certifying key's ID. Every key is contained only once in a slice.
+     */
+    public int getCertifier(final int index)
+    {
+        return certifierIds[index];
+    }
+
+    /**
+     * Gets the start (inclusive) of the slice of the given key's user-identities (and -attributes).
+     *
+     * @param id
+     *            the key's ID.
+     * @return the index of the first user-identity - to be passed to {@link #getPgpUserId(int)}.
+     */
+    public int getUserIdStart(final int id)
+    {
+        return userIdOffsets[id];
+    }
+
+    /**
+     * Gets the end (exclusive) of the slice of the given key's user-identities (and -attributes).
+     *
+     * @param id
+     *            the key's ID.
+     * @return the index after the last user-identity.
+     */
+    public int getUserIdEnd(final int id)
+    {
+        return userIdOffsets[id + 1];
+    }
+
+    /**
+     * Gets a user-identity (or -attribute).
+     *
+     * @param userIdIndex
+     *            the index between {@link #getUserIdStart(int)} and {@link #getUserIdEnd(int)}.
+     * @return the user-identity. Never <code>null</code>.
+     */
+    public PgpUserId getPgpUserId(final int userIdIndex)
+    {
+        return pgpUserIds[userIdIndex];
+    }
+
+    /**
+     * Gets the start (inclusive) of the slice of certifications of the given user-identity.
+     *
+     * @param userIdIndex
+     *            the user-identity's index.
+     * @return the index of the first certification - to be passed to {@link #getCertificationSignerId(int)} and
+     *         {@link #getCertificationType(int)}.
+     */
+    public int getCertificationStart(final int userIdIndex)
+    {
+        return certificationOffsets[userIdIndex];
+    }
+
+    /**
+     * Gets the end (exclusive) of the slice of certifications of the given user-identity.
+     *
+     * @param userIdIndex
+     *            the user-identity's index.
+     * @return the index after the last certification.
+     */
+    public int getCertificationEnd(final int userIdIndex)
+    {
+        return certificationOffsets[userIdIndex + 1];
+    }
+
+    /**
+     * Gets the key having signed a certification.
+     *
+     * @param certificationIndex
+     *            the index between {@link #getCertificationStart(int)} and {@link #getCertificationEnd(int)}.
+     * @return the signing key's ID.
+     */
+    public int getCertificationSignerId(final int certificationIndex)
+    {
+        return certificationSignerIds[certificationIndex];
+    }
+
+    /**
+     * Gets the type of a certification.
+     *
+     * @param certificationIndex
+     *            the index between {@link #getCertificationStart(int)} and {@link #getCertificationEnd(int)}.
+     * @return the signature type - e.g. {@link PGPSignature#POSITIVE_CERTIFICATION}.
+     */
+    public int getCertificationType(final int certificationIndex)
+    {
+        return certificationTypes[certificationIndex] & 0xFF;
+    }
+}
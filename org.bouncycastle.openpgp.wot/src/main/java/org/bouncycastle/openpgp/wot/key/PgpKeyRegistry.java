@@ -159,6 +159,16 @@ public interface PgpKeyRegistry
      */
     Set<PgpKeyId> getPgpKeyIdsCertifiedBy(PgpKeyId certifyingPgpKeyId);
 
+    /**
+     * Gets the certifications between all keys of this registry in a compact form, suitable for traversing them
+     * quickly.
+     * <p>
+     * The graph is compiled once after (re)loading the key ring files and then shared by all callers.
+     *
+     * @return the certification graph. Never <code>null</code>.
+     */
+    CertificationGraph getCertificationGraph();
+
     /**
      * Gets the signatures certifying the authenticity of the given user-ID.
      *
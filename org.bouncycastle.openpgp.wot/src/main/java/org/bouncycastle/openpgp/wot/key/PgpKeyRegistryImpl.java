@@ -16,6 +16,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPKeyRing;
@@ -41,7 +43,9 @@ public class PgpKeyRegistryImpl implements PgpKeyRegistry
 
     private final PgpFile pubringFile;
     private final PgpFile secringFile;
-    private final Object mutex;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
 
     private long pubringFileLastModified = Long.MIN_VALUE;
     private long secringFileLastModified = Long.MIN_VALUE;
@@ -50,7 +54,9 @@ public class PgpKeyRegistryImpl implements PgpKeyRegistry
     private Map<PgpKeyId, PgpKey> pgpKeyId2pgpKey; // all keys
     private Map<PgpKeyId, PgpKey> pgpKeyId2masterKey; // only master-keys
 
-    private Map<PgpKeyId, Set<PgpKeyId>> certifyingKeyId2certifiedKeyIds;
+    // Lazily created while holding only the read lock => volatile. Concurrent readers might both create it, though.
+    private volatile Map<PgpKeyId, Set<PgpKeyId>> certifyingKeyId2certifiedKeyIds;
+    private volatile CertificationGraph certificationGraph;
 
     /**
      * Creates an instance of {@code PgpKeyRegistryImpl} with the given public and secret key ring collection files.
@@ -66,7 +72,6 @@ public class PgpKeyRegistryImpl implements PgpKeyRegistry
     {
         this.pubringFile = requireNonNull(pubringFile, "pubringFile");
         this.secringFile = requireNonNull(secringFile, "secringFile");
-        this.mutex = pubringFile.getPgpId();
     }
 
     @Override
@@ -84,91 +89,142 @@ public class PgpKeyRegistryImpl implements PgpKeyRegistry
     @Override
     public PgpKey getPgpKeyOrFail(final PgpKeyId pgpKeyId) throws IllegalArgumentException
     {
-        synchronized (mutex) {
-            final PgpKey pgpKey = getPgpKey(pgpKeyId);
-            if (pgpKey == null)
-                throw new IllegalArgumentException("No PGP key found for this keyId: " + pgpKeyId);
+        final PgpKey pgpKey = getPgpKey(pgpKeyId);
+        if (pgpKey == null)
+            throw new IllegalArgumentException("No PGP key found for this keyId: " + pgpKeyId);
 
-            return pgpKey;
-        }
+        return pgpKey;
     }
 
     @Override
     public PgpKey getPgpKey(final PgpKeyId pgpKeyId) throws IllegalArgumentException
     {
-        synchronized (mutex) {
-            requireNonNull(pgpKeyId, "pgpKeyId");
-            loadIfNeeded();
+        requireNonNull(pgpKeyId, "pgpKeyId");
+        loadIfNeeded();
+        readLock.lock();
+        try
+        {
             final PgpKey pgpKey = pgpKeyId2pgpKey.get(pgpKeyId);
             return pgpKey;
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public PgpKey getPgpKeyOrFail(final PgpKeyFingerprint pgpKeyFingerprint) throws IllegalArgumentException
     {
-        synchronized (mutex) {
-            final PgpKey pgpKey = getPgpKey(pgpKeyFingerprint);
-            if (pgpKey == null)
-                throw new IllegalArgumentException("No PGP key found for this fingerprint: " + pgpKeyFingerprint);
+        final PgpKey pgpKey = getPgpKey(pgpKeyFingerprint);
+        if (pgpKey == null)
+            throw new IllegalArgumentException("No PGP key found for this fingerprint: " + pgpKeyFingerprint);
 
-            return pgpKey;
-        }
+        return pgpKey;
     }
 
     @Override
     public PgpKey getPgpKey(final PgpKeyFingerprint pgpKeyFingerprint) throws IllegalArgumentException
     {
-        synchronized (mutex) {
-            requireNonNull(pgpKeyFingerprint, "pgpKeyFingerprint");
-            loadIfNeeded();
+        requireNonNull(pgpKeyFingerprint, "pgpKeyFingerprint");
+        loadIfNeeded();
+        readLock.lock();
+        try
+        {
             final PgpKey pgpKey = pgpKeyFingerprint2pgpKey.get(pgpKeyFingerprint);
             return pgpKey;
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public Collection<PgpKey> getMasterKeys()
     {
-        synchronized (mutex) {
-            loadIfNeeded();
+        loadIfNeeded();
+        readLock.lock();
+        try
+        {
             return Collections.unmodifiableCollection(pgpKeyId2masterKey.values());
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public void markStale()
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
             pubringFileLastModified = Long.MIN_VALUE;
             secringFileLastModified = Long.MIN_VALUE;
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
     /**
      * Loads the key ring files, if they were not yet read or if this registry is stale.
+     * <p>
+     * A read lock cannot be upgraded to the write lock. Therefore, every lookup invokes this method <i>before</i>
+     * acquiring the read lock. A thread already holding the read lock continues working with the keys loaded before.
      */
     protected void loadIfNeeded()
     {
-        synchronized (mutex) {
-            if (pgpKeyId2pgpKey == null
-                    || getPubringFile().getLastModified() != pubringFileLastModified
-                    || getSecringFile().getLastModified() != secringFileLastModified)
+        if (lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread())
+        {
+            if (pgpKeyId2pgpKey == null)
+                throw new IllegalStateException("loadIfNeeded() must be invoked before acquiring the read lock!");
+
+            return;
+        }
+
+        readLock.lock();
+        try
+        {
+            if (!isLoadNeeded())
+            {
+                logger.trace("loadIfNeeded: *not* invoking load().");
+                return;
+            }
+        } finally
+        {
+            readLock.unlock();
+        }
+
+        writeLock.lock();
+        try
+        {
+            // Another thread might have loaded meanwhile => check again.
+            if (isLoadNeeded())
             {
                 logger.debug("loadIfNeeded: invoking load().");
                 load();
             }
-            else
-                logger.trace("loadIfNeeded: *not* invoking load().");
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
+    private boolean isLoadNeeded()
+    {
+        return pgpKeyId2pgpKey == null
+                || getPubringFile().getLastModified() != pubringFileLastModified
+                || getSecringFile().getLastModified() != secringFileLastModified;
+    }
+
     /**
      * Loads the key ring files.
      */
     protected void load()
     {
-        synchronized (mutex) {
+        writeLock.lock();
+        try
+        {
             final Map<PgpKeyFingerprint, PgpKey> pgpKeyFingerprint2pgpKey = new HashMap<>();
             final Map<PgpKeyId, PgpKey> pgpKeyId2pgpKey = new HashMap<>();
             final Map<PgpKeyId, PgpKey> pgpKeyId2masterKey = new HashMap<>();
@@ -253,8 +309,12 @@ public class PgpKeyRegistryImpl implements PgpKeyRegistry
             this.pgpKeyId2pgpKey = Collections.unmodifiableMap(pgpKeyId2pgpKey);
             this.pgpKeyId2masterKey = Collections.unmodifiableMap(pgpKeyId2masterKey);
             this.certifyingKeyId2certifiedKeyIds = null;
+            this.certificationGraph = null;
 
             assignSubKeys();
+        } finally
+        {
+            writeLock.unlock();
         }
     }
 
@@ -325,8 +385,11 @@ public class PgpKeyRegistryImpl implements PgpKeyRegistry
     public Set<PgpKeyFingerprint> getPgpKeyFingerprintsCertifiedBy(
             final PgpKeyFingerprint certifyingPgpKeyFingerprint)
     {
-        synchronized (mutex) {
-            requireNonNull(certifyingPgpKeyFingerprint, "signingPgpKeyFingerprint");
+        requireNonNull(certifyingPgpKeyFingerprint, "signingPgpKeyFingerprint");
+        loadIfNeeded();
+        readLock.lock();
+        try
+        {
             final PgpKey signingPgpKey = getPgpKey(certifyingPgpKeyFingerprint);
             if (signingPgpKey == null)
                 return Collections.emptySet();
@@ -342,25 +405,36 @@ public class PgpKeyRegistryImpl implements PgpKeyRegistry
                 result.add(pgpKey.getPgpKeyFingerprint());
             }
             return Collections.unmodifiableSet(result);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public Set<PgpKeyId> getPgpKeyIdsCertifiedBy(final PgpKeyId certifyingPgpKeyId)
     {
-        synchronized (mutex) {
+        loadIfNeeded();
+        readLock.lock();
+        try
+        {
             final Set<PgpKeyId> pgpKeyIds = getCertifyingKeyId2certifiedKeyIds().get(certifyingPgpKeyId);
             if (pgpKeyIds == null)
                 return Collections.emptySet();
 
             return Collections.unmodifiableSet(pgpKeyIds);
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     protected Map<PgpKeyId, Set<PgpKeyId>> getCertifyingKeyId2certifiedKeyIds()
     {
-        synchronized (mutex) {
-            loadIfNeeded();
+        loadIfNeeded();
+        readLock.lock();
+        try
+        {
             if (certifyingKeyId2certifiedKeyIds == null)
             {
                 final Map<PgpKeyId, Set<PgpKeyId>> m = new HashMap<>();
@@ -404,13 +478,38 @@ public class PgpKeyRegistryImpl implements PgpKeyRegistry
                 certifyingKeyId2certifiedKeyIds = Collections.unmodifiableMap(m);
             }
             return certifyingKeyId2certifiedKeyIds;
+        } finally
+        {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public CertificationGraph getCertificationGraph()
+    {
+        loadIfNeeded();
+        readLock.lock();
+        try
+        {
+            CertificationGraph graph = certificationGraph;
+            if (graph == null)
+            {
+                graph = new CertificationGraph(pgpKeyId2pgpKey.values(), this);
+                certificationGraph = graph;
+            }
+            return graph;
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
     @Override
     public List<PGPSignature> getCertifications(final PgpUserId pgpUserId)
     {
-        synchronized (mutex) {
+        readLock.lock();
+        try
+        {
             requireNonNull(pgpUserId, "pgpUserId");
             final PGPPublicKey publicKey = pgpUserId.getPgpKey().getPublicKey();
 
@@ -457,6 +556,9 @@ public class PgpKeyRegistryImpl implements PgpKeyRegistry
             }
 
             return result;
+        } finally
+        {
+            readLock.unlock();
         }
     }
 
@@ -94,7 +94,7 @@ public abstract class AbstractTrustDbTest {
 
 		pubringFile = new IoFile(new File(gnupgHomeDir, "pubring.gpg"));
 		secringFile = new IoFile(new File(gnupgHomeDir, "secring.gpg"));
-		trustdbFile = new IoFile(new File(gnupgHomeDir, "trustdb.gpg"));
+		trustdbFile = createTrustdbFile(new File(gnupgHomeDir, "trustdb.gpg"));
 
 		assertThat(pubringFile.getPgpId()).isSameAs(secringFile.getPgpId());
 		assertThat(pubringFile.getPgpId()).isSameAs(trustdbFile.getPgpId());
@@ -110,6 +110,14 @@ public abstract class AbstractTrustDbTest {
 		}
 	}
 
+	protected PgpFile createTrustdbFile(File file) throws IOException {
+		return new IoFile(file);
+	}
+
+	protected long getTrustdbLength() throws IOException {
+		return new File(gnupgHomeDir, "trustdb.gpg").length();
+	}
+
 	protected void initGnupgHomeDir() throws Exception {
 		gnupgHomeDir = new File(tempDir, "gnupg_" + Long.toHexString(System.currentTimeMillis()) + '_' + Integer.toHexString(Math.abs(secureRandom.nextInt())));
 		gnupgHomeDir.mkdir();
@@ -0,0 +1,46 @@
+package org.bouncycastle.openpgp.wot;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.bouncycastle.openpgp.wot.TrustConst.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.bouncycastle.openpgp.wot.internal.TrustDbImpl;
+import org.bouncycastle.openpgp.wot.key.PgpKey;
+import org.junit.Test;
+
+/**
+ * Runs all tests of {@link UpdateTrustDbTest} with a memory-mapped {@code trustdb.gpg}.
+ */
+public class MappedUpdateTrustDbTest extends UpdateTrustDbTest {
+
+	@Override
+	protected PgpFile createTrustdbFile(File file) throws IOException {
+		return new IoFile(file, true);
+	}
+
+	@Test
+	public void zeroTailLeftBehindByCrash() throws Exception {
+		final PgpKey aliceKey = createPgpKey("alice");
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+			trustDb.setOwnerTrust(aliceKey.getPublicKey(), OwnerTrust.ULTIMATE);
+			trustDb.updateTrustDb();
+		}
+		final File file = ((IoFile) trustdbFile).getFile();
+		final long length = file.length();
+		assertThat(length % TRUST_RECORD_LEN).isEqualTo(0);
+
+		// Simulate a crash while the mapping was enlarged: whole UNUSED records followed by a partial one.
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw");) {
+			raf.setLength(length + 3 * TRUST_RECORD_LEN + 17);
+		}
+
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+			assertThat(trustDb.getOwnerTrust(aliceKey)).isEqualTo(OwnerTrust.ULTIMATE);
+			assertThat(trustDb.getValidity(aliceKey)).isEqualTo(Validity.ULTIMATE);
+		}
+		assertThat(file.length()).isEqualTo(length);
+	}
+}
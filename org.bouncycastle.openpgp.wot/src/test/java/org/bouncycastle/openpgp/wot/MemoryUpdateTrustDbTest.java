@@ -0,0 +1,32 @@
+package org.bouncycastle.openpgp.wot;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs all tests of {@link UpdateTrustDbTest} with an in-memory {@code trustdb.gpg}. It is only written to the
+ * directory for the check by gpg.
+ */
+public class MemoryUpdateTrustDbTest extends UpdateTrustDbTest {
+
+	private MemoryFile memoryTrustdbFile;
+
+	@Override
+	protected PgpFile createTrustdbFile(File file) throws IOException {
+		memoryTrustdbFile = new MemoryFile(file);
+		return memoryTrustdbFile;
+	}
+
+	@Override
+	protected long getTrustdbLength() throws IOException {
+		return memoryTrustdbFile.getLength();
+	}
+
+	@Override
+	protected void runGpgCheckTrustDb() throws IOException, InterruptedException {
+		File file = new File(gnupgHomeDir, "trustdb.gpg");
+		memoryTrustdbFile.snapshotTo(file);
+		super.runGpgCheckTrustDb();
+		memoryTrustdbFile.loadFrom(file);
+	}
+}
@@ -4,8 +4,20 @@ import static org.assertj.core.api.Assertions.*;
 import static org.bouncycastle.openpgp.PGPSignature.*;
 import static org.bouncycastle.openpgp.wot.TrustConst.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
 import org.bouncycastle.openpgp.wot.internal.TrustDbImpl;
+import org.bouncycastle.openpgp.wot.key.CertificationGraph;
 import org.bouncycastle.openpgp.wot.key.PgpKey;
+import org.bouncycastle.openpgp.wot.key.PgpKeyFingerprint;
+import org.bouncycastle.openpgp.wot.key.PgpUserId;
 import org.junit.Test;
 
 public class UpdateTrustDbTest extends AbstractTrustDbTest {
@@ -40,6 +52,485 @@ public class UpdateTrustDbTest extends AbstractTrustDbTest {
 		}
 	}
 
+	@Test
+	public void batch() throws Exception {
+		PgpKey aliceKey = createPgpKey("alice");
+		PgpKey bobKey = createPgpKey("bob");
+		PgpKey cathrinKey = createPgpKey("cathrin");
+
+		bobKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, bobKey); // bob <= alice
+		cathrinKey = signPublicKey(bobKey, POSITIVE_CERTIFICATION, cathrinKey); // cathrin <= bob <= alice
+
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+			TrustDb.Batch batch = trustDb.beginBatch();
+			try {
+				trustDb.setOwnerTrust(aliceKey.getPublicKey(), OwnerTrust.ULTIMATE);
+				TrustDb.Batch nestedBatch = trustDb.beginBatch();
+				try {
+					trustDb.setOwnerTrust(bobKey.getPublicKey(), OwnerTrust.MARGINAL);
+				} finally {
+					nestedBatch.close();
+				}
+				trustDb.updateTrustDb();
+			} finally {
+				batch.close();
+			}
+			assertThat(trustDb.isTrustDbStale()).isFalse();
+
+			batch = trustDb.beginBatch(true);
+			try {
+				trustDb.setOwnerTrust(bobKey.getPublicKey(), OwnerTrust.FULL);
+				assertThat(trustDb.isTrustDbStale()).isFalse();
+			} finally {
+				batch.close();
+			}
+			assertThat(trustDb.isTrustDbStale()).isTrue();
+		}
+
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+			assertThat(trustDb.isTrustDbStale()).isTrue();
+			assertThat(trustDb.getOwnerTrust(bobKey.getPublicKey())).isEqualTo(OwnerTrust.FULL);
+			trustDb.updateTrustDb();
+			assertThat(trustDb.getValidityRaw(aliceKey.getPublicKey())).isEqualTo(TRUST_ULTIMATE);
+			assertThat(trustDb.getValidityRaw(bobKey.getPublicKey())).isEqualTo(TRUST_FULL);
+			assertThat(trustDb.getValidityRaw(cathrinKey.getPublicKey())).isEqualTo(TRUST_FULL);
+		}
+	}
+
+	@Test
+	public void validities() throws Exception {
+		PgpKey aliceKey = createPgpKey("alice");
+		PgpKey bobKey = createPgpKey("bob");
+		PgpKey cathrinKey = createPgpKey("cathrin");
+		PgpKey danielKey = createPgpKey("daniel");
+
+		bobKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, bobKey); // bob <= alice
+		cathrinKey = signPublicKey(bobKey, POSITIVE_CERTIFICATION, cathrinKey); // cathrin <= bob <= alice
+
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+			trustDb.setOwnerTrust(aliceKey.getPublicKey(), OwnerTrust.ULTIMATE);
+			trustDb.setOwnerTrust(bobKey.getPublicKey(), OwnerTrust.MARGINAL);
+			trustDb.updateTrustDb();
+
+			List<PgpKey> pgpKeys = Arrays.asList(danielKey, cathrinKey, bobKey, aliceKey);
+			Map<PgpKey, Validity> keyValidities = trustDb.getPgpKeyValidities(pgpKeys);
+			assertThat(keyValidities).hasSize(pgpKeys.size());
+			for (PgpKey pgpKey : pgpKeys)
+				assertThat(keyValidities.get(pgpKey)).isEqualTo(trustDb.getValidity(pgpKey));
+
+			assertThat(keyValidities.get(aliceKey)).isEqualTo(Validity.ULTIMATE);
+			assertThat(keyValidities.get(bobKey)).isEqualTo(Validity.FULL);
+			assertThat(keyValidities.get(cathrinKey)).isEqualTo(Validity.MARGINAL);
+			assertThat(keyValidities.get(danielKey)).isEqualTo(Validity.NONE);
+
+			List<PgpUserId> pgpUserIds = new ArrayList<>();
+			for (PgpKey pgpKey : pgpKeys)
+				pgpUserIds.addAll(pgpKeyRegistry.getPgpKeyOrFail(pgpKey.getPgpKeyId()).getPgpUserIds());
+
+			Map<PgpUserId, Validity> userIdValidities = trustDb.getPgpUserIdValidities(pgpUserIds);
+			assertThat(userIdValidities).hasSize(pgpUserIds.size());
+			for (PgpUserId pgpUserId : pgpUserIds)
+				assertThat(userIdValidities.get(pgpUserId)).isEqualTo(trustDb.getValidity(pgpUserId));
+		}
+	}
+
+	@Test
+	public void validityCache() throws Exception {
+		PgpKey aliceKey = createPgpKey("alice");
+		PgpKey bobKey = createPgpKey("bob");
+		PgpKey cathrinKey = createPgpKey("cathrin");
+
+		bobKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, bobKey); // bob <= alice
+		cathrinKey = signPublicKey(bobKey, POSITIVE_CERTIFICATION, cathrinKey); // cathrin <= bob <= alice
+
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+			trustDb.setOwnerTrust(aliceKey.getPublicKey(), OwnerTrust.ULTIMATE);
+			trustDb.updateTrustDb();
+
+			// Every change must be visible, even though the validities were looked up (and cached) before.
+			assertThat(trustDb.getValidityRaw(bobKey.getPublicKey())).isEqualTo(TRUST_FULL);
+			assertThat(trustDb.getValidityRaw(cathrinKey.getPublicKey())).isEqualTo(TRUST_UNKNOWN);
+
+			trustDb.setOwnerTrust(bobKey.getPublicKey(), OwnerTrust.FULL);
+			assertThat(trustDb.getValidityRaw(cathrinKey.getPublicKey())).isEqualTo(TRUST_UNKNOWN | TRUST_FLAG_PENDING_CHECK);
+
+			trustDb.updateTrustDb();
+			assertThat(trustDb.getValidityRaw(cathrinKey.getPublicKey())).isEqualTo(TRUST_FULL);
+
+			trustDb.setDisabled(bobKey.getPublicKey(), true);
+			assertThat(trustDb.getValidityRaw(bobKey.getPublicKey())).isEqualTo(TRUST_FULL | TRUST_FLAG_DISABLED);
+			assertThat(trustDb.getValidity(bobKey)).isEqualTo(Validity.FULL);
+
+			trustDb.setDisabled(bobKey.getPublicKey(), false);
+			assertThat(trustDb.getValidityRaw(bobKey.getPublicKey())).isEqualTo(TRUST_FULL);
+
+			trustDb.markTrustDbStale();
+			assertThat(trustDb.getValidityRaw(bobKey.getPublicKey())).isEqualTo(TRUST_FULL | TRUST_FLAG_PENDING_CHECK);
+			assertThat(trustDb.isTrustDbStale()).isTrue();
+		}
+	}
+
+	@Test
+	public void snapshot() throws Exception {
+		PgpKey aliceKey = createPgpKey("alice");
+		PgpKey bobKey = createPgpKey("bob");
+		PgpKey cathrinKey = createPgpKey("cathrin");
+		PgpKey danielKey = createPgpKey("daniel");
+
+		bobKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, bobKey); // bob <= alice
+		cathrinKey = signPublicKey(bobKey, POSITIVE_CERTIFICATION, cathrinKey); // cathrin <= bob <= alice
+
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+			trustDb.setOwnerTrust(aliceKey.getPublicKey(), OwnerTrust.ULTIMATE);
+			trustDb.updateTrustDb();
+
+			TrustDbSnapshot snapshot1 = trustDb.getSnapshot();
+			assertThat(trustDb.getSnapshot()).isSameAs(snapshot1);
+			assertThat(snapshot1.getKeyCount()).isEqualTo(3);
+			assertThat(snapshot1.getOwnerTrust(aliceKey)).isEqualTo(OwnerTrust.ULTIMATE);
+			assertThat(snapshot1.getOwnerTrust(danielKey)).isNull();
+			assertThat(snapshot1.getValidity(aliceKey)).isEqualTo(Validity.ULTIMATE);
+			assertThat(snapshot1.getValidity(bobKey)).isEqualTo(Validity.FULL);
+			assertThat(snapshot1.getValidity(cathrinKey)).isEqualTo(Validity.NONE);
+			assertThat(snapshot1.getValidity(danielKey)).isEqualTo(Validity.NONE);
+
+			// Every modification publishes a new snapshot - not only updateTrustDb().
+			trustDb.setOwnerTrust(bobKey.getPublicKey(), OwnerTrust.FULL);
+			assertThat(trustDb.getSnapshot().getOwnerTrust(bobKey)).isEqualTo(OwnerTrust.FULL);
+			trustDb.setDisabled(cathrinKey.getPublicKey(), true);
+			assertThat(trustDb.getSnapshot().isDisabled(cathrinKey)).isTrue();
+			trustDb.updateTrustDb();
+
+			TrustDbSnapshot snapshot2 = trustDb.getSnapshot();
+			assertThat(snapshot2).isNotSameAs(snapshot1);
+			assertThat(snapshot2.getOwnerTrust(bobKey)).isEqualTo(OwnerTrust.FULL);
+			assertThat(snapshot2.isDisabled(cathrinKey)).isTrue();
+			assertThat(snapshot2.getValidity(cathrinKey)).isEqualTo(Validity.FULL);
+
+			// The snapshot is immutable.
+			assertThat(snapshot1.getOwnerTrust(bobKey)).isEqualTo(OwnerTrust.UNKNOWN);
+			assertThat(snapshot1.isDisabled(cathrinKey)).isFalse();
+			assertThat(snapshot1.getValidity(cathrinKey)).isEqualTo(Validity.NONE);
+
+			for (PgpKey pgpKey : Arrays.asList(aliceKey, bobKey, cathrinKey, danielKey)) {
+				assertThat(snapshot2.getValidity(pgpKey)).isEqualTo(trustDb.getValidity(pgpKey));
+				for (PgpUserId pgpUserId : pgpKeyRegistry.getPgpKeyOrFail(pgpKey.getPgpKeyId()).getPgpUserIds())
+					assertThat(snapshot2.getValidity(pgpUserId)).isEqualTo(trustDb.getValidity(pgpUserId));
+			}
+
+			// All keys have secret keys => they all become ultimately trusted.
+			trustDb.updateUltimatelyTrustedKeysFromAvailableSecretKeys(false);
+			TrustDbSnapshot snapshot3 = trustDb.getSnapshot();
+			assertThat(snapshot3).isNotSameAs(snapshot2);
+			assertThat(snapshot3.getOwnerTrust(bobKey)).isEqualTo(OwnerTrust.ULTIMATE);
+			assertThat(snapshot3.getOwnerTrust(danielKey)).isEqualTo(OwnerTrust.ULTIMATE);
+		}
+	}
+
+	@Test
+	public void incrementalUpdate() throws Exception {
+		PgpKey aliceKey = createPgpKey("alice");
+		PgpKey bobKey = createPgpKey("bob");
+		PgpKey cathrinKey = createPgpKey("cathrin");
+		PgpKey danielKey = createPgpKey("daniel");
+		PgpKey emilKey = createPgpKey("emil");
+		PgpKey frankKey = createPgpKey("frank");
+		PgpKey ginaKey = createPgpKey("gina");
+
+		bobKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, bobKey); // bob <= alice
+		cathrinKey = signPublicKey(bobKey, POSITIVE_CERTIFICATION, cathrinKey); // cathrin <= bob <= alice
+		danielKey = signPublicKey(cathrinKey, POSITIVE_CERTIFICATION, danielKey); // daniel <= cathrin <= bob <= alice
+		emilKey = signPublicKey(danielKey, POSITIVE_CERTIFICATION, emilKey); // emil <= daniel <= cathrin <= ...
+
+		final TrustDbOptions options = new TrustDbOptions();
+		options.setIncrementalUpdateEnabled(true);
+		final boolean[] incrementalAllowed = new boolean[] { true };
+		final int[] incrementalCount = new int[1];
+		try (TrustDbImpl trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry, options) {
+			@Override
+			protected boolean updateTrustDbIncrementally() {
+				if (!incrementalAllowed[0] || !super.updateTrustDbIncrementally())
+					return false;
+
+				++incrementalCount[0];
+				return true;
+			}
+		};) {
+			final List<PgpKey> pgpKeys = Arrays.asList(aliceKey, bobKey, cathrinKey, danielKey, emilKey, frankKey, ginaKey);
+
+			trustDb.setOwnerTrust(aliceKey.getPublicKey(), OwnerTrust.ULTIMATE);
+			trustDb.updateTrustDb();
+			assertThat(incrementalCount[0]).isEqualTo(0);
+
+			trustDb.setOwnerTrust(bobKey.getPublicKey(), OwnerTrust.FULL);
+			assertIncrementalUpdateEqualsFullUpdate(trustDb, pgpKeys, incrementalAllowed);
+			assertThat(incrementalCount[0]).isEqualTo(1);
+			assertThat(trustDb.getValidity(danielKey)).isEqualTo(Validity.NONE);
+
+			trustDb.setOwnerTrust(cathrinKey.getPublicKey(), OwnerTrust.FULL);
+			trustDb.setOwnerTrust(danielKey.getPublicKey(), OwnerTrust.MARGINAL);
+			ginaKey = signPublicKey(danielKey, POSITIVE_CERTIFICATION, ginaKey); // gina <= daniel <= cathrin <= ...
+			assertIncrementalUpdateEqualsFullUpdate(trustDb, pgpKeys, incrementalAllowed);
+			assertThat(incrementalCount[0]).isEqualTo(2);
+			assertThat(trustDb.getValidity(emilKey)).isEqualTo(Validity.MARGINAL);
+
+			frankKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, frankKey); // frank <= alice
+			trustDb.setOwnerTrust(frankKey.getPublicKey(), OwnerTrust.FULL);
+			emilKey = signPublicKey(frankKey, POSITIVE_CERTIFICATION, emilKey); // emil <= frank <= alice
+			assertIncrementalUpdateEqualsFullUpdate(trustDb, pgpKeys, incrementalAllowed);
+			assertThat(incrementalCount[0]).isEqualTo(3);
+			assertThat(trustDb.getValidity(emilKey)).isEqualTo(Validity.FULL);
+
+			// Changing the ultimately trusted keys requires a full update. The owner-trusts are compared to the ones
+			// recorded by the last update - it does not matter who changed them.
+			trustDb.setOwnerTrust(ginaKey.getPublicKey(), OwnerTrust.ULTIMATE);
+			trustDb.updateTrustDb();
+			assertThat(incrementalCount[0]).isEqualTo(3);
+
+			trustDb.setOwnerTrust(ginaKey.getPublicKey(), OwnerTrust.MARGINAL);
+			assertIncrementalUpdateEqualsFullUpdate(trustDb, pgpKeys, incrementalAllowed);
+			assertThat(incrementalCount[0]).isEqualTo(3);
+
+			// Changing an owner-trust back and forth between two updates changes nothing => incremental.
+			trustDb.setOwnerTrust(frankKey.getPublicKey(), OwnerTrust.NEVER);
+			trustDb.setOwnerTrust(frankKey.getPublicKey(), OwnerTrust.FULL);
+			assertIncrementalUpdateEqualsFullUpdate(trustDb, pgpKeys, incrementalAllowed);
+			assertThat(incrementalCount[0]).isEqualTo(4);
+			assertThat(trustDb.getValidity(emilKey)).isEqualTo(Validity.FULL);
+		}
+	}
+
+	@Test
+	public void parallelValidation() throws Exception {
+		PgpKey aliceKey = createPgpKey("alice");
+		PgpKey bobKey = createPgpKey("bob");
+		PgpKey cathrinKey = createPgpKey("cathrin");
+		PgpKey danielKey = createPgpKey("daniel");
+		PgpKey emilKey = createPgpKey("emil");
+		PgpKey frankKey = createPgpKey("frank");
+
+		bobKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, bobKey); // bob <= alice
+		cathrinKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, cathrinKey); // cathrin <= alice
+		danielKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, danielKey); // daniel <= alice
+		emilKey = signPublicKey(bobKey, POSITIVE_CERTIFICATION, emilKey); // emil <= bob <= alice
+		frankKey = signPublicKey(cathrinKey, POSITIVE_CERTIFICATION, frankKey); // frank <= cathrin <= alice
+		frankKey = signPublicKey(danielKey, POSITIVE_CERTIFICATION, frankKey); // frank <= daniel <= alice
+
+		final List<PgpKey> pgpKeys = Arrays.asList(aliceKey, bobKey, cathrinKey, danielKey, emilKey, frankKey);
+		final List<Integer> sequentialValidities;
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+			trustDb.setOwnerTrust(aliceKey.getPublicKey(), OwnerTrust.ULTIMATE);
+			trustDb.setOwnerTrust(bobKey.getPublicKey(), OwnerTrust.FULL);
+			trustDb.setOwnerTrust(cathrinKey.getPublicKey(), OwnerTrust.MARGINAL);
+			trustDb.setOwnerTrust(danielKey.getPublicKey(), OwnerTrust.MARGINAL);
+			trustDb.updateTrustDb();
+			sequentialValidities = getValiditiesRaw(trustDb, pgpKeys);
+		}
+
+		final TrustDbOptions options = new TrustDbOptions();
+		options.setValidationParallelism(3);
+		final int[] parallelCount = new int[1];
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry, options) {
+			@Override
+			protected boolean isValidationParallel(int keyCount) {
+				++parallelCount[0];
+				return true;
+			}
+		};) {
+			trustDb.updateTrustDb();
+			assertThat(parallelCount[0]).isGreaterThan(0);
+			assertThat(getValiditiesRaw(trustDb, pgpKeys)).isEqualTo(sequentialValidities);
+			assertThat(trustDb.getValidity(emilKey)).isEqualTo(Validity.FULL);
+			assertThat(trustDb.getValidity(frankKey)).isEqualTo(Validity.MARGINAL);
+		}
+	}
+
+	@Test
+	public void computeValidity() throws Exception {
+		PgpKey aliceKey = createPgpKey("alice");
+		PgpKey bobKey = createPgpKey("bob");
+		PgpKey cathrinKey = createPgpKey("cathrin");
+		PgpKey danielKey = createPgpKey("daniel");
+		PgpKey emilKey = createPgpKey("emil");
+		PgpKey frankKey = createPgpKey("frank");
+		PgpKey ginaKey = createPgpKey("gina");
+
+		bobKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, bobKey); // bob <= alice
+		cathrinKey = signPublicKey(bobKey, POSITIVE_CERTIFICATION, cathrinKey); // cathrin <= bob <= alice
+		danielKey = signPublicKey(bobKey, POSITIVE_CERTIFICATION, danielKey); // daniel <= bob <= alice
+		emilKey = signPublicKey(cathrinKey, POSITIVE_CERTIFICATION, emilKey); // emil <= cathrin <= bob <= alice
+		emilKey = signPublicKey(danielKey, POSITIVE_CERTIFICATION, emilKey); // emil <= daniel <= bob <= alice
+		frankKey = signPublicKey(emilKey, POSITIVE_CERTIFICATION, frankKey); // frank <= emil <= ...
+		ginaKey = signPublicKey(frankKey, POSITIVE_CERTIFICATION, ginaKey); // gina <= frank <= emil <= ...
+
+		final List<PgpKey> pgpKeys = Arrays.asList(aliceKey, bobKey, cathrinKey, danielKey, emilKey, frankKey, ginaKey);
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+			trustDb.setOwnerTrust(aliceKey.getPublicKey(), OwnerTrust.ULTIMATE);
+			trustDb.setOwnerTrust(bobKey.getPublicKey(), OwnerTrust.FULL);
+			trustDb.setOwnerTrust(cathrinKey.getPublicKey(), OwnerTrust.MARGINAL);
+			trustDb.setOwnerTrust(danielKey.getPublicKey(), OwnerTrust.MARGINAL);
+			trustDb.setOwnerTrust(frankKey.getPublicKey(), OwnerTrust.FULL);
+
+			// The trust-db was never updated => everything is calculated from the key ring and the owner-trusts.
+			assertThat(trustDb.computeValidity(emilKey)).isEqualTo(Validity.MARGINAL);
+			assertComputedValiditiesEqualUpdatedValidities(trustDb, pgpKeys);
+
+			trustDb.setOwnerTrust(emilKey.getPublicKey(), OwnerTrust.FULL);
+			assertThat(trustDb.getValidity(ginaKey)).isEqualTo(Validity.NONE);
+			assertThat(trustDb.computeValidity(ginaKey)).isEqualTo(Validity.NONE);
+
+			trustDb.setOwnerTrust(cathrinKey.getPublicKey(), OwnerTrust.FULL);
+			assertThat(trustDb.computeValidity(emilKey)).isEqualTo(Validity.FULL);
+			assertThat(trustDb.computeValidity(ginaKey)).isEqualTo(Validity.FULL);
+			assertComputedValiditiesEqualUpdatedValidities(trustDb, pgpKeys);
+
+			// A key without any path from an ultimately trusted key.
+			final PgpKey harryKey = signPublicKey(ginaKey, POSITIVE_CERTIFICATION, createPgpKey("harry"));
+			trustDb.setOwnerTrust(aliceKey.getPublicKey(), OwnerTrust.FULL);
+			assertThat(trustDb.computeValidity(harryKey)).isEqualTo(Validity.NONE);
+			assertThat(trustDb.computeValidity(aliceKey)).isEqualTo(Validity.NONE);
+		}
+	}
+
+	private void assertComputedValiditiesEqualUpdatedValidities(final TrustDb trustDb, final List<PgpKey> pgpKeys) {
+		final List<Validity> computedValidities = new ArrayList<>();
+		for (PgpKey pgpKey : pgpKeys)
+			computedValidities.add(trustDb.computeValidity(pgpKeyRegistry.getPgpKeyOrFail(pgpKey.getPgpKeyId())));
+
+		trustDb.updateTrustDb();
+		final List<Validity> updatedValidities = new ArrayList<>();
+		for (PgpKey pgpKey : pgpKeys)
+			updatedValidities.add(trustDb.getValidity(pgpKeyRegistry.getPgpKeyOrFail(pgpKey.getPgpKeyId())));
+
+		assertThat(computedValidities).isEqualTo(updatedValidities);
+	}
+
+	/**
+	 * Updates the given trust-db incrementally and then fully, and asserts that both yield the same validities.
+	 */
+	private void assertIncrementalUpdateEqualsFullUpdate(final TrustDb trustDb, final List<PgpKey> pgpKeys,
+			final boolean[] incrementalAllowed) {
+		trustDb.updateTrustDb();
+		final List<Integer> incrementalValidities = getValiditiesRaw(trustDb, pgpKeys);
+
+		incrementalAllowed[0] = false;
+		try {
+			trustDb.updateTrustDb();
+		} finally {
+			incrementalAllowed[0] = true;
+		}
+		assertThat(incrementalValidities).isEqualTo(getValiditiesRaw(trustDb, pgpKeys));
+	}
+
+	private List<Integer> getValiditiesRaw(final TrustDb trustDb, final List<PgpKey> pgpKeys) {
+		final List<Integer> result = new ArrayList<>();
+		for (PgpKey pgpKey : pgpKeys) {
+			pgpKey = pgpKeyRegistry.getPgpKeyOrFail(pgpKey.getPgpKeyId());
+			result.add(trustDb.getValidityRaw(pgpKey.getPublicKey()));
+			for (PgpUserId pgpUserId : pgpKey.getPgpUserIds())
+				result.add(trustDb.getValidityRaw(pgpKey.getPublicKey(), pgpUserId.getNameHash()));
+		}
+		return result;
+	}
+
+	@Test
+	public void certificationGraph() throws Exception {
+		PgpKey aliceKey = createPgpKey("alice");
+		PgpKey bobKey = createPgpKey("bob");
+		PgpKey cathrinKey = createPgpKey("cathrin");
+
+		bobKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, bobKey); // bob <= alice
+		cathrinKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, cathrinKey); // cathrin <= alice
+		cathrinKey = signPublicKey(bobKey, CASUAL_CERTIFICATION, cathrinKey); // cathrin <= bob
+
+		CertificationGraph graph = pgpKeyRegistry.getCertificationGraph();
+		assertThat(pgpKeyRegistry.getCertificationGraph()).isSameAs(graph);
+
+		for (int id = 0; id < graph.getKeyCount(); ++id) {
+			PgpKey pgpKey = graph.getPgpKey(id);
+			assertThat(graph.getId(pgpKey.getPgpKeyFingerprint())).isEqualTo(id);
+
+			Set<PgpKeyFingerprint> certified = new HashSet<>();
+			for (int i = graph.getCertifiedStart(id); i < graph.getCertifiedEnd(id); ++i)
+				certified.add(graph.getPgpKey(graph.getCertified(i)).getPgpKeyFingerprint());
+
+			assertThat(certified).isEqualTo(pgpKeyRegistry.getPgpKeyFingerprintsCertifiedBy(pgpKey.getPgpKeyFingerprint()));
+
+			for (int i = graph.getCertifierStart(id); i < graph.getCertifierEnd(id); ++i)
+				assertThat(pgpKeyRegistry.getPgpKeyFingerprintsCertifiedBy(
+						graph.getPgpKey(graph.getCertifier(i)).getPgpKeyFingerprint())).contains(pgpKey.getPgpKeyFingerprint());
+
+			assertThat(graph.getUserIdEnd(id) - graph.getUserIdStart(id)).isEqualTo(pgpKey.getPgpUserIds().size());
+		}
+
+		int cathrinId = graph.getId(cathrinKey.getPgpKeyFingerprint());
+		assertThat(graph.getCertifierEnd(cathrinId) - graph.getCertifierStart(cathrinId)).isEqualTo(3); // incl. herself
+		int userIdIndex = graph.getUserIdStart(cathrinId);
+		List<Integer> certificationTypes = new ArrayList<>();
+		for (int i = graph.getCertificationStart(userIdIndex); i < graph.getCertificationEnd(userIdIndex); ++i)
+			certificationTypes.add(graph.getCertificationType(i));
+
+		assertThat(certificationTypes).hasSize(3).contains(CASUAL_CERTIFICATION, POSITIVE_CERTIFICATION);
+
+		// A modification causes the graph to be compiled again.
+		bobKey = signPublicKey(cathrinKey, POSITIVE_CERTIFICATION, bobKey); // bob <= cathrin
+		CertificationGraph graph2 = pgpKeyRegistry.getCertificationGraph();
+		assertThat(graph2).isNotSameAs(graph);
+		int bobId = graph2.getId(bobKey.getPgpKeyFingerprint());
+		assertThat(graph2.getCertifierEnd(bobId) - graph2.getCertifierStart(bobId)).isEqualTo(3);
+	}
+
+	@Test
+	public void compact() throws Exception {
+		PgpKey aliceKey = createPgpKey("alice");
+		PgpKey bobKey = createPgpKey("bob");
+		PgpKey cathrinKey = createPgpKey("cathrin");
+		PgpKey danielKey = createPgpKey("daniel");
+
+		bobKey = signPublicKey(aliceKey, POSITIVE_CERTIFICATION, bobKey); // bob <= alice
+		cathrinKey = signPublicKey(bobKey, POSITIVE_CERTIFICATION, cathrinKey); // cathrin <= bob <= alice
+		danielKey = signPublicKey(bobKey, POSITIVE_CERTIFICATION, danielKey); // daniel <= bob <= alice
+
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+			trustDb.setOwnerTrust(aliceKey.getPublicKey(), OwnerTrust.ULTIMATE);
+			trustDb.setOwnerTrust(bobKey.getPublicKey(), OwnerTrust.FULL);
+			trustDb.setOwnerTrust(danielKey.getPublicKey(), OwnerTrust.MARGINAL);
+			trustDb.updateTrustDb();
+		}
+		long lengthBefore = getTrustdbLength();
+
+		PGPPublicKeyRingCollection publicKeyRingCollection = readPublicKeyRingCollection();
+		publicKeyRingCollection = PGPPublicKeyRingCollection.removePublicKeyRing(publicKeyRingCollection, danielKey.getPublicKeyRing());
+		writePublicKeyRingCollection(publicKeyRingCollection);
+		PGPSecretKeyRingCollection secretKeyRingCollection = readSecretKeyRingCollection();
+		secretKeyRingCollection = PGPSecretKeyRingCollection.removeSecretKeyRing(secretKeyRingCollection,
+				secretKeyRingCollection.getSecretKeyRing(danielKey.getPgpKeyId().longValue()));
+		writeSecretKeyRingCollection(secretKeyRingCollection);
+		pgpKeyRegistry.markStale();
+
+		try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+			assertThat(trustDb.compact()).isEqualTo(1);
+			assertThat(trustDb.compact()).isEqualTo(0);
+
+			assertThat(trustDb.getOwnerTrust(bobKey.getPublicKey())).isEqualTo(OwnerTrust.FULL);
+			assertThat(trustDb.getOwnerTrust(danielKey.getPublicKey())).isNull();
+			assertThat(trustDb.getValidityRaw(aliceKey.getPublicKey())).isEqualTo(TRUST_ULTIMATE);
+			assertThat(trustDb.getValidityRaw(bobKey.getPublicKey())).isEqualTo(TRUST_FULL);
+			assertThat(trustDb.getValidityRaw(cathrinKey.getPublicKey())).isEqualTo(TRUST_FULL);
+			assertThat(trustDb.isTrustDbStale()).isFalse();
+		}
+		assertThat(getTrustdbLength()).isLessThan(lengthBefore);
+
+		if (! SKIP_GPG_CHECK_TRUST_DB) {
+			runGpgCheckTrustDb();
+
+			try (TrustDb trustDb = new TrustDbImpl(trustdbFile, pgpKeyRegistry);) {
+				assertThat(trustDb.getOwnerTrust(bobKey.getPublicKey())).isEqualTo(OwnerTrust.FULL);
+				assertThat(trustDb.getValidityRaw(cathrinKey.getPublicKey())).isEqualTo(TRUST_FULL);
+			}
+		}
+	}
+
 	@Test
 	public void oneIndirection() throws Exception {
 		PgpKey aliceKey = createPgpKey("alice");
@@ -0,0 +1,147 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.bouncycastle.openpgp.wot.TrustConst.*;
+
+import org.bouncycastle.openpgp.wot.RecordCacheEviction;
+import org.junit.Test;
+
+public class RecordCacheTest {
+
+	@Test
+	public void putGet() {
+		RecordCache cache = new RecordCache(1024 * RecordCache.BYTES_PER_ENTRY, new ClockRecordCachePolicy());
+		byte[] buf = new byte[TRUST_RECORD_LEN];
+
+		for (long recordNum = 1; recordNum <= 500; ++recordNum)
+			assertThat(cache.put(recordNum, record(recordNum), 0, false)).isTrue();
+
+		assertThat(cache.size()).isEqualTo(500);
+		for (long recordNum = 1; recordNum <= 500; ++recordNum) {
+			assertThat(cache.get(recordNum, buf, 0)).isTrue();
+			assertThat(buf).isEqualTo(record(recordNum));
+		}
+		assertThat(cache.get(501, buf, 0)).isFalse();
+	}
+
+	@Test
+	public void evictionKeepsOthersReachable() {
+		RecordCache cache = new RecordCache(300 * RecordCache.BYTES_PER_ENTRY, new ClockRecordCachePolicy());
+		byte[] buf = new byte[TRUST_RECORD_LEN];
+
+		// evicting records => the backward-shift in the index must keep all others reachable.
+		for (long recordNum = 1; recordNum <= 500; ++recordNum)
+			assertThat(cache.put(recordNum, record(recordNum), 0, false)).isTrue();
+
+		assertThat(cache.size()).isEqualTo(300);
+		int found = 0;
+		for (long recordNum = 1; recordNum <= 500; ++recordNum) {
+			if (cache.get(recordNum, buf, 0)) {
+				assertThat(buf).isEqualTo(record(recordNum));
+				++found;
+			}
+		}
+		assertThat(found).isEqualTo(300);
+	}
+
+	@Test
+	public void evictionKeepsByteBudgetAndDirtyRecords() {
+		RecordCache cache = new RecordCache(100 * RecordCache.BYTES_PER_ENTRY, new ClockRecordCachePolicy());
+		assertThat(cache.getCapacity()).isEqualTo(100);
+		byte[] buf = new byte[TRUST_RECORD_LEN];
+
+		for (long recordNum = 1; recordNum <= 10; ++recordNum)
+			cache.put(recordNum, record(recordNum), 0, true);
+
+		for (long recordNum = 11; recordNum <= 10000; ++recordNum)
+			assertThat(cache.put(recordNum, record(recordNum), 0, false)).isTrue();
+
+		assertThat(cache.size()).isEqualTo(100);
+		for (long recordNum = 1; recordNum <= 10; ++recordNum) {
+			assertThat(cache.get(recordNum, buf, 0)).isTrue();
+			assertThat(buf).isEqualTo(record(recordNum));
+		}
+		assertThat(cache.get(10000, buf, 0)).isTrue();
+		assertThat(cache.get(11, buf, 0)).isFalse();
+	}
+
+	@Test
+	public void allDirty() {
+		RecordCache cache = new RecordCache(2 * RecordCache.BYTES_PER_ENTRY, new ClockRecordCachePolicy());
+		assertThat(cache.put(1, record(1), 0, true)).isTrue();
+		assertThat(cache.put(2, record(2), 0, true)).isTrue();
+		assertThat(cache.put(3, record(3), 0, false)).isFalse();
+
+		cache.markClean(1);
+		assertThat(cache.put(3, record(3), 0, false)).isTrue();
+		assertThat(cache.get(1, new byte[TRUST_RECORD_LEN], 0)).isFalse();
+	}
+
+	@Test
+	public void pinnedSurvivesMarkClean() {
+		RecordCache cache = new RecordCache(2 * RecordCache.BYTES_PER_ENTRY, new ClockRecordCachePolicy());
+		cache.put(1, record(1), 0, true);
+		cache.setPinned(1, true);
+		cache.markClean(1);
+		for (long recordNum = 2; recordNum <= 100; ++recordNum)
+			assertThat(cache.put(recordNum, record(recordNum), 0, false)).isTrue();
+
+		assertThat(cache.get(1, new byte[TRUST_RECORD_LEN], 0)).isTrue();
+	}
+
+	@Test
+	public void twoQueueIsScanResistant() {
+		RecordCache cache = new RecordCache(100 * RecordCache.BYTES_PER_ENTRY, new TwoQueueRecordCachePolicy());
+		byte[] buf = new byte[TRUST_RECORD_LEN];
+
+		// records 1..50 are hot: read at least twice.
+		for (long recordNum = 1; recordNum <= 50; ++recordNum) {
+			cache.put(recordNum, record(recordNum), 0, false);
+			assertThat(cache.get(recordNum, buf, 0)).isTrue();
+		}
+
+		// a long sequence of records touched only once.
+		for (long recordNum = 1000; recordNum < 11000; ++recordNum)
+			assertThat(cache.put(recordNum, record(recordNum), 0, false)).isTrue();
+
+		assertThat(cache.size()).isEqualTo(100);
+		for (long recordNum = 1; recordNum <= 50; ++recordNum) {
+			assertThat(cache.get(recordNum, buf, 0)).isTrue();
+			assertThat(buf).isEqualTo(record(recordNum));
+		}
+	}
+
+	@Test
+	public void striped() {
+		StripedRecordCache small = new StripedRecordCache(100 * RecordCache.BYTES_PER_ENTRY, RecordCacheEviction.CLOCK);
+		assertThat(small.getStripeCount()).isEqualTo(1);
+		assertThat(small.getCapacity()).isEqualTo(100);
+
+		StripedRecordCache cache = new StripedRecordCache(
+				StripedRecordCache.MAX_STRIPE_COUNT * 2048L * RecordCache.BYTES_PER_ENTRY, RecordCacheEviction.TWO_QUEUE);
+		assertThat(cache.getStripeCount()).isEqualTo(StripedRecordCache.MAX_STRIPE_COUNT);
+		assertThat(cache.getCapacity()).isEqualTo(StripedRecordCache.MAX_STRIPE_COUNT * 2048);
+		byte[] buf = new byte[TRUST_RECORD_LEN];
+
+		for (long recordNum = 1; recordNum <= 10000; ++recordNum)
+			assertThat(cache.put(recordNum, record(recordNum), 0, recordNum % 2 == 0)).isTrue();
+
+		assertThat(cache.size()).isEqualTo(10000);
+		for (long recordNum = 1; recordNum <= 10000; ++recordNum) {
+			assertThat(cache.get(recordNum, buf, 0)).isTrue();
+			assertThat(buf).isEqualTo(record(recordNum));
+		}
+
+		cache.clear();
+		assertThat(cache.size()).isEqualTo(0);
+		assertThat(cache.get(1, buf, 0)).isFalse();
+	}
+
+	private static byte[] record(long recordNum) {
+		byte[] record = new byte[TRUST_RECORD_LEN];
+		for (int i = 0; i < record.length; ++i)
+			record[i] = (byte) (recordNum * 31 + i);
+
+		return record;
+	}
+}
@@ -0,0 +1,491 @@
+package org.bouncycastle.openpgp.wot.internal;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.bouncycastle.openpgp.wot.Durability;
+import org.bouncycastle.openpgp.wot.IoFile;
+import org.bouncycastle.openpgp.wot.IoRandomAccessFile;
+import org.bouncycastle.openpgp.wot.TrustConst;
+import org.bouncycastle.openpgp.wot.TrustDbOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrustDbIoTest {
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Random random = new Random();
+	private File trustdbFile;
+	private File journalFile;
+	private File bloomFilterFile;
+
+	@Before
+	public void before() throws Exception {
+		trustdbFile = File.createTempFile("trustdb-", ".gpg");
+		trustdbFile.delete();
+		journalFile = new File(trustdbFile.getPath() + ".journal");
+		bloomFilterFile = new File(trustdbFile.getPath() + ".bloom");
+	}
+
+	@After
+	public void after() throws Exception {
+		trustdbFile.delete();
+		journalFile.delete();
+		bloomFilterFile.delete();
+	}
+
+	@Test
+	public void durabilityLevels() throws Exception {
+		for (Durability durability : Durability.values()) {
+			trustdbFile.delete();
+			TrustDbOptions options = new TrustDbOptions();
+			options.setDurability(durability);
+			options.setGroupCommitIntervalMillis(10);
+
+			byte[][] fingerprints = new byte[50][];
+			try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+				for (int i = 0; i < fingerprints.length; ++i) {
+					fingerprints[i] = createFingerprint();
+					putTrust(trustDbIo, fingerprints[i], i % 7);
+					trustDbIo.flush();
+				}
+			}
+
+			try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+				for (int i = 0; i < fingerprints.length; ++i) {
+					TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(fingerprints[i]);
+					assertThat(trust).as(durability.name()).isNotNull();
+					assertThat(trust.getOwnerTrust()).isEqualTo((short) (i % 7));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void journal() throws Exception {
+		for (Durability durability : Durability.values()) {
+			trustdbFile.delete();
+			journalFile.delete();
+			TrustDbOptions options = new TrustDbOptions();
+			options.setDurability(durability);
+			options.setJournalFile(new IoFile(journalFile));
+
+			byte[][] fingerprints = new byte[200][];
+			try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+				for (int i = 0; i < fingerprints.length; ++i) {
+					fingerprints[i] = createFingerprint();
+					putTrust(trustDbIo, fingerprints[i], i % 7);
+					if (i % 10 == 0)
+						trustDbIo.flush();
+				}
+				// modify again => must not be reverted by applying the journal lazily.
+				for (int i = 0; i < fingerprints.length; i += 3) {
+					TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(fingerprints[i]);
+					trust.setOwnerTrust((short) 1);
+					trustDbIo.putTrustRecord(trust);
+				}
+			}
+			assertThat(journalFile.length()).isEqualTo(0);
+
+			try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+				for (int i = 0; i < fingerprints.length; ++i) {
+					TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(fingerprints[i]);
+					assertThat(trust).as(durability.name()).isNotNull();
+					assertThat(trust.getOwnerTrust()).isEqualTo((short) (i % 3 == 0 ? 1 : i % 7));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void journalNewestUnappliedIndexes() throws Exception {
+		byte[] records = new byte[3 * TrustConst.TRUST_RECORD_LEN];
+		try (TrustDbJournal journal = new TrustDbJournal(new IoFile(journalFile));) {
+			journal.append(7, records, 0, 3); // 7, 8, 9
+			journal.writeBatch();
+			journal.append(3, records, 0, 1);
+			journal.append(8, records, 0, 1);
+			journal.writeBatch();
+
+			int[] indexes = journal.getNewestUnappliedIndexes();
+			assertThat(indexes).isEqualTo(new int[] { 3, 0, 4, 2 });
+			List<Long> recordNums = new ArrayList<>();
+			for (int index : indexes)
+				recordNums.add(journal.getUnappliedRecordNum(index));
+
+			assertThat(recordNums).containsExactly(3L, 7L, 8L, 9L);
+		}
+	}
+
+	@Test
+	public void interruptedReader() throws Exception {
+		final byte[] data = new byte[10 * TrustConst.TRUST_RECORD_LEN];
+		random.nextBytes(data);
+		try (final IoRandomAccessFile raf = new IoRandomAccessFile(new IoFile(trustdbFile));) {
+			raf.write(0, ByteBuffer.wrap(data));
+
+			final AtomicReference<Throwable> error = new AtomicReference<>();
+			final boolean[] interruptedAfterRead = new boolean[1];
+			Thread reader = new Thread() {
+				@Override
+				public void run() {
+					try {
+						// An interrupt closes a FileChannel while it is used => the read must survive it.
+						interrupt();
+						ByteBuffer dst = ByteBuffer.allocate(TrustConst.TRUST_RECORD_LEN);
+						assertThat(raf.read(3 * TrustConst.TRUST_RECORD_LEN, dst)).isEqualTo(TrustConst.TRUST_RECORD_LEN);
+						assertThat(dst.array()).isEqualTo(Arrays.copyOfRange(data,
+								3 * TrustConst.TRUST_RECORD_LEN, 4 * TrustConst.TRUST_RECORD_LEN));
+						interruptedAfterRead[0] = isInterrupted();
+					} catch (Throwable x) {
+						error.set(x);
+					}
+				}
+			};
+			reader.start();
+			reader.join();
+			assertThat(error.get()).isNull();
+			assertThat(interruptedAfterRead[0]).isTrue();
+
+			// Other users of the file are not affected.
+			ByteBuffer dst = ByteBuffer.allocate(data.length);
+			assertThat(raf.read(0, dst)).isEqualTo(data.length);
+			assertThat(dst.array()).isEqualTo(data);
+			assertThat(raf.getLength()).isEqualTo(data.length);
+		}
+	}
+
+	@Test
+	public void compactWithJournal() throws Exception {
+		TrustDbOptions options = new TrustDbOptions();
+		options.setJournalFile(new IoFile(journalFile));
+
+		byte[][] fingerprints = new byte[300][];
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+			for (int i = 0; i < fingerprints.length; ++i) {
+				fingerprints[i] = createFingerprint();
+				putTrust(trustDbIo, fingerprints[i], i % 7);
+			}
+			trustDbIo.flush();
+		}
+		long lengthBefore = trustdbFile.length();
+
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+			int droppedCount = trustDbIo.compact(new TrustDbIo.TrustFilter() {
+				@Override
+				public boolean isKept(TrustRecord.Trust trust) {
+					return trust.getOwnerTrust() != 0;
+				}
+			});
+			assertThat(droppedCount).isEqualTo((fingerprints.length + 6) / 7);
+			// The compacted layout was committed in one batch and the journal was emptied before truncating.
+			assertThat(journalFile.length()).isEqualTo(0);
+		}
+		assertThat(trustdbFile.length()).isLessThan(lengthBefore);
+		assertThat(trustdbFile.length() % TrustConst.TRUST_RECORD_LEN).isEqualTo(0);
+
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+			for (int i = 0; i < fingerprints.length; ++i) {
+				TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(fingerprints[i]);
+				if (i % 7 == 0)
+					assertThat(trust).isNull();
+				else {
+					assertThat(trust).isNotNull();
+					assertThat(trust.getOwnerTrust()).isEqualTo((short) (i % 7));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void journalReplay() throws Exception {
+		byte[] fingerprint1 = createFingerprint();
+		byte[] fingerprint2 = createFingerprint();
+		byte[] modifiedRecords = new byte[2 * TrustConst.TRUST_RECORD_LEN];
+		long recordNum1, recordNum2;
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock);) {
+			putTrust(trustDbIo, fingerprint1, 4);
+			putTrust(trustDbIo, fingerprint2, 4);
+			TrustRecord.Trust trust1 = trustDbIo.getTrustByFingerprint(fingerprint1);
+			TrustRecord.Trust trust2 = trustDbIo.getTrustByFingerprint(fingerprint2);
+			recordNum1 = trust1.getRecordNum();
+			recordNum2 = trust2.getRecordNum();
+
+			// encode, but do not put => these modifications only get into the journal.
+			trust1.setOwnerTrust((short) 5);
+			trust2.setOwnerTrust((short) 6);
+			trustDbIo.encodeTrustRecord(trust1, ByteBuffer.wrap(modifiedRecords), 0);
+			trustDbIo.encodeTrustRecord(trust2, ByteBuffer.wrap(modifiedRecords), TrustConst.TRUST_RECORD_LEN);
+		}
+
+		// Simulate a crash after the journal was synced, but before its batch was applied.
+		try (TrustDbJournal journal = new TrustDbJournal(new IoFile(journalFile));) {
+			journal.append(recordNum1, modifiedRecords, 0, 1);
+			journal.append(recordNum2, modifiedRecords, TrustConst.TRUST_RECORD_LEN, 1);
+			journal.writeBatch();
+			journal.sync();
+		}
+		// ...followed by an incomplete batch, which must be ignored.
+		try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");) {
+			raf.seek(raf.length());
+			raf.writeInt(TrustDbJournal.BATCH_MAGIC);
+			raf.writeInt(1);
+			raf.write(new byte[30]);
+		}
+
+		TrustDbOptions options = new TrustDbOptions();
+		options.setJournalFile(new IoFile(journalFile));
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+			assertThat(journalFile.length()).isEqualTo(0);
+			assertThat(trustDbIo.getTrustByFingerprint(fingerprint1).getOwnerTrust()).isEqualTo((short) 5);
+			assertThat(trustDbIo.getTrustByFingerprint(fingerprint2).getOwnerTrust()).isEqualTo((short) 6);
+		}
+	}
+
+	@Test
+	public void scan() throws Exception {
+		TrustDbOptions options = new TrustDbOptions();
+		options.setDurability(Durability.GROUP_COMMIT);
+		options.setGroupCommitIntervalMillis(60000); // => batches stay pending in the journal.
+		options.setJournalFile(new IoFile(journalFile));
+
+		final Map<ByteBuffer, Short> fingerprint2OwnerTrust = new HashMap<>();
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+			// more than one block.
+			for (int i = 0; i < 4000; ++i) {
+				byte[] fingerprint = createFingerprint();
+				putTrust(trustDbIo, fingerprint, i % 7);
+				fingerprint2OwnerTrust.put(ByteBuffer.wrap(fingerprint), (short) (i % 7));
+				if (i % 100 == 0)
+					trustDbIo.flush();
+			}
+			// dirty modifications, not yet flushed.
+			int i = 0;
+			for (Map.Entry<ByteBuffer, Short> me : fingerprint2OwnerTrust.entrySet()) {
+				if (++i % 5 == 0) {
+					TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(me.getKey().array());
+					trust.setOwnerTrust((short) 6);
+					trustDbIo.putTrustRecord(trust);
+					me.setValue((short) 6);
+				}
+			}
+
+			final Map<ByteBuffer, Short> scanned = new HashMap<>();
+			trustDbIo.scan(TrustRecordType.TRUST, new TrustRecordVisitor() {
+				@Override
+				public boolean visit(TrustRecordView view) {
+					TrustRecordView.Trust trust = (TrustRecordView.Trust) view;
+					assertThat(scanned.put(ByteBuffer.wrap(trust.getFingerprint()), trust.getOwnerTrust())).isNull();
+					return true;
+				}
+			});
+			assertThat(scanned).isEqualTo(fingerprint2OwnerTrust);
+		}
+	}
+
+	@Test
+	public void fingerprintIndex() throws Exception {
+		byte[][] fingerprints = new byte[3000][];
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock);) {
+			for (int i = 0; i < 2000; ++i) {
+				fingerprints[i] = createFingerprint();
+				putTrust(trustDbIo, fingerprints[i], i % 7);
+			}
+		}
+
+		TrustDbOptions options = new TrustDbOptions();
+		options.setFingerprintIndexEnabled(true);
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+			for (int i = 2000; i < fingerprints.length; ++i) {
+				fingerprints[i] = createFingerprint();
+				putTrust(trustDbIo, fingerprints[i], i % 7);
+			}
+			for (int i = 0; i < fingerprints.length; ++i) {
+				TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(fingerprints[i]);
+				assertThat(trust).isNotNull();
+				assertThat(trust.getFingerprint()).isEqualTo(fingerprints[i]);
+				assertThat(trust.getOwnerTrust()).isEqualTo((short) (i % 7));
+			}
+			for (int i = 0; i < 100; ++i)
+				assertThat(trustDbIo.getTrustByFingerprint(createFingerprint())).isNull();
+		}
+	}
+
+	@Test
+	public void bloomFilter() throws Exception {
+		TrustDbOptions options = new TrustDbOptions();
+		options.setBloomFilterEnabled(true);
+		options.setBloomFilterFile(new IoFile(bloomFilterFile));
+
+		byte[][] fingerprints = new byte[3000][];
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock);) {
+			for (int i = 0; i < 1000; ++i) {
+				fingerprints[i] = createFingerprint();
+				putTrust(trustDbIo, fingerprints[i], i % 7);
+			}
+		}
+		// built by scanning the file; the filter needs to grow while putting.
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+			for (int i = 1000; i < 2000; ++i) {
+				fingerprints[i] = createFingerprint();
+				putTrust(trustDbIo, fingerprints[i], i % 7);
+			}
+			assertAllFound(trustDbIo, Arrays.copyOf(fingerprints, 2000));
+			for (int i = 0; i < 100; ++i)
+				assertThat(trustDbIo.getTrustByFingerprint(createFingerprint())).isNull();
+		}
+		assertThat(bloomFilterFile.length()).isGreaterThan(0);
+
+		// loaded from the file, which is invalid while the trustdb is open.
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+			assertThat(bloomFilterFile.length()).isEqualTo(0);
+			assertAllFound(trustDbIo, Arrays.copyOf(fingerprints, 2000));
+		}
+
+		// modified without the filter => the persisted filter is outdated and must not be used.
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock);) {
+			for (int i = 2000; i < fingerprints.length; ++i) {
+				fingerprints[i] = createFingerprint();
+				putTrust(trustDbIo, fingerprints[i], i % 7);
+			}
+		}
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+			assertAllFound(trustDbIo, fingerprints);
+		}
+	}
+
+	@Test
+	public void splitLongHashLists() throws Exception {
+		TrustDbOptions options = new TrustDbOptions();
+		options.setMaxHashListChainLength(2);
+
+		// all in the same top-level bucket => one hash list without splitting.
+		byte[][] fingerprints = new byte[600][];
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+			for (int i = 0; i < fingerprints.length; ++i) {
+				fingerprints[i] = createFingerprint();
+				fingerprints[i][0] = 0x42;
+				if (i % 2 == 0)
+					fingerprints[i][1] = 0x17; // => the nested hash table needs to be split, too.
+
+				putTrust(trustDbIo, fingerprints[i], i % 7);
+			}
+			assertAllFound(trustDbIo, fingerprints);
+		}
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock);) {
+			assertAllFound(trustDbIo, fingerprints);
+		}
+	}
+
+	@Test
+	public void rehash() throws Exception {
+		byte[][] fingerprints = new byte[600][];
+		try (TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock);) {
+			for (int i = 0; i < fingerprints.length; ++i) {
+				fingerprints[i] = createFingerprint();
+				fingerprints[i][0] = (byte) (i % 3);
+				putTrust(trustDbIo, fingerprints[i], i % 7);
+			}
+		}
+		long lengthBefore = trustdbFile.length();
+
+		IoFile file = new IoFile(trustdbFile);
+		assertThat(TrustDbTool.rehash(file, 4)).isEqualTo(3);
+		assertThat(TrustDbTool.rehash(file, 4)).isEqualTo(0);
+		try (TrustDbIo trustDbIo = new TrustDbIo(file, lock);) {
+			assertAllFound(trustDbIo, fingerprints);
+
+			// the freed hash list records are re-used.
+			assertThat(trustDbIo.getTrustRecord(0, TrustRecord.Version.class).getFirstFree()).isNotEqualTo(0);
+			long lengthAfter = trustdbFile.length();
+			putTrust(trustDbIo, createFingerprint(), 1);
+
+			trustDbIo.flush();
+			assertThat(trustdbFile.length()).isEqualTo(lengthAfter);
+			assertThat(lengthAfter).isGreaterThan(lengthBefore);
+		}
+	}
+
+	@Test
+	public void concurrentLookups() throws Exception {
+		final byte[][] fingerprints = new byte[1000][];
+		TrustDbOptions options = new TrustDbOptions();
+		options.setCacheSizeBytes(1024); // => most lookups read from the file.
+		try (final TrustDbIo trustDbIo = new TrustDbIo(new IoFile(trustdbFile), lock, options);) {
+			for (int i = 0; i < fingerprints.length; ++i) {
+				fingerprints[i] = createFingerprint();
+				putTrust(trustDbIo, fingerprints[i], i % 7);
+			}
+			trustDbIo.flush();
+
+			final AtomicReference<Throwable> error = new AtomicReference<>();
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < 4; ++t) {
+				threads.add(new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int round = 0; round < 5; ++round)
+								assertAllFound(trustDbIo, fingerprints);
+						} catch (Throwable x) {
+							error.compareAndSet(null, x);
+						}
+					}
+				});
+			}
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 200; ++i)
+							putTrust(trustDbIo, createFingerprint(), i % 7);
+					} catch (Throwable x) {
+						error.compareAndSet(null, x);
+					}
+				}
+			});
+			for (Thread thread : threads)
+				thread.start();
+
+			for (Thread thread : threads)
+				thread.join();
+
+			if (error.get() != null)
+				throw new AssertionError(error.get());
+		}
+	}
+
+	private static void assertAllFound(TrustDbIo trustDbIo, byte[][] fingerprints) {
+		for (int i = 0; i < fingerprints.length; ++i) {
+			TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(fingerprints[i]);
+			assertThat(trust).isNotNull();
+			assertThat(trust.getOwnerTrust()).isEqualTo((short) (i % 7));
+		}
+	}
+
+	protected byte[] createFingerprint() {
+		byte[] fingerprint = new byte[20];
+		random.nextBytes(fingerprint);
+		return fingerprint;
+	}
+
+	protected static void putTrust(TrustDbIo trustDbIo, byte[] fingerprint, int ownerTrust) {
+		TrustRecord.Trust trust = new TrustRecord.Trust();
+		trust.setFingerprint(fingerprint);
+		trust.setOwnerTrust((short) ownerTrust);
+		trustDbIo.putTrustRecord(trust);
+	}
+}
@@ -9,6 +9,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
 
 import org.bouncycastle.openpgp.wot.AbstractTrustDbTest;
 import org.bouncycastle.openpgp.wot.CanonicalString;
@@ -26,13 +27,13 @@ import org.slf4j.LoggerFactory;
 public class TrustDbProductiveFileTest extends AbstractTrustDbTest {
 	private static final Logger logger = LoggerFactory.getLogger(TrustDbProductiveFileTest.class);
 
-	private Object mutex;
+	private ReadWriteLock lock;
 
 	@Override
 	protected void initGnupgHomeDir() throws Exception {
 		String userHome = System.getProperty("user.home");
 		gnupgHomeDir = new File(userHome, ".gnupg");
-		mutex = CanonicalString.canonicalize(gnupgHomeDir.getCanonicalPath());
+		lock = PgpIdLocks.getLock(CanonicalString.canonicalize(gnupgHomeDir.getCanonicalPath()));
 	}
 
 	@Override
@@ -42,7 +43,7 @@ public class TrustDbProductiveFileTest extends AbstractTrustDbTest {
 
 	@Test
 	public void readMyProductiveTrustDb() throws Exception {
-		try (TrustDbIo trustDbIo = new TrustDbIo(trustdbFile, mutex);) {
+		try (TrustDbIo trustDbIo = new TrustDbIo(trustdbFile, lock);) {
 			long recordNum = -1;
 			TrustRecord trustRecord;
 			List<byte[]> trustFingerprints = new ArrayList<>();
@@ -61,7 +62,7 @@ public class TrustDbProductiveFileTest extends AbstractTrustDbTest {
 
 	@Test
 	public void updateMyProductiveDbHashTable() throws Exception {
-		try (TrustDbIo trustDbIo = new TrustDbIo(trustdbFile, mutex);) {
+		try (TrustDbIo trustDbIo = new TrustDbIo(trustdbFile, lock);) {
 			long recordNum = -1;
 			TrustRecord trustRecord;
 			List<TrustRecord.Trust> trusts = new ArrayList<>();
@@ -81,7 +82,7 @@ public class TrustDbProductiveFileTest extends AbstractTrustDbTest {
 		byte[] fingerprint = new byte[]
 				{ -5, 17, -44, -69, 123, 36, 70, 120, 51, 122, -83, -117, -57, -65, 38, -48, -69, 97, 120, 102 };
 
-		try (TrustDbIo trustDbIo = new TrustDbIo(trustdbFile, mutex);) {
+		try (TrustDbIo trustDbIo = new TrustDbIo(trustdbFile, lock);) {
 			TrustRecord.Trust trust = trustDbIo.getTrustByFingerprint(fingerprint);
 			if (trust == null) {
 				long recordNum = -1;